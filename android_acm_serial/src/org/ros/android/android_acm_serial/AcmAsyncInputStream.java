@@ -1,12 +1,12 @@
 /*
  * Copyright (C) 2011 Google Inc.
- * 
+ *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
  * the License at
- * 
+ *
  * http://www.apache.org/licenses/LICENSE-2.0
- * 
+ *
  * Unless required by applicable law or agreed to in writing, software
  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
@@ -27,22 +27,107 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 
+/**
+ * Reads from a bulk IN endpoint while keeping several {@link UsbRequest}s
+ * queued at all times. This removes the gap between consecutive transfers that
+ * limits the throughput of {@link AcmInputStream}.
+ * <p>
+ * Completed requests are delivered through the {@link UsbRequestPool}'s
+ * completion thread, so the pool must be started for reads to make progress.
+ */
 public class AcmAsyncInputStream extends InputStream {
 
   private static final boolean DEBUG = false;
   private static final String TAG = "AcmAsyncInputStream";
 
+  public static final int DEFAULT_TRANSFERS_IN_FLIGHT = 4;
+  public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+  // Prior to API 28, UsbRequest.queue() silently truncates transfers larger
+  // than 16 KiB.
+  private static final int MAXIMUM_TRANSFER_SIZE = 16 * 1024;
+  private static final int PACKETS_PER_TRANSFER = 32;
+
   private final UsbRequestPool usbRequestPool;
   private final UsbEndpoint endpoint;
+  private final BulkInPipeline pipeline;
 
   public AcmAsyncInputStream(UsbRequestPool usbRequestPool, UsbEndpoint endpoint) {
+    this(usbRequestPool, endpoint, DEFAULT_TRANSFERS_IN_FLIGHT, DEFAULT_QUEUE_CAPACITY);
+  }
+
+  /**
+   * Registers {@code endpoint} with {@code usbRequestPool} and queues the
+   * initial transfers.
+   *
+   * @param usbRequestPool
+   *          the pool to take {@link UsbRequest}s from
+   * @param endpoint
+   *          the bulk IN endpoint to read from
+   * @param transfersInFlight
+   *          the number of transfers to keep queued
+   * @param queueCapacity
+   *          the number of completed transfers that may be buffered before the
+   *          reader must catch up
+   */
+  public AcmAsyncInputStream(final UsbRequestPool usbRequestPool, final UsbEndpoint endpoint,
+      int transfersInFlight, int queueCapacity) {
     Preconditions.checkArgument(endpoint.getDirection() == UsbConstants.USB_DIR_IN);
     this.endpoint = endpoint;
     this.usbRequestPool = usbRequestPool;
+    int transferSize =
+        Math.min(MAXIMUM_TRANSFER_SIZE, endpoint.getMaxPacketSize() * PACKETS_PER_TRANSFER);
+    final BulkInTransport<UsbRequest> transport =
+        new BulkInTransport<UsbRequest>(new BulkInTransport.Requests<UsbRequest>() {
+          @Override
+          public UsbRequest poll() {
+            return usbRequestPool.poll(endpoint);
+          }
+
+          @Override
+          public void release(UsbRequest request) {
+            usbRequestPool.release(endpoint, request);
+          }
+
+          @Override
+          public void setClientData(UsbRequest request, Object clientData) {
+            request.setClientData(clientData);
+          }
+
+          @Override
+          public Object getClientData(UsbRequest request) {
+            return request.getClientData();
+          }
+
+          @Override
+          public boolean queue(UsbRequest request, ByteBuffer buffer, int length) {
+            if (!request.queue(buffer, length)) {
+              Log.e(TAG, "IO error while queuing " + length + " bytes to be read.");
+              return false;
+            }
+            return true;
+          }
+        });
+    pipeline = new BulkInPipeline(transport, transfersInFlight, transferSize, queueCapacity);
+    transport.setPipeline(pipeline);
+    // A completed request only returns to the pool after its callback has run,
+    // and the callback may already need a request for the next transfer.
+    usbRequestPool.addEndpoint(endpoint, new UsbRequestCallback() {
+      @Override
+      public void onRequestComplete(UsbRequest request) {
+        if (DEBUG) {
+          ByteBuffer buffer = (ByteBuffer) request.getClientData();
+          Log.i(TAG, "Transfer completed with " + buffer.position() + " bytes.");
+        }
+        transport.onRequestComplete(request);
+      }
+    }, transfersInFlight + 1, transfersInFlight + 1);
+    pipeline.start();
   }
 
   @Override
   public void close() throws IOException {
+    pipeline.close();
     usbRequestPool.shutdown();
   }
 
@@ -59,40 +144,50 @@ public class AcmAsyncInputStream extends InputStream {
     if (DEBUG) {
       Log.i(TAG, "Reading " + count + " bytes.");
     }
-    int byteCount = 0;
-    while (byteCount == 0) {
-      UsbRequest request = usbRequestPool.poll(endpoint);
-      if (!request.queue(ByteBuffer.wrap(buffer, offset, count), count)) {
-        Log.e(TAG, "IO error while queuing " + count + " bytes to be read.");
-      }
-    }
-    if (byteCount < 0) {
-      throw new IOException("USB read failed.");
-    }
-    // System.arraycopy(slice, 0, buffer, offset, byteCount);
+    int byteCount = pipeline.read(buffer, offset, count);
     if (DEBUG) {
       Log.i(TAG, "Actually read " + byteCount + " bytes.");
-      // Log.i(TAG, "Slice: " + byteArrayToHexString(slice));
+      Log.i(TAG, "Slice: " + byteArrayToHexString(buffer, offset, byteCount));
     }
     return byteCount;
   }
 
+  /**
+   * Reads into the remaining space of {@code buffer} and advances its position
+   * by the number of bytes read.
+   *
+   * @param buffer
+   *          the {@link ByteBuffer} to read into
+   * @return the number of bytes read
+   * @throws IOException
+   *           if a USB transfer failed or the stream was closed
+   */
+  public int read(ByteBuffer buffer) throws IOException {
+    Preconditions.checkNotNull(buffer);
+    return pipeline.read(buffer);
+  }
+
   @Override
   public int read() throws IOException {
     throw new UnsupportedOperationException();
   }
 
+  @Override
+  public int available() throws IOException {
+    return pipeline.available();
+  }
+
   // TODO(damonkohler): Possibly move this to some common place?
-  private static String byteArrayToHexString(byte[] data) {
+  private static String byteArrayToHexString(byte[] data, int offset, int length) {
     if (data == null) {
       return "null";
     }
-    if (data.length == 0) {
+    if (length == 0) {
       return "empty";
     }
-    StringBuilder out = new StringBuilder(data.length * 5);
-    for (byte b : data) {
-      out.append(String.format("%02x", b));
+    StringBuilder out = new StringBuilder(length * 5);
+    for (int i = offset; i < offset + length; i++) {
+      out.append(String.format("%02x", data[i]));
     }
     return out.toString();
   }
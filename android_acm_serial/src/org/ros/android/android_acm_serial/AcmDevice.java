@@ -33,6 +33,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author damonkohler@google.com (Damon Kohler)
@@ -73,6 +74,23 @@ public class AcmDevice {
   }
 
   public AcmDevice(UsbDeviceConnection usbDeviceConnection, UsbDevice usbDevice) {
+    this(usbDeviceConnection, usbDevice, AcmOutputStream.DEFAULT_TRANSFERS_IN_FLIGHT, 0,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @param transfersInFlight
+   *          the number of writes that may be outstanding before writing
+   *          blocks
+   * @param lingerTime
+   *          how long written bytes may wait to be coalesced with later
+   *          writes, zero to send every write immediately
+   * @param unit
+   *          the unit of {@code lingerTime}
+   * @see AcmOutputStream
+   */
+  public AcmDevice(UsbDeviceConnection usbDeviceConnection, UsbDevice usbDevice,
+      int transfersInFlight, long lingerTime, TimeUnit unit) {
     Preconditions.checkNotNull(usbDeviceConnection);
     this.usbDeviceConnection = usbDeviceConnection;
 
@@ -93,11 +111,11 @@ public class AcmDevice {
     this.usbInterface = usbInterface;
     this.usbDevice = usbDevice;
     usbRequestPool = new UsbRequestPool(usbDeviceConnection);
-    usbRequestPool.addEndpoint(acmUsbEndpoints.getOutgoing(), null);
-    usbRequestPool.start();
-
-    outputStream = new AcmOutputStream(usbRequestPool, acmUsbEndpoints.getOutgoing());
+    // AcmOutputStream registers its endpoint with the pool.
+    outputStream = new AcmOutputStream(usbRequestPool, acmUsbEndpoints.getOutgoing(),
+        transfersInFlight, lingerTime, unit);
     inputStream = new AcmInputStream(usbDeviceConnection, acmUsbEndpoints.getIncoming());
+    usbRequestPool.start();
   }
 
     /**
@@ -164,13 +182,16 @@ public class AcmDevice {
   }
 
   public void close() {
-    usbDeviceConnection.releaseInterface(usbInterface);
-    usbDeviceConnection.close();
+    // The output stream sends its buffered bytes on close, which requires the
+    // connection to still be open.
     try {
       inputStream.close();
       outputStream.close();
     } catch (IOException e) {
       throw new RosRuntimeException(e);
+    } finally {
+      usbDeviceConnection.releaseInterface(usbInterface);
+      usbDeviceConnection.close();
     }
   }
 }
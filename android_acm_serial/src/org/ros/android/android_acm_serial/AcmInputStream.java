@@ -18,14 +18,24 @@ package org.ros.android.android_acm_serial;
 
 import com.google.common.base.Preconditions;
 
+import android.annotation.TargetApi;
 import android.hardware.usb.UsbConstants;
 import android.hardware.usb.UsbDeviceConnection;
 import android.hardware.usb.UsbEndpoint;
+import android.os.Build;
 import android.util.Log;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
+/**
+ * Reads from a bulk IN endpoint with synchronous transfers.
+ * <p>
+ * On API 18 and above, transfers go straight into the caller's array. On older
+ * platforms, and for direct {@link ByteBuffer}s, a single scratch array is
+ * reused for every transfer so that reading does not generate garbage.
+ */
 public class AcmInputStream extends InputStream {
 
   private static final boolean DEBUG = false;
@@ -35,13 +45,20 @@ public class AcmInputStream extends InputStream {
   // available.
   private static final int TIMEOUT = 0;
 
+  // UsbDeviceConnection.bulkTransfer() only accepts an offset since API 18.
+  private static final boolean HAS_OFFSET_TRANSFER =
+      Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+
   private final UsbDeviceConnection connection;
   private final UsbEndpoint endpoint;
 
+  private byte[] scratch;
+
   public AcmInputStream(UsbDeviceConnection connection, UsbEndpoint endpoint) {
     Preconditions.checkArgument(endpoint.getDirection() == UsbConstants.USB_DIR_IN);
     this.connection = connection;
     this.endpoint = endpoint;
+    scratch = new byte[endpoint.getMaxPacketSize()];
   }
 
   @Override
@@ -54,17 +71,82 @@ public class AcmInputStream extends InputStream {
     if (offset < 0 || count < 0 || offset + count > buffer.length) {
       throw new IndexOutOfBoundsException();
     }
-    // NOTE(damonkohler): According to the InputStream.read() javadoc, we should
-    // be able to return 0 when we didn't read anything. However, it also says
-    // we should block until input is available. Blocking seems to be the
-    // preferred behavior.
-    byte[] slice = new byte[count];
     if (DEBUG) {
       Log.i(TAG, "Reading " + count + " bytes.");
     }
+    int byteCount;
+    if (HAS_OFFSET_TRANSFER) {
+      byteCount = transfer(buffer, offset, count);
+    } else {
+      byteCount = transferThroughScratch(buffer, offset, count);
+    }
+    if (DEBUG) {
+      Log.i(TAG, "Actually read " + byteCount + " bytes.");
+      Log.i(TAG, "Slice: " + byteArrayToHexString(buffer, offset, byteCount));
+    }
+    return byteCount;
+  }
+
+  /**
+   * Reads into the remaining space of {@code buffer} and advances its position
+   * by the number of bytes read. Heap buffers are filled in place, which lets
+   * callers parse frames out of the buffer without any further copies. The
+   * transfer into a direct buffer goes through the scratch array.
+   *
+   * @param buffer
+   *          the {@link ByteBuffer} to read into
+   * @return the number of bytes read
+   * @throws IOException
+   *           if the USB transfer fails
+   */
+  public int read(ByteBuffer buffer) throws IOException {
+    Preconditions.checkNotNull(buffer);
+    int count = buffer.remaining();
+    if (count == 0) {
+      return 0;
+    }
+    int byteCount;
+    if (buffer.hasArray()) {
+      byteCount = read(buffer.array(), buffer.arrayOffset() + buffer.position(), count);
+      buffer.position(buffer.position() + byteCount);
+    } else {
+      synchronized (this) {
+        byte[] slice = getScratch(count);
+        byteCount = transfer(slice, 0, count);
+        buffer.put(slice, 0, byteCount);
+      }
+    }
+    return byteCount;
+  }
+
+  private synchronized int transferThroughScratch(byte[] buffer, int offset, int count)
+      throws IOException {
+    byte[] slice = getScratch(count);
+    int byteCount = transfer(slice, 0, count);
+    System.arraycopy(slice, 0, buffer, offset, byteCount);
+    return byteCount;
+  }
+
+  private byte[] getScratch(int count) {
+    if (scratch.length < count) {
+      scratch = new byte[count];
+    }
+    return scratch;
+  }
+
+  // NOTE(damonkohler): According to the InputStream.read() javadoc, we should
+  // be able to return 0 when we didn't read anything. However, it also says
+  // we should block until input is available. Blocking seems to be the
+  // preferred behavior.
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+  private int transfer(byte[] buffer, int offset, int count) throws IOException {
     int byteCount = 0;
     while (byteCount == 0) {
-      byteCount = connection.bulkTransfer(endpoint, slice, slice.length, TIMEOUT);
+      if (offset == 0) {
+        byteCount = connection.bulkTransfer(endpoint, buffer, count, TIMEOUT);
+      } else {
+        byteCount = connection.bulkTransfer(endpoint, buffer, offset, count, TIMEOUT);
+      }
       if (DEBUG) {
         if (byteCount == 0) {
           Log.i(TAG, "bulkTransfer() returned 0, retrying.");
@@ -74,11 +156,6 @@ public class AcmInputStream extends InputStream {
     if (byteCount < 0) {
       throw new IOException("USB read failed.");
     }
-    System.arraycopy(slice, 0, buffer, offset, byteCount);
-    if (DEBUG) {
-      Log.i(TAG, "Actually read " + byteCount + " bytes.");
-      Log.i(TAG, "Slice: " + byteArrayToHexString(slice));
-    }
     return byteCount;
   }
 
@@ -88,16 +165,16 @@ public class AcmInputStream extends InputStream {
   }
 
   // TODO(damonkohler): Possibly move this to some common place?
-  private static String byteArrayToHexString(byte[] data) {
+  private static String byteArrayToHexString(byte[] data, int offset, int length) {
     if (data == null) {
       return "null";
     }
-    if (data.length == 0) {
+    if (length == 0) {
       return "empty";
     }
-    StringBuilder out = new StringBuilder(data.length * 5);
-    for (byte b : data) {
-      out.append(String.format("%02x", b));
+    StringBuilder out = new StringBuilder(length * 5);
+    for (int i = offset; i < offset + length; i++) {
+      out.append(String.format("%02x", data[i]));
     }
     return out.toString();
   }
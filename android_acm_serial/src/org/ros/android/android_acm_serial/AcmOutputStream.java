@@ -1,12 +1,12 @@
 /*
  * Copyright (C) 2011 Google Inc.
- * 
+ *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
  * the License at
- * 
+ *
  * http://www.apache.org/licenses/LICENSE-2.0
- * 
+ *
  * Unless required by applicable law or agreed to in writing, software
  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
@@ -25,33 +25,111 @@ import android.util.Log;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Writes to a bulk OUT endpoint with asynchronous {@link UsbRequest}s.
+ * <p>
+ * By default, every write is sent as soon as possible. With a linger time,
+ * writes smaller than the max packet size are coalesced into transfers of up
+ * to one packet, which saves a USB transaction per write for chatty protocols
+ * like rosserial. In both modes, larger writes are sent in transfers of
+ * several packets, the number of outstanding transfers is bounded and writers
+ * block until earlier transfers complete.
+ */
 public class AcmOutputStream extends OutputStream {
 
   private static final boolean DEBUG = false;
   private static final String TAG = "AcmOutputStream";
 
+  public static final int DEFAULT_TRANSFERS_IN_FLIGHT = 8;
+
+  private static final long FLUSH_TIMEOUT = 3000; // ms
+
+  // Prior to API 28, UsbRequest.queue() silently truncates transfers larger
+  // than 16 KiB.
+  private static final int MAXIMUM_TRANSFER_SIZE = 16 * 1024;
+  private static final int PACKETS_PER_TRANSFER = 32;
+
   private final UsbRequestPool usbRequestPool;
   private final UsbEndpoint endpoint;
+  private final BulkOutPipeline pipeline;
 
   public AcmOutputStream(UsbRequestPool usbRequestPool, UsbEndpoint endpoint) {
+    this(usbRequestPool, endpoint, DEFAULT_TRANSFERS_IN_FLIGHT, 0, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Registers {@code endpoint} with {@code usbRequestPool}.
+   *
+   * @param usbRequestPool
+   *          the pool to take {@link UsbRequest}s from
+   * @param endpoint
+   *          the bulk OUT endpoint to write to
+   * @param transfersInFlight
+   *          the number of transfers that may be outstanding before writes
+   *          block
+   * @param lingerTime
+   *          how long written bytes may wait to be coalesced with later
+   *          writes, zero to disable coalescing
+   * @param unit
+   *          the unit of {@code lingerTime}
+   */
+  public AcmOutputStream(final UsbRequestPool usbRequestPool, final UsbEndpoint endpoint,
+      int transfersInFlight, long lingerTime, TimeUnit unit) {
     Preconditions.checkArgument(endpoint.getDirection() == UsbConstants.USB_DIR_OUT);
     this.endpoint = endpoint;
     this.usbRequestPool = usbRequestPool;
+    int packetSize = endpoint.getMaxPacketSize();
+    int transferSize = Math.min(MAXIMUM_TRANSFER_SIZE, packetSize * PACKETS_PER_TRANSFER);
+    pipeline = new BulkOutPipeline(new BulkOutPipeline.Transport() {
+      @Override
+      public boolean submit(BulkOutPipeline.Transfer transfer) {
+        UsbRequest request = usbRequestPool.poll(endpoint);
+        request.setClientData(transfer);
+        int count = transfer.getBuffer().remaining();
+        if (DEBUG) {
+          Log.i(TAG, "Queuing " + count + " bytes.");
+        }
+        return request.queue(transfer.getBuffer(), count);
+      }
+    }, transfersInFlight, transferSize, packetSize, lingerTime, unit);
+    // A completed request only returns to the pool after its callback has run,
+    // and the callback may already need a request for the next transfer.
+    usbRequestPool.addEndpoint(endpoint, new UsbRequestCallback() {
+      @Override
+      public void onRequestComplete(UsbRequest request) {
+        BulkOutPipeline.Transfer transfer = (BulkOutPipeline.Transfer) request.getClientData();
+        request.setClientData(null);
+        pipeline.onTransferComplete(transfer);
+      }
+    }, transfersInFlight + 1, transfersInFlight + 1);
   }
 
+  /**
+   * Sends any coalesced bytes and waits for outstanding transfers to complete
+   * before the completion thread is stopped.
+   */
   @Override
   public void close() throws IOException {
-    usbRequestPool.shutdown();
+    try {
+      pipeline.close(FLUSH_TIMEOUT, TimeUnit.MILLISECONDS);
+    } finally {
+      usbRequestPool.shutdown();
+    }
   }
 
+  /**
+   * Sends any coalesced bytes and blocks until every outstanding transfer has
+   * completed.
+   */
   @Override
   public void flush() throws IOException {
+    pipeline.flush(FLUSH_TIMEOUT, TimeUnit.MILLISECONDS);
   }
 
   @Override
-  public void write(byte[] buffer, int offset, int count) {
+  public void write(byte[] buffer, int offset, int count) throws IOException {
     Preconditions.checkNotNull(buffer);
     if (offset < 0 || count < 0 || offset + count > buffer.length) {
       throw new IndexOutOfBoundsException();
@@ -59,9 +137,11 @@ public class AcmOutputStream extends OutputStream {
     if (DEBUG) {
       Log.i(TAG, "Writing " + count + " bytes from offset " + offset + ".");
     }
-    UsbRequest request = usbRequestPool.poll(endpoint);
-    if (!request.queue(ByteBuffer.wrap(buffer, offset, count), count)) {
-      Log.e(TAG, "IO error while queuing " + count + " bytes to be written.");
+    try {
+      pipeline.write(buffer, offset, count);
+    } catch (IOException e) {
+      Log.e(TAG, e.getMessage());
+      throw e;
     }
   }
 
@@ -69,4 +149,30 @@ public class AcmOutputStream extends OutputStream {
   public void write(int oneByte) throws IOException {
     write(new byte[] { (byte) oneByte }, 0, 1);
   }
+
+  /**
+   * @return the number of bytes whose transfers have completed
+   */
+  public long getBytesWritten() {
+    return pipeline.getBytesWritten();
+  }
+
+  /**
+   * @return the number of completed bytes per second since the first write
+   */
+  public double getThroughput() {
+    return pipeline.getThroughput();
+  }
+
+  /**
+   * @return the mean time in nanoseconds from queuing a transfer until it
+   *         completed
+   */
+  public long getAverageWriteLatencyNanos() {
+    return pipeline.getAverageLatencyNanos();
+  }
+
+  public long getMaximumWriteLatencyNanos() {
+    return pipeline.getMaximumLatencyNanos();
+  }
 }
@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.android_acm_serial;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps a fixed number of asynchronous bulk IN transfers queued and hands their
+ * results to a single reader in completion order.
+ * <p>
+ * The pipeline owns {@code transfersInFlight + queueCapacity} buffers. Each
+ * buffer is either free, queued with the {@link Transport}, waiting in the
+ * completed queue, or being drained by the reader. Whenever a transfer
+ * completes or the reader drains a buffer, free buffers are queued until the
+ * requested number of transfers is in flight again. A slow reader therefore
+ * eventually causes the number of transfers in flight to drop rather than data
+ * to be lost. The USB device is then simply NAKed until the reader catches up.
+ * <p>
+ * This class does not depend on the Android USB classes so that it can be
+ * exercised on a plain JVM.
+ */
+class BulkInPipeline {
+
+  /**
+   * Queues asynchronous bulk IN transfers.
+   */
+  interface Transport {
+
+    /**
+     * Queues a transfer that fills the remaining space of {@code buffer}. When
+     * the transfer completes, {@link BulkInPipeline#onTransferComplete} must be
+     * called with the same buffer and its position set to the number of bytes
+     * received.
+     *
+     * @return {@code false} if the transfer could not be queued
+     */
+    boolean submit(ByteBuffer buffer);
+  }
+
+  // Wakes up a blocked reader when the pipeline fails or is closed.
+  private static final ByteBuffer POISON = ByteBuffer.allocate(0);
+
+  private final Transport transport;
+  private final int maximumTransfersInFlight;
+  private final ConcurrentLinkedQueue<ByteBuffer> freeBuffers;
+  private final BlockingQueue<ByteBuffer> completedBuffers;
+  private final AtomicInteger transfersInFlight;
+
+  private ByteBuffer currentBuffer;
+  private volatile IOException failure;
+
+  /**
+   * @param transport
+   *          used to queue transfers
+   * @param transfersInFlight
+   *          the number of transfers to keep queued while the reader keeps up
+   * @param transferSize
+   *          the size of each transfer in bytes
+   * @param queueCapacity
+   *          the number of completed transfers that may wait for the reader
+   *          before the pipeline stops resubmitting
+   */
+  public BulkInPipeline(Transport transport, int transfersInFlight, int transferSize,
+      int queueCapacity) {
+    Preconditions.checkArgument(transfersInFlight > 0);
+    Preconditions.checkArgument(transferSize > 0);
+    Preconditions.checkArgument(queueCapacity >= 0);
+    this.transport = transport;
+    maximumTransfersInFlight = transfersInFlight;
+    int bufferCount = transfersInFlight + queueCapacity;
+    freeBuffers = new ConcurrentLinkedQueue<ByteBuffer>();
+    for (int i = 0; i < bufferCount; i++) {
+      freeBuffers.add(ByteBuffer.allocateDirect(transferSize));
+    }
+    // One extra slot leaves room for the POISON buffer.
+    completedBuffers = new ArrayBlockingQueue<ByteBuffer>(bufferCount + 1);
+    this.transfersInFlight = new AtomicInteger();
+  }
+
+  /**
+   * Queues the initial transfers.
+   */
+  public void start() {
+    refill();
+  }
+
+  /**
+   * Called from the completion thread whenever a transfer finishes.
+   */
+  public void onTransferComplete(ByteBuffer buffer) {
+    transfersInFlight.decrementAndGet();
+    buffer.flip();
+    if (buffer.hasRemaining()) {
+      completedBuffers.add(buffer);
+    } else {
+      // Zero length packets carry no data.
+      freeBuffers.add(buffer);
+    }
+    refill();
+  }
+
+  /**
+   * Blocks until at least one byte is available and copies as many bytes as
+   * possible into {@code buffer}.
+   *
+   * @return the number of bytes read
+   */
+  public int read(byte[] buffer, int offset, int length) throws IOException {
+    if (length == 0) {
+      return 0;
+    }
+    ByteBuffer source = takeCurrentBuffer();
+    int byteCount = Math.min(length, source.remaining());
+    source.get(buffer, offset, byteCount);
+    releaseCurrentBufferIfDrained();
+    return byteCount;
+  }
+
+  /**
+   * Blocks until at least one byte is available and copies as many bytes as
+   * possible into the remaining space of {@code buffer}.
+   *
+   * @return the number of bytes read
+   */
+  public int read(ByteBuffer buffer) throws IOException {
+    if (!buffer.hasRemaining()) {
+      return 0;
+    }
+    ByteBuffer source = takeCurrentBuffer();
+    int byteCount = Math.min(buffer.remaining(), source.remaining());
+    int limit = source.limit();
+    source.limit(source.position() + byteCount);
+    buffer.put(source);
+    source.limit(limit);
+    releaseCurrentBufferIfDrained();
+    return byteCount;
+  }
+
+  /**
+   * @return the number of bytes that can be read without blocking
+   */
+  public int available() {
+    int available = currentBuffer == null ? 0 : currentBuffer.remaining();
+    for (ByteBuffer buffer : completedBuffers) {
+      available += buffer.remaining();
+    }
+    return available;
+  }
+
+  /**
+   * @return the number of transfers that are currently queued
+   */
+  public int getTransfersInFlight() {
+    return transfersInFlight.get();
+  }
+
+  /**
+   * Fails all current and future reads. Transfers that are still queued are
+   * left to the owner of the {@link Transport} to cancel.
+   */
+  public void close() {
+    fail(new IOException("Stream closed."));
+  }
+
+  private synchronized void fail(IOException e) {
+    if (failure == null) {
+      failure = e;
+      completedBuffers.offer(POISON);
+    }
+  }
+
+  private ByteBuffer takeCurrentBuffer() throws IOException {
+    if (currentBuffer == null) {
+      if (failure != null && completedBuffers.isEmpty()) {
+        throw failure;
+      }
+      try {
+        currentBuffer = completedBuffers.take();
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException();
+      }
+      if (currentBuffer == POISON) {
+        currentBuffer = null;
+        // Leave the POISON for any subsequent reads.
+        completedBuffers.offer(POISON);
+        throw failure;
+      }
+    }
+    return currentBuffer;
+  }
+
+  private void releaseCurrentBufferIfDrained() {
+    if (!currentBuffer.hasRemaining()) {
+      freeBuffers.add(currentBuffer);
+      currentBuffer = null;
+      refill();
+    }
+  }
+
+  /**
+   * Queues free buffers until the maximum number of transfers is in flight.
+   * This is called from both the reader and the completion thread.
+   */
+  private void refill() {
+    while (failure == null) {
+      int inFlight = transfersInFlight.get();
+      if (inFlight >= maximumTransfersInFlight) {
+        return;
+      }
+      ByteBuffer buffer = freeBuffers.poll();
+      if (buffer == null) {
+        return;
+      }
+      if (!transfersInFlight.compareAndSet(inFlight, inFlight + 1)) {
+        freeBuffers.add(buffer);
+        continue;
+      }
+      buffer.clear();
+      if (!transport.submit(buffer)) {
+        transfersInFlight.decrementAndGet();
+        freeBuffers.add(buffer);
+        fail(new IOException("USB read failed."));
+      }
+    }
+  }
+}
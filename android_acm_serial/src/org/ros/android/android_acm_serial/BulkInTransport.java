@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.android_acm_serial;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Queues the transfers of a {@link BulkInPipeline} with pooled asynchronous
+ * requests and hands completed requests back to the pipeline.
+ * <p>
+ * Every queued buffer is attached to its request as client data so that the
+ * completion can be matched with the buffer. A request that could not be
+ * queued is returned to the pool immediately.
+ * <p>
+ * This class does not depend on the Android USB classes so that it can be
+ * exercised on a plain JVM. {@link AcmAsyncInputStream} provides the
+ * {@link Requests} for {@link android.hardware.usb.UsbRequest}s.
+ *
+ * @param <R>
+ *          the request type
+ */
+class BulkInTransport<R> implements BulkInPipeline.Transport {
+
+  /**
+   * The pool of requests for a single bulk IN endpoint.
+   */
+  interface Requests<R> {
+
+    /**
+     * @return an idle request
+     */
+    R poll();
+
+    /**
+     * Returns a request that was taken with {@link #poll()} but never queued.
+     */
+    void release(R request);
+
+    void setClientData(R request, Object clientData);
+
+    Object getClientData(R request);
+
+    /**
+     * @return {@code false} if the request could not be queued
+     */
+    boolean queue(R request, ByteBuffer buffer, int length);
+  }
+
+  private final Requests<R> requests;
+
+  private BulkInPipeline pipeline;
+
+  public BulkInTransport(Requests<R> requests) {
+    this.requests = requests;
+  }
+
+  /**
+   * Sets the pipeline that completed transfers are handed to. This must be
+   * called before the pipeline is started.
+   */
+  public void setPipeline(BulkInPipeline pipeline) {
+    this.pipeline = pipeline;
+  }
+
+  @Override
+  public boolean submit(ByteBuffer buffer) {
+    R request = requests.poll();
+    requests.setClientData(request, buffer);
+    if (!requests.queue(request, buffer, buffer.remaining())) {
+      requests.setClientData(request, null);
+      requests.release(request);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Called from the completion thread whenever a request finishes.
+   */
+  public void onRequestComplete(R request) {
+    ByteBuffer buffer = (ByteBuffer) requests.getClientData(request);
+    requests.setClientData(request, null);
+    pipeline.onTransferComplete(buffer);
+  }
+}
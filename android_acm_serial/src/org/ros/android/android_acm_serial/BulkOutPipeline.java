@@ -0,0 +1,367 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.android_acm_serial;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Packs writes into asynchronous bulk OUT transfers.
+ * <p>
+ * Written bytes are copied into transfer buffers and queued with the
+ * {@link Transport}. Without a linger time, every write is queued immediately,
+ * in as few transfers as possible. With a linger time, writes smaller than a
+ * packet are coalesced into a buffer that is queued once it holds a packet or
+ * once the oldest byte in it has waited that long, while larger writes are
+ * still queued immediately. At most {@code maximumTransfersInFlight} transfers
+ * are queued at once; writers block until a transfer completes.
+ * <p>
+ * This class does not depend on the Android USB classes so that it can be
+ * exercised on a plain JVM.
+ */
+class BulkOutPipeline {
+
+  /**
+   * Queues asynchronous bulk OUT transfers.
+   */
+  interface Transport {
+
+    /**
+     * Queues the remaining bytes of {@code transfer.getBuffer()}. When the
+     * transfer completes, {@link BulkOutPipeline#onTransferComplete} must be
+     * called with the same {@link Transfer}.
+     *
+     * @return {@code false} if the transfer could not be queued
+     */
+    boolean submit(Transfer transfer);
+  }
+
+  static final class Transfer {
+
+    private final ByteBuffer buffer;
+    private long submitTime;
+
+    private Transfer(int size) {
+      buffer = ByteBuffer.allocateDirect(size);
+    }
+
+    ByteBuffer getBuffer() {
+      return buffer;
+    }
+  }
+
+  private final Transport transport;
+  private final int packetSize;
+  private final long lingerNanos;
+  private final BlockingQueue<Transfer> freeTransfers;
+  private final ScheduledExecutorService lingerExecutor;
+  private final Object completionMutex;
+
+  // Guarded by this.
+  private Transfer currentTransfer;
+  private long currentTransferGeneration;
+  private volatile IOException failure;
+
+  // Guarded by completionMutex.
+  private int transfersInFlight;
+  private long firstSubmitTime;
+  private long bytesCompleted;
+  private long transfersCompleted;
+  private long totalLatency;
+  private long maximumLatency;
+
+  /**
+   * @param transport
+   *          used to queue transfers
+   * @param maximumTransfersInFlight
+   *          the number of transfers that may be queued before writers block
+   * @param transferSize
+   *          the maximum size of each transfer in bytes
+   * @param packetSize
+   *          the size that small writes are coalesced up to, usually the max
+   *          packet size of the endpoint
+   * @param lingerTime
+   *          how long buffered bytes may wait for more data before they are
+   *          sent, zero to send every write immediately
+   * @param unit
+   *          the unit of {@code lingerTime}
+   */
+  public BulkOutPipeline(Transport transport, int maximumTransfersInFlight, int transferSize,
+      int packetSize, long lingerTime, TimeUnit unit) {
+    Preconditions.checkArgument(maximumTransfersInFlight > 0);
+    Preconditions.checkArgument(packetSize > 0 && packetSize <= transferSize);
+    Preconditions.checkArgument(lingerTime >= 0);
+    this.transport = transport;
+    this.packetSize = packetSize;
+    lingerNanos = unit.toNanos(lingerTime);
+    // The buffer that is being filled counts against the limit as well, since
+    // it is queued as soon as it is full.
+    freeTransfers = new ArrayBlockingQueue<Transfer>(maximumTransfersInFlight);
+    for (int i = 0; i < maximumTransfersInFlight; i++) {
+      freeTransfers.add(new Transfer(transferSize));
+    }
+    if (lingerNanos > 0) {
+      lingerExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "BulkOutPipeline linger");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    } else {
+      lingerExecutor = null;
+    }
+    completionMutex = new Object();
+  }
+
+  /**
+   * Buffers {@code buffer} for sending. Blocks while the maximum number of
+   * transfers is in flight and there is no room left to buffer the data.
+   */
+  public synchronized void write(byte[] buffer, int offset, int length) throws IOException {
+    checkFailure();
+    if (lingerExecutor != null && length < packetSize) {
+      coalesce(buffer, offset, length);
+      return;
+    }
+    // Coalesced bytes go first to keep the stream in order.
+    submitCurrentTransfer();
+    while (length > 0) {
+      Transfer transfer = takeFreeTransfer();
+      int count = Math.min(length, transfer.buffer.remaining());
+      transfer.buffer.put(buffer, offset, count);
+      offset += count;
+      length -= count;
+      submit(transfer);
+    }
+  }
+
+  /**
+   * Sends any buffered bytes and blocks until all queued transfers have
+   * completed.
+   *
+   * @param timeout
+   *          the maximum time to wait
+   * @param unit
+   *          the unit of {@code timeout}
+   * @throws IOException
+   *           if a transfer failed or did not complete in time
+   */
+  public synchronized void flush(long timeout, TimeUnit unit) throws IOException {
+    checkFailure();
+    submitCurrentTransfer();
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    synchronized (completionMutex) {
+      while (transfersInFlight > 0) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          throw new IOException("Timed out waiting for " + transfersInFlight
+              + " USB writes to complete.");
+        }
+        try {
+          TimeUnit.NANOSECONDS.timedWait(completionMutex, remaining);
+        } catch (InterruptedException e) {
+          throw new InterruptedIOException();
+        }
+      }
+    }
+    checkFailure();
+  }
+
+  /**
+   * Called from the completion thread whenever a transfer finishes.
+   */
+  public void onTransferComplete(Transfer transfer) {
+    long now = System.nanoTime();
+    synchronized (completionMutex) {
+      long latency = now - transfer.submitTime;
+      transfersInFlight--;
+      transfersCompleted++;
+      bytesCompleted += transfer.buffer.limit();
+      totalLatency += latency;
+      maximumLatency = Math.max(maximumLatency, latency);
+      completionMutex.notifyAll();
+    }
+    transfer.buffer.clear();
+    freeTransfers.add(transfer);
+  }
+
+  /**
+   * Sends any buffered bytes, waits for all queued transfers to complete and
+   * stops the linger timer.
+   *
+   * @param timeout
+   *          the maximum time to wait
+   * @param unit
+   *          the unit of {@code timeout}
+   * @throws IOException
+   *           if a transfer failed or did not complete in time
+   */
+  public synchronized void close(long timeout, TimeUnit unit) throws IOException {
+    try {
+      flush(timeout, unit);
+    } finally {
+      if (lingerExecutor != null) {
+        lingerExecutor.shutdownNow();
+      }
+    }
+  }
+
+  public int getTransfersInFlight() {
+    synchronized (completionMutex) {
+      return transfersInFlight;
+    }
+  }
+
+  /**
+   * @return the number of bytes whose transfers have completed
+   */
+  public long getBytesWritten() {
+    synchronized (completionMutex) {
+      return bytesCompleted;
+    }
+  }
+
+  public long getTransfersCompleted() {
+    synchronized (completionMutex) {
+      return transfersCompleted;
+    }
+  }
+
+  /**
+   * @return the mean time from queuing a transfer until its completion
+   */
+  public long getAverageLatencyNanos() {
+    synchronized (completionMutex) {
+      return transfersCompleted == 0 ? 0 : totalLatency / transfersCompleted;
+    }
+  }
+
+  public long getMaximumLatencyNanos() {
+    synchronized (completionMutex) {
+      return maximumLatency;
+    }
+  }
+
+  /**
+   * @return the number of completed bytes per second since the first transfer
+   *         was queued
+   */
+  public double getThroughput() {
+    synchronized (completionMutex) {
+      if (transfersCompleted == 0) {
+        return 0;
+      }
+      return bytesCompleted * 1e9 / (System.nanoTime() - firstSubmitTime);
+    }
+  }
+
+  private Transfer takeFreeTransfer() throws IOException {
+    try {
+      return freeTransfers.take();
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException();
+    }
+  }
+
+  private void coalesce(byte[] buffer, int offset, int length) throws IOException {
+    while (length > 0) {
+      if (currentTransfer == null) {
+        currentTransfer = takeFreeTransfer();
+        currentTransferGeneration++;
+        scheduleLinger(currentTransferGeneration);
+      }
+      ByteBuffer target = currentTransfer.buffer;
+      int count = Math.min(length, packetSize - target.position());
+      target.put(buffer, offset, count);
+      offset += count;
+      length -= count;
+      if (target.position() == packetSize) {
+        submitCurrentTransfer();
+      }
+    }
+  }
+
+  private void scheduleLinger(final long generation) {
+    lingerExecutor.schedule(new Runnable() {
+      @Override
+      public void run() {
+        synchronized (BulkOutPipeline.this) {
+          // The transfer may already have been sent because it filled up or
+          // was flushed.
+          if (generation == currentTransferGeneration) {
+            try {
+              submitCurrentTransfer();
+            } catch (IOException e) {
+              // There is no caller to throw to, so the next call to write()
+              // or flush() reports it.
+              failure = e;
+            }
+          }
+        }
+      }
+    }, lingerNanos, TimeUnit.NANOSECONDS);
+  }
+
+  private void submitCurrentTransfer() throws IOException {
+    Transfer transfer = currentTransfer;
+    if (transfer == null || transfer.buffer.position() == 0) {
+      return;
+    }
+    currentTransfer = null;
+    submit(transfer);
+  }
+
+  private void submit(Transfer transfer) throws IOException {
+    transfer.buffer.flip();
+    int byteCount = transfer.buffer.remaining();
+    transfer.submitTime = System.nanoTime();
+    synchronized (completionMutex) {
+      if (firstSubmitTime == 0) {
+        firstSubmitTime = transfer.submitTime;
+      }
+      transfersInFlight++;
+    }
+    if (!transport.submit(transfer)) {
+      synchronized (completionMutex) {
+        transfersInFlight--;
+        completionMutex.notifyAll();
+      }
+      transfer.buffer.clear();
+      freeTransfers.add(transfer);
+      throw new IOException("IO error while queuing " + byteCount + " bytes to be written.");
+    }
+  }
+
+  private void checkFailure() throws IOException {
+    IOException e = failure;
+    if (e != null) {
+      failure = null;
+      throw e;
+    }
+  }
+}
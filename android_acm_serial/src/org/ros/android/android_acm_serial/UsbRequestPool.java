@@ -26,14 +26,26 @@ import android.util.Log;
 
 import java.util.Map;
 
+/**
+ * Hands out {@link UsbRequest}s for each registered endpoint and dispatches
+ * their completions.
+ * <p>
+ * The number of requests per endpoint is bounded. When all of an endpoint's
+ * requests are in use, {@link #poll(UsbEndpoint)} waits for one to complete
+ * for at most the configured timeout.
+ */
 class UsbRequestPool {
 
   private static final boolean DEBUG = false;
   private static final String TAG = "UsbRequestPool";
 
+  public static final int DEFAULT_INITIAL_SIZE = 4;
+  public static final int DEFAULT_MAXIMUM_SIZE = 16;
+
   private final UsbDeviceConnection connection;
   private final Map<UsbEndpoint, UsbRequestQueue> usbRequestQueues;
   private final RequestWaitThread requestWaitThread;
+  private final long pollTimeout;
 
   private final class RequestWaitThread extends Thread {
     @Override
@@ -69,29 +81,103 @@ class UsbRequestPool {
     }
   }
 
+  /**
+   * Creates a pool that waits indefinitely for requests when an endpoint's
+   * requests are exhausted.
+   */
   public UsbRequestPool(UsbDeviceConnection connection) {
+    this(connection, -1);
+  }
+
+  /**
+   * @param pollTimeout
+   *          how long {@link #poll(UsbEndpoint)} waits for a request once all of
+   *          an endpoint's requests are in use, in milliseconds; zero fails
+   *          immediately and a negative value waits indefinitely
+   */
+  public UsbRequestPool(UsbDeviceConnection connection, long pollTimeout) {
     this.connection = connection;
+    this.pollTimeout = pollTimeout;
     usbRequestQueues = Maps.newConcurrentMap();
     requestWaitThread = new RequestWaitThread();
   }
 
   public void addEndpoint(UsbEndpoint endpoint, UsbRequestCallback callback) {
-    usbRequestQueues.put(endpoint, new UsbRequestQueue(connection, endpoint, callback));
+    addEndpoint(endpoint, callback, DEFAULT_INITIAL_SIZE, DEFAULT_MAXIMUM_SIZE);
+  }
+
+  /**
+   * @param initialSize
+   *          the number of requests to open immediately
+   * @param maximumSize
+   *          the maximum number of requests to open for {@code endpoint}
+   */
+  public void addEndpoint(UsbEndpoint endpoint, UsbRequestCallback callback, int initialSize,
+      int maximumSize) {
+    usbRequestQueues.put(endpoint, new UsbRequestQueue(connection, endpoint, callback,
+        initialSize, maximumSize));
   }
 
   public UsbRequest poll(UsbEndpoint endpoint) {
-    Preconditions.checkArgument(usbRequestQueues.containsKey(endpoint),
-        "Call addEndpoint() before the first call to poll().");
-    UsbRequestQueue queue = usbRequestQueues.get(endpoint);
-    UsbRequest request = queue.poll();
-    return request;
+    return getQueue(endpoint).poll(pollTimeout);
+  }
+
+  /**
+   * Returns a request that was taken with {@link #poll(UsbEndpoint)} but never
+   * queued.
+   */
+  public void release(UsbEndpoint endpoint, UsbRequest request) {
+    getQueue(endpoint).release(request);
   }
 
   public void start() {
     requestWaitThread.start();
   }
 
+  /**
+   * Stops dispatching completions and closes all requests.
+   */
   public void shutdown() {
     requestWaitThread.interrupt();
+    for (UsbRequestQueue queue : usbRequestQueues.values()) {
+      queue.close();
+    }
+  }
+
+  /**
+   * @return the number of requests that have been opened for {@code endpoint}
+   */
+  public int getAllocationCount(UsbEndpoint endpoint) {
+    return getQueue(endpoint).getAllocationCount();
+  }
+
+  /**
+   * @return the number of times an idle request for {@code endpoint} was
+   *         handed out again
+   */
+  public long getReuseCount(UsbEndpoint endpoint) {
+    return getQueue(endpoint).getReuseCount();
+  }
+
+  /**
+   * @return the number of times {@link #poll(UsbEndpoint)} had to wait for a
+   *         request for {@code endpoint}
+   */
+  public long getWaitCount(UsbEndpoint endpoint) {
+    return getQueue(endpoint).getWaitCount();
+  }
+
+  /**
+   * @return the total time spent waiting for requests for {@code endpoint} in
+   *         nanoseconds
+   */
+  public long getWaitTimeNanos(UsbEndpoint endpoint) {
+    return getQueue(endpoint).getWaitTimeNanos();
+  }
+
+  private UsbRequestQueue getQueue(UsbEndpoint endpoint) {
+    Preconditions.checkArgument(usbRequestQueues.containsKey(endpoint),
+        "Call addEndpoint() before the first call to poll().");
+    return usbRequestQueues.get(endpoint);
   }
 }
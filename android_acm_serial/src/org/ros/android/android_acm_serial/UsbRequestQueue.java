@@ -1,12 +1,12 @@
 /*
  * Copyright (C) 2011 Google Inc.
- * 
+ *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
  * the License at
- * 
+ *
  * http://www.apache.org/licenses/LICENSE-2.0
- * 
+ *
  * Unless required by applicable law or agreed to in writing, software
  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
@@ -16,16 +16,28 @@
 
 package org.ros.android.android_acm_serial;
 
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
 import android.hardware.usb.UsbDeviceConnection;
 import android.hardware.usb.UsbEndpoint;
 import android.hardware.usb.UsbRequest;
 import android.util.Log;
 import org.ros.exception.RosRuntimeException;
 
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * A bounded pool of {@link UsbRequest}s for a single endpoint.
+ * <p>
+ * A number of requests are opened up front. More are opened on demand until
+ * the maximum is reached, after which {@link #poll(long)} waits for a request
+ * to complete.
+ *
  * @author damonkohler@google.com (Damon Kohler)
  */
 class UsbRequestQueue {
@@ -36,14 +48,38 @@ class UsbRequestQueue {
   private final UsbDeviceConnection connection;
   private final UsbEndpoint endpoint;
   private final UsbRequestCallback callback;
-  private final Queue<UsbRequest> queue;
+  private final int maximumSize;
+  private final BlockingQueue<UsbRequest> queue;
+  private final Collection<UsbRequest> requests;
+
+  private final AtomicLong reuseCount;
+  private final AtomicLong waitCount;
+  private final AtomicLong waitTime;
+
+  private boolean closed;
 
+  /**
+   * @param initialSize
+   *          the number of requests to open immediately
+   * @param maximumSize
+   *          the maximum number of requests that will ever be opened
+   */
   public UsbRequestQueue(UsbDeviceConnection connection, UsbEndpoint endpoint,
-      UsbRequestCallback callback) {
+      UsbRequestCallback callback, int initialSize, int maximumSize) {
+    Preconditions.checkArgument(initialSize >= 0 && initialSize <= maximumSize);
+    Preconditions.checkArgument(maximumSize > 0);
     this.connection = connection;
     this.endpoint = endpoint;
     this.callback = callback;
-    queue = new ConcurrentLinkedQueue<UsbRequest>();
+    this.maximumSize = maximumSize;
+    queue = new LinkedBlockingQueue<UsbRequest>();
+    requests = Lists.newArrayList();
+    reuseCount = new AtomicLong();
+    waitCount = new AtomicLong();
+    waitTime = new AtomicLong();
+    for (int i = 0; i < initialSize; i++) {
+      queue.add(newRequest());
+    }
   }
 
   public void add(UsbRequest request) {
@@ -56,14 +92,127 @@ class UsbRequestQueue {
     }
   }
 
-  public UsbRequest poll() {
+  /**
+   * Returns a request that was taken with {@link #poll(long)} but never queued,
+   * without running the completion callback.
+   */
+  public void release(UsbRequest request) {
+    queue.add(request);
+  }
+
+  /**
+   * Returns an idle request, opening a new one if the maximum has not been
+   * reached yet.
+   *
+   * @param timeout
+   *          how long to wait for a request to become idle once the maximum
+   *          has been reached, in milliseconds; zero fails immediately and a
+   *          negative value waits indefinitely
+   * @throws RosRuntimeException
+   *           if no request became available in time
+   */
+  public UsbRequest poll(long timeout) {
     UsbRequest request = queue.poll();
+    if (request != null) {
+      reuseCount.incrementAndGet();
+      return request;
+    }
+    request = tryNewRequest();
+    if (request != null) {
+      return request;
+    }
+    if (timeout == 0) {
+      throw new RosRuntimeException("All " + maximumSize + " UsbRequests are in use.");
+    }
+    long startTime = System.nanoTime();
+    try {
+      if (timeout < 0) {
+        request = queue.take();
+      } else {
+        request = queue.poll(timeout, TimeUnit.MILLISECONDS);
+      }
+    } catch (InterruptedException e) {
+      throw new RosRuntimeException(e);
+    } finally {
+      waitCount.incrementAndGet();
+      waitTime.addAndGet(System.nanoTime() - startTime);
+    }
     if (request == null) {
-      request = new UsbRequest();
+      throw new RosRuntimeException("Timed out waiting for one of " + maximumSize
+          + " UsbRequests.");
+    }
+    reuseCount.incrementAndGet();
+    return request;
+  }
+
+  /**
+   * Cancels and closes every request that was opened by this queue.
+   */
+  public void close() {
+    synchronized (requests) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      for (UsbRequest request : requests) {
+        request.cancel();
+        request.close();
+      }
+    }
+    queue.clear();
+  }
+
+  /**
+   * @return the number of requests that have been opened
+   */
+  public int getAllocationCount() {
+    synchronized (requests) {
+      return requests.size();
+    }
+  }
+
+  /**
+   * @return the number of times an idle request was handed out again
+   */
+  public long getReuseCount() {
+    return reuseCount.get();
+  }
+
+  /**
+   * @return the number of times {@link #poll(long)} had to wait for a request
+   */
+  public long getWaitCount() {
+    return waitCount.get();
+  }
+
+  /**
+   * @return the total time spent waiting for requests in nanoseconds
+   */
+  public long getWaitTimeNanos() {
+    return waitTime.get();
+  }
+
+  private UsbRequest tryNewRequest() {
+    synchronized (requests) {
+      if (requests.size() >= maximumSize) {
+        return null;
+      }
+      return newRequest();
+    }
+  }
+
+  private UsbRequest newRequest() {
+    synchronized (requests) {
+      Preconditions.checkState(!closed, "UsbRequestQueue is closed.");
+      UsbRequest request = new UsbRequest();
       if (!request.initialize(connection, endpoint)) {
         throw new RosRuntimeException("Failed to open UsbRequest.");
       }
+      requests.add(request);
+      if (DEBUG) {
+        Log.d(TAG, "Opened UsbRequest " + requests.size() + " of " + maximumSize + ".");
+      }
+      return request;
     }
-    return request;
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.android_acm_serial;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public class BulkInPipelineTest {
+
+  private static BulkInPipeline newPipeline(FakeUsbDeviceConnection connection,
+      int transfersInFlight, int transferSize, int queueCapacity) {
+    BulkInPipeline pipeline =
+        new BulkInPipeline(connection, transfersInFlight, transferSize, queueCapacity);
+    connection.setPipeline(pipeline);
+    pipeline.start();
+    return pipeline;
+  }
+
+  @Test
+  public void testStartQueuesTransfers() {
+    FakeUsbDeviceConnection connection = new FakeUsbDeviceConnection();
+    BulkInPipeline pipeline = newPipeline(connection, 4, 64, 8);
+    assertEquals(4, connection.getQueuedTransfers());
+    assertEquals(4, pipeline.getTransfersInFlight());
+  }
+
+  @Test
+  public void testCompletedTransferIsReplacedImmediately() {
+    FakeUsbDeviceConnection connection = new FakeUsbDeviceConnection();
+    BulkInPipeline pipeline = newPipeline(connection, 4, 64, 8);
+    assertTrue(connection.completeTransfer(64));
+    assertTrue(connection.completeTransfer(64));
+    // Spare buffers are queued without waiting for the reader.
+    assertEquals(4, connection.getQueuedTransfers());
+    assertEquals(128, pipeline.available());
+  }
+
+  @Test
+  public void testSlowReaderStopsResubmission() throws IOException {
+    FakeUsbDeviceConnection connection = new FakeUsbDeviceConnection();
+    BulkInPipeline pipeline = newPipeline(connection, 2, 16, 2);
+    while (connection.completeTransfer(16)) {
+      // Complete everything the pipeline is willing to queue.
+    }
+    assertEquals(0, pipeline.getTransfersInFlight());
+    assertEquals(64, pipeline.available());
+    byte[] buffer = new byte[64];
+    int bytesRead = 0;
+    while (bytesRead < buffer.length) {
+      bytesRead += pipeline.read(buffer, bytesRead, buffer.length - bytesRead);
+    }
+    for (int i = 0; i < buffer.length; i++) {
+      assertEquals((byte) i, buffer[i]);
+    }
+    assertEquals(2, pipeline.getTransfersInFlight());
+  }
+
+  @Test
+  public void testZeroLengthPacketIsResubmitted() {
+    FakeUsbDeviceConnection connection = new FakeUsbDeviceConnection();
+    BulkInPipeline pipeline = newPipeline(connection, 1, 16, 0);
+    assertTrue(connection.completeTransfer(0));
+    assertEquals(0, pipeline.available());
+    assertEquals(1, connection.getQueuedTransfers());
+  }
+
+  @Test
+  public void testPartialReads() throws IOException {
+    FakeUsbDeviceConnection connection = new FakeUsbDeviceConnection();
+    BulkInPipeline pipeline = newPipeline(connection, 2, 16, 2);
+    connection.completeTransfer(10);
+    connection.completeTransfer(10);
+    ByteBuffer buffer = ByteBuffer.allocate(20);
+    buffer.limit(4);
+    assertEquals(4, pipeline.read(buffer));
+    buffer.limit(20);
+    // Reads never span more than one transfer.
+    assertEquals(6, pipeline.read(buffer));
+    assertEquals(10, pipeline.read(buffer));
+    buffer.flip();
+    for (int i = 0; i < 20; i++) {
+      assertEquals((byte) i, buffer.get());
+    }
+  }
+
+  @Test
+  public void testSubmitFailureFailsRead() {
+    FakeUsbDeviceConnection connection = new FakeUsbDeviceConnection();
+    connection.setFailSubmissions(true);
+    BulkInPipeline pipeline = newPipeline(connection, 2, 16, 2);
+    try {
+      pipeline.read(new byte[16], 0, 16);
+      fail();
+    } catch (IOException e) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void testCloseUnblocksReader() throws InterruptedException {
+    FakeUsbDeviceConnection connection = new FakeUsbDeviceConnection();
+    final BulkInPipeline pipeline = newPipeline(connection, 2, 16, 2);
+    final boolean[] failed = new boolean[1];
+    Thread reader = new Thread() {
+      @Override
+      public void run() {
+        try {
+          pipeline.read(new byte[16], 0, 16);
+        } catch (IOException e) {
+          failed[0] = true;
+        }
+      }
+    };
+    reader.start();
+    pipeline.close();
+    reader.join(10000);
+    assertTrue(failed[0]);
+  }
+
+  @Test(timeout = 60000)
+  public void testSustainedRead() throws IOException, InterruptedException {
+    long totalBytes = 16 * 1024 * 1024;
+    FakeUsbDeviceConnection connection = new FakeUsbDeviceConnection();
+    BulkInPipeline pipeline = newPipeline(connection, 4, 512 * 32, 16);
+    Thread completionThread = connection.startCompletionThread(512 * 32, totalBytes);
+    byte[] buffer = new byte[4096];
+    long bytesRead = 0;
+    while (bytesRead < totalBytes) {
+      int count = pipeline.read(buffer, 0, buffer.length);
+      for (int i = 0; i < count; i++) {
+        if (buffer[i] != (byte) (bytesRead + i)) {
+          throw new AssertionError("Corrupt byte at offset " + (bytesRead + i));
+        }
+      }
+      bytesRead += count;
+    }
+    completionThread.join();
+    assertEquals(totalBytes, bytesRead);
+    assertTrue(connection.getMaximumQueuedTransfers() <= 4);
+  }
+}
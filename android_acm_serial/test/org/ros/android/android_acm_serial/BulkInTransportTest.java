@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.android_acm_serial;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+public class BulkInTransportTest {
+
+  /**
+   * Stands in for a {@link android.hardware.usb.UsbRequest}.
+   */
+  private static class FakeRequest {
+    Object clientData;
+    ByteBuffer queuedBuffer;
+    int queuedLength;
+  }
+
+  /**
+   * Stands in for the {@link UsbRequestPool} of a single endpoint.
+   */
+  private static class FakeRequests implements BulkInTransport.Requests<FakeRequest> {
+    final Deque<FakeRequest> idle = new ArrayDeque<FakeRequest>();
+    final List<FakeRequest> queued = new ArrayList<FakeRequest>();
+    int allocationCount;
+    boolean failQueue;
+
+    @Override
+    public FakeRequest poll() {
+      FakeRequest request = idle.poll();
+      if (request == null) {
+        request = new FakeRequest();
+        allocationCount++;
+      }
+      return request;
+    }
+
+    @Override
+    public void release(FakeRequest request) {
+      idle.add(request);
+    }
+
+    @Override
+    public void setClientData(FakeRequest request, Object clientData) {
+      request.clientData = clientData;
+    }
+
+    @Override
+    public Object getClientData(FakeRequest request) {
+      return request.clientData;
+    }
+
+    @Override
+    public boolean queue(FakeRequest request, ByteBuffer buffer, int length) {
+      if (failQueue) {
+        return false;
+      }
+      request.queuedBuffer = buffer;
+      request.queuedLength = length;
+      queued.add(request);
+      return true;
+    }
+
+    /**
+     * Completes the oldest queued request with {@code data}, the way the
+     * completion thread of the {@link UsbRequestPool} does.
+     */
+    void complete(BulkInTransport<FakeRequest> transport, byte[] data) {
+      FakeRequest request = queued.remove(0);
+      request.queuedBuffer.put(data);
+      request.queuedBuffer = null;
+      transport.onRequestComplete(request);
+      idle.add(request);
+    }
+  }
+
+  private static BulkInPipeline newPipeline(BulkInTransport<FakeRequest> transport,
+      int transfersInFlight) {
+    BulkInPipeline pipeline = new BulkInPipeline(transport, transfersInFlight, 64, 4);
+    transport.setPipeline(pipeline);
+    pipeline.start();
+    return pipeline;
+  }
+
+  @Test
+  public void testQueuedBufferIsAttachedToItsRequest() {
+    FakeRequests requests = new FakeRequests();
+    newPipeline(new BulkInTransport<FakeRequest>(requests), 2);
+    assertEquals(2, requests.queued.size());
+    for (FakeRequest request : requests.queued) {
+      assertSame(request.queuedBuffer, request.clientData);
+      assertEquals(64, request.queuedLength);
+    }
+  }
+
+  @Test
+  public void testCompletionDetachesTheBuffer() throws IOException {
+    FakeRequests requests = new FakeRequests();
+    BulkInTransport<FakeRequest> transport = new BulkInTransport<FakeRequest>(requests);
+    BulkInPipeline pipeline = newPipeline(transport, 2);
+    FakeRequest request = requests.queued.get(0);
+    requests.complete(transport, new byte[] { 1, 2, 3 });
+    assertNull(request.clientData);
+    byte[] buffer = new byte[8];
+    assertEquals(3, pipeline.read(buffer, 0, buffer.length));
+    assertEquals(3, buffer[2]);
+    // A completed request only returns to the pool after its callback has run,
+    // so only later transfers can reuse it.
+    assertEquals(2, requests.queued.size());
+    assertEquals(3, requests.allocationCount);
+    requests.complete(transport, new byte[] { 4 });
+    assertEquals(3, requests.allocationCount);
+  }
+
+  @Test
+  public void testRequestThatFailsToQueueIsReleased() {
+    FakeRequests requests = new FakeRequests();
+    requests.failQueue = true;
+    BulkInPipeline pipeline = newPipeline(new BulkInTransport<FakeRequest>(requests), 2);
+    assertEquals(0, pipeline.getTransfersInFlight());
+    assertEquals(requests.allocationCount, requests.idle.size());
+    assertNull(requests.idle.peek().clientData);
+    try {
+      pipeline.read(new byte[8], 0, 8);
+      fail();
+    } catch (IOException e) {
+      // The failure is reported to the reader.
+    }
+  }
+}
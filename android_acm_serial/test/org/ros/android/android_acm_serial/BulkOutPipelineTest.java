@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.android_acm_serial;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+public class BulkOutPipelineTest {
+
+  private static BulkOutPipeline newPipeline(FakeUsbDeviceConnection connection,
+      int transfersInFlight, int transferSize, long lingerMillis) {
+    return newPipeline(connection, transfersInFlight, transferSize, transferSize, lingerMillis);
+  }
+
+  private static BulkOutPipeline newPipeline(FakeUsbDeviceConnection connection,
+      int transfersInFlight, int transferSize, int packetSize, long lingerMillis) {
+    BulkOutPipeline pipeline = new BulkOutPipeline(connection, transfersInFlight, transferSize,
+        packetSize, lingerMillis, TimeUnit.MILLISECONDS);
+    connection.setPipeline(pipeline);
+    return pipeline;
+  }
+
+  /**
+   * Closes {@code pipeline} while completing its writes on another thread.
+   */
+  private static void close(final FakeUsbDeviceConnection connection, BulkOutPipeline pipeline)
+      throws IOException, InterruptedException {
+    Thread completer = new Thread() {
+      @Override
+      public void run() {
+        while (!isInterrupted()) {
+          if (connection.completeWrite() < 0) {
+            Thread.yield();
+          }
+        }
+      }
+    };
+    completer.start();
+    try {
+      pipeline.close(10, TimeUnit.SECONDS);
+    } finally {
+      completer.interrupt();
+      completer.join();
+    }
+  }
+
+  @Test
+  public void testUnbufferedWritesAreSentImmediately() throws IOException {
+    FakeUsbDeviceConnection connection = new FakeUsbDeviceConnection();
+    BulkOutPipeline pipeline = newPipeline(connection, 4, 64, 0);
+    pipeline.write(new byte[] { 1, 2, 3 }, 0, 3);
+    pipeline.write(new byte[] { 4, 5 }, 0, 2);
+    assertEquals(2, connection.getQueuedWrites());
+    assertEquals(3, connection.completeWrite());
+    assertEquals(2, connection.completeWrite());
+    assertArrayEquals(new byte[] { 1, 2, 3, 4, 5 }, connection.getBytesReceived());
+  }
+
+  @Test
+  public void testLargeWritesAreSplitIntoTransfers() throws IOException {
+    FakeUsbDeviceConnection connection = new FakeUsbDeviceConnection();
+    BulkOutPipeline pipeline = newPipeline(connection, 4, 64, 0);
+    pipeline.write(new byte[150], 0, 150);
+    assertEquals(64, connection.completeWrite());
+    assertEquals(64, connection.completeWrite());
+    assertEquals(22, connection.completeWrite());
+  }
+
+  @Test
+  public void testSmallWritesAreCoalesced() throws IOException, InterruptedException {
+    FakeUsbDeviceConnection connection = new FakeUsbDeviceConnection();
+    BulkOutPipeline pipeline = newPipeline(connection, 4, 8, 10000);
+    for (int i = 0; i < 10; i++) {
+      pipeline.write(new byte[] { (byte) i }, 0, 1);
+    }
+    // The first transfer filled up. The remaining two bytes linger.
+    assertEquals(1, connection.getQueuedWrites());
+    assertEquals(8, connection.completeWrite());
+    assertEquals(0, connection.getQueuedWrites());
+    close(connection, pipeline);
+    // Closing sends the lingering bytes.
+    assertEquals(10, connection.getBytesReceived().length);
+  }
+
+  @Test
+  public void testLargeWritesAreNotCoalesced() throws IOException, InterruptedException {
+    FakeUsbDeviceConnection connection = new FakeUsbDeviceConnection();
+    BulkOutPipeline pipeline = newPipeline(connection, 4, 256, 64, 10000);
+    pipeline.write(new byte[] { 1, 2, 3 }, 0, 3);
+    pipeline.write(new byte[150], 0, 150);
+    // The coalesced bytes are sent first, followed by one transfer of several
+    // packets.
+    assertEquals(2, connection.getQueuedWrites());
+    assertEquals(3, connection.completeWrite());
+    assertEquals(150, connection.completeWrite());
+    close(connection, pipeline);
+  }
+
+  @Test
+  public void testCoalescedTransfersHoldOnePacket() throws IOException, InterruptedException {
+    FakeUsbDeviceConnection connection = new FakeUsbDeviceConnection();
+    BulkOutPipeline pipeline = newPipeline(connection, 4, 256, 8, 10000);
+    for (int i = 0; i < 3; i++) {
+      pipeline.write(new byte[3], 0, 3);
+    }
+    assertEquals(1, connection.getQueuedWrites());
+    assertEquals(8, connection.completeWrite());
+    close(connection, pipeline);
+  }
+
+  @Test
+  public void testLingerSendsPartialTransfer() throws IOException, InterruptedException {
+    FakeUsbDeviceConnection connection = new FakeUsbDeviceConnection();
+    BulkOutPipeline pipeline = newPipeline(connection, 4, 64, 5);
+    pipeline.write(new byte[] { 1, 2, 3 }, 0, 3);
+    long deadline = System.currentTimeMillis() + 10000;
+    while (connection.getQueuedWrites() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(1);
+    }
+    assertEquals(3, connection.completeWrite());
+    close(connection, pipeline);
+  }
+
+  @Test
+  public void testFlushWaitsForCompletion() throws IOException, InterruptedException {
+    final FakeUsbDeviceConnection connection = new FakeUsbDeviceConnection();
+    BulkOutPipeline pipeline = newPipeline(connection, 4, 64, 10000);
+    pipeline.write(new byte[] { 1, 2, 3 }, 0, 3);
+    Thread completer = new Thread() {
+      @Override
+      public void run() {
+        while (connection.completeWrite() < 0) {
+          Thread.yield();
+        }
+      }
+    };
+    completer.start();
+    pipeline.flush(10, TimeUnit.SECONDS);
+    assertEquals(0, pipeline.getTransfersInFlight());
+    assertEquals(3, pipeline.getBytesWritten());
+    completer.join();
+    close(connection, pipeline);
+  }
+
+  @Test
+  public void testFlushTimesOut() throws IOException {
+    FakeUsbDeviceConnection connection = new FakeUsbDeviceConnection();
+    BulkOutPipeline pipeline = newPipeline(connection, 4, 64, 0);
+    pipeline.write(new byte[] { 1 }, 0, 1);
+    try {
+      pipeline.flush(10, TimeUnit.MILLISECONDS);
+      fail();
+    } catch (IOException e) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void testWritesBlockWhenTransfersAreOutstanding() throws InterruptedException {
+    FakeUsbDeviceConnection connection = new FakeUsbDeviceConnection();
+    final BulkOutPipeline pipeline = newPipeline(connection, 2, 4, 0);
+    Thread writer = new Thread() {
+      @Override
+      public void run() {
+        try {
+          pipeline.write(new byte[16], 0, 16);
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    writer.start();
+    writer.join(100);
+    assertTrue(writer.isAlive());
+    assertEquals(2, connection.getQueuedWrites());
+    while (writer.isAlive()) {
+      connection.completeWrite();
+    }
+    while (connection.completeWrite() >= 0) {
+      // Drain the remaining transfers.
+    }
+    assertEquals(16, connection.getBytesReceived().length);
+  }
+
+  @Test
+  public void testSubmitFailureFailsWrite() {
+    FakeUsbDeviceConnection connection = new FakeUsbDeviceConnection();
+    connection.setFailSubmissions(true);
+    BulkOutPipeline pipeline = newPipeline(connection, 2, 4, 0);
+    try {
+      pipeline.write(new byte[] { 1 }, 0, 1);
+      fail();
+    } catch (IOException e) {
+      // Expected.
+    }
+    assertEquals(0, pipeline.getTransfersInFlight());
+  }
+
+  @Test
+  public void testSubmitFailureIsReportedOnce() throws IOException {
+    FakeUsbDeviceConnection connection = new FakeUsbDeviceConnection();
+    connection.setFailSubmissions(true);
+    BulkOutPipeline pipeline = newPipeline(connection, 2, 4, 0);
+    try {
+      pipeline.write(new byte[] { 1 }, 0, 1);
+      fail();
+    } catch (IOException e) {
+      // Expected.
+    }
+    connection.setFailSubmissions(false);
+    pipeline.write(new byte[] { 2 }, 0, 1);
+    assertEquals(1, connection.completeWrite());
+  }
+
+  @Test
+  public void testLingerFailureIsReportedByNextWrite() throws IOException, InterruptedException {
+    FakeUsbDeviceConnection connection = new FakeUsbDeviceConnection();
+    connection.setFailSubmissions(true);
+    BulkOutPipeline pipeline = newPipeline(connection, 2, 4, 1);
+    // Coalesced, so the failure happens on the linger thread.
+    pipeline.write(new byte[] { 1 }, 0, 1);
+    Thread.sleep(100);
+    try {
+      pipeline.write(new byte[] { 2 }, 0, 1);
+      fail();
+    } catch (IOException e) {
+      // Expected.
+    }
+    close(connection, pipeline);
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.android_acm_serial;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stands in for a {@link android.hardware.usb.UsbDeviceConnection} with one
+ * bulk IN and one bulk OUT endpoint. Queued transfers are completed in order,
+ * one at a time, the same way {@code UsbDeviceConnection.requestWait()}
+ * returns them. On the IN endpoint, the device produces a repeating byte
+ * sequence starting at zero. Bytes sent to the OUT endpoint are recorded.
+ */
+class FakeUsbDeviceConnection implements BulkInPipeline.Transport, BulkOutPipeline.Transport {
+
+  private final BlockingQueue<ByteBuffer> queuedTransfers;
+  private final AtomicInteger maximumQueuedTransfers;
+  private final BlockingQueue<BulkOutPipeline.Transfer> queuedWrites;
+  private final ByteArrayOutputStream bytesReceived;
+
+  private BulkInPipeline pipeline;
+  private BulkOutPipeline outPipeline;
+  private long bytesProduced;
+  private boolean failSubmissions;
+
+  FakeUsbDeviceConnection() {
+    queuedTransfers = new LinkedBlockingQueue<ByteBuffer>();
+    maximumQueuedTransfers = new AtomicInteger();
+    queuedWrites = new LinkedBlockingQueue<BulkOutPipeline.Transfer>();
+    bytesReceived = new ByteArrayOutputStream();
+  }
+
+  void setPipeline(BulkInPipeline pipeline) {
+    this.pipeline = pipeline;
+  }
+
+  void setPipeline(BulkOutPipeline pipeline) {
+    outPipeline = pipeline;
+  }
+
+  void setFailSubmissions(boolean failSubmissions) {
+    this.failSubmissions = failSubmissions;
+  }
+
+  @Override
+  public boolean submit(ByteBuffer buffer) {
+    if (failSubmissions) {
+      return false;
+    }
+    queuedTransfers.add(buffer);
+    int queued = queuedTransfers.size();
+    while (true) {
+      int maximum = maximumQueuedTransfers.get();
+      if (queued <= maximum || maximumQueuedTransfers.compareAndSet(maximum, queued)) {
+        break;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public boolean submit(BulkOutPipeline.Transfer transfer) {
+    if (failSubmissions) {
+      return false;
+    }
+    queuedWrites.add(transfer);
+    return true;
+  }
+
+  int getQueuedWrites() {
+    return queuedWrites.size();
+  }
+
+  /**
+   * Completes the oldest queued write.
+   *
+   * @return the number of bytes written, or -1 if no write was queued
+   */
+  int completeWrite() {
+    BulkOutPipeline.Transfer transfer = queuedWrites.poll();
+    if (transfer == null) {
+      return -1;
+    }
+    ByteBuffer buffer = transfer.getBuffer();
+    int count = buffer.remaining();
+    synchronized (bytesReceived) {
+      while (buffer.hasRemaining()) {
+        bytesReceived.write(buffer.get());
+      }
+    }
+    outPipeline.onTransferComplete(transfer);
+    return count;
+  }
+
+  byte[] getBytesReceived() {
+    synchronized (bytesReceived) {
+      return bytesReceived.toByteArray();
+    }
+  }
+
+  int getQueuedTransfers() {
+    return queuedTransfers.size();
+  }
+
+  int getMaximumQueuedTransfers() {
+    return maximumQueuedTransfers.get();
+  }
+
+  /**
+   * Completes the oldest queued transfer with up to {@code byteCount} bytes.
+   *
+   * @return {@code false} if no transfer was queued
+   */
+  boolean completeTransfer(int byteCount) {
+    ByteBuffer buffer = queuedTransfers.poll();
+    if (buffer == null) {
+      return false;
+    }
+    int count = Math.min(byteCount, buffer.remaining());
+    for (int i = 0; i < count; i++) {
+      buffer.put((byte) bytesProduced++);
+    }
+    pipeline.onTransferComplete(buffer);
+    return true;
+  }
+
+  /**
+   * Starts a thread that completes transfers as soon as they are queued, each
+   * with {@code byteCount} bytes, until {@code totalBytes} have been produced.
+   */
+  Thread startCompletionThread(final int byteCount, final long totalBytes) {
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          while (bytesProduced < totalBytes) {
+            ByteBuffer buffer = queuedTransfers.take();
+            int count = (int) Math.min(Math.min(byteCount, buffer.remaining()),
+                totalBytes - bytesProduced);
+            for (int i = 0; i < count; i++) {
+              buffer.put((byte) bytesProduced++);
+            }
+            pipeline.onTransferComplete(buffer);
+          }
+        } catch (InterruptedException e) {
+          // Done.
+        }
+      }
+    };
+    thread.start();
+    return thread;
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.android;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Decides which orientation samples are worth publishing.
+ * <p>
+ * A sample is dropped if it arrives sooner than the minimum period after the
+ * last published sample, or if it differs from that sample by less than the
+ * minimum angle. A stationary device still publishes once every maximum
+ * period so that subscribers know it is alive.
+ */
+class OrientationFilter {
+
+  private final long minimumPeriod;
+  private final long maximumPeriod;
+  private final double minimumDot;
+
+  private boolean published;
+  private long lastTimestamp;
+  private double lastW;
+  private double lastX;
+  private double lastY;
+  private double lastZ;
+
+  /**
+   * @param minimumPeriod
+   *          the minimum time between published samples in nanoseconds, 0 for
+   *          no limit
+   * @param minimumAngle
+   *          the minimum rotation in radians since the last published sample,
+   *          0 to publish every sample
+   * @param maximumPeriod
+   *          the time in nanoseconds after which a sample is published even if
+   *          the orientation has not changed, 0 to wait for a change
+   */
+  public OrientationFilter(long minimumPeriod, double minimumAngle, long maximumPeriod) {
+    Preconditions.checkArgument(minimumPeriod >= 0);
+    Preconditions.checkArgument(minimumAngle >= 0);
+    Preconditions.checkArgument(maximumPeriod >= 0);
+    this.minimumPeriod = minimumPeriod;
+    this.maximumPeriod = maximumPeriod;
+    // Two unit quaternions are an angle apart when the absolute value of
+    // their dot product is cos(angle / 2), which saves an acos per sample.
+    minimumDot = minimumAngle > 0 ? Math.cos(Math.min(minimumAngle, Math.PI) / 2) : 2;
+  }
+
+  /**
+   * @param timestamp
+   *          the time of the sample in nanoseconds
+   * @return true if the sample should be published, in which case it becomes
+   *         the reference for the following samples
+   */
+  public boolean accept(double w, double x, double y, double z, long timestamp) {
+    if (published) {
+      long elapsed = timestamp - lastTimestamp;
+      if (elapsed < minimumPeriod) {
+        return false;
+      }
+      boolean expired = maximumPeriod > 0 && elapsed >= maximumPeriod;
+      double dot = Math.abs(w * lastW + x * lastX + y * lastY + z * lastZ);
+      if (!expired && dot > minimumDot) {
+        return false;
+      }
+    }
+    published = true;
+    lastTimestamp = timestamp;
+    lastW = w;
+    lastX = x;
+    lastY = y;
+    lastZ = z;
+    return true;
+  }
+}
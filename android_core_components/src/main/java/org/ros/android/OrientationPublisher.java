@@ -20,28 +20,77 @@ import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.SystemClock;
 import geometry_msgs.PoseStamped;
 import org.ros.message.Time;
 import org.ros.namespace.GraphName;
 import org.ros.node.AbstractNodeMain;
 import org.ros.node.ConnectedNode;
+import org.ros.node.Node;
+import org.ros.node.parameter.ParameterTree;
 import org.ros.node.topic.Publisher;
 
 /**
+ * Publishes the orientation of the device from its rotation vector sensor.
+ * <p>
+ * The following private parameters are read on start:
+ * <ul>
+ * <li>~rate: the maximum rate in Hz, 10 by default</li>
+ * <li>~frame_id: /map by default</li>
+ * <li>~use_sensor_time: stamp poses with the time the sensor took the sample
+ * rather than the time it arrived, true by default; requires API 17</li>
+ * <li>~epsilon: the minimum rotation in radians since the last published
+ * pose, so that a stationary device does not publish; 0 (default) publishes
+ * every sample</li>
+ * <li>~max_interval: with ~epsilon, the time in seconds after which a pose is
+ * published even if the orientation has not changed, 1 by default</li>
+ * </ul>
+ *
  * @author damonkohler@google.com (Damon Kohler)
  */
 public class OrientationPublisher extends AbstractNodeMain {
 
+  // Samples that are further in the past than this are stamped with the
+  // current time instead.
+  private static final long MAXIMUM_LATENCY = 1000000000; // ns
+
+  // The publisher's queue holds 16 messages, so a larger ring never hands out
+  // a message that may still be waiting to be serialized.
+  private static final int OUTPUT_BUFFERS = 18;
+
   private final SensorManager sensorManager;
+  private final SensorExecutor sensorExecutor;
+  private final SensorEventSource sensorEventSource;
 
   private OrientationListener orientationListener;
+  private SensorEventListener registeredListener;
 
-  private final class OrientationListener implements SensorEventListener {
+  private final class OrientationListener implements SensorEventListener, SensorRecordListener {
 
+    private final ConnectedNode connectedNode;
     private final Publisher<geometry_msgs.PoseStamped> publisher;
+    private final PoseStamped[] poses;
+    private final OrientationFilter filter;
+    private final boolean useSensorTime;
+    private final float[] quaternion;
 
-    private OrientationListener(Publisher<geometry_msgs.PoseStamped> publisher) {
+    private int poseIndex;
+
+    private OrientationListener(ConnectedNode connectedNode,
+        Publisher<geometry_msgs.PoseStamped> publisher, String frameId, OrientationFilter filter,
+        boolean useSensorTime) {
+      this.connectedNode = connectedNode;
       this.publisher = publisher;
+      this.filter = filter;
+      this.useSensorTime = useSensorTime;
+      quaternion = new float[4];
+      poses = new PoseStamped[OUTPUT_BUFFERS];
+      for (int i = 0; i < poses.length; i++) {
+        poses[i] = publisher.newMessage();
+        poses[i].getHeader().setFrameId(frameId);
+      }
     }
 
     @Override
@@ -51,23 +100,72 @@ public class OrientationPublisher extends AbstractNodeMain {
     @Override
     public void onSensorChanged(SensorEvent event) {
       if (event.sensor.getType() == Sensor.TYPE_ROTATION_VECTOR) {
-        float[] quaternion = new float[4];
-        SensorManager.getQuaternionFromVector(quaternion, event.values);
-        PoseStamped pose = publisher.newMessage();
-        pose.getHeader().setFrameId("/map");
-        // TODO(damonkohler): Should get time from the Node.
-        pose.getHeader().setStamp(Time.fromMillis(System.currentTimeMillis()));
-        pose.getPose().getOrientation().setW(quaternion[0]);
-        pose.getPose().getOrientation().setX(quaternion[1]);
-        pose.getPose().getOrientation().setY(quaternion[2]);
-        pose.getPose().getOrientation().setZ(quaternion[3]);
-        publisher.publish(pose);
+        onRotationVector(event.values, event.timestamp);
       }
     }
+
+    @Override
+    public void onSensorRecord(SensorRecord record) {
+      if (record.type == Sensor.TYPE_ROTATION_VECTOR) {
+        onRotationVector(record.values, record.timestamp);
+      }
+    }
+
+    private void onRotationVector(float[] values, long timestamp) {
+      SensorManager.getQuaternionFromVector(quaternion, values);
+      if (!filter.accept(quaternion[0], quaternion[1], quaternion[2], quaternion[3], timestamp)) {
+        return;
+      }
+      PoseStamped pose = poses[poseIndex];
+      poseIndex = (poseIndex + 1) % poses.length;
+      setStamp(pose.getHeader().getStamp(), timestamp);
+      pose.getPose().getOrientation().setW(quaternion[0]);
+      pose.getPose().getOrientation().setX(quaternion[1]);
+      pose.getPose().getOrientation().setY(quaternion[2]);
+      pose.getPose().getOrientation().setZ(quaternion[3]);
+      publisher.publish(pose);
+    }
+
+    /**
+     * Converts the sensor timestamp of a sample into ROS time by subtracting
+     * the age of the sample from the current time, and writes it into the
+     * pose's own stamp.
+     */
+    private void setStamp(Time stamp, long timestamp) {
+      long nanos = connectedNode.getCurrentTime().totalNsecs();
+      if (useSensorTime) {
+        long latency = SystemClock.elapsedRealtimeNanos() - timestamp;
+        if (latency >= 0 && latency <= MAXIMUM_LATENCY) {
+          nanos -= latency;
+        }
+      }
+      stamp.secs = (int) (nanos / 1000000000L);
+      stamp.nsecs = (int) (nanos % 1000000000L);
+    }
   }
 
   public OrientationPublisher(SensorManager sensorManager) {
+    this(sensorManager, SensorExecutor.getInstance());
+  }
+
+  /**
+   * @param sensorExecutor
+   *          the executor whose default thread receives the sensor events
+   */
+  public OrientationPublisher(SensorManager sensorManager, SensorExecutor sensorExecutor) {
     this.sensorManager = sensorManager;
+    this.sensorExecutor = sensorExecutor;
+    sensorEventSource = null;
+  }
+
+  /**
+   * Publishes the rotation vector events of {@code sensorEventSource}, e.g. a
+   * {@link SensorReplaySource}, instead of the device's sensor.
+   */
+  public OrientationPublisher(SensorEventSource sensorEventSource) {
+    sensorManager = null;
+    sensorExecutor = null;
+    this.sensorEventSource = sensorEventSource;
   }
 
   @Override
@@ -78,14 +176,52 @@ public class OrientationPublisher extends AbstractNodeMain {
   @Override
   public void onStart(ConnectedNode connectedNode) {
     try {
+      ParameterTree parameters = connectedNode.getParameterTree();
+      double rate = parameters.getDouble("~rate", 10);
+      String frameId = parameters.getString("~frame_id", "/map");
+      boolean useSensorTime = parameters.getBoolean("~use_sensor_time", true)
+          && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1;
+      double epsilon = parameters.getDouble("~epsilon", 0);
+      double maximumInterval = parameters.getDouble("~max_interval", 1);
+
+      long period = rate > 0 ? (long) (1e9 / rate) : 0;
+      // The requested sampling period is only a hint, so sensors that run
+      // faster are throttled by the filter. A little slack keeps jitter from
+      // dropping every other sample at exactly the requested rate.
+      OrientationFilter filter =
+          new OrientationFilter(period * 9 / 10, epsilon, (long) (maximumInterval * 1e9));
       Publisher<geometry_msgs.PoseStamped> publisher =
           connectedNode.newPublisher("android/orientation", "geometry_msgs/PoseStamped");
-      orientationListener = new OrientationListener(publisher);
+      OrientationListener listener =
+          new OrientationListener(connectedNode, publisher, frameId, filter, useSensorTime);
+      if (sensorEventSource != null) {
+        orientationListener = listener;
+        sensorEventSource.start(listener);
+        return;
+      }
       Sensor sensor = sensorManager.getDefaultSensor(Sensor.TYPE_ROTATION_VECTOR);
-      // 10 Hz
-      sensorManager.registerListener(orientationListener, sensor, 500000);
+      Handler handler = sensorExecutor.acquire(SensorExecutor.Priority.DEFAULT);
+      orientationListener = listener;
+      registeredListener = sensorExecutor.wrap(SensorExecutor.Priority.DEFAULT, listener);
+      int samplingPeriodUs = period > 0 ? (int) (period / 1000) : SensorManager.SENSOR_DELAY_FASTEST;
+      sensorManager.registerListener(registeredListener, sensor, samplingPeriodUs, handler);
     } catch (Exception e) {
       connectedNode.getLog().fatal(e);
     }
   }
+
+  @Override
+  public void onShutdown(Node node) {
+    if (orientationListener == null) {
+      return;
+    }
+    if (sensorEventSource != null) {
+      sensorEventSource.stop();
+    } else {
+      sensorManager.unregisterListener(registeredListener);
+      registeredListener = null;
+      sensorExecutor.release(SensorExecutor.Priority.DEFAULT);
+    }
+    orientationListener = null;
+  }
 }
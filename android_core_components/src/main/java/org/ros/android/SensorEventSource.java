@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.android;
+
+/**
+ * A source of sensor and location events that publishers can use instead of
+ * the {@code SensorManager} and {@code LocationManager}, e.g. to replay a
+ * recording with {@link SensorReplaySource}.
+ */
+public interface SensorEventSource {
+
+  /**
+   * Starts delivering events to {@code listener}. Events are delivered from a
+   * single thread.
+   */
+  void start(SensorRecordListener listener);
+
+  /**
+   * Stops delivering events. No events are delivered after this returns.
+   */
+  void stop();
+}
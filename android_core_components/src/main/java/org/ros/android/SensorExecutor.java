@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.android;
+
+import com.google.common.base.Preconditions;
+
+import android.annotation.TargetApi;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.location.Location;
+import android.location.LocationListener;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+
+/**
+ * Runs sensor and location callbacks of several nodes on a few shared
+ * {@link HandlerThread}s, one per {@link Priority}, instead of one
+ * {@link Looper} thread per node.
+ * <p>
+ * A node calls {@link #acquire(Priority)} in {@code NodeMain.onStart()} and
+ * registers its listeners with the returned {@link Handler}, then unregisters
+ * them and calls {@link #release(Priority)} in {@code NodeMain.onShutdown()}.
+ * A thread is started by its first user and stopped after its last user has
+ * released it.
+ * <p>
+ * Callbacks that are posted with {@link #execute(Priority, Runnable)} or
+ * delivered to listeners wrapped with
+ * {@link #wrap(Priority, SensorEventListener)} or
+ * {@link #wrap(Priority, LocationListener)} are measured in the
+ * {@link SensorThreadStatistics} of their thread. Sensor and location events
+ * are dispatched by the framework without a countable queue, so the queue
+ * depth only covers tasks posted with {@link #execute(Priority, Runnable)}.
+ */
+public class SensorExecutor {
+
+  private static final String TAG = "SensorExecutor";
+
+  public enum Priority {
+    /**
+     * For high rate sensors whose samples must not queue up, like the IMU.
+     */
+    REALTIME(Process.THREAD_PRIORITY_URGENT_AUDIO),
+    DEFAULT(Process.THREAD_PRIORITY_DEFAULT),
+    /**
+     * For slow sources like GPS that can tolerate some delay.
+     */
+    BACKGROUND(Process.THREAD_PRIORITY_BACKGROUND);
+
+    private final int threadPriority;
+
+    Priority(int threadPriority) {
+      this.threadPriority = threadPriority;
+    }
+  }
+
+  private static SensorExecutor instance;
+
+  private final Worker[] workers;
+
+  private static final class Worker {
+    final SensorThreadStatistics statistics = new SensorThreadStatistics();
+    HandlerThread thread;
+    Handler handler;
+    int users;
+  }
+
+  /**
+   * @return the executor shared by all nodes of the process
+   */
+  public static synchronized SensorExecutor getInstance() {
+    if (instance == null) {
+      instance = new SensorExecutor();
+    }
+    return instance;
+  }
+
+  public SensorExecutor() {
+    workers = new Worker[Priority.values().length];
+    for (int i = 0; i < workers.length; i++) {
+      workers[i] = new Worker();
+    }
+  }
+
+  /**
+   * Starts the thread for {@code priority} if this is its first user.
+   *
+   * @return the {@link Handler} to register listeners with
+   */
+  public synchronized Handler acquire(Priority priority) {
+    Worker worker = workers[priority.ordinal()];
+    if (worker.users == 0) {
+      worker.thread = new HandlerThread(TAG + "/" + priority.name(), priority.threadPriority);
+      worker.thread.start();
+      worker.handler = new Handler(worker.thread.getLooper());
+      worker.statistics.reset();
+    }
+    worker.users++;
+    return worker.handler;
+  }
+
+  /**
+   * Stops the thread for {@code priority} if this was its last user. Pending
+   * callbacks are dropped, and the thread has stopped by the time this
+   * returns, unless it is called from that thread itself.
+   */
+  public void release(Priority priority) {
+    HandlerThread thread;
+    synchronized (this) {
+      Worker worker = workers[priority.ordinal()];
+      Preconditions.checkState(worker.users > 0, "Not acquired.");
+      worker.users--;
+      if (worker.users > 0) {
+        return;
+      }
+      worker.handler.removeCallbacksAndMessages(null);
+      // The dropped tasks will never be dequeued.
+      worker.statistics.clearQueue();
+      thread = worker.thread;
+      thread.quit();
+      worker.thread = null;
+      worker.handler = null;
+    }
+    if (Thread.currentThread() != thread) {
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * @return the {@link Looper} of the thread for {@code priority}, which must
+   *         have been acquired
+   */
+  public synchronized Looper getLooper(Priority priority) {
+    Worker worker = workers[priority.ordinal()];
+    Preconditions.checkState(worker.users > 0, "Not acquired.");
+    return worker.thread.getLooper();
+  }
+
+  /**
+   * Runs {@code runnable} on the thread for {@code priority}, which must have
+   * been acquired.
+   */
+  public void execute(Priority priority, final Runnable runnable) {
+    final SensorThreadStatistics statistics = getStatistics(priority);
+    Handler handler;
+    synchronized (this) {
+      handler = workers[priority.ordinal()].handler;
+      Preconditions.checkState(handler != null, "Not acquired.");
+    }
+    final long queuedTime = System.nanoTime();
+    statistics.onQueued();
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        long startTime = System.nanoTime();
+        statistics.onDequeued();
+        runnable.run();
+        statistics.onCallback(startTime - queuedTime, System.nanoTime() - startTime);
+      }
+    });
+  }
+
+  /**
+   * @return a listener that measures the callbacks of {@code listener} in the
+   *         statistics of {@code priority}; register it in place of
+   *         {@code listener}
+   */
+  public SensorEventListener wrap(Priority priority, final SensorEventListener listener) {
+    final SensorThreadStatistics statistics = getStatistics(priority);
+    // The boot clock of SensorEvent.timestamp is only readable from API 17 on.
+    final boolean measureLatency = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1;
+    return new SensorEventListener() {
+      @Override
+      public void onSensorChanged(SensorEvent event) {
+        long latency = measureLatency ? SystemClock.elapsedRealtimeNanos() - event.timestamp : 0;
+        long startTime = System.nanoTime();
+        listener.onSensorChanged(event);
+        statistics.onCallback(latency, System.nanoTime() - startTime);
+      }
+
+      @Override
+      public void onAccuracyChanged(Sensor sensor, int accuracy) {
+        listener.onAccuracyChanged(sensor, accuracy);
+      }
+    };
+  }
+
+  /**
+   * @return a listener that measures the location callbacks of
+   *         {@code listener} in the statistics of {@code priority}; register it
+   *         in place of {@code listener}
+   */
+  public LocationListener wrap(Priority priority, final LocationListener listener) {
+    final SensorThreadStatistics statistics = getStatistics(priority);
+    final boolean measureLatency = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1;
+    return new LocationListener() {
+      @Override
+      public void onLocationChanged(Location location) {
+        long latency = measureLatency ? getLocationAge(location) : 0;
+        long startTime = System.nanoTime();
+        listener.onLocationChanged(location);
+        statistics.onCallback(latency, System.nanoTime() - startTime);
+      }
+
+      @Override
+      public void onStatusChanged(String provider, int status, Bundle extras) {
+        listener.onStatusChanged(provider, status, extras);
+      }
+
+      @Override
+      public void onProviderEnabled(String provider) {
+        listener.onProviderEnabled(provider);
+      }
+
+      @Override
+      public void onProviderDisabled(String provider) {
+        listener.onProviderDisabled(provider);
+      }
+    };
+  }
+
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+  private static long getLocationAge(Location location) {
+    return SystemClock.elapsedRealtimeNanos() - location.getElapsedRealtimeNanos();
+  }
+
+  public SensorThreadStatistics getStatistics(Priority priority) {
+    return workers[priority.ordinal()].statistics;
+  }
+
+  /**
+   * @return true if the thread for {@code priority} is running
+   */
+  public synchronized boolean isRunning(Priority priority) {
+    return workers[priority.ordinal()].users > 0;
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.android;
+
+/**
+ * One sensor or location event in a form that can be recorded, replayed and
+ * processed without Android.
+ * <p>
+ * Records are reused by {@link SensorRecordReader} and
+ * {@link SensorReplaySource}, so listeners must copy anything they keep.
+ */
+public class SensorRecord {
+
+  /**
+   * The type of location records. All other types are
+   * {@code Sensor.TYPE_*} constants.
+   */
+  public static final int TYPE_LOCATION = -1;
+
+  private static final int MAXIMUM_VALUES = 32;
+
+  // SensorEvent.values has the same length for every event of a sensor, and
+  // some consumers depend on it, so there is one array per length.
+  private final float[][] valuesByLength = new float[MAXIMUM_VALUES + 1][];
+
+  public int type;
+
+  /**
+   * The time of the event in nanoseconds on the clock of
+   * {@code SensorEvent.timestamp} and
+   * {@code Location.getElapsedRealtimeNanos()}.
+   */
+  public long timestamp;
+
+  public int accuracy;
+
+  /**
+   * The values of a sensor record; empty for location records.
+   */
+  public float[] values = new float[0];
+
+  // The fields of a location record.
+  public double latitude;
+  public double longitude;
+  public double altitude;
+  public float horizontalAccuracy;
+  /**
+   * 0 if unknown.
+   */
+  public float verticalAccuracy;
+  public float speed;
+  public float bearing;
+  /**
+   * The UTC time of the fix in milliseconds since the epoch.
+   */
+  public long time;
+
+  /**
+   * Makes {@link #values} an array of {@code length} values without
+   * allocating if an array of that length was used before.
+   *
+   * @return {@link #values}
+   */
+  public float[] setValueCount(int length) {
+    if (length < 0 || length > MAXIMUM_VALUES) {
+      throw new IllegalArgumentException("Invalid number of values: " + length);
+    }
+    if (valuesByLength[length] == null) {
+      valuesByLength[length] = new float[length];
+    }
+    values = valuesByLength[length];
+    return values;
+  }
+
+  public boolean isLocation() {
+    return type == TYPE_LOCATION;
+  }
+}
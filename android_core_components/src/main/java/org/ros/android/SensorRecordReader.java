@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.android;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the {@link SensorRecord}s written by {@link SensorRecordWriter}
+ * without allocating per record.
+ * <p>
+ * Not thread safe.
+ */
+public class SensorRecordReader implements Closeable {
+
+  private final DataInputStream stream;
+
+  /**
+   * @throws IOException
+   *           if the stream is not a sensor recording
+   */
+  public SensorRecordReader(InputStream inputStream) throws IOException {
+    stream = new DataInputStream(new BufferedInputStream(inputStream));
+    int magic = stream.readInt();
+    short version = stream.readShort();
+    if (magic != SensorRecordWriter.MAGIC) {
+      throw new IOException("Not a sensor recording.");
+    }
+    if (version != SensorRecordWriter.VERSION) {
+      throw new IOException("Unsupported sensor recording version " + version + ".");
+    }
+  }
+
+  /**
+   * Reads the next record into {@code record}.
+   *
+   * @return false at the end of the recording
+   * @throws IOException
+   *           if the recording is truncated or cannot be read
+   */
+  public boolean read(SensorRecord record) throws IOException {
+    int type;
+    try {
+      type = stream.readInt();
+    } catch (EOFException e) {
+      return false;
+    }
+    record.type = type;
+    record.timestamp = stream.readLong();
+    if (record.isLocation()) {
+      record.latitude = stream.readDouble();
+      record.longitude = stream.readDouble();
+      record.altitude = stream.readDouble();
+      record.horizontalAccuracy = stream.readFloat();
+      record.verticalAccuracy = stream.readFloat();
+      record.speed = stream.readFloat();
+      record.bearing = stream.readFloat();
+      record.time = stream.readLong();
+      record.setValueCount(0);
+    } else {
+      record.accuracy = stream.readByte();
+      float[] values = record.setValueCount(stream.readUnsignedByte());
+      for (int i = 0; i < values.length; i++) {
+        values[i] = stream.readFloat();
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void close() throws IOException {
+    stream.close();
+  }
+}
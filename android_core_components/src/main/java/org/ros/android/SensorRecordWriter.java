@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.android;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes {@link SensorRecord}s in a compact binary format.
+ * <p>
+ * The stream starts with {@link #MAGIC} and {@link #VERSION}. Every record
+ * starts with its type and timestamp. A sensor record continues with its
+ * accuracy, the number of values and the values as floats, which makes an
+ * accelerometer sample 26 bytes. A location record continues with latitude,
+ * longitude and altitude as doubles, horizontal and vertical accuracy, speed
+ * and bearing as floats, and the UTC time. All values are big-endian.
+ * <p>
+ * Not thread safe.
+ */
+public class SensorRecordWriter implements Closeable {
+
+  public static final int MAGIC = 0x53524543; // "SREC"
+  public static final short VERSION = 1;
+
+  private final DataOutputStream stream;
+
+  public SensorRecordWriter(OutputStream outputStream) throws IOException {
+    stream = new DataOutputStream(new BufferedOutputStream(outputStream));
+    stream.writeInt(MAGIC);
+    stream.writeShort(VERSION);
+  }
+
+  public void write(SensorRecord record) throws IOException {
+    stream.writeInt(record.type);
+    stream.writeLong(record.timestamp);
+    if (record.isLocation()) {
+      stream.writeDouble(record.latitude);
+      stream.writeDouble(record.longitude);
+      stream.writeDouble(record.altitude);
+      stream.writeFloat(record.horizontalAccuracy);
+      stream.writeFloat(record.verticalAccuracy);
+      stream.writeFloat(record.speed);
+      stream.writeFloat(record.bearing);
+      stream.writeLong(record.time);
+    } else {
+      stream.writeByte(record.accuracy);
+      stream.writeByte(record.values.length);
+      for (int i = 0; i < record.values.length; i++) {
+        stream.writeFloat(record.values[i]);
+      }
+    }
+  }
+
+  public void flush() throws IOException {
+    stream.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    stream.close();
+  }
+}
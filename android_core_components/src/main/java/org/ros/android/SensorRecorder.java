@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.android;
+
+import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Records real sensor and location events to a file that
+ * {@link SensorReplaySource} can replay.
+ * <p>
+ * The recorder registers its own listeners, so it can run alongside the
+ * publishers whose input it captures. Events are written on the thread of
+ * the {@link Handler} they are delivered to.
+ * <p>
+ * Locations carry their own elapsed realtime timestamp from API 17 on. On
+ * older platforms they are stamped with the time they are received instead.
+ */
+public class SensorRecorder implements SensorEventListener, LocationListener {
+
+  private static final String TAG = "SensorRecorder";
+
+  private final SensorManager sensorManager;
+  private final LocationManager locationManager;
+  private final SensorRecord record;
+
+  private SensorRecordWriter writer;
+
+  /**
+   * @param locationManager
+   *          null to record sensors only
+   */
+  public SensorRecorder(SensorManager sensorManager, LocationManager locationManager) {
+    this.sensorManager = sensorManager;
+    this.locationManager = locationManager;
+    record = new SensorRecord();
+  }
+
+  /**
+   * Starts recording the default sensors of {@code sensorTypes} and, if a
+   * {@link LocationManager} was given, GPS locations.
+   *
+   * @param samplingPeriodUs
+   *          the sampling period to request from every sensor
+   */
+  @SuppressLint("MissingPermission")
+  public synchronized void start(File file, int[] sensorTypes, int samplingPeriodUs,
+      Handler handler) throws IOException {
+    writer = new SensorRecordWriter(new FileOutputStream(file));
+    for (int sensorType : sensorTypes) {
+      Sensor sensor = sensorManager.getDefaultSensor(sensorType);
+      if (sensor != null) {
+        sensorManager.registerListener(this, sensor, samplingPeriodUs, handler);
+      } else {
+        Log.w(TAG, "No sensor of type " + sensorType + ".");
+      }
+    }
+    if (locationManager != null) {
+      locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, 0, 0, this,
+          handler.getLooper());
+    }
+  }
+
+  public void stop() {
+    sensorManager.unregisterListener(this);
+    if (locationManager != null) {
+      locationManager.removeUpdates(this);
+    }
+    synchronized (this) {
+      if (writer != null) {
+        try {
+          writer.close();
+        } catch (IOException e) {
+          Log.e(TAG, "Failed to close recording.", e);
+        }
+        writer = null;
+      }
+    }
+  }
+
+  @Override
+  public synchronized void onSensorChanged(SensorEvent event) {
+    if (writer == null) {
+      return;
+    }
+    record.type = event.sensor.getType();
+    record.timestamp = event.timestamp;
+    record.accuracy = event.accuracy;
+    float[] values = record.setValueCount(event.values.length);
+    System.arraycopy(event.values, 0, values, 0, values.length);
+    write();
+  }
+
+  @Override
+  public synchronized void onLocationChanged(Location location) {
+    if (writer == null) {
+      return;
+    }
+    record.type = SensorRecord.TYPE_LOCATION;
+    record.timestamp = getElapsedRealtimeNanos(location);
+    record.latitude = location.getLatitude();
+    record.longitude = location.getLongitude();
+    record.altitude = location.getAltitude();
+    record.horizontalAccuracy = location.getAccuracy();
+    record.verticalAccuracy = 0;
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && location.hasVerticalAccuracy()) {
+      record.verticalAccuracy = location.getVerticalAccuracyMeters();
+    }
+    record.speed = location.getSpeed();
+    record.bearing = location.getBearing();
+    record.time = location.getTime();
+    write();
+  }
+
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+  private static long getElapsedRealtimeNanos(Location location) {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+      return location.getElapsedRealtimeNanos();
+    }
+    return SystemClock.elapsedRealtime() * 1000000L;
+  }
+
+  private void write() {
+    try {
+      writer.write(record);
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to write record.", e);
+    }
+  }
+
+  @Override
+  public void onAccuracyChanged(Sensor sensor, int accuracy) {
+  }
+
+  @Override
+  public void onStatusChanged(String provider, int status, Bundle extras) {
+  }
+
+  @Override
+  public void onProviderEnabled(String provider) {
+  }
+
+  @Override
+  public void onProviderDisabled(String provider) {
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.android;
+
+import com.google.common.base.Preconditions;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a recording made with {@link SensorRecordWriter}, either at the
+ * recorded pace scaled by a speed factor or as fast as possible.
+ * <p>
+ * Timestamps are shifted so that the first record appears to happen when the
+ * replay starts, as measured by the {@link Clock}. Publishers that relate
+ * sensor timestamps to node time therefore stamp replayed events as if they
+ * were live. The relative timing of the records is preserved.
+ */
+public class SensorReplaySource implements SensorEventSource {
+
+  private static final String TAG = "SensorReplaySource";
+
+  /**
+   * The clock that timestamps are rebased to and the replay is paced by.
+   */
+  public interface Clock {
+    long nanoTime();
+  }
+
+  /**
+   * The clock of {@code SensorEvent.timestamp} and
+   * {@code Location.getElapsedRealtimeNanos()}, which recordings are made
+   * with. Only has millisecond resolution before API 17.
+   */
+  public static final Clock ELAPSED_REALTIME_CLOCK = new Clock() {
+    @Override
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+    public long nanoTime() {
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+        return SystemClock.elapsedRealtimeNanos();
+      }
+      return SystemClock.elapsedRealtime() * 1000000L;
+    }
+  };
+
+  /**
+   * {@link System#nanoTime()}, for replaying off the device.
+   */
+  public static final Clock SYSTEM_CLOCK = new Clock() {
+    @Override
+    public long nanoTime() {
+      return System.nanoTime();
+    }
+  };
+
+  private final File file;
+  private final double speed;
+  private final Clock clock;
+
+  private Thread thread;
+
+  /**
+   * Replays on the {@link #ELAPSED_REALTIME_CLOCK}, like live sensor events.
+   *
+   * @param speed
+   *          1 to replay in real time, 2 for twice as fast, etc., or 0 to
+   *          replay as fast as possible
+   */
+  public SensorReplaySource(File file, double speed) {
+    this(file, speed, ELAPSED_REALTIME_CLOCK);
+  }
+
+  /**
+   * @param speed
+   *          1 to replay in real time, 2 for twice as fast, etc., or 0 to
+   *          replay as fast as possible
+   */
+  public SensorReplaySource(File file, double speed, Clock clock) {
+    Preconditions.checkArgument(speed >= 0);
+    this.file = file;
+    this.speed = speed;
+    this.clock = clock;
+  }
+
+  @Override
+  public synchronized void start(final SensorRecordListener listener) {
+    Preconditions.checkState(thread == null, "Already started.");
+    thread = new Thread(TAG) {
+      @Override
+      public void run() {
+        try {
+          replay(listener);
+        } catch (IOException e) {
+          Log.e(TAG, "Failed to replay " + file + ".", e);
+        }
+      }
+    };
+    thread.start();
+  }
+
+  @Override
+  public void stop() {
+    Thread thread;
+    synchronized (this) {
+      thread = this.thread;
+      this.thread = null;
+    }
+    if (thread != null) {
+      thread.interrupt();
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Replays the recording on the calling thread until it ends or the thread is
+   * interrupted.
+   *
+   * @return the number of records delivered
+   */
+  public long replay(SensorRecordListener listener) throws IOException {
+    SensorRecordReader reader = new SensorRecordReader(new FileInputStream(file));
+    try {
+      SensorRecord record = new SensorRecord();
+      long count = 0;
+      long startTime = clock.nanoTime();
+      long firstTimestamp = 0;
+      while (!Thread.currentThread().isInterrupted() && reader.read(record)) {
+        if (count == 0) {
+          firstTimestamp = record.timestamp;
+        }
+        long offset = record.timestamp - firstTimestamp;
+        if (speed > 0 && !waitUntil(startTime + (long) (offset / speed))) {
+          break;
+        }
+        record.timestamp = startTime + offset;
+        listener.onSensorRecord(record);
+        count++;
+      }
+      return count;
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * @return false if the thread was interrupted while waiting
+   */
+  private boolean waitUntil(long time) {
+    long remaining;
+    while ((remaining = time - clock.nanoTime()) > 0) {
+      LockSupport.parkNanos(remaining);
+      if (Thread.currentThread().isInterrupted()) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.android;
+
+/**
+ * Measures the load on one {@link SensorExecutor} thread.
+ * <p>
+ * Tracks how many posted tasks are waiting to run, how long callbacks waited
+ * before they ran and how long they took. For sensor callbacks, the wait is
+ * the time from the sample to its delivery. All methods are thread safe.
+ */
+public class SensorThreadStatistics {
+
+  private long queued;
+  private long queueDepth;
+  private long maximumQueueDepth;
+  private long callbacks;
+  private long latencySum;
+  private long maximumLatency;
+  private long durationSum;
+  private long maximumDuration;
+
+  /**
+   * Called when a task is posted to the thread.
+   */
+  public synchronized void onQueued() {
+    queued++;
+    queueDepth++;
+    if (queueDepth > maximumQueueDepth) {
+      maximumQueueDepth = queueDepth;
+    }
+  }
+
+  /**
+   * Called when a posted task is about to run.
+   */
+  public synchronized void onDequeued() {
+    queueDepth--;
+  }
+
+  /**
+   * Called when the posted tasks that have not started yet were dropped.
+   */
+  public synchronized void clearQueue() {
+    queueDepth = 0;
+  }
+
+  /**
+   * @param latency
+   *          the time in nanoseconds the callback waited before it ran
+   * @param duration
+   *          the time in nanoseconds the callback took
+   */
+  public synchronized void onCallback(long latency, long duration) {
+    callbacks++;
+    latencySum += Math.max(0, latency);
+    maximumLatency = Math.max(maximumLatency, latency);
+    durationSum += duration;
+    maximumDuration = Math.max(maximumDuration, duration);
+  }
+
+  /**
+   * @return the number of tasks posted since the last reset
+   */
+  public synchronized long getQueued() {
+    return queued;
+  }
+
+  /**
+   * @return the number of posted tasks that have not started yet
+   */
+  public synchronized long getQueueDepth() {
+    return queueDepth;
+  }
+
+  public synchronized long getMaximumQueueDepth() {
+    return maximumQueueDepth;
+  }
+
+  public synchronized long getCallbacks() {
+    return callbacks;
+  }
+
+  /**
+   * @return the mean callback latency in nanoseconds
+   */
+  public synchronized long getMeanLatency() {
+    return callbacks > 0 ? latencySum / callbacks : 0;
+  }
+
+  public synchronized long getMaximumLatency() {
+    return maximumLatency;
+  }
+
+  /**
+   * @return the mean callback duration in nanoseconds
+   */
+  public synchronized long getMeanDuration() {
+    return callbacks > 0 ? durationSum / callbacks : 0;
+  }
+
+  public synchronized long getMaximumDuration() {
+    return maximumDuration;
+  }
+
+  /**
+   * Clears everything but the current queue depth, which still describes
+   * tasks that are waiting.
+   */
+  public synchronized void reset() {
+    queued = 0;
+    maximumQueueDepth = queueDepth;
+    callbacks = 0;
+    latencySum = 0;
+    maximumLatency = 0;
+    durationSum = 0;
+    maximumDuration = 0;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("queue depth %d (max %d), %d callbacks, latency %.3f ms (max %.3f ms), "
+        + "duration %.3f ms (max %.3f ms)", queueDepth, maximumQueueDepth, callbacks,
+        getMeanLatency() / 1e6, maximumLatency / 1e6, getMeanDuration() / 1e6,
+        maximumDuration / 1e6);
+  }
+}
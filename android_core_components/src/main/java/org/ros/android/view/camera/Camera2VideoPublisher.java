@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.camera;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CaptureRequest;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.Range;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.ros.internal.node.topic.SubscriberIdentifier;
+import org.ros.message.Duration;
+import org.ros.message.Time;
+import org.ros.namespace.GraphName;
+import org.ros.namespace.NameResolver;
+import org.ros.node.AbstractNodeMain;
+import org.ros.node.ConnectedNode;
+import org.ros.node.Node;
+import org.ros.node.parameter.ParameterTree;
+import org.ros.node.topic.DefaultPublisherListener;
+import org.ros.node.topic.Publisher;
+
+import java.nio.ByteOrder;
+import java.util.Collections;
+
+/**
+ * Publishes H.264 or H.265 video from a camera using the hardware encoder.
+ * <p>
+ * Frames go from the camera straight to a {@link MediaCodecVideoEncoder}
+ * through a {@link android.view.Surface} and are published as
+ * {@link sensor_msgs.CompressedImage}s whose format is "h264" or "h265". Every
+ * key frame carries the codec configuration, and a key frame is requested
+ * whenever a subscriber connects so that it can start decoding immediately.
+ * <p>
+ * The following private parameters are read on start:
+ * <ul>
+ * <li>~codec: "h264" (default) or "h265"</li>
+ * <li>~width, ~height: the encoded resolution, 1280x720 by default</li>
+ * <li>~frame_rate: frames per second, 30 by default</li>
+ * <li>~bitrate: bits per second, 4000000 by default</li>
+ * <li>~gop: seconds between key frames, 2 by default</li>
+ * </ul>
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class Camera2VideoPublisher extends AbstractNodeMain {
+
+  private static final String TAG = "Camera2VideoPublisher";
+
+  // Frames whose sensor timestamp is further in the past than this are
+  // stamped with the current time instead.
+  private static final long MAXIMUM_LATENCY = 1000000; // us
+
+  private final CameraManager cameraManager;
+  private final String cameraId;
+
+  private ConnectedNode connectedNode;
+  private HandlerThread cameraThread;
+  private Handler cameraHandler;
+  private MediaCodecVideoEncoder encoder;
+  private VideoPacketizer packetizer;
+  private CameraDevice cameraDevice;
+  private CameraCaptureSession captureSession;
+  private boolean realtimeTimestamps;
+
+  public Camera2VideoPublisher(Context context, String cameraId) {
+    cameraManager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+    this.cameraId = cameraId;
+  }
+
+  @Override
+  public GraphName getDefaultNodeName() {
+    return GraphName.of("android/camera2_video_publisher");
+  }
+
+  @Override
+  public void onStart(final ConnectedNode connectedNode) {
+    this.connectedNode = connectedNode;
+    ParameterTree parameters = connectedNode.getParameterTree();
+    String codec = parameters.getString("~codec", "h264");
+    int width = parameters.getInteger("~width", 1280);
+    int height = parameters.getInteger("~height", 720);
+    final int frameRate = parameters.getInteger("~frame_rate", 30);
+    int bitrate = parameters.getInteger("~bitrate", 4000000);
+    int gop = parameters.getInteger("~gop", 2);
+
+    String mimeType =
+        codec.equals("h265") ? MediaCodecVideoEncoder.MIME_TYPE_H265
+            : MediaCodecVideoEncoder.MIME_TYPE_H264;
+    final String format = codec.equals("h265") ? "h265" : "h264";
+    NameResolver resolver = connectedNode.getResolver().newChild("camera");
+    final Publisher<sensor_msgs.CompressedImage> imagePublisher =
+        connectedNode.newPublisher(resolver.resolve("image/" + format),
+            sensor_msgs.CompressedImage._TYPE);
+
+    encoder = new MediaCodecVideoEncoder(mimeType, width, height, bitrate, frameRate, gop);
+    packetizer = new VideoPacketizer(encoder, new VideoPacketizer.PacketListener() {
+      @Override
+      public void onPacket(byte[] data, int length, long presentationTimeUs, boolean keyFrame) {
+        sensor_msgs.CompressedImage image = imagePublisher.newMessage();
+        image.getHeader().setStamp(getStamp(presentationTimeUs));
+        image.getHeader().setFrameId("camera");
+        image.setFormat(format);
+        image.setData(ChannelBuffers.copiedBuffer(ByteOrder.LITTLE_ENDIAN, data, 0, length));
+        imagePublisher.publish(image);
+      }
+    });
+    encoder.setListener(packetizer);
+    imagePublisher.addListener(new DefaultPublisherListener<sensor_msgs.CompressedImage>() {
+      @Override
+      public void onNewSubscriber(Publisher<sensor_msgs.CompressedImage> publisher,
+          SubscriberIdentifier subscriberIdentifier) {
+        packetizer.requestKeyFrame();
+      }
+    });
+
+    cameraThread = new HandlerThread(TAG);
+    cameraThread.start();
+    cameraHandler = new Handler(cameraThread.getLooper());
+    try {
+      CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(cameraId);
+      realtimeTimestamps = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
+          && hasRealtimeTimestamps(characteristics);
+      encoder.start();
+      cameraManager.openCamera(cameraId, new CameraDevice.StateCallback() {
+        @Override
+        public void onOpened(CameraDevice camera) {
+          cameraDevice = camera;
+          startCapture(frameRate);
+        }
+
+        @Override
+        public void onDisconnected(CameraDevice camera) {
+          camera.close();
+          cameraDevice = null;
+        }
+
+        @Override
+        public void onError(CameraDevice camera, int error) {
+          Log.e(TAG, "Camera error " + error + ".");
+          camera.close();
+          cameraDevice = null;
+        }
+      }, cameraHandler);
+    } catch (CameraAccessException e) {
+      Log.e(TAG, "Failed to open camera " + cameraId + ".", e);
+    } catch (SecurityException e) {
+      Log.e(TAG, "Camera permission has not been granted.", e);
+    }
+  }
+
+  private void startCapture(final int frameRate) {
+    try {
+      cameraDevice.createCaptureSession(Collections.singletonList(encoder.getInputSurface()),
+          new CameraCaptureSession.StateCallback() {
+            @Override
+            public void onConfigured(CameraCaptureSession session) {
+              captureSession = session;
+              try {
+                CaptureRequest.Builder builder =
+                    cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_RECORD);
+                builder.addTarget(encoder.getInputSurface());
+                builder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE,
+                    new Range<Integer>(frameRate, frameRate));
+                session.setRepeatingRequest(builder.build(), null, cameraHandler);
+              } catch (CameraAccessException e) {
+                Log.e(TAG, "Failed to start capture.", e);
+              }
+            }
+
+            @Override
+            public void onConfigureFailed(CameraCaptureSession session) {
+              Log.e(TAG, "Failed to configure capture session.");
+            }
+          }, cameraHandler);
+    } catch (CameraAccessException e) {
+      Log.e(TAG, "Failed to create capture session.", e);
+    }
+  }
+
+  /**
+   * @return true if the camera stamps frames on the
+   *         {@link SystemClock#elapsedRealtimeNanos()} base
+   */
+  @TargetApi(Build.VERSION_CODES.M)
+  private static boolean hasRealtimeTimestamps(CameraCharacteristics characteristics) {
+    Integer timestampSource =
+        characteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE);
+    return timestampSource != null
+        && timestampSource == CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME;
+  }
+
+  /**
+   * Converts the sensor timestamp of a frame into ROS time by subtracting the
+   * age of the frame from the current time.
+   */
+  private Time getStamp(long presentationTimeUs) {
+    long nowUs =
+        realtimeTimestamps ? SystemClock.elapsedRealtimeNanos() / 1000 : System.nanoTime() / 1000;
+    long latencyUs = nowUs - presentationTimeUs;
+    Time currentTime = connectedNode.getCurrentTime();
+    if (latencyUs < 0 || latencyUs > MAXIMUM_LATENCY) {
+      return currentTime;
+    }
+    return currentTime.subtract(Duration.fromNano(latencyUs * 1000));
+  }
+
+  /**
+   * Changes the target bitrate of the running encoder.
+   */
+  public void setBitrate(int bitsPerSecond) {
+    if (encoder != null) {
+      encoder.setBitrate(bitsPerSecond);
+    }
+  }
+
+  @Override
+  public void onShutdown(Node node) {
+    if (captureSession != null) {
+      captureSession.close();
+      captureSession = null;
+    }
+    if (cameraDevice != null) {
+      cameraDevice.close();
+      cameraDevice = null;
+    }
+    if (encoder != null) {
+      encoder.stop();
+      encoder = null;
+    }
+    if (cameraThread != null) {
+      cameraThread.quitSafely();
+      cameraThread = null;
+    }
+  }
+}
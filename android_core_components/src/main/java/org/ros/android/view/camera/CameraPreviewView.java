@@ -35,6 +35,11 @@ import java.util.List;
 
 /**
  * Displays preview frames from the camera.
+ * <p>
+ * Preview frames are passed to the {@link RawImageListener} on a separate
+ * thread so that slow listeners do not hold up the camera. Several preview
+ * buffers are in use at once; if the listener falls behind, the oldest waiting
+ * frame is dropped.
  * 
  * @author damonkohler@google.com (Damon Kohler)
  */
@@ -42,22 +47,44 @@ public class CameraPreviewView extends ViewGroup {
 
   private final static double ASPECT_TOLERANCE = 0.1;
 
+  /**
+   * The number of preview buffers shared between the camera and the listener.
+   */
+  public static final int DEFAULT_PREVIEW_BUFFERS = 4;
+
+  // One buffer is being processed and at least one stays with the camera.
+  private static final int FRAME_QUEUE_CAPACITY = DEFAULT_PREVIEW_BUFFERS - 2;
+
   private SurfaceHolder surfaceHolder;
   private Camera camera;
   private Size previewSize;
-  private byte[] previewBuffer;
   private RawImageListener rawImageListener;
   private BufferingPreviewCallback bufferingPreviewCallback;
+  private PreviewFramePipeline previewFramePipeline;
 
   private final class BufferingPreviewCallback implements PreviewCallback {
     @Override
     public void onPreviewFrame(byte[] data, Camera camera) {
       Preconditions.checkArgument(camera == CameraPreviewView.this.camera);
-      Preconditions.checkArgument(data == previewBuffer);
-      if (rawImageListener != null) {
-        rawImageListener.onNewRawImage(data, previewSize);
+      previewFramePipeline.offer(data);
+    }
+  }
+
+  private final class PreviewFrameCallback implements PreviewFramePipeline.Callback {
+    @Override
+    public void onFrame(byte[] data) {
+      RawImageListener listener = rawImageListener;
+      if (listener != null) {
+        listener.onNewRawImage(data, previewSize);
+      }
+    }
+
+    @Override
+    public void onBufferReleased(byte[] data) {
+      Camera camera = CameraPreviewView.this.camera;
+      if (camera != null) {
+        camera.addCallbackBuffer(data);
       }
-      camera.addCallbackBuffer(previewBuffer);
     }
   }
 
@@ -90,6 +117,8 @@ public class CameraPreviewView extends ViewGroup {
     surfaceHolder.addCallback(new SurfaceHolderCallback());
     surfaceHolder.setType(SurfaceHolder.SURFACE_TYPE_PUSH_BUFFERS);
     bufferingPreviewCallback = new BufferingPreviewCallback();
+    previewFramePipeline =
+        new PreviewFramePipeline(new PreviewFrameCallback(), FRAME_QUEUE_CAPACITY);
   }
 
   public CameraPreviewView(Context context) {
@@ -113,6 +142,7 @@ public class CameraPreviewView extends ViewGroup {
     }
     camera.setPreviewCallbackWithBuffer(null);
     camera.stopPreview();
+    previewFramePipeline.shutdown();
     camera.release();
     camera = null;
   }
@@ -125,6 +155,29 @@ public class CameraPreviewView extends ViewGroup {
     return previewSize;
   }
 
+  /**
+   * @return the number of preview frames delivered by the camera
+   */
+  public long getCapturedFrameCount() {
+    return previewFramePipeline.getCapturedFrames();
+  }
+
+  /**
+   * @return the number of preview frames handled by the
+   *         {@link RawImageListener}
+   */
+  public long getEncodedFrameCount() {
+    return previewFramePipeline.getProcessedFrames();
+  }
+
+  /**
+   * @return the number of preview frames dropped because the
+   *         {@link RawImageListener} fell behind
+   */
+  public long getDroppedFrameCount() {
+    return previewFramePipeline.getDroppedFrames();
+  }
+
   public void setCamera(Camera camera) {
     Preconditions.checkNotNull(camera);
     this.camera = camera;
@@ -184,8 +237,11 @@ public class CameraPreviewView extends ViewGroup {
   private void setupBufferingPreviewCallback() {
     int format = camera.getParameters().getPreviewFormat();
     int bits_per_pixel = ImageFormat.getBitsPerPixel(format);
-    previewBuffer = new byte[previewSize.height * previewSize.width * bits_per_pixel / 8];
-    camera.addCallbackBuffer(previewBuffer);
+    int bufferSize = previewSize.height * previewSize.width * bits_per_pixel / 8;
+    for (int i = 0; i < DEFAULT_PREVIEW_BUFFERS; i++) {
+      camera.addCallbackBuffer(new byte[bufferSize]);
+    }
+    previewFramePipeline.start();
     camera.setPreviewCallbackWithBuffer(bufferingPreviewCallback);
   }
 
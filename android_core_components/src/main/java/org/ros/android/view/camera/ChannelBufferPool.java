@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.camera;
+
+import com.google.common.base.Preconditions;
+
+import org.jboss.netty.buffer.ChannelBufferOutputStream;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+import java.nio.ByteOrder;
+
+/**
+ * A fixed ring of growable output buffers for encoded frames.
+ * <p>
+ * A message is serialized some time after it is published, so its data must
+ * not be overwritten until then. rosjava provides no notification when that
+ * happens, but a publisher holds only a bounded number of outgoing messages
+ * and drops the oldest beyond that. A ring that is larger than this bound
+ * therefore never hands out a buffer whose message may still be serialized.
+ * Once every buffer has grown to the size of a typical frame, no further
+ * allocation takes place.
+ */
+class ChannelBufferPool {
+
+  private final ChannelBufferOutputStream[] streams;
+
+  private int next;
+
+  /**
+   * @param size
+   *          the number of buffers in the ring
+   * @param initialCapacity
+   *          the initial capacity of each buffer in bytes
+   */
+  public ChannelBufferPool(int size, int initialCapacity) {
+    Preconditions.checkArgument(size > 0);
+    streams = new ChannelBufferOutputStream[size];
+    for (int i = 0; i < size; i++) {
+      streams[i] =
+          new ChannelBufferOutputStream(ChannelBuffers.dynamicBuffer(ByteOrder.LITTLE_ENDIAN,
+              initialCapacity));
+    }
+  }
+
+  /**
+   * @return the least recently used stream, with its buffer cleared
+   */
+  public ChannelBufferOutputStream next() {
+    ChannelBufferOutputStream stream = streams[next];
+    next = (next + 1) % streams.length;
+    stream.buffer().clear();
+    return stream;
+  }
+
+  public int size() {
+    return streams.length;
+  }
+}
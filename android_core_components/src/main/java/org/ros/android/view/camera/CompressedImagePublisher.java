@@ -24,10 +24,11 @@ import android.os.Environment;
 import android.util.Log;
 import org.jboss.netty.buffer.ChannelBufferOutputStream;
 import org.ros.exception.ServiceException;
-import org.ros.internal.message.MessageBuffers;
 import org.ros.message.Time;
 import org.ros.namespace.NameResolver;
 import org.ros.node.ConnectedNode;
+import org.ros.node.parameter.ParameterListener;
+import org.ros.node.parameter.ParameterTree;
 import org.ros.node.service.ServiceResponseBuilder;
 import org.ros.node.service.ServiceServer;
 import org.ros.node.topic.Publisher;
@@ -40,6 +41,22 @@ import java.io.InputStream;
 
 /**
  * Publishes preview frames.
+ * <p>
+ * The following private parameters can be changed while the node is running:
+ * <ul>
+ * <li>~jpeg_quality: JPEG quality from 0 to 100, 20 by default</li>
+ * <li>~image_width, ~image_height: the published resolution; frames are
+ * downscaled before encoding, 0 keeps the preview size</li>
+ * <li>~max_rate: the maximum number of images published per second, 0 for no
+ * limit</li>
+ * <li>~camera_info_decimation: publish camera info with every n-th image, 1 by
+ * default</li>
+ * </ul>
+ * Frames are not encoded at all while there are no subscribers.
+ * <p>
+ * Camera info carries exactly the stamp of the image it accompanies. It is
+ * built from camera.yaml once and rebuilt only when the calibration is changed
+ * through set_camera_info or the published resolution changes.
  *
  * @author huaibovip@gmail.com (Charles)
  */
@@ -47,26 +64,53 @@ import java.io.InputStream;
 class CompressedImagePublisher implements RawImageListener {
     private static final String TAG = "CompressedImage";
 
+    private static final String JPEG_QUALITY = "~jpeg_quality";
+    private static final String IMAGE_WIDTH = "~image_width";
+    private static final String IMAGE_HEIGHT = "~image_height";
+    private static final String MAX_RATE = "~max_rate";
+    private static final String CAMERA_INFO_DECIMATION = "~camera_info_decimation";
+
+    // rosjava queues up to 16 outgoing messages per publisher. One more may be
+    // in the middle of serialization while the next frame is being encoded.
+    private static final int OUTPUT_BUFFERS = 18;
+    private static final int OUTPUT_BUFFER_CAPACITY = 16 * 1024;
+    // One image for every preview callback buffer and one for the output of
+    // the scaler.
+    private static final int YUV_IMAGES = CameraPreviewView.DEFAULT_PREVIEW_BUFFERS + 1;
+
     private final ConnectedNode connectedNode;
     private final Publisher<sensor_msgs.CompressedImage> imagePublisher;
     private final Publisher<sensor_msgs.CameraInfo> cameraInfoPublisher;
     private final ServiceServer<sensor_msgs.SetCameraInfoRequest, sensor_msgs.SetCameraInfoResponse> setCameraInfoService;
 
-    private Time lastTime;
     private YamlCamera yamlCamera;
     private String yamlFile;
     private boolean loadStatus;
-    private byte[] rawImageBuffer;
-    private Size rawImageSize;
-    private YuvImage yuvImage;
+    private YuvImage[] yuvImages;
+    private int nextYuvImage;
     private Rect rect;
-    private ChannelBufferOutputStream stream;
+    private ChannelBufferPool outputBuffers;
+    private Nv21Scaler scaler;
+    private long lastPublishTime;
+    private sensor_msgs.CameraInfo[] cameraInfos;
+    private int[] cameraInfoVersions;
+    private int cameraInfoIndex;
+    private int framesSinceCameraInfo;
+
+    // Replaced as a whole when set_camera_info succeeds.
+    private volatile YamlCamera calibration;
+    private volatile int calibrationVersion;
+
+    private volatile int jpegQuality;
+    private volatile int imageWidth;
+    private volatile int imageHeight;
+    private volatile long minimumPublishInterval;
+    private volatile int cameraInfoDecimation;
 
     public CompressedImagePublisher(ConnectedNode connectedNode) {
         this.connectedNode = connectedNode;
         this.loadStatus = false;
         this.yamlFile = "camera.yaml";
-        this.lastTime = connectedNode.getCurrentTime();
 
         NameResolver resolver = connectedNode.getResolver().newChild("camera");
         imagePublisher =
@@ -80,6 +124,7 @@ class CompressedImagePublisher implements RawImageListener {
                             @Override
                             public void build(sensor_msgs.SetCameraInfoRequest request, sensor_msgs.SetCameraInfoResponse response) throws ServiceException {
                                 if(saveCameraInfoYaml(request.getCameraInfo(), yamlFile)) {
+                                    setCalibration(toYamlCamera(request.getCameraInfo()));
                                     response.setStatusMessage("Succeed to save camera.yaml");
                                     response.setSuccess(true);
                                 }else {
@@ -88,8 +133,74 @@ class CompressedImagePublisher implements RawImageListener {
                                 }
                             }
                         });
-        stream = new ChannelBufferOutputStream(MessageBuffers.dynamicBuffer());
+        outputBuffers = new ChannelBufferPool(OUTPUT_BUFFERS, OUTPUT_BUFFER_CAPACITY);
+        scaler = new Nv21Scaler();
+        yuvImages = new YuvImage[YUV_IMAGES];
+        cameraInfos = new sensor_msgs.CameraInfo[OUTPUT_BUFFERS];
+        cameraInfoVersions = new int[OUTPUT_BUFFERS];
         loadStatus = loadCameraInfoYaml(yamlFile);
+        if (loadStatus) {
+            setCalibration(yamlCamera);
+        }
+        setupParameters(connectedNode.getParameterTree());
+    }
+
+    private void setupParameters(ParameterTree parameterTree) {
+        setJpegQuality(parameterTree.getInteger(JPEG_QUALITY, 20));
+        imageWidth = parameterTree.getInteger(IMAGE_WIDTH, 0);
+        imageHeight = parameterTree.getInteger(IMAGE_HEIGHT, 0);
+        setMaxRate(parameterTree.getDouble(MAX_RATE, 0));
+        setCameraInfoDecimation(parameterTree.getInteger(CAMERA_INFO_DECIMATION, 1));
+        parameterTree.addParameterListener(JPEG_QUALITY, new ParameterListener() {
+            @Override
+            public void onNewValue(Object value) {
+                setJpegQuality(((Number) value).intValue());
+            }
+        });
+        parameterTree.addParameterListener(IMAGE_WIDTH, new ParameterListener() {
+            @Override
+            public void onNewValue(Object value) {
+                imageWidth = ((Number) value).intValue();
+            }
+        });
+        parameterTree.addParameterListener(IMAGE_HEIGHT, new ParameterListener() {
+            @Override
+            public void onNewValue(Object value) {
+                imageHeight = ((Number) value).intValue();
+            }
+        });
+        parameterTree.addParameterListener(MAX_RATE, new ParameterListener() {
+            @Override
+            public void onNewValue(Object value) {
+                setMaxRate(((Number) value).doubleValue());
+            }
+        });
+        parameterTree.addParameterListener(CAMERA_INFO_DECIMATION, new ParameterListener() {
+            @Override
+            public void onNewValue(Object value) {
+                setCameraInfoDecimation(((Number) value).intValue());
+            }
+        });
+    }
+
+    private void setJpegQuality(int quality) {
+        jpegQuality = Math.max(0, Math.min(100, quality));
+    }
+
+    private void setMaxRate(double rate) {
+        // Frames arrive with jitter, so a little slack keeps them from being
+        // dropped every other time when the camera runs at exactly the
+        // maximum rate.
+        minimumPublishInterval = rate > 0 ? (long) (1e9 / rate) * 9 / 10 : 0;
+    }
+
+    private void setCameraInfoDecimation(int decimation) {
+        cameraInfoDecimation = Math.max(1, decimation);
+    }
+
+    private void setCalibration(YamlCamera calibration) {
+        this.calibration = calibration;
+        calibrationVersion++;
     }
 
     @Override
@@ -97,11 +208,29 @@ class CompressedImagePublisher implements RawImageListener {
         Preconditions.checkNotNull(data);
         Preconditions.checkNotNull(size);
 
-        if (data != rawImageBuffer || !size.equals(rawImageSize)) {
-            rawImageBuffer = data;
-            rawImageSize = size;
-            yuvImage = new YuvImage(rawImageBuffer, ImageFormat.NV21, size.width, size.height, null);
-            rect = new Rect(0, 0, size.width, size.height);
+        if (imagePublisher.getNumberOfSubscribers() == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (minimumPublishInterval > 0 && now - lastPublishTime < minimumPublishInterval) {
+            return;
+        }
+        lastPublishTime = now;
+
+        // Scale down to the requested resolution, keeping dimensions even as
+        // required by NV21.
+        int width = imageWidth > 0 ? Math.min(imageWidth, size.width) & ~1 : size.width;
+        int height = imageHeight > 0 ? Math.min(imageHeight, size.height) & ~1 : size.height;
+        if (width > 0 && height > 0 && (width != size.width || height != size.height)) {
+            data = scaler.scale(data, size.width, size.height, width, height);
+        } else {
+            width = size.width;
+            height = size.height;
+        }
+
+        YuvImage yuvImage = getYuvImage(data, width, height);
+        if (rect == null || rect.width() != width || rect.height() != height) {
+            rect = new Rect(0, 0, width, height);
         }
 
         Time currentTime = connectedNode.getCurrentTime();
@@ -112,29 +241,91 @@ class CompressedImagePublisher implements RawImageListener {
         image.getHeader().setStamp(currentTime);
         image.getHeader().setFrameId(frameId);
 
-        Preconditions.checkState(yuvImage.compressToJpeg(rect, 20, stream));
-        image.setData(stream.buffer().copy());
-        stream.buffer().clear();
+        ChannelBufferOutputStream stream = outputBuffers.next();
+        Preconditions.checkState(yuvImage.compressToJpeg(rect, jpegQuality, stream));
+        image.setData(stream.buffer());
         imagePublisher.publish(image);
 
-        if(currentTime.subtract(lastTime).secs == 1)
-        {
-            sensor_msgs.CameraInfo cameraInfo = cameraInfoPublisher.newMessage();
+        if (framesSinceCameraInfo == 0) {
+            sensor_msgs.CameraInfo cameraInfo = getCameraInfo(width, height);
             cameraInfo.getHeader().setStamp(currentTime);
             cameraInfo.getHeader().setFrameId(frameId);
-            cameraInfo.setWidth(size.width);
-            cameraInfo.setHeight(size.height);
-
-            if(loadStatus == true) {
-                cameraInfo.setDistortionModel(yamlCamera.getDistortionModel());
-                cameraInfo.setD(yamlCamera.getDistortionCoefficients().getData());
-                cameraInfo.setK(yamlCamera.getCameraMatrix().getData());
-                cameraInfo.setR(yamlCamera.getRectificationMatrix().getData());
-                cameraInfo.setP(yamlCamera.getProjectionMatrix().getData());
-            }
             cameraInfoPublisher.publish(cameraInfo);
-            lastTime = currentTime;
         }
+        framesSinceCameraInfo = (framesSinceCameraInfo + 1) % cameraInfoDecimation;
+    }
+
+    /**
+     * Returns the cached {@link YuvImage} that wraps {@code data}. The preview
+     * callback buffers rotate, so one image is kept per buffer and the least
+     * recently created one is replaced when a new buffer shows up.
+     */
+    private YuvImage getYuvImage(byte[] data, int width, int height) {
+        for (YuvImage yuvImage : yuvImages) {
+            if (yuvImage != null && yuvImage.getYuvData() == data && yuvImage.getWidth() == width
+                    && yuvImage.getHeight() == height) {
+                return yuvImage;
+            }
+        }
+        YuvImage yuvImage = new YuvImage(data, ImageFormat.NV21, width, height, null);
+        yuvImages[nextYuvImage] = yuvImage;
+        nextYuvImage = (nextYuvImage + 1) % yuvImages.length;
+        return yuvImage;
+    }
+
+    /**
+     * Returns the next message of a ring of cached camera infos, which is
+     * rebuilt only if the calibration or resolution changed since it was last
+     * used. Like the image buffers, the ring outlasts the publisher's queue.
+     */
+    private sensor_msgs.CameraInfo getCameraInfo(int width, int height) {
+        int index = cameraInfoIndex;
+        cameraInfoIndex = (cameraInfoIndex + 1) % cameraInfos.length;
+        sensor_msgs.CameraInfo cameraInfo = cameraInfos[index];
+        int version = calibrationVersion;
+        if (cameraInfo != null && cameraInfoVersions[index] == version
+                && cameraInfo.getWidth() == width && cameraInfo.getHeight() == height) {
+            return cameraInfo;
+        }
+        if (cameraInfo == null) {
+            cameraInfo = cameraInfoPublisher.newMessage();
+            cameraInfos[index] = cameraInfo;
+        }
+        cameraInfo.setWidth(width);
+        cameraInfo.setHeight(height);
+        YamlCamera calibration = this.calibration;
+        if (calibration != null) {
+            // The calibration may have been made at a different resolution
+            // than the one published.
+            double scaleX = calibration.getImageWidth() > 0
+                    ? (double) width / calibration.getImageWidth() : 1;
+            double scaleY = calibration.getImageHeight() > 0
+                    ? (double) height / calibration.getImageHeight() : 1;
+            cameraInfo.setDistortionModel(calibration.getDistortionModel());
+            cameraInfo.setD(calibration.getDistortionCoefficients().getData());
+            cameraInfo.setK(scaleRows(calibration.getCameraMatrix().getData(), 3, scaleX, scaleY));
+            cameraInfo.setR(calibration.getRectificationMatrix().getData());
+            cameraInfo.setP(scaleRows(calibration.getProjectionMatrix().getData(), 4, scaleX, scaleY));
+        }
+        cameraInfoVersions[index] = version;
+        return cameraInfo;
+    }
+
+    /**
+     * Scales the first row of a row-major matrix by {@code scaleX} and the
+     * second by {@code scaleY}, as resizing an image does to its camera and
+     * projection matrices.
+     */
+    private static double[] scaleRows(double[] matrix, int columns, double scaleX, double scaleY) {
+        if (matrix == null || (scaleX == 1 && scaleY == 1)) {
+            return matrix;
+        }
+        double[] scaled = matrix.clone();
+        for (int i = 0; i < columns && columns + i < scaled.length; i++) {
+            scaled[i] *= scaleX;
+            scaled[columns + i] *= scaleY;
+        }
+        return scaled;
     }
 
     public boolean loadCameraInfoYaml(String fileName) {
@@ -169,16 +360,7 @@ class CompressedImagePublisher implements RawImageListener {
             if(Environment.getExternalStorageState().equals(Environment.MEDIA_MOUNTED)) {
                 File file = makeDirAndFile(Environment.getExternalStorageDirectory() + "/RosCameraInfo", fileName);
                 if (file != null) {
-                    YamlCamera yamlCameraInfo = new YamlCamera();
-                    yamlCameraInfo.setImageHeight(cameraInfo.getHeight());
-                    yamlCameraInfo.setImageWidth(cameraInfo.getWidth());
-                    yamlCameraInfo.setCameraName(cameraInfo.getHeader().getFrameId());
-                    yamlCameraInfo.setDistortionModel(cameraInfo.getDistortionModel());
-
-                    yamlCameraInfo.getCameraMatrix().setData(cameraInfo.getK());
-                    yamlCameraInfo.getDistortionCoefficients().setData(cameraInfo.getD());
-                    yamlCameraInfo.getRectificationMatrix().setData(cameraInfo.getR());
-                    yamlCameraInfo.getProjectionMatrix().setData(cameraInfo.getP());
+                    YamlCamera yamlCameraInfo = toYamlCamera(cameraInfo);
 
                     FileOutputStream writer = new FileOutputStream(file);
                     writer.write(yamlCameraInfo.toString().getBytes());
@@ -199,6 +381,20 @@ class CompressedImagePublisher implements RawImageListener {
         }
     }
 
+    private static YamlCamera toYamlCamera(sensor_msgs.CameraInfo cameraInfo) {
+        YamlCamera yamlCameraInfo = new YamlCamera();
+        yamlCameraInfo.setImageHeight(cameraInfo.getHeight());
+        yamlCameraInfo.setImageWidth(cameraInfo.getWidth());
+        yamlCameraInfo.setCameraName(cameraInfo.getHeader().getFrameId());
+        yamlCameraInfo.setDistortionModel(cameraInfo.getDistortionModel());
+
+        yamlCameraInfo.getCameraMatrix().setData(cameraInfo.getK());
+        yamlCameraInfo.getDistortionCoefficients().setData(cameraInfo.getD());
+        yamlCameraInfo.getRectificationMatrix().setData(cameraInfo.getR());
+        yamlCameraInfo.getProjectionMatrix().setData(cameraInfo.getP());
+        return yamlCameraInfo;
+    }
+
     //create dir and file
     private File makeDirAndFile(String filePath, String fileName) {
         File dir = null;
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.camera;
+
+import com.google.common.base.Preconditions;
+
+import android.annotation.TargetApi;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.os.Build;
+import android.os.Bundle;
+import android.util.Log;
+import android.view.Surface;
+import org.ros.exception.RosRuntimeException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A hardware {@link VideoEncoder} that takes its frames from a {@link Surface}.
+ * The camera renders straight into {@link #getInputSurface()}, so frames never
+ * pass through the Java heap before they are encoded.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class MediaCodecVideoEncoder implements VideoEncoder {
+
+  private static final boolean DEBUG = false;
+  private static final String TAG = "MediaCodecVideoEncoder";
+
+  public static final String MIME_TYPE_H264 = MediaFormat.MIMETYPE_VIDEO_AVC;
+  public static final String MIME_TYPE_H265 = MediaFormat.MIMETYPE_VIDEO_HEVC;
+
+  private static final long DEQUEUE_TIMEOUT = 10000; // us
+
+  private final MediaCodec codec;
+  private final Surface inputSurface;
+
+  private Listener listener;
+  private Thread drainThread;
+
+  /**
+   * @param mimeType
+   *          either {@link #MIME_TYPE_H264} or {@link #MIME_TYPE_H265}
+   * @param bitrate
+   *          the target bitrate in bits per second
+   * @param frameRate
+   *          the expected frame rate in frames per second
+   * @param keyFrameInterval
+   *          the interval between key frames in seconds
+   */
+  public MediaCodecVideoEncoder(String mimeType, int width, int height, int bitrate,
+      int frameRate, int keyFrameInterval) {
+    Preconditions.checkArgument(bitrate > 0);
+    Preconditions.checkArgument(frameRate > 0);
+    MediaFormat format = MediaFormat.createVideoFormat(mimeType, width, height);
+    format.setInteger(MediaFormat.KEY_COLOR_FORMAT,
+        MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+    format.setInteger(MediaFormat.KEY_BIT_RATE, bitrate);
+    format.setInteger(MediaFormat.KEY_FRAME_RATE, frameRate);
+    format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, keyFrameInterval);
+    try {
+      codec = MediaCodec.createEncoderByType(mimeType);
+    } catch (IOException e) {
+      throw new RosRuntimeException(e);
+    }
+    codec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+    inputSurface = codec.createInputSurface();
+  }
+
+  /**
+   * @return the {@link Surface} that frames should be rendered into
+   */
+  public Surface getInputSurface() {
+    return inputSurface;
+  }
+
+  @Override
+  public void setListener(Listener listener) {
+    this.listener = listener;
+  }
+
+  @Override
+  public void start() {
+    Preconditions.checkState(drainThread == null, "Already started.");
+    codec.start();
+    drainThread = new Thread(TAG) {
+      @Override
+      public void run() {
+        drain();
+      }
+    };
+    drainThread.start();
+  }
+
+  private void drain() {
+    MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+    while (!Thread.currentThread().isInterrupted()) {
+      int index = codec.dequeueOutputBuffer(info, DEQUEUE_TIMEOUT);
+      if (index < 0) {
+        // INFO_TRY_AGAIN_LATER or a format change. Codec configuration data is
+        // delivered as a regular buffer flagged BUFFER_FLAG_CODEC_CONFIG.
+        continue;
+      }
+      ByteBuffer buffer = codec.getOutputBuffer(index);
+      if (buffer != null && info.size > 0 && listener != null) {
+        buffer.position(info.offset);
+        buffer.limit(info.offset + info.size);
+        int flags = 0;
+        if ((info.flags & MediaCodec.BUFFER_FLAG_KEY_FRAME) != 0) {
+          flags |= FLAG_KEY_FRAME;
+        }
+        if ((info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) {
+          flags |= FLAG_CODEC_CONFIG;
+        }
+        if (DEBUG) {
+          Log.d(TAG, "Encoded " + info.size + " bytes with flags " + flags + ".");
+        }
+        listener.onEncodedFrame(buffer, info.presentationTimeUs, flags);
+      }
+      codec.releaseOutputBuffer(index, false);
+      if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+        break;
+      }
+    }
+  }
+
+  @Override
+  public void requestKeyFrame() {
+    Bundle parameters = new Bundle();
+    parameters.putInt(MediaCodec.PARAMETER_KEY_REQUEST_SYNC_FRAME, 0);
+    codec.setParameters(parameters);
+  }
+
+  @Override
+  public void setBitrate(int bitsPerSecond) {
+    Bundle parameters = new Bundle();
+    parameters.putInt(MediaCodec.PARAMETER_KEY_VIDEO_BITRATE, bitsPerSecond);
+    codec.setParameters(parameters);
+  }
+
+  @Override
+  public void stop() {
+    if (drainThread != null) {
+      drainThread.interrupt();
+      try {
+        drainThread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      drainThread = null;
+      codec.stop();
+    }
+    codec.release();
+    inputSurface.release();
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.camera;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Downscales NV21 images with nearest-neighbor sampling. The output buffer and
+ * sampling tables are reused as long as the source and target sizes do not
+ * change.
+ */
+class Nv21Scaler {
+
+  private int sourceWidth;
+  private int sourceHeight;
+  private int targetWidth;
+  private int targetHeight;
+  private int[] lumaColumns;
+  private int[] chromaColumns;
+  private byte[] output;
+
+  /**
+   * @param source
+   *          an NV21 image of {@code sourceWidth} by {@code sourceHeight}
+   * @param targetWidth
+   *          the output width, which must be even and at most
+   *          {@code sourceWidth}
+   * @param targetHeight
+   *          the output height, which must be even and at most
+   *          {@code sourceHeight}
+   * @return the downscaled NV21 image; only valid until the next call
+   */
+  public byte[] scale(byte[] source, int sourceWidth, int sourceHeight, int targetWidth,
+      int targetHeight) {
+    Preconditions.checkArgument(targetWidth > 0 && targetWidth <= sourceWidth);
+    Preconditions.checkArgument(targetHeight > 0 && targetHeight <= sourceHeight);
+    Preconditions.checkArgument(targetWidth % 2 == 0 && targetHeight % 2 == 0);
+    Preconditions.checkArgument(source.length >= sourceWidth * sourceHeight * 3 / 2);
+    if (sourceWidth != this.sourceWidth || sourceHeight != this.sourceHeight
+        || targetWidth != this.targetWidth || targetHeight != this.targetHeight) {
+      resize(sourceWidth, sourceHeight, targetWidth, targetHeight);
+    }
+
+    int out = 0;
+    for (int y = 0; y < targetHeight; y++) {
+      int row = y * sourceHeight / targetHeight * sourceWidth;
+      for (int x = 0; x < targetWidth; x++) {
+        output[out++] = source[row + lumaColumns[x]];
+      }
+    }
+    int chromaOffset = sourceWidth * sourceHeight;
+    for (int y = 0; y < targetHeight / 2; y++) {
+      int row = chromaOffset + (y * 2 * sourceHeight / targetHeight / 2) * sourceWidth;
+      for (int x = 0; x < targetWidth / 2; x++) {
+        int index = row + chromaColumns[x];
+        output[out++] = source[index];
+        output[out++] = source[index + 1];
+      }
+    }
+    return output;
+  }
+
+  private void resize(int sourceWidth, int sourceHeight, int targetWidth, int targetHeight) {
+    this.sourceWidth = sourceWidth;
+    this.sourceHeight = sourceHeight;
+    this.targetWidth = targetWidth;
+    this.targetHeight = targetHeight;
+    lumaColumns = new int[targetWidth];
+    for (int x = 0; x < targetWidth; x++) {
+      lumaColumns[x] = x * sourceWidth / targetWidth;
+    }
+    chromaColumns = new int[targetWidth / 2];
+    for (int x = 0; x < targetWidth / 2; x++) {
+      // Offset of the V byte of the interleaved VU pair.
+      chromaColumns[x] = (x * 2 * sourceWidth / targetWidth / 2) * 2;
+    }
+    output = new byte[targetWidth * targetHeight * 3 / 2];
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.camera;
+
+import com.google.common.base.Preconditions;
+
+import android.util.Log;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands preview frames from the camera thread to a dedicated processing
+ * thread.
+ * <p>
+ * Frames wait in a bounded queue. When the queue is full, the oldest waiting
+ * frame is dropped so that the camera always gets a buffer back and processing
+ * always works on the most recent frames. A buffer is returned to its owner
+ * only once it has been processed or dropped.
+ */
+class PreviewFramePipeline {
+
+  private static final boolean DEBUG = false;
+  private static final String TAG = "PreviewFramePipeline";
+
+  private static final long SHUTDOWN_TIMEOUT = 1000; // ms
+
+  interface Callback {
+
+    /**
+     * Called on the processing thread for every frame that was not dropped.
+     */
+    void onFrame(byte[] data);
+
+    /**
+     * Called once a buffer is no longer used, either after
+     * {@link #onFrame(byte[])} returned or because the frame was dropped.
+     */
+    void onBufferReleased(byte[] data);
+  }
+
+  private final Callback callback;
+  private final BlockingQueue<byte[]> queue;
+  private final AtomicLong capturedFrames;
+  private final AtomicLong processedFrames;
+  private final AtomicLong droppedFrames;
+
+  private ExecutorService executorService;
+
+  /**
+   * @param capacity
+   *          the number of frames that may wait for processing
+   */
+  public PreviewFramePipeline(Callback callback, int capacity) {
+    Preconditions.checkArgument(capacity > 0);
+    this.callback = callback;
+    queue = new ArrayBlockingQueue<byte[]>(capacity);
+    capturedFrames = new AtomicLong();
+    processedFrames = new AtomicLong();
+    droppedFrames = new AtomicLong();
+  }
+
+  public synchronized void start() {
+    Preconditions.checkState(executorService == null, "Already started.");
+    executorService = Executors.newSingleThreadExecutor();
+    executorService.execute(new Runnable() {
+      @Override
+      public void run() {
+        process();
+      }
+    });
+  }
+
+  private void process() {
+    while (!Thread.currentThread().isInterrupted()) {
+      byte[] data;
+      try {
+        data = queue.take();
+      } catch (InterruptedException e) {
+        return;
+      }
+      try {
+        callback.onFrame(data);
+        processedFrames.incrementAndGet();
+      } catch (RuntimeException e) {
+        Log.e(TAG, "Failed to process frame.", e);
+      } finally {
+        callback.onBufferReleased(data);
+      }
+    }
+  }
+
+  /**
+   * Queues a frame for processing. Must only be called from one thread.
+   */
+  public void offer(byte[] data) {
+    capturedFrames.incrementAndGet();
+    while (!queue.offer(data)) {
+      byte[] oldest = queue.poll();
+      if (oldest != null) {
+        droppedFrames.incrementAndGet();
+        if (DEBUG) {
+          Log.d(TAG, "Dropped a frame, " + droppedFrames.get() + " so far.");
+        }
+        callback.onBufferReleased(oldest);
+      }
+    }
+  }
+
+  /**
+   * Stops the processing thread and waits for the frame in progress, if any,
+   * to finish. Frames that are still queued are discarded without being
+   * released.
+   */
+  public synchronized void shutdown() {
+    if (executorService == null) {
+      return;
+    }
+    executorService.shutdownNow();
+    try {
+      if (!executorService.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+        Log.w(TAG, "Timed out waiting for the processing thread to stop.");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    executorService = null;
+    queue.clear();
+  }
+
+  /**
+   * @return the number of frames passed to {@link #offer(byte[])}
+   */
+  public long getCapturedFrames() {
+    return capturedFrames.get();
+  }
+
+  /**
+   * @return the number of frames that were processed successfully
+   */
+  public long getProcessedFrames() {
+    return processedFrames.get();
+  }
+
+  /**
+   * @return the number of frames that were dropped because processing fell
+   *         behind
+   */
+  public long getDroppedFrames() {
+    return droppedFrames.get();
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.camera;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A video encoder that produces a stream of compressed access units, e.g. H.264
+ * or H.265 NAL units in Annex B format.
+ */
+public interface VideoEncoder {
+
+  /**
+   * The frame can be decoded without any preceding frames.
+   */
+  int FLAG_KEY_FRAME = 1;
+
+  /**
+   * The buffer holds codec configuration data (e.g. SPS and PPS) rather than a
+   * frame.
+   */
+  int FLAG_CODEC_CONFIG = 2;
+
+  interface Listener {
+
+    /**
+     * Called for every buffer the encoder produces. The buffer is only valid
+     * for the duration of the call.
+     *
+     * @param data
+     *          the encoded data between its position and limit
+     * @param presentationTimeUs
+     *          the presentation time of the frame in microseconds
+     * @param flags
+     *          a combination of {@link #FLAG_KEY_FRAME} and
+     *          {@link #FLAG_CODEC_CONFIG}
+     */
+    void onEncodedFrame(ByteBuffer data, long presentationTimeUs, int flags);
+  }
+
+  void setListener(Listener listener);
+
+  void start();
+
+  /**
+   * Asks the encoder to produce a key frame as soon as possible.
+   */
+  void requestKeyFrame();
+
+  /**
+   * Changes the target bitrate of a running encoder.
+   */
+  void setBitrate(int bitsPerSecond);
+
+  void stop();
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.camera;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Turns the output of a {@link VideoEncoder} into self-contained packets.
+ * <p>
+ * Codec configuration data is remembered and prepended to every key frame so
+ * that a decoder can start from any key frame. Frames that precede the first
+ * key frame are dropped because they cannot be decoded.
+ */
+class VideoPacketizer implements VideoEncoder.Listener {
+
+  interface PacketListener {
+
+    /**
+     * @param data
+     *          the packet; only valid for the duration of the call
+     * @param length
+     *          the number of valid bytes in {@code data}
+     */
+    void onPacket(byte[] data, int length, long presentationTimeUs, boolean keyFrame);
+  }
+
+  private final VideoEncoder encoder;
+  private final PacketListener packetListener;
+
+  private byte[] codecConfig;
+  private byte[] packet;
+  private boolean started;
+  private boolean keyFrameRequested;
+  private long framesDropped;
+
+  public VideoPacketizer(VideoEncoder encoder, PacketListener packetListener) {
+    this.encoder = encoder;
+    this.packetListener = packetListener;
+    codecConfig = new byte[0];
+    packet = new byte[0];
+  }
+
+  /**
+   * Asks the encoder for a key frame unless one has already been requested
+   * and not yet produced. Use this when a new subscriber connects.
+   */
+  public synchronized void requestKeyFrame() {
+    if (!keyFrameRequested) {
+      keyFrameRequested = true;
+      encoder.requestKeyFrame();
+    }
+  }
+
+  @Override
+  public void onEncodedFrame(ByteBuffer data, long presentationTimeUs, int flags) {
+    int length = data.remaining();
+    if ((flags & VideoEncoder.FLAG_CODEC_CONFIG) != 0) {
+      codecConfig = new byte[length];
+      data.get(codecConfig);
+      return;
+    }
+    boolean keyFrame = (flags & VideoEncoder.FLAG_KEY_FRAME) != 0;
+    if (keyFrame) {
+      synchronized (this) {
+        keyFrameRequested = false;
+      }
+      started = true;
+    } else if (!started) {
+      framesDropped++;
+      requestKeyFrame();
+      return;
+    }
+    int packetLength = keyFrame ? codecConfig.length + length : length;
+    if (packet.length < packetLength) {
+      packet = new byte[packetLength];
+    }
+    int offset = 0;
+    if (keyFrame) {
+      System.arraycopy(codecConfig, 0, packet, 0, codecConfig.length);
+      offset = codecConfig.length;
+    }
+    data.get(packet, offset, length);
+    packetListener.onPacket(packet, packetLength, presentationTimeUs, keyFrame);
+  }
+
+  /**
+   * @return the number of frames that were dropped while waiting for the first
+   *         key frame
+   */
+  public long getFramesDropped() {
+    return framesDropped;
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Locale;
+
+/**
+ * Measures the frames drawn by a {@link XYOrthographicRenderer} over a sliding
+ * window of the most recent frames.
+ * <p>
+ * The frame time is the time spent in
+ * {@link XYOrthographicRenderer#onDrawFrame} on the CPU. All methods are thread
+ * safe.
+ */
+public class FrameStatistics {
+
+  public static final int DEFAULT_WINDOW = 60;
+
+  private final long[] startTimes;
+  private final long[] frameTimes;
+
+  private long frames;
+
+  public FrameStatistics() {
+    this(DEFAULT_WINDOW);
+  }
+
+  /**
+   * @param window
+   *          the number of recent frames the statistics are computed over
+   */
+  public FrameStatistics(int window) {
+    Preconditions.checkArgument(window > 1);
+    startTimes = new long[window];
+    frameTimes = new long[window];
+  }
+
+  /**
+   * @param startTime
+   *          the time in nanoseconds the frame started
+   * @param endTime
+   *          the time in nanoseconds the frame was finished
+   */
+  public synchronized void onFrame(long startTime, long endTime) {
+    int index = (int) (frames % startTimes.length);
+    startTimes[index] = startTime;
+    frameTimes[index] = endTime - startTime;
+    frames++;
+  }
+
+  /**
+   * @return the number of frames drawn in total
+   */
+  public synchronized long getFrames() {
+    return frames;
+  }
+
+  /**
+   * @return the frame rate over the window, or 0 before the second frame
+   */
+  public synchronized double getFramesPerSecond() {
+    int count = getWindowSize();
+    if (count < 2) {
+      return 0;
+    }
+    long newest = startTimes[(int) ((frames - 1) % startTimes.length)];
+    long oldest = startTimes[(int) ((frames - count) % startTimes.length)];
+    return newest > oldest ? (count - 1) * 1e9 / (newest - oldest) : 0;
+  }
+
+  /**
+   * @return the mean frame time over the window in nanoseconds
+   */
+  public synchronized long getMeanFrameTime() {
+    int count = getWindowSize();
+    if (count == 0) {
+      return 0;
+    }
+    long sum = 0;
+    for (int i = 0; i < count; i++) {
+      sum += frameTimes[i];
+    }
+    return sum / count;
+  }
+
+  /**
+   * @return the longest frame time over the window in nanoseconds
+   */
+  public synchronized long getMaximumFrameTime() {
+    long maximum = 0;
+    for (int i = 0; i < getWindowSize(); i++) {
+      maximum = Math.max(maximum, frameTimes[i]);
+    }
+    return maximum;
+  }
+
+  public synchronized void reset() {
+    frames = 0;
+  }
+
+  private int getWindowSize() {
+    return (int) Math.min(frames, startTimes.length);
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format(Locale.US, "%.1f fps, frame time %.2f ms (max %.2f ms), %d frames",
+        getFramesPerSecond(), getMeanFrameTime() / 1e6, getMaximumFrameTime() / 1e6, frames);
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import android.graphics.Typeface;
+
+import javax.microedition.khronos.opengles.GL10;
+
+import uk.co.blogspot.fractiousg.texample.GLText;
+
+/**
+ * Draws {@link FrameStatistics} as text in the top left corner of the view.
+ */
+class FrameStatisticsOverlay {
+
+  private static final Color COLOR = Color.fromHexAndAlpha("000000", 0.8f);
+  private static final int TEXT_SIZE = 24; // px
+  private static final float MARGIN = 8; // px
+
+  private final GLText glText;
+
+  /**
+   * Must be created on the render thread of the current OpenGL context.
+   */
+  FrameStatisticsOverlay(VisualizationView view, GL10 gl) {
+    glText = new GLText(gl, view.getContext().getAssets());
+    glText.load(Typeface.MONOSPACE, TEXT_SIZE, 2, 2);
+  }
+
+  void draw(GL10 gl, Viewport viewport, FrameStatistics frameStatistics) {
+    // The projection is in pixels with the origin at the center of the view.
+    gl.glLoadIdentity();
+    float x = -viewport.getWidth() / 2.0f + MARGIN;
+    float y = viewport.getHeight() / 2.0f - MARGIN - glText.getCharHeight();
+    gl.glEnable(GL10.GL_TEXTURE_2D);
+    glText.begin(COLOR.getRed(), COLOR.getGreen(), COLOR.getBlue(), COLOR.getAlpha());
+    glText.draw(frameStatistics.toString(), x, y);
+    glText.end();
+    gl.glDisable(GL10.GL_TEXTURE_2D);
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+/**
+ * A mutable rectangle of pixels. The right and bottom edges are exclusive.
+ */
+final class PixelRegion {
+
+  private int left;
+  private int top;
+  private int right;
+  private int bottom;
+
+  boolean isEmpty() {
+    return right <= left || bottom <= top;
+  }
+
+  void setEmpty() {
+    left = 0;
+    top = 0;
+    right = 0;
+    bottom = 0;
+  }
+
+  void set(int x, int y, int width, int height) {
+    left = x;
+    top = y;
+    right = x + width;
+    bottom = y + height;
+  }
+
+  void set(PixelRegion other) {
+    left = other.left;
+    top = other.top;
+    right = other.right;
+    bottom = other.bottom;
+  }
+
+  /**
+   * Grows this region to the bounding box of itself and {@code other}.
+   */
+  void union(PixelRegion other) {
+    union(other.left, other.top, other.right - other.left, other.bottom - other.top);
+  }
+
+  void union(int x, int y, int width, int height) {
+    if (width <= 0 || height <= 0) {
+      return;
+    }
+    if (isEmpty()) {
+      set(x, y, width, height);
+      return;
+    }
+    left = Math.min(left, x);
+    top = Math.min(top, y);
+    right = Math.max(right, x + width);
+    bottom = Math.max(bottom, y + height);
+  }
+
+  int getLeft() {
+    return left;
+  }
+
+  int getTop() {
+    return top;
+  }
+
+  int getRight() {
+    return right;
+  }
+
+  int getBottom() {
+    return bottom;
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Limits how often a {@link VisualizationView} renders.
+ * <p>
+ * Render requests that arrive sooner than the minimum frame period after the
+ * last frame are deferred to the end of that period, and all requests that
+ * arrive in the meantime are merged into the deferred one.
+ */
+class RenderThrottle {
+
+  private long minimumPeriod;
+  private long lastFrameTime;
+  private boolean started;
+  private boolean pending;
+
+  /**
+   * @param minimumPeriod
+   *          the minimum time between frames in nanoseconds, or 0 for no limit
+   */
+  synchronized void setMinimumPeriod(long minimumPeriod) {
+    Preconditions.checkArgument(minimumPeriod >= 0);
+    this.minimumPeriod = minimumPeriod;
+  }
+
+  synchronized long getMinimumPeriod() {
+    return minimumPeriod;
+  }
+
+  /**
+   * @return how long to wait in nanoseconds before a frame may start at
+   *         {@code time}, 0 if it may start now
+   */
+  synchronized long getDelay(long time) {
+    if (minimumPeriod == 0 || !started) {
+      return 0;
+    }
+    return Math.max(0, lastFrameTime + minimumPeriod - time);
+  }
+
+  /**
+   * Called when a frame is requested at {@code time}.
+   *
+   * @return 0 if the frame should be requested now, the delay in nanoseconds
+   *         after which it should be requested, or -1 if an earlier request
+   *         is already deferred and covers this one
+   */
+  synchronized long onRequest(long time) {
+    if (pending) {
+      return -1;
+    }
+    long delay = getDelay(time);
+    if (delay > 0) {
+      pending = true;
+    }
+    return delay;
+  }
+
+  /**
+   * Called when a deferred request is finally made.
+   */
+  synchronized void onDeferredRequest() {
+    pending = false;
+  }
+
+  /**
+   * Called when a frame starts at {@code time}.
+   */
+  synchronized void onFrame(long time) {
+    lastFrameTime = time;
+    started = true;
+    pending = false;
+  }
+}
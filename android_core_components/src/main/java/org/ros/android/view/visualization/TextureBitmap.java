@@ -18,18 +18,34 @@ package org.ros.android.view.visualization;
 
 import com.google.common.base.Preconditions;
 
-import android.graphics.Bitmap;
-import android.opengl.GLUtils;
-
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.ros.rosjava_geometry.Transform;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
 
 import javax.microedition.khronos.opengles.GL10;
 
 /**
  * Renders a texture.
+ * <p>
+ * Pixels are written straight into one of two direct buffers in the
+ * {@link Format} of the texture while the other one may be uploaded by the
+ * render thread. After the first upload, updates of a part of the texture (see
+ * {@link #updateRegion(int[], int, int, int, int, int, int)}) only upload the
+ * rows that changed. Updates must not be made from more than one thread at a
+ * time.
+ * <p>
+ * Updates are visible immediately, except for the {@code prepareRegion}
+ * methods, which let several textures that are drawn together switch to new
+ * content at once through {@link #swap()}.
+ * <p>
+ * The texture is as large as the smallest power of two that fits the size it
+ * was created with, so a small texture does not cost as much memory as a large
+ * one.
  * 
  * @author moesenle@google.com (Lorenz Moesenlechner)
  * @author damonkohler@google.com (Damon Kohler)
@@ -46,21 +62,184 @@ public class TextureBitmap implements OpenGlDrawable {
    */
   public final static int STRIDE = 1024;
 
-  private final int[] pixels;
+  private static final boolean LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+  /**
+   * The formats a texture can be stored in.
+   */
+  public enum Format {
+
+    /**
+     * 8 bits per channel with alpha. This is the default.
+     */
+    RGBA_8888(GL10.GL_RGBA, GL10.GL_UNSIGNED_BYTE, 4),
+
+    /**
+     * 16 bits per pixel without alpha, for opaque textures.
+     */
+    RGB_565(GL10.GL_RGB, GL10.GL_UNSIGNED_SHORT_5_6_5, 2),
+
+    /**
+     * 8 bits of gray and 8 bits of alpha, for textures without colors like
+     * maps. Colors are converted to their luminance.
+     */
+    LUMINANCE_ALPHA(GL10.GL_LUMINANCE_ALPHA, GL10.GL_UNSIGNED_BYTE, 2);
+
+    private final int format;
+    private final int type;
+    private final int bytesPerPixel;
+
+    private Format(int format, int type, int bytesPerPixel) {
+      this.format = format;
+      this.type = type;
+      this.bytesPerPixel = bytesPerPixel;
+    }
+
+    /**
+     * @return the pixel as it is stored in an {@link IntBuffer} or, for
+     *         formats of two bytes per pixel, a {@link ShortBuffer} of native
+     *         byte order
+     */
+    int encode(int argb) {
+      int alpha = argb >>> 24;
+      int red = (argb >> 16) & 0xff;
+      int green = (argb >> 8) & 0xff;
+      int blue = argb & 0xff;
+      switch (this) {
+        case RGB_565:
+          return ((red >> 3) << 11) | ((green >> 2) << 5) | (blue >> 3);
+        case LUMINANCE_ALPHA:
+          int luminance = (red * 77 + green * 150 + blue * 29) >> 8;
+          return LITTLE_ENDIAN ? (alpha << 8) | luminance : (luminance << 8) | alpha;
+        default:
+          return LITTLE_ENDIAN ? (alpha << 24) | (blue << 16) | (green << 8) | red
+              : (red << 24) | (green << 16) | (blue << 8) | alpha;
+      }
+    }
+  }
+
+  /**
+   * A direct buffer with views for the thread that writes pixels. The render
+   * thread only uses {@link #bytes}, so the positions of the views are never
+   * changed concurrently.
+   */
+  private static class PixelBuffer {
+
+    private final ByteBuffer bytes;
+    private final IntBuffer ints;
+    private final ShortBuffer shorts;
+
+    PixelBuffer(int pixels, Format format) {
+      bytes = ByteBuffer.allocateDirect(pixels * format.bytesPerPixel);
+      bytes.order(ByteOrder.nativeOrder());
+      ints = format.bytesPerPixel == 4 ? bytes.asIntBuffer() : null;
+      shorts = format.bytesPerPixel == 2 ? bytes.asShortBuffer() : null;
+    }
+
+    /**
+     * Writes encoded pixels.
+     */
+    void put(int index, int[] pixels, short[] scratch, int count) {
+      if (ints != null) {
+        ints.position(index);
+        ints.put(pixels, 0, count);
+      } else {
+        for (int i = 0; i < count; i++) {
+          scratch[i] = (short) pixels[i];
+        }
+        shorts.position(index);
+        shorts.put(scratch, 0, count);
+      }
+    }
+
+    /**
+     * Copies pixels from the same position of another buffer.
+     */
+    void copy(PixelBuffer source, int index, int count) {
+      if (ints != null) {
+        source.ints.limit(index + count).position(index);
+        ints.position(index);
+        ints.put(source.ints);
+        source.ints.clear();
+      } else {
+        source.shorts.limit(index + count).position(index);
+        shorts.position(index);
+        shorts.put(source.shorts);
+        source.shorts.clear();
+      }
+    }
+  }
+
+  private final Format format;
+
+  /**
+   * The size of the content.
+   */
+  private final int width;
+  private final int height;
+
+  /**
+   * The size of the texture, which is a power of two.
+   */
+  private final int textureWidth;
+  private final int textureHeight;
+
+  private final int[] row;
+  private final short[] shortRow;
   private final FloatBuffer surfaceVertices;
   private final FloatBuffer textureVertices;
   private final Object mutex;
 
-  private Bitmap bitmapFront;
-  private Bitmap bitmapBack;
+  /**
+   * The region of {@link #textureBack} that is missing the pixels of the last
+   * swap.
+   */
+  private final PixelRegion staleRegion;
+
+  /**
+   * The region of {@link #textureBack} that was prepared but not swapped yet.
+   */
+  private final PixelRegion pendingRegion;
+
+  /**
+   * The region of {@link #textureFront} that has not been uploaded yet.
+   */
+  private final PixelRegion uploadRegion;
+
+  private PixelBuffer textureFront;
+  private PixelBuffer textureBack;
+  private int[] palette;
+  private int[] encodedPalette;
   private int[] handle;
   private Transform origin;
   private double scaledWidth;
   private double scaledHeight;
   private boolean reload;
 
+  /**
+   * Creates a texture of the maximum size in {@link Format#RGBA_8888}.
+   */
   public TextureBitmap() {
-    pixels = new int[HEIGHT * STRIDE];
+    this(STRIDE, HEIGHT, Format.RGBA_8888);
+  }
+
+  /**
+   * @param width
+   *          the width of the content, at most {@link #STRIDE}
+   * @param height
+   *          the height of the content, at most {@link #HEIGHT}
+   */
+  public TextureBitmap(int width, int height, Format format) {
+    Preconditions.checkArgument(width > 0 && width <= STRIDE);
+    Preconditions.checkArgument(height > 0 && height <= HEIGHT);
+    Preconditions.checkNotNull(format);
+    this.width = width;
+    this.height = height;
+    this.format = format;
+    textureWidth = getTextureSize(width);
+    textureHeight = getTextureSize(height);
+    row = new int[width];
+    shortRow = new short[width];
     surfaceVertices = Vertices.toFloatBuffer(new float[] {
         // Triangle strip
         0.0f, 0.0f, 0.0f, // Bottom left
@@ -68,74 +247,227 @@ public class TextureBitmap implements OpenGlDrawable {
         0.0f, 1.0f, 0.0f, // Top left
         1.0f, 1.0f, 0.0f, // Top right
     });
+    // Only the part of the texture that holds content is drawn.
+    float right = width / (float) textureWidth;
+    float top = height / (float) textureHeight;
     textureVertices = Vertices.toFloatBuffer(new float[] {
         // Triangle strip
         0.0f, 0.0f, // Bottom left
-        1.0f, 0.0f, // Bottom right
-        0.0f, 1.0f, // Top left
-        1.0f, 1.0f, // Top right
+        right, 0.0f, // Bottom right
+        0.0f, top, // Top left
+        right, top, // Top right
     });
-    bitmapFront = Bitmap.createBitmap(STRIDE, HEIGHT, Bitmap.Config.ARGB_8888);
-    bitmapBack = Bitmap.createBitmap(STRIDE, HEIGHT, Bitmap.Config.ARGB_8888);
+    textureFront = new PixelBuffer(textureWidth * textureHeight, format);
+    textureBack = new PixelBuffer(textureWidth * textureHeight, format);
     mutex = new Object();
+    staleRegion = new PixelRegion();
+    pendingRegion = new PixelRegion();
+    uploadRegion = new PixelRegion();
     reload = true;
   }
 
+  /**
+   * @return the smallest power of two that is at least {@code size}, and at
+   *         least 2 so that rows of two byte pixels are aligned to four bytes
+   */
+  private static int getTextureSize(int size) {
+    int textureSize = 2;
+    while (textureSize < size) {
+      textureSize <<= 1;
+    }
+    return textureSize;
+  }
+
+  public Format getFormat() {
+    return format;
+  }
+
   public void updateFromPixelArray(int[] pixels, int stride, float resolution, Transform origin,
       int fillColor) {
     Preconditions.checkArgument(pixels.length % stride == 0);
     int height = pixels.length / stride;
-    for (int y = 0; y < HEIGHT; y++) {
-      for (int x = 0; x < STRIDE; x++) {
+    beginUpdate();
+    for (int y = 0; y < this.height; y++) {
+      for (int x = 0; x < width; x++) {
         // If the pixel is within the bounds of the specified pixel array then
         // we copy the specified value. Otherwise, we use the specified fill
         // color.
-        int sourceIndex = y * stride + x;
-        int targetIndex = y * STRIDE + x;
         if (x < stride && y < height) {
-          this.pixels[targetIndex] = pixels[sourceIndex];
+          row[x] = format.encode(pixels[y * stride + x]);
         } else {
-          this.pixels[targetIndex] = fillColor;
+          row[x] = format.encode(fillColor);
         }
       }
+      textureBack.put(y * textureWidth, row, shortRow, width);
     }
-    update(origin, stride, resolution, fillColor);
+    update(origin, resolution);
   }
 
   public void updateFromPixelBuffer(ChannelBuffer pixels, int stride, float resolution,
       Transform origin, int fillColor) {
     Preconditions.checkNotNull(pixels);
     Preconditions.checkNotNull(origin);
-    for (int y = 0, i = 0; y < HEIGHT; y++) {
-      for (int x = 0; x < STRIDE; x++, i++) {
+    beginUpdate();
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
         // If the pixel is within the bounds of the specified pixel array then
         // we copy the specified value. Otherwise, we use the specified fill
         // color.
         if (x < stride && pixels.readable()) {
-          this.pixels[i] = pixels.readInt();
+          row[x] = format.encode(pixels.readInt());
         } else {
-          this.pixels[i] = fillColor;
+          row[x] = format.encode(fillColor);
         }
       }
+      textureBack.put(y * textureWidth, row, shortRow, width);
+    }
+    update(origin, resolution);
+  }
+
+  /**
+   * Sets where the texture is drawn for textures that are only filled through
+   * {@link #updateRegion} or the {@code prepareRegion} methods. The rest of
+   * such a texture is transparent, or black for {@link Format#RGB_565}.
+   */
+  public void setOrigin(Transform origin, float resolution) {
+    Preconditions.checkNotNull(origin);
+    this.origin = origin;
+    scaledWidth = width * resolution;
+    scaledHeight = height * resolution;
+  }
+
+  /**
+   * Replaces a rectangle of a texture whose origin was set before.
+   * 
+   * @param pixels
+   *          ARGB pixels of the rectangle
+   * @param offset
+   *          the index of the top left pixel in {@code pixels}
+   * @param stride
+   *          the distance between rows in {@code pixels}
+   * @param x
+   *          the left edge of the rectangle in the texture
+   * @param y
+   *          the top edge of the rectangle in the texture
+   */
+  public void updateRegion(int[] pixels, int offset, int stride, int x, int y, int width,
+      int height) {
+    prepareRegion(pixels, offset, stride, x, y, width, height);
+    swap();
+  }
+
+  /**
+   * Like {@link #updateRegion(int[], int, int, int, int, int, int)}, but the
+   * new pixels are not drawn before {@link #swap()} is called.
+   */
+  public void prepareRegion(int[] pixels, int offset, int stride, int x, int y, int width,
+      int height) {
+    checkRegion(x, y, width, height);
+    beginUpdate();
+    for (int i = 0; i < height; i++) {
+      int sourceIndex = offset + i * stride;
+      for (int j = 0; j < width; j++) {
+        row[j] = format.encode(pixels[sourceIndex + j]);
+      }
+      textureBack.put((y + i) * textureWidth + x, row, shortRow, width);
     }
-    update(origin, stride, resolution, fillColor);
+    pendingRegion.union(x, y, width, height);
+  }
+
+  /**
+   * Like {@link #prepareRegion(int[], int, int, int, int, int, int)}, but the
+   * pixels are given as indices into a palette, such as the cells of an
+   * occupancy grid.
+   * 
+   * @param values
+   *          the palette indices of the rectangle, read as unsigned bytes
+   * @param palette
+   *          256 ARGB colors, which are converted into the {@link Format} of
+   *          the texture once for as long as the same array is passed
+   */
+  public void prepareRegion(byte[] values, int offset, int stride, int x, int y, int width,
+      int height, int[] palette) {
+    Preconditions.checkArgument(palette.length == 256);
+    checkRegion(x, y, width, height);
+    if (palette != this.palette) {
+      encodedPalette = new int[palette.length];
+      for (int i = 0; i < palette.length; i++) {
+        encodedPalette[i] = format.encode(palette[i]);
+      }
+      this.palette = palette;
+    }
+    beginUpdate();
+    for (int i = 0; i < height; i++) {
+      int sourceIndex = offset + i * stride;
+      for (int j = 0; j < width; j++) {
+        row[j] = encodedPalette[values[sourceIndex + j] & 0xff];
+      }
+      textureBack.put((y + i) * textureWidth + x, row, shortRow, width);
+    }
+    pendingRegion.union(x, y, width, height);
   }
 
   public void clearHandle() {
     handle = null;
   }
 
-  private void update(Transform origin, int stride, float resolution, int fillColor) {
-    this.origin = origin;
-    scaledWidth = STRIDE * resolution;
-    scaledHeight = HEIGHT * resolution;
-    bitmapBack.setPixels(pixels, 0, STRIDE, 0, 0, STRIDE, HEIGHT);
+  /**
+   * Deletes the texture from the current GL context. It is uploaded again if
+   * it is drawn afterwards. Must be called from the render thread.
+   */
+  public void delete(GL10 gl) {
+    if (handle != null) {
+      gl.glDeleteTextures(1, handle, 0);
+      handle = null;
+    }
+  }
+
+  private void checkRegion(int x, int y, int width, int height) {
+    Preconditions.checkState(origin != null, "The origin of the texture has not been set.");
+    Preconditions.checkArgument(x >= 0 && y >= 0 && width >= 0 && height >= 0);
+    Preconditions.checkArgument(x + width <= this.width && y + height <= this.height);
+  }
+
+  private void update(Transform origin, float resolution) {
+    setOrigin(origin, resolution);
+    pendingRegion.union(0, 0, width, height);
+    swap();
+  }
+
+  /**
+   * Copies the pixels of the last swap into the back buffer before it is
+   * written to.
+   */
+  private void beginUpdate() {
+    if (staleRegion.isEmpty()) {
+      return;
+    }
+    int left = staleRegion.getLeft();
+    int count = staleRegion.getRight() - left;
+    for (int y = staleRegion.getTop(); y < staleRegion.getBottom(); y++) {
+      // The render thread may read the front buffer at the same time, but
+      // nothing writes to it.
+      textureBack.copy(textureFront, y * textureWidth + left, count);
+    }
+    staleRegion.setEmpty();
+  }
+
+  /**
+   * Makes the pixels of previous calls to the {@code prepareRegion} methods
+   * visible.
+   */
+  public void swap() {
+    if (pendingRegion.isEmpty()) {
+      return;
+    }
     synchronized (mutex) {
-      Bitmap tmp = bitmapFront;
-      bitmapFront = bitmapBack;
-      bitmapBack = tmp;
-      reload = true;
+      PixelBuffer tmp = textureFront;
+      textureFront = textureBack;
+      textureBack = tmp;
+      uploadRegion.union(pendingRegion);
     }
+    staleRegion.set(pendingRegion);
+    pendingRegion.setEmpty();
   }
 
   private void bind(GL10 gl) {
@@ -148,10 +480,21 @@ public class TextureBitmap implements OpenGlDrawable {
     gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MIN_FILTER, GL10.GL_NEAREST);
     gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MAG_FILTER, GL10.GL_NEAREST);
     synchronized (mutex) {
+      ByteBuffer pixels = textureFront.bytes;
       if (reload) {
-        GLUtils.texImage2D(GL10.GL_TEXTURE_2D, 0, bitmapFront, 0);
+        gl.glTexImage2D(GL10.GL_TEXTURE_2D, 0, format.format, textureWidth, textureHeight, 0,
+            format.format, format.type, pixels);
         reload = false;
+      } else if (!uploadRegion.isEmpty()) {
+        // OpenGL ES has no GL_UNPACK_ROW_LENGTH, so only whole rows are
+        // contiguous in the buffer.
+        int top = uploadRegion.getTop();
+        pixels.position(top * textureWidth * format.bytesPerPixel);
+        gl.glTexSubImage2D(GL10.GL_TEXTURE_2D, 0, 0, top, textureWidth, uploadRegion.getBottom()
+            - top, format.format, format.type, pixels);
+        pixels.position(0);
       }
+      uploadRegion.setEmpty();
     }
   }
 
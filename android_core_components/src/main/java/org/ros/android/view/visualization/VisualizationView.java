@@ -40,8 +40,16 @@ import org.ros.rosjava_geometry.FrameTransformTree;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * Renders {@link Layer}s with OpenGL.
+ * <p>
+ * By default, the view redraws continuously. In render on demand mode (see
+ * {@link #setRenderOnDemand(boolean)}), it only draws a frame after a layer,
+ * the camera or a transform changed and called {@link #requestRender()}.
+ * Either mode can be capped with {@link #setMaximumFrameRate(double)}.
+ *
  * @author damonkohler@google.com (Damon Kohler)
  * @author moesenle@google.com (Lorenz Moesenlechner)
  */
@@ -52,10 +60,21 @@ public class VisualizationView extends GLSurfaceView implements NodeMain {
   private final Object mutex = new Object();
   private final FrameTransformTree frameTransformTree = new FrameTransformTree();
   private final XYOrthographicCamera camera = new XYOrthographicCamera(frameTransformTree);
+  private final RenderThrottle renderThrottle = new RenderThrottle();
+  private final FrameStatistics frameStatistics = new FrameStatistics();
+  private final Runnable deferredRender = new Runnable() {
+    @Override
+    public void run() {
+      renderThrottle.onDeferredRequest();
+      VisualizationView.super.requestRender();
+    }
+  };
 
   private List<Layer> layers;
   private XYOrthographicRenderer renderer;
   private ConnectedNode connectedNode;
+  private volatile boolean renderOnDemand;
+  private volatile boolean frameStatisticsVisible;
 
   public VisualizationView(Context context) {
     super(context);
@@ -81,6 +100,85 @@ public class VisualizationView extends GLSurfaceView implements NodeMain {
     getHolder().setFormat(PixelFormat.TRANSLUCENT);
     renderer = new XYOrthographicRenderer(this);
     setRenderer(renderer);
+    if (renderOnDemand) {
+      setRenderMode(RENDERMODE_WHEN_DIRTY);
+    }
+    camera.setListener(new Runnable() {
+      @Override
+      public void run() {
+        requestRender();
+      }
+    });
+  }
+
+  /**
+   * @param renderOnDemand
+   *          {@code true} to draw frames only when {@link #requestRender()} is
+   *          called, {@code false} to draw continuously
+   */
+  public void setRenderOnDemand(boolean renderOnDemand) {
+    this.renderOnDemand = renderOnDemand;
+    if (renderer != null) {
+      setRenderMode(renderOnDemand ? RENDERMODE_WHEN_DIRTY : RENDERMODE_CONTINUOUSLY);
+    }
+  }
+
+  public boolean isRenderOnDemand() {
+    return renderOnDemand;
+  }
+
+  /**
+   * @param framesPerSecond
+   *          the maximum number of frames to draw per second, or 0 for no
+   *          limit
+   */
+  public void setMaximumFrameRate(double framesPerSecond) {
+    Preconditions.checkArgument(framesPerSecond >= 0);
+    renderThrottle.setMinimumPeriod(framesPerSecond > 0 ? (long) (1e9 / framesPerSecond) : 0);
+  }
+
+  /**
+   * Shows or hides the {@link FrameStatistics} in the top left corner of the
+   * view.
+   */
+  public void setFrameStatisticsVisible(boolean visible) {
+    frameStatisticsVisible = visible;
+    requestRender();
+  }
+
+  public boolean isFrameStatisticsVisible() {
+    return frameStatisticsVisible;
+  }
+
+  public FrameStatistics getFrameStatistics() {
+    return frameStatistics;
+  }
+
+  RenderThrottle getRenderThrottle() {
+    return renderThrottle;
+  }
+
+  /**
+   * Requests a new frame. Layers call this whenever their data changed. In
+   * render on demand mode, requests that would exceed the maximum frame rate
+   * are deferred and merged.
+   */
+  @Override
+  public void requestRender() {
+    if (renderer == null) {
+      // There is no render thread before onCreate().
+      return;
+    }
+    if (!renderOnDemand) {
+      super.requestRender();
+      return;
+    }
+    long delay = renderThrottle.onRequest(System.nanoTime());
+    if (delay == 0) {
+      super.requestRender();
+    } else if (delay > 0) {
+      postDelayed(deferredRender, TimeUnit.NANOSECONDS.toMillis(delay + 999999));
+    }
   }
 
   /**
@@ -144,6 +242,7 @@ public class VisualizationView extends GLSurfaceView implements NodeMain {
             frameTransformTree.update(transform);
           }
         }
+        requestRender();
       }
     });
     final Subscriber<tf2_msgs.TFMessage> tfStaticSubscriber =
@@ -156,6 +255,7 @@ public class VisualizationView extends GLSurfaceView implements NodeMain {
             frameTransformTree.update(transform);
           }
         }
+        requestRender();
       }
     });
   }
@@ -62,6 +62,7 @@ public class XYOrthographicCamera {
   private final Object mutex;
 
   private Viewport viewport;
+  private volatile Runnable listener;
 
   /**
    * Transforms from camera frame (our data frame) to the ROS frame (our target
@@ -87,6 +88,21 @@ public class XYOrthographicCamera {
     cameraToRosTransform = Transform.identity();
   }
 
+  /**
+   * @param listener
+   *          run whenever the camera moves, e.g. to request a new frame
+   */
+  void setListener(Runnable listener) {
+    this.listener = listener;
+  }
+
+  private void signalChanged() {
+    Runnable listener = this.listener;
+    if (listener != null) {
+      listener.run();
+    }
+  }
+
   public void apply(GL10 gl) {
     synchronized (mutex) {
       OpenGlTransform.apply(gl, ROS_TO_SCREEN_TRANSFORM);
@@ -118,6 +134,7 @@ public class XYOrthographicCamera {
           ROS_TO_SCREEN_TRANSFORM.invert().multiply(Transform.translation(deltaX, deltaY, 0))
               .multiply(getCameraToScreenTransform());
     }
+    signalChanged();
   }
 
   private Transform getCameraToScreenTransform() {
@@ -143,6 +160,7 @@ public class XYOrthographicCamera {
           cameraToRosTransform.multiply(focus).multiply(Transform.zRotation(deltaAngle))
               .multiply(focus.invert());
     }
+    signalChanged();
   }
 
   /**
@@ -160,6 +178,7 @@ public class XYOrthographicCamera {
       cameraToRosTransform =
           cameraToRosTransform.multiply(focus).scale(zoom).multiply(focus.invert());
     }
+    signalChanged();
   }
 
   /**
@@ -216,6 +235,7 @@ public class XYOrthographicCamera {
       }
       this.frame = frame;
     }
+    signalChanged();
   }
 
   /**
@@ -238,6 +258,7 @@ public class XYOrthographicCamera {
       resetTransform();
       cameraToRosTransform = cameraToRosTransform.scale(scale / cameraToRosTransform.getScale());
     }
+    signalChanged();
   }
 
   /**
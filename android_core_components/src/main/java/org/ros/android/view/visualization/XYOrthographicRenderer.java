@@ -21,6 +21,8 @@ import org.ros.android.view.visualization.layer.Layer;
 import org.ros.android.view.visualization.layer.TfLayer;
 import org.ros.namespace.GraphName;
 
+import java.util.concurrent.TimeUnit;
+
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
@@ -36,13 +38,16 @@ public class XYOrthographicRenderer implements GLSurfaceView.Renderer {
 
   private final VisualizationView view;
 
+  private Viewport viewport;
+  private FrameStatisticsOverlay frameStatisticsOverlay;
+
   public XYOrthographicRenderer(VisualizationView view) {
     this.view = view;
   }
 
   @Override
   public void onSurfaceChanged(GL10 gl, int width, int height) {
-    Viewport viewport = new Viewport(width, height);
+    viewport = new Viewport(width, height);
     viewport.apply(gl);
     view.getCamera().setViewport(viewport);
     gl.glMatrixMode(GL10.GL_MODELVIEW);
@@ -58,10 +63,36 @@ public class XYOrthographicRenderer implements GLSurfaceView.Renderer {
 
   @Override
   public void onDrawFrame(GL10 gl) {
+    RenderThrottle renderThrottle = view.getRenderThrottle();
+    if (!view.isRenderOnDemand()) {
+      // Requests are throttled in render on demand mode. Continuous rendering
+      // is capped here instead.
+      waitNanos(renderThrottle.getDelay(System.nanoTime()));
+    }
+    long startTime = System.nanoTime();
+    renderThrottle.onFrame(startTime);
     gl.glClear(GL10.GL_COLOR_BUFFER_BIT);
     gl.glLoadIdentity();
     view.getCamera().apply(gl);
     drawLayers(gl);
+    FrameStatistics frameStatistics = view.getFrameStatistics();
+    if (view.isFrameStatisticsVisible()) {
+      if (frameStatisticsOverlay == null) {
+        frameStatisticsOverlay = new FrameStatisticsOverlay(view, gl);
+      }
+      frameStatisticsOverlay.draw(gl, viewport, frameStatistics);
+    }
+    frameStatistics.onFrame(startTime, System.nanoTime());
+  }
+
+  private static void waitNanos(long nanos) {
+    if (nanos > 0) {
+      try {
+        TimeUnit.NANOSECONDS.sleep(nanos);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
   }
 
   private void drawLayers(GL10 gl) {
@@ -81,6 +112,8 @@ public class XYOrthographicRenderer implements GLSurfaceView.Renderer {
 
   @Override
   public void onSurfaceCreated(GL10 gl, EGLConfig config) {
+    // The font texture of the overlay belonged to the previous context.
+    frameStatisticsOverlay = null;
     for (Layer layer : view.getLayers()) {
       layer.onSurfaceCreated(view, gl, config);
     }
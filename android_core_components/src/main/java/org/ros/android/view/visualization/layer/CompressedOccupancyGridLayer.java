@@ -80,12 +80,13 @@ public class CompressedOccupancyGridLayer extends SubscriberLayer<nav_msgs.Occup
   }
 
   @Override
-  public void onStart(VisualizationView view, ConnectedNode connectedNode) {
+  public void onStart(final VisualizationView view, ConnectedNode connectedNode) {
     super.onStart(view, connectedNode);
     getSubscriber().addMessageListener(new MessageListener<nav_msgs.OccupancyGrid>() {
       @Override
       public void onNewMessage(nav_msgs.OccupancyGrid message) {
         update(message);
+        view.requestRender();
       }
     });
   }
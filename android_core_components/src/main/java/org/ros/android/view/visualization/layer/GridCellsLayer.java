@@ -92,6 +92,7 @@ public class GridCellsLayer extends SubscriberLayer<nav_msgs.GridCells> implemen
             message = data;
             ready = true;
             lock.unlock();
+            view.requestRender();
           }
         }
       }
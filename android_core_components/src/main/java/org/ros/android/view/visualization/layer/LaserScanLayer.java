@@ -73,7 +73,7 @@ public class LaserScanLayer extends SubscriberLayer<sensor_msgs.LaserScan> imple
   }
 
   @Override
-  public void onStart(VisualizationView view, ConnectedNode connectedNode) {
+  public void onStart(final VisualizationView view, ConnectedNode connectedNode) {
     super.onStart(view, connectedNode);
     Subscriber<LaserScan> subscriber = getSubscriber();
     subscriber.addMessageListener(new MessageListener<LaserScan>() {
@@ -81,11 +81,12 @@ public class LaserScanLayer extends SubscriberLayer<sensor_msgs.LaserScan> imple
       public void onNewMessage(LaserScan laserScan) {
         frame = GraphName.of(laserScan.getHeader().getFrameId());
         updateVertexBuffer(laserScan, LASER_SCAN_STRIDE);
+        view.requestRender();
       }
     });
   }
 
-  private void updateVertexBuffer(LaserScan laserScan, int stride) {
+  void updateVertexBuffer(LaserScan laserScan, int stride) {
     int vertexCount = 0;
     float[] ranges = laserScan.getRanges();
     int size = ((ranges.length / stride) + 2) * 3;
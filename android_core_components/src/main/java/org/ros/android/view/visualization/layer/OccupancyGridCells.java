@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization.layer;
+
+import com.google.common.base.Preconditions;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * The last known cells of one tile of an occupancy grid.
+ * <p>
+ * Updates are compared row by row against the known cells, so that only the
+ * rectangle of cells that actually changed has to be converted and uploaded
+ * again.
+ */
+class OccupancyGridCells {
+
+  private final int width;
+  private final int height;
+  private final byte[] cells;
+  private final byte[] row;
+
+  private int changedLeft;
+  private int changedTop;
+  private int changedRight;
+  private int changedBottom;
+
+  OccupancyGridCells(int width, int height) {
+    Preconditions.checkArgument(width > 0 && height > 0);
+    this.width = width;
+    this.height = height;
+    cells = new byte[width * height];
+    row = new byte[width];
+  }
+
+  /**
+   * Reads the cells that lie within this tile from a rectangle of cells. The
+   * reader index of {@code data} is not changed.
+   * 
+   * @param data
+   *          the cells of the rectangle in row-major order, starting at the
+   *          reader index
+   * @param x
+   *          the left edge of the rectangle relative to this tile, may be
+   *          negative
+   * @param y
+   *          the top edge of the rectangle relative to this tile, may be
+   *          negative
+   * @return {@code true} if any cell of this tile changed
+   */
+  boolean update(ChannelBuffer data, int x, int y, int dataWidth, int dataHeight) {
+    changedLeft = width;
+    changedTop = height;
+    changedRight = 0;
+    changedBottom = 0;
+    int left = Math.max(0, x);
+    int top = Math.max(0, y);
+    int right = Math.min(width, x + dataWidth);
+    int bottom = Math.min(height, y + dataHeight);
+    if (left >= right || top >= bottom) {
+      return false;
+    }
+    Preconditions.checkArgument(data.readableBytes() >= dataWidth * dataHeight);
+    int count = right - left;
+    for (int i = top; i < bottom; i++) {
+      data.getBytes(data.readerIndex() + (i - y) * dataWidth + left - x, row, 0, count);
+      int offset = i * width + left;
+      int first = 0;
+      while (first < count && row[first] == cells[offset + first]) {
+        first++;
+      }
+      if (first == count) {
+        continue;
+      }
+      int last = count - 1;
+      while (row[last] == cells[offset + last]) {
+        last--;
+      }
+      System.arraycopy(row, first, cells, offset + first, last - first + 1);
+      changedLeft = Math.min(changedLeft, left + first);
+      changedRight = Math.max(changedRight, left + last + 1);
+      changedTop = Math.min(changedTop, i);
+      changedBottom = i + 1;
+    }
+    return hasChanged();
+  }
+
+  /**
+   * @return {@code true} if the last update changed any cell
+   */
+  boolean hasChanged() {
+    return changedLeft < changedRight;
+  }
+
+  int getWidth() {
+    return width;
+  }
+
+  int getHeight() {
+    return height;
+  }
+
+  byte get(int x, int y) {
+    return cells[y * width + x];
+  }
+
+  /**
+   * @return the cells in row-major order with a stride of {@link #getWidth()}
+   */
+  byte[] getCells() {
+    return cells;
+  }
+
+  int getChangedLeft() {
+    return changedLeft;
+  }
+
+  int getChangedTop() {
+    return changedTop;
+  }
+
+  int getChangedRight() {
+    return changedRight;
+  }
+
+  int getChangedBottom() {
+    return changedBottom;
+  }
+}
@@ -18,23 +18,68 @@ package org.ros.android.view.visualization.layer;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.ros.android.view.visualization.TextureBitmap;
+import org.ros.android.view.visualization.Viewport;
 import org.ros.android.view.visualization.VisualizationView;
-import org.ros.internal.message.MessageBuffers;
+import org.ros.android.view.visualization.XYOrthographicCamera;
+import org.ros.exception.RosRuntimeException;
 import org.ros.message.MessageListener;
 import org.ros.namespace.GraphName;
 import org.ros.node.ConnectedNode;
+import org.ros.node.Node;
+import org.ros.node.topic.Subscriber;
+import org.ros.rosjava_geometry.FrameTransform;
 import org.ros.rosjava_geometry.Quaternion;
 import org.ros.rosjava_geometry.Transform;
 import org.ros.rosjava_geometry.Vector3;
 
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.microedition.khronos.opengles.GL10;
 
 /**
+ * Draws a {@link nav_msgs.OccupancyGrid}.
+ * <p>
+ * Every map is compared with the previous one tile by tile, and only the cells
+ * that changed are converted and uploaded again. Optionally, partial updates
+ * of the map are read from a {@link map_msgs.OccupancyGridUpdate} topic.
+ * <p>
+ * All colors of the map are gray, so tiles are stored as
+ * {@link TextureBitmap.Format#LUMINANCE_ALPHA} textures that are only as large
+ * as the cells they hold. Cells are written into the textures through a
+ * palette.
+ * <p>
+ * Tiles are converted in parallel on an {@link Executor}. The new content of
+ * all tiles is swapped in at once after the last tile was converted, so a
+ * partially updated map is never drawn.
+ * <p>
+ * When the map is zoomed out so far that several cells fall on one pixel,
+ * tiles are drawn from downsampled {@link OccupancyGridLevel}s instead. Levels
+ * are built on the {@link Executor} the first time they are needed, and the
+ * full resolution tile is drawn until they are ready. Levels that have not
+ * been drawn for a while, or all levels that are not on screen after
+ * {@link #trimMemory()}, are deleted again. Tiles outside the screen are not
+ * drawn at all.
+ * 
  * @author moesenle@google.com (Lorenz Moesenlechner)
  */
 public class OccupancyGridLayer extends SubscriberLayer<nav_msgs.OccupancyGrid> implements TfLayer {
@@ -55,104 +100,546 @@ public class OccupancyGridLayer extends SubscriberLayer<nav_msgs.OccupancyGrid>
   private static final int COLOR_UNKNOWN = 0xffdddddd;
 
   /**
-   * Color of transparent cells in the map.
+   * Maps every cell value, read as an unsigned byte, to its color.
    */
-  private static final int COLOR_TRANSPARENT = 0x00000000;
+  private static final int[] PALETTE = createPalette();
+
+  private static final int MAXIMUM_THREADS = 4;
+  private static final int QUEUE_CAPACITY = 64;
+  private static final long KEEP_ALIVE_TIME = 10; // s
+
+  /**
+   * The coarsest level, at which a cell of the level covers 256x256 cells of
+   * the map.
+   */
+  private static final int MAXIMUM_LEVEL = 8;
+
+  /**
+   * Levels that have not been drawn for this long are deleted.
+   */
+  private static final long LEVEL_KEEP_TIME = 10 * 1000000000L; // ns
+
+  /**
+   * Shared by all layers that are not given an {@link Executor}.
+   */
+  private static final Executor DEFAULT_EXECUTOR = newDefaultExecutor();
 
   /**
    * In order to draw maps with a size outside the maximum size of a texture,
    * we split the map into multiple tiles and draw one texture per tile.
    */
-  private class Tile {
+  private static class Tile {
 
-    private final ChannelBuffer pixelBuffer = MessageBuffers.dynamicBuffer();
-    private final TextureBitmap textureBitmap = new TextureBitmap();
+    private final TextureBitmap textureBitmap;
+    private final OccupancyGridCells cells;
+    private final float resolution;
+    private final Transform origin;
 
     /**
-     * Resolution of the {@link nav_msgs.OccupancyGrid}.
+     * Guards {@link #cells} and changes of {@link #levels} between the threads
+     * that convert the {@link Tile} and the ones that build its levels.
      */
-    private final float resolution;
+    private final Lock lock;
 
     /**
-     * Points to the top left of the {@link Tile}.
+     * The top left cell of the {@link Tile} in the map.
      */
-    private Transform origin;
+    private final int x;
+    private final int y;
 
     /**
-     * Width of the {@link Tile}.
+     * The bounds of the {@link Tile} in the frame of the map.
      */
-    private int stride;
+    private final Bounds bounds;
 
     /**
      * {@code true} when the {@link Tile} is ready to be drawn.
      */
     private boolean ready;
 
-    public Tile(float resolution) {
+    /**
+     * {@code true} from when new cells were prepared until they are swapped
+     * in. No levels are built in the meantime, since they would show the new
+     * cells too early.
+     */
+    private volatile boolean pending;
+
+    /**
+     * {@code true} once the textures of a replaced {@link Tile} were deleted.
+     * Guarded by {@link #lock}.
+     */
+    private boolean deleted;
+
+    /**
+     * The downsampled levels of the {@link Tile}, indexed by their shift. The
+     * array is replaced rather than changed so that the render thread can read
+     * it without locking. Level 0 is the {@link Tile} itself and always
+     * {@code null}.
+     */
+    private volatile OccupancyGridLevel[] levels;
+
+    /**
+     * The level the {@link Tile} should have been drawn with in the last frame.
+     */
+    private volatile int requestedLevel;
+
+    /**
+     * @param origin
+     *          points to the top left of the {@link Tile}
+     */
+    public Tile(int x, int y, int width, int height, float resolution, Transform origin) {
+      cells = new OccupancyGridCells(width, height);
+      textureBitmap = new TextureBitmap(width, height, TextureBitmap.Format.LUMINANCE_ALPHA);
+      textureBitmap.setOrigin(origin, resolution);
       this.resolution = resolution;
+      this.origin = origin;
+      this.x = x;
+      this.y = y;
+      bounds = Bounds.of(origin, width * resolution, height * resolution);
+      lock = new ReentrantLock();
       ready = false;
+      pending = false;
+      levels = new OccupancyGridLevel[MAXIMUM_LEVEL + 1];
     }
 
-    public void draw(VisualizationView view, GL10 gl) {
-      if (ready) {
-        textureBitmap.draw(view, gl);
+    /**
+     * Draws the coarsest level that exists up to {@code level}.
+     * 
+     * @param frameTime
+     *          the start of the frame in nanoseconds
+     * @return the level that was drawn
+     */
+    public int draw(VisualizationView view, GL10 gl, int level, long frameTime) {
+      OccupancyGridLevel[] levels = this.levels;
+      for (int i = level; i > 0; i--) {
+        if (levels[i] != null) {
+          levels[i].draw(view, gl, frameTime);
+          return i;
+        }
       }
+      textureBitmap.draw(view, gl);
+      return 0;
+    }
+
+    public boolean isReady() {
+      return ready;
+    }
+
+    public boolean isVisible(Bounds screen) {
+      return screen == null || bounds.intersects(screen);
+    }
+
+    /**
+     * @param zoom
+     *          pixels per meter
+     * @return the level whose cells are closest to the size of a pixel
+     */
+    public int getLevel(double zoom) {
+      double cellsPerPixel = 1 / (zoom * resolution);
+      int level = (int) Math.floor(Math.log(cellsPerPixel) / Math.log(2) + 0.5);
+      return Math.max(0, Math.min(MAXIMUM_LEVEL, level));
     }
 
     public void clearHandle() {
       textureBitmap.clearHandle();
+      for (OccupancyGridLevel level : levels) {
+        if (level != null) {
+          level.clearHandle();
+        }
+      }
     }
 
-    public void writeInt(int value) {
-      pixelBuffer.writeInt(value);
+    /**
+     * Builds a level from the current cells unless it exists already or new
+     * cells are about to be swapped in.
+     * 
+     * @return {@code true} if the level was built
+     */
+    public boolean buildLevel(int level) {
+      lock.lock();
+      try {
+        if (deleted || pending || levels[level] != null) {
+          return false;
+        }
+        OccupancyGridLevel newLevel =
+            new OccupancyGridLevel(level, cells.getWidth(), cells.getHeight(), resolution, origin);
+        newLevel.prepare(cells, 0, 0, cells.getWidth(), cells.getHeight(), PALETTE);
+        newLevel.swap();
+        OccupancyGridLevel[] newLevels = levels.clone();
+        newLevels[level] = newLevel;
+        levels = newLevels;
+        return true;
+      } finally {
+        lock.unlock();
+      }
     }
 
-    public void update() {
-      Preconditions.checkNotNull(origin);
-      Preconditions.checkNotNull(stride);
-      textureBitmap.updateFromPixelBuffer(pixelBuffer, stride, resolution, origin, COLOR_TRANSPARENT);
-      pixelBuffer.clear();
+    /**
+     * Deletes the levels that were last drawn before {@code time}. Must be
+     * called from the render thread. If another thread is busy with the
+     * {@link Tile}, the levels are kept until the next call.
+     */
+    public void trim(GL10 gl, long time) {
+      if (!hasLevelsDrawnBefore(levels, time) || !lock.tryLock()) {
+        return;
+      }
+      List<OccupancyGridLevel> deletedLevels = Lists.newArrayList();
+      try {
+        OccupancyGridLevel[] newLevels = levels.clone();
+        for (int i = 0; i < newLevels.length; i++) {
+          if (newLevels[i] != null && newLevels[i].getLastDrawn() - time < 0) {
+            deletedLevels.add(newLevels[i]);
+            newLevels[i] = null;
+          }
+        }
+        levels = newLevels;
+      } finally {
+        lock.unlock();
+      }
+      for (OccupancyGridLevel level : deletedLevels) {
+        level.delete(gl);
+      }
+    }
+
+    /**
+     * Deletes the textures of the {@link Tile} and all of its levels after it
+     * was replaced. Must be called from the render thread.
+     * 
+     * @return {@code false} if another thread is busy with the {@link Tile},
+     *         in which case it has to be called again
+     */
+    public boolean delete(GL10 gl) {
+      if (!lock.tryLock()) {
+        return false;
+      }
+      OccupancyGridLevel[] deletedLevels;
+      try {
+        deleted = true;
+        deletedLevels = levels;
+        levels = new OccupancyGridLevel[MAXIMUM_LEVEL + 1];
+      } finally {
+        lock.unlock();
+      }
+      textureBitmap.delete(gl);
+      for (OccupancyGridLevel level : deletedLevels) {
+        if (level != null) {
+          level.delete(gl);
+        }
+      }
+      return true;
+    }
+
+    private static boolean hasLevelsDrawnBefore(OccupancyGridLevel[] levels, long time) {
+      for (OccupancyGridLevel level : levels) {
+        if (level != null && level.getLastDrawn() - time < 0) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    public boolean intersects(int dataX, int dataY, int dataWidth, int dataHeight) {
+      return dataX < x + cells.getWidth() && x < dataX + dataWidth
+          && dataY < y + cells.getHeight() && y < dataY + dataHeight;
+    }
+
+    /**
+     * Converts the cells of a rectangle of the map that lie within the
+     * {@link Tile}. They are not drawn before {@link #swap()} is called.
+     * 
+     * @return {@code true} if the {@link Tile} changed
+     */
+    public boolean prepare(ChannelBuffer data, int dataX, int dataY, int dataWidth,
+        int dataHeight) {
+      lock.lock();
+      try {
+        boolean changed = cells.update(data, dataX - x, dataY - y, dataWidth, dataHeight);
+        if (!ready) {
+          // The first update is always a whole map and covers all cells.
+          prepareRegion(0, 0, cells.getWidth(), cells.getHeight());
+          return true;
+        }
+        if (!changed) {
+          return false;
+        }
+        prepareRegion(cells.getChangedLeft(), cells.getChangedTop(), cells.getChangedRight(),
+            cells.getChangedBottom());
+        return true;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    public void swap() {
+      textureBitmap.swap();
+      for (OccupancyGridLevel level : levels) {
+        if (level != null) {
+          level.swap();
+        }
+      }
       ready = true;
+      pending = false;
     }
 
-    public void setOrigin(Transform origin) {
-      this.origin = origin;
+    private void prepareRegion(int left, int top, int right, int bottom) {
+      textureBitmap.prepareRegion(cells.getCells(), top * cells.getWidth() + left,
+          cells.getWidth(), left, top, right - left, bottom - top, PALETTE);
+      for (OccupancyGridLevel level : levels) {
+        if (level != null) {
+          level.prepare(cells, left, top, right, bottom, PALETTE);
+        }
+      }
+      pending = true;
     }
+  }
+
+  /**
+   * An axis aligned rectangle in the frame of the map.
+   */
+  private static class Bounds {
+
+    private final double minimumX;
+    private final double minimumY;
+    private final double maximumX;
+    private final double maximumY;
 
-    public void setStride(int stride) {
-      this.stride = stride;
+    /**
+     * @return the bounds of a rectangle of {@code width} by {@code height}
+     *         meters whose corner is at {@code origin}
+     */
+    public static Bounds of(Transform origin, double width, double height) {
+      return of(origin.apply(new Vector3(0, 0, 0)), origin.apply(new Vector3(width, 0, 0)),
+          origin.apply(new Vector3(0, height, 0)), origin.apply(new Vector3(width, height, 0)));
+    }
+
+    public static Bounds of(Vector3... points) {
+      double minimumX = Double.POSITIVE_INFINITY;
+      double minimumY = Double.POSITIVE_INFINITY;
+      double maximumX = Double.NEGATIVE_INFINITY;
+      double maximumY = Double.NEGATIVE_INFINITY;
+      for (Vector3 point : points) {
+        minimumX = Math.min(minimumX, point.getX());
+        minimumY = Math.min(minimumY, point.getY());
+        maximumX = Math.max(maximumX, point.getX());
+        maximumY = Math.max(maximumY, point.getY());
+      }
+      return new Bounds(minimumX, minimumY, maximumX, maximumY);
+    }
+
+    private Bounds(double minimumX, double minimumY, double maximumX, double maximumY) {
+      this.minimumX = minimumX;
+      this.minimumY = minimumY;
+      this.maximumX = maximumX;
+      this.maximumY = maximumY;
+    }
+
+    public boolean intersects(Bounds other) {
+      return minimumX <= other.maximumX && other.minimumX <= maximumX
+          && minimumY <= other.maximumY && other.minimumY <= maximumY;
     }
   }
 
-  private final List<Tile> tiles;
+  private final Object mutex;
+  private final Object drawMutex;
+  private final GraphName updatesTopic;
+  private final Executor executor;
+
+  /**
+   * Tiles that are missing the level they should be drawn with.
+   */
+  private final Queue<Tile> levelRequests;
+  private final AtomicBoolean buildingLevels;
+
+  /**
+   * Guarded by both {@link #mutex} and {@link #drawMutex}.
+   */
+  private List<Tile> tiles;
+
+  /**
+   * Tiles of a previous layout whose textures still have to be deleted on the
+   * render thread. Guarded by {@link #drawMutex}.
+   */
+  private final List<Tile> replacedTiles;
 
+  private Subscriber<map_msgs.OccupancyGridUpdate> updatesSubscriber;
   private boolean ready;
   private GraphName frame;
   private GL10 previousGl;
+  private VisualizationView view;
+  private volatile boolean trimRequested;
+
+  /**
+   * The layout of the current tiles.
+   */
+  private int width;
+  private int height;
+  private float resolution;
+  private Transform origin;
 
   public OccupancyGridLayer(String topic) {
     this(GraphName.of(topic));
   }
 
   public OccupancyGridLayer(GraphName topic) {
+    this(topic, null);
+  }
+
+  public OccupancyGridLayer(String topic, String updatesTopic) {
+    this(GraphName.of(topic), GraphName.of(updatesTopic));
+  }
+
+  public OccupancyGridLayer(GraphName topic, GraphName updatesTopic) {
+    this(topic, updatesTopic, DEFAULT_EXECUTOR);
+  }
+
+  /**
+   * @param updatesTopic
+   *          the {@link map_msgs.OccupancyGridUpdate} topic with partial
+   *          updates of the map (e.g. "map_updates"), or {@code null}
+   * @param executor
+   *          converts the tiles of the map
+   */
+  public OccupancyGridLayer(GraphName topic, GraphName updatesTopic, Executor executor) {
     super(topic, nav_msgs.OccupancyGrid._TYPE);
-    tiles = Lists.newCopyOnWriteArrayList();
+    Preconditions.checkNotNull(executor);
+    this.updatesTopic = updatesTopic;
+    this.executor = executor;
+    mutex = new Object();
+    drawMutex = new Object();
+    tiles = Collections.emptyList();
+    replacedTiles = Lists.newArrayList();
     ready = false;
+    levelRequests = new ConcurrentLinkedQueue<Tile>();
+    buildingLevels = new AtomicBoolean();
+    trimRequested = false;
   }
 
   @Override
   public void draw(VisualizationView view, GL10 gl) {
-    if (previousGl != gl) {
-      for (Tile tile : tiles) {
-        tile.clearHandle();
+    synchronized (drawMutex) {
+      if (previousGl != gl) {
+        for (Tile tile : tiles) {
+          tile.clearHandle();
+        }
+        // The textures of the replaced tiles went away with the old context.
+        replacedTiles.clear();
+        previousGl = gl;
+      }
+      for (Iterator<Tile> iterator = replacedTiles.iterator(); iterator.hasNext();) {
+        Tile tile = iterator.next();
+        if (tile.delete(gl)) {
+          levelRequests.remove(tile);
+          iterator.remove();
+        }
+      }
+      if (ready) {
+        drawTiles(view, gl);
       }
-      previousGl = gl;
     }
-    if (ready) {
-      for (Tile tile : tiles) {
-        tile.draw(view, gl);
+  }
+
+  private void drawTiles(VisualizationView view, GL10 gl) {
+    long frameTime = System.nanoTime();
+    double zoom = view.getCamera().getZoom();
+    Bounds screen = getScreenBounds(view);
+    boolean requested = false;
+    for (Tile tile : tiles) {
+      if (!tile.isReady() || !tile.isVisible(screen)) {
+        continue;
+      }
+      int level = tile.getLevel(zoom);
+      if (tile.draw(view, gl, level, frameTime) != level) {
+        tile.requestedLevel = level;
+        if (!levelRequests.contains(tile)) {
+          levelRequests.add(tile);
+        }
+        requested = true;
       }
     }
+    if (requested) {
+      buildLevels(view);
+    }
+    // After trimMemory(), only the levels that were drawn in this frame are
+    // kept.
+    boolean trim = trimRequested;
+    trimRequested = false;
+    long time = trim ? frameTime : frameTime - LEVEL_KEEP_TIME;
+    for (Tile tile : tiles) {
+      tile.trim(gl, time);
+    }
+  }
+
+  /**
+   * @return the bounds of the screen in the frame of the map, or {@code null}
+   *         if they are not known
+   */
+  private Bounds getScreenBounds(VisualizationView view) {
+    XYOrthographicCamera camera = view.getCamera();
+    GraphName cameraFrame = camera.getFrame();
+    if (cameraFrame == null || frame == null) {
+      return null;
+    }
+    FrameTransform cameraToMap = view.getFrameTransformTree().transform(cameraFrame, frame);
+    if (cameraToMap == null) {
+      return null;
+    }
+    Transform transform = cameraToMap.getTransform();
+    Viewport viewport = camera.getViewport();
+    int width = viewport.getWidth();
+    int height = viewport.getHeight();
+    return Bounds.of(transform.apply(camera.toCameraFrame(0, 0)),
+        transform.apply(camera.toCameraFrame(width, 0)),
+        transform.apply(camera.toCameraFrame(0, height)),
+        transform.apply(camera.toCameraFrame(width, height)));
+  }
+
+  /**
+   * Builds the requested levels on the {@link #executor}, one after another.
+   */
+  private void buildLevels(final VisualizationView view) {
+    if (!buildingLevels.compareAndSet(false, true)) {
+      return;
+    }
+    final Thread renderThread = Thread.currentThread();
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        if (Thread.currentThread() == renderThread) {
+          // The default executor runs tasks on the submitting thread when its
+          // queue is full, which must not be the render thread. The levels
+          // are requested again with the next frame.
+          buildingLevels.set(false);
+          view.requestRender();
+          return;
+        }
+        boolean built = false;
+        do {
+          Tile tile;
+          while ((tile = levelRequests.poll()) != null) {
+            built |= tile.buildLevel(tile.requestedLevel);
+          }
+          buildingLevels.set(false);
+          // Requests that arrived after the queue was drained would be missed
+          // otherwise.
+        } while (!levelRequests.isEmpty() && buildingLevels.compareAndSet(false, true));
+        if (built) {
+          view.requestRender();
+        }
+      }
+    });
+  }
+
+  /**
+   * Deletes all levels of the map that are not on screen with the next
+   * frame, e.g. when {@link android.content.ComponentCallbacks2#onTrimMemory}
+   * is called. They are built again when they are needed.
+   */
+  public void trimMemory() {
+    trimRequested = true;
+    VisualizationView view = this.view;
+    if (view != null) {
+      view.requestRender();
+    }
   }
 
   @Override
@@ -161,69 +648,209 @@ public class OccupancyGridLayer extends SubscriberLayer<nav_msgs.OccupancyGrid>
   }
 
   @Override
-  public void onStart(VisualizationView view, ConnectedNode connectedNode) {
+  public void onStart(final VisualizationView view, ConnectedNode connectedNode) {
     super.onStart(view, connectedNode);
+    this.view = view;
     previousGl = null;
     getSubscriber().addMessageListener(new MessageListener<nav_msgs.OccupancyGrid>() {
       @Override
       public void onNewMessage(nav_msgs.OccupancyGrid message) {
-        update(message);
+        if (update(message)) {
+          view.requestRender();
+        }
       }
     });
+    if (updatesTopic != null) {
+      updatesSubscriber =
+          connectedNode.newSubscriber(updatesTopic, map_msgs.OccupancyGridUpdate._TYPE);
+      updatesSubscriber.addMessageListener(new MessageListener<map_msgs.OccupancyGridUpdate>() {
+        @Override
+        public void onNewMessage(map_msgs.OccupancyGridUpdate message) {
+          if (update(message)) {
+            view.requestRender();
+          }
+        }
+      });
+    }
+  }
+
+  @Override
+  public void onShutdown(VisualizationView view, Node node) {
+    if (updatesSubscriber != null) {
+      updatesSubscriber.shutdown();
+      updatesSubscriber = null;
+    }
+    super.onShutdown(view, node);
   }
 
-  private void update(nav_msgs.OccupancyGrid message) {
+  /**
+   * @return {@code true} if any cell changed
+   */
+  boolean update(nav_msgs.OccupancyGrid message) {
     final float resolution = message.getInfo().getResolution();
     final int width = message.getInfo().getWidth();
     final int height = message.getInfo().getHeight();
-    final int numTilesWide = (int) Math.ceil(width / (float) TextureBitmap.STRIDE);
-    final int numTilesHigh = (int) Math.ceil(height / (float) TextureBitmap.STRIDE);
-    final int numTiles = numTilesWide * numTilesHigh;
     final Transform origin = Transform.fromPoseMessage(message.getInfo().getOrigin());
+    final ChannelBuffer data = message.getData();
+    Preconditions.checkArgument(data.readableBytes() >= width * height);
+
+    boolean changed;
+    synchronized (mutex) {
+      List<Tile> newTiles = tiles;
+      boolean layoutChanged =
+          width != this.width || height != this.height || resolution != this.resolution
+              || !origin.equals(this.origin);
+      if (layoutChanged) {
+        newTiles = createTiles(width, height, resolution, origin);
+      }
+      List<Tile> changedTiles = prepare(newTiles, data, 0, 0, width, height);
+      changed = layoutChanged || !changedTiles.isEmpty();
+      synchronized (drawMutex) {
+        for (Tile tile : changedTiles) {
+          tile.swap();
+        }
+        if (layoutChanged) {
+          replacedTiles.addAll(tiles);
+        }
+        tiles = newTiles;
+        frame = GraphName.of(message.getHeader().getFrameId());
+        ready = true;
+      }
+    }
+    return changed;
+  }
 
-    while (tiles.size() < numTiles) {
-      tiles.add(new Tile(resolution));
+  /**
+   * Applies a partial update to the current map. Updates that arrive before
+   * the first map are dropped.
+   * 
+   * @return {@code true} if any cell changed
+   */
+  boolean update(map_msgs.OccupancyGridUpdate message) {
+    final int width = message.getWidth();
+    final int height = message.getHeight();
+    final ChannelBuffer data = message.getData();
+    Preconditions.checkArgument(data.readableBytes() >= width * height);
+
+    synchronized (mutex) {
+      List<Tile> changedTiles =
+          prepare(tiles, data, message.getX(), message.getY(), width, height);
+      synchronized (drawMutex) {
+        for (Tile tile : changedTiles) {
+          tile.swap();
+        }
+      }
+      return !changedTiles.isEmpty();
     }
+  }
 
-    for (int y = 0; y < numTilesHigh; ++y) {
-      for (int x = 0; x < numTilesWide; ++x) {
-        final int tileIndex = y * numTilesWide + x;
-        tiles.get(tileIndex).setOrigin(origin.multiply(new Transform(new Vector3(x *
-            resolution * TextureBitmap.STRIDE,
-            y * resolution * TextureBitmap.HEIGHT, 0.), Quaternion.identity())));
-        tiles.get(tileIndex).setStride(TextureBitmap.STRIDE);
-      }
-    }
-
-    int x = 0;
-    int y = 0;
-    final ChannelBuffer buffer = message.getData();
-    while (buffer.readable()) {
-      Preconditions.checkState(y < height);
-      final int tileIndex = (y / TextureBitmap.STRIDE) * numTilesWide + x / TextureBitmap.STRIDE;
-      final byte pixel = buffer.readByte();
-      if (pixel == -1) {
-        tiles.get(tileIndex).writeInt(COLOR_UNKNOWN);
-      } else {
-        if (pixel < 50) {
-          tiles.get(tileIndex).writeInt(COLOR_FREE);
-        } else {
-          tiles.get(tileIndex).writeInt(COLOR_OCCUPIED);
+  /**
+   * Prepares every tile that intersects a rectangle of the map in parallel.
+   * 
+   * @return the tiles that changed
+   */
+  private List<Tile> prepare(List<Tile> tiles, final ChannelBuffer data, final int x,
+      final int y, final int width, final int height) {
+    List<Tile> intersectingTiles = Lists.newArrayList();
+    List<FutureTask<Boolean>> tasks = Lists.newArrayList();
+    for (final Tile tile : tiles) {
+      if (tile.intersects(x, y, width, height)) {
+        intersectingTiles.add(tile);
+        tasks.add(new FutureTask<Boolean>(new Callable<Boolean>() {
+          @Override
+          public Boolean call() {
+            return tile.prepare(data, x, y, width, height);
+          }
+        }));
+      }
+    }
+    if (tasks.isEmpty()) {
+      return intersectingTiles;
+    }
+    // The calling thread converts the last tile itself rather than wait idly.
+    for (int i = 0; i < tasks.size() - 1; i++) {
+      executor.execute(tasks.get(i));
+    }
+    tasks.get(tasks.size() - 1).run();
+
+    // Every task has to finish before the tiles may be touched again, even if
+    // one of them failed.
+    List<Tile> changedTiles = Lists.newArrayList();
+    ExecutionException failure = null;
+    for (int i = 0; i < tasks.size(); i++) {
+      try {
+        if (Uninterruptibles.getUninterruptibly(tasks.get(i))) {
+          changedTiles.add(intersectingTiles.get(i));
         }
+      } catch (ExecutionException e) {
+        failure = e;
       }
+    }
+    if (failure != null) {
+      throw new RosRuntimeException(failure.getCause());
+    }
+    return changedTiles;
+  }
 
-      ++x;
-      if (x == width) {
-        x = 0;
-        ++y;
+  private List<Tile> createTiles(int width, int height, float resolution, Transform origin) {
+    final int numTilesWide = (int) Math.ceil(width / (float) TextureBitmap.STRIDE);
+    final int numTilesHigh = (int) Math.ceil(height / (float) TextureBitmap.HEIGHT);
+    List<Tile> newTiles = Lists.newArrayList();
+    for (int y = 0; y < numTilesHigh; ++y) {
+      for (int x = 0; x < numTilesWide; ++x) {
+        int tileX = x * TextureBitmap.STRIDE;
+        int tileY = y * TextureBitmap.HEIGHT;
+        Transform tileOrigin =
+            origin.multiply(new Transform(new Vector3(tileX * resolution, tileY * resolution, 0.),
+                Quaternion.identity()));
+        newTiles.add(new Tile(tileX, tileY, Math.min(TextureBitmap.STRIDE, width - tileX), Math
+            .min(TextureBitmap.HEIGHT, height - tileY), resolution, tileOrigin));
       }
     }
+    this.width = width;
+    this.height = height;
+    this.resolution = resolution;
+    this.origin = origin;
+    return newTiles;
+  }
 
-    for (Tile tile : tiles) {
-      tile.update();
+  private static int[] createPalette() {
+    int[] palette = new int[256];
+    for (int i = 0; i < palette.length; i++) {
+      byte cell = (byte) i;
+      if (cell == -1) {
+        palette[i] = COLOR_UNKNOWN;
+      } else if (cell < 50) {
+        palette[i] = COLOR_FREE;
+      } else {
+        palette[i] = COLOR_OCCUPIED;
+      }
     }
+    return palette;
+  }
 
-    frame = GraphName.of(message.getHeader().getFrameId());
-    ready = true;
+  /**
+   * @return a pool of at most {@link #MAXIMUM_THREADS} daemon threads that
+   *         time out when no maps arrive. When its queue is full, the
+   *         submitting thread converts the tile itself.
+   */
+  private static Executor newDefaultExecutor() {
+    int threads =
+        Math.max(1, Math.min(MAXIMUM_THREADS, Runtime.getRuntime().availableProcessors()));
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY), new ThreadFactory() {
+              private final AtomicInteger count = new AtomicInteger();
+
+              @Override
+              public Thread newThread(Runnable runnable) {
+                Thread thread =
+                    new Thread(runnable, "OccupancyGridLayer-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+              }
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
   }
 }
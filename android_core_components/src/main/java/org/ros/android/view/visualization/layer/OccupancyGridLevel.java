@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization.layer;
+
+import com.google.common.base.Preconditions;
+
+import org.ros.android.view.visualization.TextureBitmap;
+import org.ros.android.view.visualization.VisualizationView;
+import org.ros.rosjava_geometry.Transform;
+
+import java.util.Arrays;
+
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * A downsampled copy of one tile of an occupancy grid for drawing the map
+ * while it is zoomed out.
+ * <p>
+ * Every cell of the level covers a square of {@code 2^shift} cells of the
+ * tile and takes the largest of their values. Occupied cells therefore win
+ * over free ones and free ones over unknown (-1) ones, so that thin walls stay
+ * visible however far the map is zoomed out.
+ */
+class OccupancyGridLevel {
+
+  private final int shift;
+  private final int width;
+  private final int height;
+  private final byte[] cells;
+  private final TextureBitmap textureBitmap;
+
+  /**
+   * The start of the last frame that drew this level in nanoseconds. Only
+   * used by the render thread.
+   */
+  private long lastDrawn;
+
+  /**
+   * @param shift
+   *          the base two logarithm of the number of tile cells per level
+   *          cell along each axis
+   * @param origin
+   *          points to the top left of the tile
+   * @param resolution
+   *          the resolution of the tile
+   */
+  OccupancyGridLevel(int shift, int tileWidth, int tileHeight, float resolution,
+      Transform origin) {
+    Preconditions.checkArgument(shift > 0);
+    this.shift = shift;
+    width = ((tileWidth - 1) >> shift) + 1;
+    height = ((tileHeight - 1) >> shift) + 1;
+    cells = new byte[width * height];
+    textureBitmap = new TextureBitmap(width, height, TextureBitmap.Format.LUMINANCE_ALPHA);
+    // Level cells at the right and bottom edges may cover fewer tile cells
+    // than the others, so the level can reach less than one level cell past
+    // the edges of the tile.
+    textureBitmap.setOrigin(origin, resolution * (1 << shift));
+    lastDrawn = System.nanoTime();
+  }
+
+  /**
+   * Downsamples the level cells that cover a rectangle of tile cells. They are
+   * not drawn before {@link #swap()} is called.
+   * 
+   * @param right
+   *          the right edge of the rectangle, exclusive
+   * @param bottom
+   *          the bottom edge of the rectangle, exclusive
+   */
+  void prepare(OccupancyGridCells tile, int left, int top, int right, int bottom, int[] palette) {
+    Preconditions.checkArgument(left < right && top < bottom);
+    int levelLeft = left >> shift;
+    int levelTop = top >> shift;
+    int levelRight = ((right - 1) >> shift) + 1;
+    int levelBottom = ((bottom - 1) >> shift) + 1;
+    byte[] tileCells = tile.getCells();
+    int tileWidth = tile.getWidth();
+    int tileLeft = levelLeft << shift;
+    int tileRight = Math.min(levelRight << shift, tileWidth);
+    for (int y = levelTop; y < levelBottom; y++) {
+      int offset = y * width;
+      Arrays.fill(cells, offset + levelLeft, offset + levelRight, Byte.MIN_VALUE);
+      // Walks the tile cells row by row, which is much kinder to the cache
+      // than walking them square by square.
+      int tileBottom = Math.min((y + 1) << shift, tile.getHeight());
+      for (int i = y << shift; i < tileBottom; i++) {
+        int tileOffset = i * tileWidth;
+        for (int j = tileLeft; j < tileRight; j++) {
+          int index = offset + (j >> shift);
+          byte value = tileCells[tileOffset + j];
+          if (value > cells[index]) {
+            cells[index] = value;
+          }
+        }
+      }
+    }
+    textureBitmap.prepareRegion(cells, levelTop * width + levelLeft, width, levelLeft, levelTop,
+        levelRight - levelLeft, levelBottom - levelTop, palette);
+  }
+
+  void swap() {
+    textureBitmap.swap();
+  }
+
+  void draw(VisualizationView view, GL10 gl, long frameTime) {
+    textureBitmap.draw(view, gl);
+    lastDrawn = frameTime;
+  }
+
+  long getLastDrawn() {
+    return lastDrawn;
+  }
+
+  void clearHandle() {
+    textureBitmap.clearHandle();
+  }
+
+  void delete(GL10 gl) {
+    textureBitmap.delete(gl);
+  }
+
+  int getWidth() {
+    return width;
+  }
+
+  int getHeight() {
+    return height;
+  }
+
+  byte get(int x, int y) {
+    return cells[y * width + x];
+  }
+}
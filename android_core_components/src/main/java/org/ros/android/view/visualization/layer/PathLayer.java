@@ -68,13 +68,14 @@ public class PathLayer extends SubscriberLayer<nav_msgs.Path> implements TfLayer
   }
 
   @Override
-  public void onStart(VisualizationView view, ConnectedNode connectedNode) {
+  public void onStart(final VisualizationView view, ConnectedNode connectedNode) {
     super.onStart(view, connectedNode);
     getSubscriber().addMessageListener(new MessageListener<nav_msgs.Path>() {
       @Override
       public void onNewMessage(nav_msgs.Path path) {
         updateVertexBuffer(path);
         ready = true;
+        view.requestRender();
       }
     });
   }
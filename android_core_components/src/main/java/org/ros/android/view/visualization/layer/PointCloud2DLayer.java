@@ -77,7 +77,7 @@ public class PointCloud2DLayer extends SubscriberLayer<PointCloud2> implements T
   }
 
   @Override
-  public void onStart(VisualizationView view, ConnectedNode connectedNode) {
+  public void onStart(final VisualizationView view, ConnectedNode connectedNode) {
     super.onStart(view, connectedNode);
     Subscriber<PointCloud2> subscriber = getSubscriber();
     subscriber.addMessageListener(new MessageListener<PointCloud2>() {
@@ -85,11 +85,12 @@ public class PointCloud2DLayer extends SubscriberLayer<PointCloud2> implements T
       public void onNewMessage(PointCloud2 pointCloud) {
         frame = GraphName.of(pointCloud.getHeader().getFrameId());
         updateVertexBuffer(pointCloud);
+        view.requestRender();
       }
     });
   }
 
-  private void updateVertexBuffer(final PointCloud2 pointCloud) {
+  void updateVertexBuffer(final PointCloud2 pointCloud) {
     // We expect an unordered, XYZ point cloud of 32-bit floats (i.e. the result of
     // pcl::toROSMsg()).
     // TODO(damonkohler): Make this more generic.
@@ -80,12 +80,14 @@ public class PosePublisherLayer extends DefaultLayer {
             angle(pointerVector.getX(), pointerVector.getY(), poseVector.getX(), poseVector.getY());
         pose = Transform.translation(poseVector).multiply(Transform.zRotation(angle));
         shape.setTransform(pose);
+        view.requestRender();
         return true;
       }
       if (event.getAction() == MotionEvent.ACTION_UP) {
         posePublisher.publish(pose.toPoseStampedMessage(view.getCamera().getFrame(),
             connectedNode.getCurrentTime(), posePublisher.newMessage()));
         visible = false;
+        view.requestRender();
         return true;
       }
     }
@@ -110,6 +112,7 @@ public class PosePublisherLayer extends DefaultLayer {
                         (int) e.getY()));
                 shape.setTransform(pose);
                 visible = true;
+                view.requestRender();
               }
             });
       }
@@ -68,6 +68,7 @@ public class PoseSubscriberLayer extends SubscriberLayer<geometry_msgs.PoseStamp
           Transform poseTransform = Transform.fromPoseMessage(pose.getPose());
           shape.setTransform(frameTransform.getTransform().multiply(poseTransform));
           ready = true;
+          view.requestRender();
         }
       }
     });
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class OrientationFilterTest {
+
+  private static final double HALF_SQRT_2 = Math.sqrt(0.5);
+
+  @Test
+  public void testEverySampleWithoutLimits() {
+    OrientationFilter filter = new OrientationFilter(0, 0, 0);
+    for (int i = 0; i < 10; i++) {
+      assertTrue(filter.accept(1, 0, 0, 0, i));
+    }
+  }
+
+  @Test
+  public void testMinimumPeriod() {
+    OrientationFilter filter = new OrientationFilter(100, 0, 0);
+    assertTrue(filter.accept(1, 0, 0, 0, 0));
+    assertFalse(filter.accept(1, 0, 0, 0, 50));
+    assertTrue(filter.accept(1, 0, 0, 0, 100));
+    assertFalse(filter.accept(1, 0, 0, 0, 199));
+  }
+
+  @Test
+  public void testSmallRotationsAreDropped() {
+    OrientationFilter filter = new OrientationFilter(0, 0.1, 0);
+    assertTrue(filter.accept(1, 0, 0, 0, 0));
+    // 0.05 rad about z.
+    assertFalse(filter.accept(Math.cos(0.025), 0, 0, Math.sin(0.025), 1));
+    // 0.2 rad about z.
+    assertTrue(filter.accept(Math.cos(0.1), 0, 0, Math.sin(0.1), 2));
+    // Rotations are measured from the last published sample.
+    assertFalse(filter.accept(Math.cos(0.1 + 0.04), 0, 0, Math.sin(0.1 + 0.04), 3));
+    assertTrue(filter.accept(Math.cos(0.1 + 0.06), 0, 0, Math.sin(0.1 + 0.06), 4));
+  }
+
+  @Test
+  public void testNegatedQuaternionIsTheSameOrientation() {
+    OrientationFilter filter = new OrientationFilter(0, 0.1, 0);
+    assertTrue(filter.accept(HALF_SQRT_2, HALF_SQRT_2, 0, 0, 0));
+    assertFalse(filter.accept(-HALF_SQRT_2, -HALF_SQRT_2, 0, 0, 1));
+  }
+
+  @Test
+  public void testStationaryDevicePublishesAfterMaximumPeriod() {
+    OrientationFilter filter = new OrientationFilter(0, 0.1, 1000);
+    assertTrue(filter.accept(1, 0, 0, 0, 0));
+    assertFalse(filter.accept(1, 0, 0, 0, 999));
+    assertTrue(filter.accept(1, 0, 0, 0, 1000));
+    assertFalse(filter.accept(1, 0, 0, 0, 1500));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeAngleIsRejected() {
+    new OrientationFilter(0, -1, 0);
+  }
+}
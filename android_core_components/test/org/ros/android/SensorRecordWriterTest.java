@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+public class SensorRecordWriterTest {
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    SensorRecordWriter writer = new SensorRecordWriter(outputStream);
+    SensorRecord record = new SensorRecord();
+    record.type = 4;
+    record.timestamp = 123456789L;
+    record.accuracy = 3;
+    float[] values = record.setValueCount(3);
+    values[0] = 0.5f;
+    values[1] = -1.5f;
+    values[2] = 2.25f;
+    writer.write(record);
+    SensorRecord location = new SensorRecord();
+    location.type = SensorRecord.TYPE_LOCATION;
+    location.timestamp = 223456789L;
+    location.latitude = 48.1;
+    location.longitude = 11.5;
+    location.altitude = 520.25;
+    location.horizontalAccuracy = 4;
+    location.verticalAccuracy = 6;
+    location.speed = 1.5f;
+    location.bearing = 90;
+    location.time = 1500000000000L;
+    writer.write(location);
+    writer.close();
+
+    SensorRecordReader reader =
+        new SensorRecordReader(new ByteArrayInputStream(outputStream.toByteArray()));
+    SensorRecord read = new SensorRecord();
+    assertTrue(reader.read(read));
+    assertEquals(4, read.type);
+    assertEquals(123456789L, read.timestamp);
+    assertEquals(3, read.accuracy);
+    assertArrayEquals(new float[] { 0.5f, -1.5f, 2.25f }, read.values, 0);
+    float[] sensorValues = read.values;
+    assertTrue(reader.read(read));
+    assertTrue(read.isLocation());
+    assertEquals(223456789L, read.timestamp);
+    assertEquals(48.1, read.latitude, 0);
+    assertEquals(11.5, read.longitude, 0);
+    assertEquals(520.25, read.altitude, 0);
+    assertEquals(4, read.horizontalAccuracy, 0);
+    assertEquals(6, read.verticalAccuracy, 0);
+    assertEquals(1.5f, read.speed, 0);
+    assertEquals(90, read.bearing, 0);
+    assertEquals(1500000000000L, read.time);
+    assertFalse(reader.read(read));
+    reader.close();
+    // The values array of each length is reused.
+    assertSame(sensorValues, read.setValueCount(3));
+  }
+
+  @Test(expected = IOException.class)
+  public void testRejectsOtherFiles() throws IOException {
+    new SensorRecordReader(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 5, 6 }));
+  }
+}
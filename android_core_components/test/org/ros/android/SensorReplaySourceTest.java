@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SensorReplaySourceTest {
+
+  private static final long PERIOD = 5000000; // ns
+
+  private File file;
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("sensors", ".rec");
+    SensorRecordWriter writer = new SensorRecordWriter(new FileOutputStream(file));
+    SensorRecord record = new SensorRecord();
+    record.type = 1;
+    for (int i = 0; i < 10; i++) {
+      record.timestamp = 1000000000L + i * PERIOD;
+      record.setValueCount(3)[0] = i;
+      writer.write(record);
+    }
+    writer.close();
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+  }
+
+  /**
+   * A clock that advances by a quarter of the recorded period every time it is
+   * read.
+   */
+  private static class FakeClock implements SensorReplaySource.Clock {
+    long time = 500;
+
+    @Override
+    public long nanoTime() {
+      long now = time;
+      time += PERIOD / 4;
+      return now;
+    }
+  }
+
+  private static class RecordingListener implements SensorRecordListener {
+    final List<Long> timestamps = new ArrayList<Long>();
+    final List<Float> values = new ArrayList<Float>();
+
+    @Override
+    public void onSensorRecord(SensorRecord record) {
+      timestamps.add(record.timestamp);
+      values.add(record.values[0]);
+    }
+  }
+
+  @Test
+  public void testAsFastAsPossible() throws IOException {
+    SensorReplaySource source = new SensorReplaySource(file, 0, SensorReplaySource.SYSTEM_CLOCK);
+    RecordingListener listener = new RecordingListener();
+    assertEquals(10, source.replay(listener));
+    assertEquals(10, listener.values.size());
+    for (int i = 0; i < 10; i++) {
+      assertEquals(i, listener.values.get(i), 0);
+      // Relative timing is preserved.
+      assertEquals(i * PERIOD, listener.timestamps.get(i) - listener.timestamps.get(0));
+    }
+  }
+
+  @Test
+  public void testTimestampsAreRebased() throws IOException {
+    FakeClock clock = new FakeClock();
+    SensorReplaySource source = new SensorReplaySource(file, 1, clock);
+    RecordingListener listener = new RecordingListener();
+    assertEquals(10, source.replay(listener));
+    for (int i = 0; i < 10; i++) {
+      assertEquals(500 + i * PERIOD, (long) listener.timestamps.get(i));
+    }
+    // The last record was not delivered before it was due.
+    assertTrue(clock.time > 500 + 9 * PERIOD);
+  }
+
+  @Test
+  public void testStartAndStop() throws InterruptedException {
+    SensorReplaySource source = new SensorReplaySource(file, 0.01, SensorReplaySource.SYSTEM_CLOCK);
+    RecordingListener listener = new RecordingListener();
+    source.start(listener);
+    Thread.sleep(50);
+    source.stop();
+    // At a hundredth of the recorded speed, the second record is due after
+    // half a second.
+    assertEquals(1, listener.timestamps.size());
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class SensorThreadStatisticsTest {
+
+  @Test
+  public void testQueueDepth() {
+    SensorThreadStatistics statistics = new SensorThreadStatistics();
+    statistics.onQueued();
+    statistics.onQueued();
+    statistics.onQueued();
+    statistics.onDequeued();
+    assertEquals(3, statistics.getQueued());
+    assertEquals(2, statistics.getQueueDepth());
+    assertEquals(3, statistics.getMaximumQueueDepth());
+  }
+
+  @Test
+  public void testCallbacks() {
+    SensorThreadStatistics statistics = new SensorThreadStatistics();
+    statistics.onCallback(1000, 100);
+    statistics.onCallback(3000, 500);
+    assertEquals(2, statistics.getCallbacks());
+    assertEquals(2000, statistics.getMeanLatency());
+    assertEquals(3000, statistics.getMaximumLatency());
+    assertEquals(300, statistics.getMeanDuration());
+    assertEquals(500, statistics.getMaximumDuration());
+  }
+
+  @Test
+  public void testNegativeLatencyCountsAsZero() {
+    SensorThreadStatistics statistics = new SensorThreadStatistics();
+    statistics.onCallback(-1000, 0);
+    statistics.onCallback(1000, 0);
+    assertEquals(500, statistics.getMeanLatency());
+    assertEquals(1000, statistics.getMaximumLatency());
+  }
+
+  @Test
+  public void testResetKeepsWaitingTasks() {
+    SensorThreadStatistics statistics = new SensorThreadStatistics();
+    statistics.onQueued();
+    statistics.onQueued();
+    statistics.onDequeued();
+    statistics.onCallback(1000, 100);
+    statistics.reset();
+    assertEquals(0, statistics.getQueued());
+    assertEquals(1, statistics.getQueueDepth());
+    assertEquals(1, statistics.getMaximumQueueDepth());
+    assertEquals(0, statistics.getCallbacks());
+    assertEquals(0, statistics.getMeanLatency());
+    assertEquals(0, statistics.getMaximumDuration());
+  }
+
+  @Test
+  public void testClearQueueDropsWaitingTasks() {
+    SensorThreadStatistics statistics = new SensorThreadStatistics();
+    statistics.onQueued();
+    statistics.onQueued();
+    statistics.clearQueue();
+    statistics.reset();
+    assertEquals(0, statistics.getQueueDepth());
+    assertEquals(0, statistics.getMaximumQueueDepth());
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.camera;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.jboss.netty.buffer.ChannelBufferOutputStream;
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class ChannelBufferPoolTest {
+
+  @Test
+  public void testBuffersRotate() {
+    ChannelBufferPool pool = new ChannelBufferPool(3, 16);
+    ChannelBufferOutputStream first = pool.next();
+    ChannelBufferOutputStream second = pool.next();
+    ChannelBufferOutputStream third = pool.next();
+    assertNotSame(first, second);
+    assertNotSame(second, third);
+    assertNotSame(first, third);
+    assertSame(first, pool.next());
+    assertSame(second, pool.next());
+  }
+
+  @Test
+  public void testBufferIsUntouchedUntilReused() throws IOException {
+    ChannelBufferPool pool = new ChannelBufferPool(2, 16);
+    ChannelBufferOutputStream first = pool.next();
+    first.write(new byte[] { 1, 2, 3 });
+    pool.next().write(new byte[] { 4, 5 });
+    assertEquals(3, first.buffer().readableBytes());
+    assertEquals(1, first.buffer().getByte(0));
+    assertSame(first, pool.next());
+    assertEquals(0, first.buffer().readableBytes());
+  }
+
+  @Test
+  public void testBufferGrowsBeyondInitialCapacity() throws IOException {
+    ChannelBufferPool pool = new ChannelBufferPool(1, 4);
+    ChannelBufferOutputStream stream = pool.next();
+    stream.write(new byte[100]);
+    assertEquals(100, stream.buffer().readableBytes());
+  }
+
+  @Test
+  public void testReusedBufferKeepsItsCapacity() throws IOException {
+    ChannelBufferPool pool = new ChannelBufferPool(1, 4);
+    pool.next().write(new byte[100]);
+    ChannelBufferOutputStream stream = pool.next();
+    assertEquals(0, stream.buffer().readableBytes());
+    // Frames of a similar size fit without allocating again.
+    assertTrue(stream.buffer().capacity() >= 100);
+  }
+}
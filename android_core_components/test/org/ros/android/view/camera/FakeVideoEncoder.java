@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.camera;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link VideoEncoder} that produces synthetic frames on demand. It emits
+ * codec configuration before the first key frame, a key frame every
+ * {@code keyFrameInterval} frames, and a key frame immediately after one was
+ * requested.
+ */
+class FakeVideoEncoder implements VideoEncoder {
+
+  static final byte[] CODEC_CONFIG = new byte[] { 0, 0, 0, 1, 0x67, 0, 0, 0, 1, 0x68 };
+
+  private final int keyFrameInterval;
+
+  private Listener listener;
+  private boolean started;
+  private boolean configSent;
+  private boolean keyFrameRequested;
+  private int framesSinceKeyFrame;
+  private int keyFrameRequests;
+  private int bitrate;
+  private long presentationTimeUs;
+
+  /**
+   * @param keyFrameInterval
+   *          the number of frames between periodic key frames
+   */
+  FakeVideoEncoder(int keyFrameInterval) {
+    this.keyFrameInterval = keyFrameInterval;
+    // Start mid-GOP so the first frames are not decodable.
+    framesSinceKeyFrame = 1;
+  }
+
+  @Override
+  public void setListener(Listener listener) {
+    this.listener = listener;
+  }
+
+  @Override
+  public void start() {
+    started = true;
+  }
+
+  @Override
+  public void requestKeyFrame() {
+    keyFrameRequests++;
+    keyFrameRequested = true;
+  }
+
+  @Override
+  public void setBitrate(int bitsPerSecond) {
+    bitrate = bitsPerSecond;
+  }
+
+  @Override
+  public void stop() {
+    started = false;
+  }
+
+  /**
+   * Encodes one frame of {@code size} bytes and delivers it to the listener.
+   *
+   * @return {@code true} if the frame was a key frame
+   */
+  boolean encodeFrame(int size) {
+    if (!started) {
+      throw new IllegalStateException("Not started.");
+    }
+    if (!configSent) {
+      configSent = true;
+      listener.onEncodedFrame(ByteBuffer.wrap(CODEC_CONFIG), presentationTimeUs,
+          FLAG_CODEC_CONFIG);
+    }
+    boolean keyFrame = keyFrameRequested || framesSinceKeyFrame % keyFrameInterval == 0;
+    if (keyFrame) {
+      keyFrameRequested = false;
+      framesSinceKeyFrame = 0;
+    }
+    framesSinceKeyFrame++;
+    byte[] frame = new byte[size];
+    for (int i = 0; i < size; i++) {
+      frame[i] = (byte) (keyFrame ? 0x65 : 0x41);
+    }
+    listener.onEncodedFrame(ByteBuffer.wrap(frame), presentationTimeUs,
+        keyFrame ? FLAG_KEY_FRAME : 0);
+    presentationTimeUs += 33333;
+    return keyFrame;
+  }
+
+  int getKeyFrameRequests() {
+    return keyFrameRequests;
+  }
+
+  int getBitrate() {
+    return bitrate;
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.camera;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class Nv21ScalerTest {
+
+  /**
+   * Builds an NV21 image whose luma encodes the pixel coordinates and whose
+   * chroma encodes the coordinates of each 2x2 block.
+   */
+  private static byte[] newImage(int width, int height) {
+    byte[] image = new byte[width * height * 3 / 2];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        image[y * width + x] = (byte) (y * 16 + x);
+      }
+    }
+    for (int y = 0; y < height / 2; y++) {
+      for (int x = 0; x < width / 2; x++) {
+        int index = width * height + y * width + x * 2;
+        image[index] = (byte) (100 + y * 8 + x);
+        image[index + 1] = (byte) (200 + y * 8 + x);
+      }
+    }
+    return image;
+  }
+
+  @Test
+  public void testHalfSize() {
+    int width = 8;
+    int height = 4;
+    byte[] source = newImage(width, height);
+    byte[] output = new Nv21Scaler().scale(source, width, height, 4, 2);
+    assertEquals(4 * 2 * 3 / 2, output.length);
+    for (int y = 0; y < 2; y++) {
+      for (int x = 0; x < 4; x++) {
+        assertEquals(source[y * 2 * width + x * 2], output[y * 4 + x]);
+      }
+    }
+    // One chroma row of two VU pairs sampled from every other 2x2 block.
+    assertEquals((byte) 100, output[8]);
+    assertEquals((byte) 200, output[9]);
+    assertEquals((byte) 102, output[10]);
+    assertEquals((byte) 202, output[11]);
+  }
+
+  @Test
+  public void testSameSizeCopies() {
+    byte[] source = newImage(6, 4);
+    byte[] output = new Nv21Scaler().scale(source, 6, 4, 6, 4);
+    for (int i = 0; i < source.length; i++) {
+      assertEquals(source[i], output[i]);
+    }
+  }
+
+  @Test
+  public void testOutputBufferIsReused() {
+    Nv21Scaler scaler = new Nv21Scaler();
+    byte[] source = newImage(8, 8);
+    byte[] first = scaler.scale(source, 8, 8, 4, 4);
+    assertSame(first, scaler.scale(source, 8, 8, 4, 4));
+    assertEquals(6 * 6 * 3 / 2, scaler.scale(source, 8, 8, 6, 6).length);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUpscalingIsRejected() {
+    new Nv21Scaler().scale(newImage(4, 4), 4, 4, 8, 8);
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.camera;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class PreviewFramePipelineTest {
+
+  private CountDownLatch processing;
+  private CountDownLatch unblock;
+  private List<byte[]> processed;
+  private BlockingQueue<byte[]> released;
+  private PreviewFramePipeline pipeline;
+
+  @Before
+  public void setUp() {
+    processing = new CountDownLatch(1);
+    unblock = new CountDownLatch(0);
+    processed = new ArrayList<byte[]>();
+    released = new LinkedBlockingQueue<byte[]>();
+    pipeline = new PreviewFramePipeline(new PreviewFramePipeline.Callback() {
+      @Override
+      public void onFrame(byte[] data) {
+        processing.countDown();
+        try {
+          unblock.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        synchronized (processed) {
+          processed.add(data);
+        }
+      }
+
+      @Override
+      public void onBufferReleased(byte[] data) {
+        released.add(data);
+      }
+    }, 2);
+    pipeline.start();
+  }
+
+  @After
+  public void tearDown() {
+    pipeline.shutdown();
+  }
+
+  @Test(timeout = 5000)
+  public void testBufferIsReleasedAfterProcessing() throws InterruptedException {
+    byte[] buffer = new byte[16];
+    pipeline.offer(buffer);
+    assertSame(buffer, released.poll(1, TimeUnit.SECONDS));
+    assertEquals(1, pipeline.getCapturedFrames());
+    assertEquals(1, pipeline.getProcessedFrames());
+    assertEquals(0, pipeline.getDroppedFrames());
+  }
+
+  @Test(timeout = 5000)
+  public void testOldestFrameIsDroppedWhenProcessingFallsBehind() throws InterruptedException {
+    unblock = new CountDownLatch(1);
+    byte[][] buffers = new byte[5][16];
+    pipeline.offer(buffers[0]);
+    // Wait until the first frame is being processed so the queue is empty.
+    assertTrue(processing.await(1, TimeUnit.SECONDS));
+    pipeline.offer(buffers[1]);
+    pipeline.offer(buffers[2]);
+    assertEquals(0, released.size());
+    // The queue is full, so buffers 1 and 2 are dropped in order.
+    pipeline.offer(buffers[3]);
+    assertSame(buffers[1], released.poll());
+    pipeline.offer(buffers[4]);
+    assertSame(buffers[2], released.poll());
+    assertEquals(2, pipeline.getDroppedFrames());
+    unblock.countDown();
+    for (int i = 0; i < 3; i++) {
+      released.poll(1, TimeUnit.SECONDS);
+    }
+    assertEquals(5, pipeline.getCapturedFrames());
+    assertEquals(3, pipeline.getProcessedFrames());
+    synchronized (processed) {
+      assertSame(buffers[0], processed.get(0));
+      assertSame(buffers[3], processed.get(1));
+      assertSame(buffers[4], processed.get(2));
+    }
+  }
+
+  @Test(timeout = 5000)
+  public void testEveryBufferIsReturnedExactlyOnce() throws InterruptedException {
+    int frames = 1000;
+    byte[][] buffers = new byte[4][16];
+    for (int i = 0; i < frames; i++) {
+      pipeline.offer(buffers[i % buffers.length]);
+    }
+    while (released.size() < frames) {
+      Thread.sleep(1);
+    }
+    assertEquals(frames, pipeline.getCapturedFrames());
+    assertEquals(frames, pipeline.getProcessedFrames() + pipeline.getDroppedFrames());
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.camera;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class VideoPacketizerTest {
+
+  private static class Packet {
+    final byte[] data;
+    final long presentationTimeUs;
+    final boolean keyFrame;
+
+    Packet(byte[] data, int length, long presentationTimeUs, boolean keyFrame) {
+      this.data = new byte[length];
+      System.arraycopy(data, 0, this.data, 0, length);
+      this.presentationTimeUs = presentationTimeUs;
+      this.keyFrame = keyFrame;
+    }
+  }
+
+  private FakeVideoEncoder encoder;
+  private VideoPacketizer packetizer;
+  private List<Packet> packets;
+
+  @Before
+  public void setUp() {
+    encoder = new FakeVideoEncoder(10);
+    packets = new ArrayList<Packet>();
+    packetizer = new VideoPacketizer(encoder, new VideoPacketizer.PacketListener() {
+      @Override
+      public void onPacket(byte[] data, int length, long presentationTimeUs, boolean keyFrame) {
+        packets.add(new Packet(data, length, presentationTimeUs, keyFrame));
+      }
+    });
+    encoder.setListener(packetizer);
+    encoder.start();
+  }
+
+  @Test
+  public void testFramesBeforeFirstKeyFrameAreDropped() {
+    assertFalse(encoder.encodeFrame(100));
+    assertEquals(0, packets.size());
+    assertEquals(1, packetizer.getFramesDropped());
+    // The dropped frame triggered a key frame request.
+    assertEquals(1, encoder.getKeyFrameRequests());
+    assertTrue(encoder.encodeFrame(100));
+    assertEquals(1, packets.size());
+    assertTrue(packets.get(0).keyFrame);
+  }
+
+  @Test
+  public void testKeyFramesCarryCodecConfig() {
+    packetizer.requestKeyFrame();
+    encoder.encodeFrame(100);
+    encoder.encodeFrame(50);
+    assertEquals(2, packets.size());
+    Packet keyFrame = packets.get(0);
+    assertEquals(FakeVideoEncoder.CODEC_CONFIG.length + 100, keyFrame.data.length);
+    for (int i = 0; i < FakeVideoEncoder.CODEC_CONFIG.length; i++) {
+      assertEquals(FakeVideoEncoder.CODEC_CONFIG[i], keyFrame.data[i]);
+    }
+    assertEquals(0x65, keyFrame.data[FakeVideoEncoder.CODEC_CONFIG.length]);
+    Packet deltaFrame = packets.get(1);
+    assertFalse(deltaFrame.keyFrame);
+    assertEquals(50, deltaFrame.data.length);
+    assertEquals(0x41, deltaFrame.data[0]);
+    assertTrue(deltaFrame.presentationTimeUs > keyFrame.presentationTimeUs);
+  }
+
+  @Test
+  public void testKeyFrameRequestsAreCoalesced() {
+    packetizer.requestKeyFrame();
+    packetizer.requestKeyFrame();
+    packetizer.requestKeyFrame();
+    assertEquals(1, encoder.getKeyFrameRequests());
+    assertTrue(encoder.encodeFrame(10));
+    packetizer.requestKeyFrame();
+    assertEquals(2, encoder.getKeyFrameRequests());
+  }
+
+  @Test
+  public void testNewSubscriberGetsKeyFrameMidGop() {
+    packetizer.requestKeyFrame();
+    encoder.encodeFrame(10);
+    for (int i = 0; i < 3; i++) {
+      assertFalse(encoder.encodeFrame(10));
+    }
+    // What a publisher does when a subscriber connects.
+    packetizer.requestKeyFrame();
+    assertTrue(encoder.encodeFrame(10));
+    assertTrue(packets.get(packets.size() - 1).keyFrame);
+  }
+
+  @Test
+  public void testPeriodicKeyFrames() {
+    packetizer.requestKeyFrame();
+    int keyFrames = 0;
+    for (int i = 0; i < 30; i++) {
+      encoder.encodeFrame(10);
+    }
+    for (Packet packet : packets) {
+      if (packet.keyFrame) {
+        keyFrames++;
+      }
+    }
+    assertEquals(30, packets.size());
+    assertEquals(3, keyFrames);
+  }
+}
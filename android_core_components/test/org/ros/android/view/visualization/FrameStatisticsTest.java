@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class FrameStatisticsTest {
+
+  private static final long MILLISECOND = 1000000; // ns
+
+  @Test
+  public void testEmpty() {
+    FrameStatistics statistics = new FrameStatistics();
+    assertEquals(0, statistics.getFrames());
+    assertEquals(0, statistics.getFramesPerSecond(), 0);
+    assertEquals(0, statistics.getMeanFrameTime());
+    assertEquals(0, statistics.getMaximumFrameTime());
+  }
+
+  @Test
+  public void testFrameTimes() {
+    FrameStatistics statistics = new FrameStatistics();
+    for (int i = 0; i < 10; i++) {
+      long start = i * 20 * MILLISECOND;
+      statistics.onFrame(start, start + (i + 1) * MILLISECOND);
+    }
+    assertEquals(10, statistics.getFrames());
+    assertEquals(50, statistics.getFramesPerSecond(), 1e-9);
+    assertEquals(5500000, statistics.getMeanFrameTime());
+    assertEquals(10 * MILLISECOND, statistics.getMaximumFrameTime());
+  }
+
+  @Test
+  public void testWindowSlides() {
+    FrameStatistics statistics = new FrameStatistics(4);
+    statistics.onFrame(0, 100 * MILLISECOND);
+    for (int i = 1; i <= 4; i++) {
+      long start = 1000 * MILLISECOND + i * 10 * MILLISECOND;
+      statistics.onFrame(start, start + 2 * MILLISECOND);
+    }
+    assertEquals(5, statistics.getFrames());
+    assertEquals(100, statistics.getFramesPerSecond(), 1e-9);
+    assertEquals(2 * MILLISECOND, statistics.getMeanFrameTime());
+    assertEquals(2 * MILLISECOND, statistics.getMaximumFrameTime());
+  }
+
+  @Test
+  public void testReset() {
+    FrameStatistics statistics = new FrameStatistics();
+    statistics.onFrame(0, MILLISECOND);
+    statistics.onFrame(10 * MILLISECOND, 11 * MILLISECOND);
+    statistics.reset();
+    assertEquals(0, statistics.getFrames());
+    assertEquals(0, statistics.getFramesPerSecond(), 0);
+  }
+}
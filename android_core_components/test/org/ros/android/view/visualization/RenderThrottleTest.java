@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class RenderThrottleTest {
+
+  private static final long PERIOD = 33000000; // ns
+
+  private RenderThrottle throttle;
+
+  @Before
+  public void setup() {
+    throttle = new RenderThrottle();
+  }
+
+  @Test
+  public void testUnlimited() {
+    throttle.onFrame(1000);
+    assertEquals(0, throttle.onRequest(1001));
+    assertEquals(0, throttle.getDelay(1001));
+  }
+
+  @Test
+  public void testFirstRequestIsNotDelayed() {
+    throttle.setMinimumPeriod(PERIOD);
+    assertEquals(0, throttle.onRequest(1000));
+  }
+
+  @Test
+  public void testRequestIsDeferredToEndOfPeriod() {
+    throttle.setMinimumPeriod(PERIOD);
+    throttle.onFrame(1000);
+    assertEquals(PERIOD - 500, throttle.onRequest(1500));
+  }
+
+  @Test
+  public void testRequestsAreMergedWhileDeferred() {
+    throttle.setMinimumPeriod(PERIOD);
+    throttle.onFrame(1000);
+    assertEquals(PERIOD - 500, throttle.onRequest(1500));
+    assertEquals(-1, throttle.onRequest(2000));
+    throttle.onDeferredRequest();
+    assertEquals(PERIOD - 2000, throttle.onRequest(3000));
+  }
+
+  @Test
+  public void testFrameClearsPendingRequest() {
+    throttle.setMinimumPeriod(PERIOD);
+    throttle.onFrame(1000);
+    assertEquals(PERIOD - 500, throttle.onRequest(1500));
+    throttle.onFrame(1000 + PERIOD);
+    assertEquals(0, throttle.onRequest(1000 + 2 * PERIOD));
+  }
+
+  @Test
+  public void testRequestAfterPeriodIsNotDelayed() {
+    throttle.setMinimumPeriod(PERIOD);
+    throttle.onFrame(1000);
+    assertEquals(0, throttle.onRequest(1000 + PERIOD));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativePeriod() {
+    throttle.setMinimumPeriod(-1);
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class TextureBitmapFormatTest {
+
+  /**
+   * @return the bytes that OpenGL reads for an encoded pixel
+   */
+  private static byte[] toBytes(TextureBitmap.Format format, int argb) {
+    ByteBuffer buffer = ByteBuffer.allocate(4).order(ByteOrder.nativeOrder());
+    int value = format.encode(argb);
+    if (format == TextureBitmap.Format.RGBA_8888) {
+      buffer.putInt(value);
+      return buffer.array();
+    }
+    buffer.putShort((short) value);
+    return new byte[] { buffer.get(0), buffer.get(1) };
+  }
+
+  @Test
+  public void testRgba() {
+    byte[] bytes = toBytes(TextureBitmap.Format.RGBA_8888, 0x80102030);
+    assertEquals(0x10, bytes[0]);
+    assertEquals(0x20, bytes[1]);
+    assertEquals(0x30, bytes[2]);
+    assertEquals((byte) 0x80, bytes[3]);
+  }
+
+  @Test
+  public void testLuminanceAlpha() {
+    byte[] bytes = toBytes(TextureBitmap.Format.LUMINANCE_ALPHA, 0xffdddddd);
+    assertEquals((byte) 0xdd, bytes[0]);
+    assertEquals((byte) 0xff, bytes[1]);
+    bytes = toBytes(TextureBitmap.Format.LUMINANCE_ALPHA, 0x00000000);
+    assertEquals(0, bytes[0]);
+    assertEquals(0, bytes[1]);
+  }
+
+  @Test
+  public void testRgb565() {
+    assertEquals(0xf800, TextureBitmap.Format.RGB_565.encode(0xffff0000));
+    assertEquals(0x07e0, TextureBitmap.Format.RGB_565.encode(0xff00ff00));
+    assertEquals(0x001f, TextureBitmap.Format.RGB_565.encode(0xff0000ff));
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization.layer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+
+public class OccupancyGridCellsTest {
+
+  private static ChannelBuffer newMap(int width, int height, int value) {
+    byte[] data = new byte[width * height];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) value;
+    }
+    return ChannelBuffers.wrappedBuffer(data);
+  }
+
+  private static void assertChanged(OccupancyGridCells cells, int left, int top, int right,
+      int bottom) {
+    assertTrue(cells.hasChanged());
+    assertEquals(left, cells.getChangedLeft());
+    assertEquals(top, cells.getChangedTop());
+    assertEquals(right, cells.getChangedRight());
+    assertEquals(bottom, cells.getChangedBottom());
+  }
+
+  @Test
+  public void testUnchangedMap() {
+    OccupancyGridCells cells = new OccupancyGridCells(8, 4);
+    ChannelBuffer map = newMap(8, 4, -1);
+    assertTrue(cells.update(map, 0, 0, 8, 4));
+    assertChanged(cells, 0, 0, 8, 4);
+    assertFalse(cells.update(map, 0, 0, 8, 4));
+    assertFalse(cells.hasChanged());
+    assertEquals(0, map.readerIndex());
+  }
+
+  @Test
+  public void testChangedRectangle() {
+    OccupancyGridCells cells = new OccupancyGridCells(8, 4);
+    ChannelBuffer map = newMap(8, 4, -1);
+    cells.update(map, 0, 0, 8, 4);
+    map.setByte(1 * 8 + 5, 100);
+    map.setByte(2 * 8 + 2, 0);
+    assertTrue(cells.update(map, 0, 0, 8, 4));
+    assertChanged(cells, 2, 1, 6, 3);
+    assertEquals(100, cells.get(5, 1));
+    assertEquals(0, cells.get(2, 2));
+    assertEquals(-1, cells.get(3, 2));
+  }
+
+  @Test
+  public void testTileOfLargerMap() {
+    // The tile covers cells (4, 2) to (7, 3) of a 10x6 map.
+    OccupancyGridCells cells = new OccupancyGridCells(4, 2);
+    ChannelBuffer map = newMap(10, 6, 0);
+    map.setByte(3 * 10 + 6, 100);
+    map.setByte(0, 100);
+    assertTrue(cells.update(map, -4, -2, 10, 6));
+    assertChanged(cells, 2, 1, 3, 2);
+    assertEquals(100, cells.get(2, 1));
+  }
+
+  @Test
+  public void testPartialUpdate() {
+    OccupancyGridCells cells = new OccupancyGridCells(8, 4);
+    cells.update(newMap(8, 4, 0), 0, 0, 8, 4);
+    // A 3x2 update at (6, 3) that is clipped to the tile.
+    assertTrue(cells.update(newMap(3, 2, 100), 6, 3, 3, 2));
+    assertChanged(cells, 6, 3, 8, 4);
+    assertEquals(0, cells.get(5, 3));
+    assertEquals(100, cells.get(6, 3));
+    assertEquals(100, cells.get(7, 3));
+    assertEquals(0, cells.get(7, 2));
+  }
+
+  @Test
+  public void testUpdateOutsideOfTile() {
+    OccupancyGridCells cells = new OccupancyGridCells(8, 4);
+    assertFalse(cells.update(newMap(2, 2, 100), 8, 0, 2, 2));
+    assertFalse(cells.update(newMap(2, 2, 100), -2, -2, 2, 2));
+  }
+}
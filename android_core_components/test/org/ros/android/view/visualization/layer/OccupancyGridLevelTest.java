@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization.layer;
+
+import static org.junit.Assert.assertEquals;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+import org.ros.rosjava_geometry.Transform;
+
+public class OccupancyGridLevelTest {
+
+  private static final int[] PALETTE = new int[256];
+
+  private static ChannelBuffer newMap(int width, int height, int value) {
+    byte[] data = new byte[width * height];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) value;
+    }
+    return ChannelBuffers.wrappedBuffer(data);
+  }
+
+  private static OccupancyGridLevel newLevel(int shift, OccupancyGridCells tile) {
+    OccupancyGridLevel level =
+        new OccupancyGridLevel(shift, tile.getWidth(), tile.getHeight(), 0.05f,
+            Transform.identity());
+    level.prepare(tile, 0, 0, tile.getWidth(), tile.getHeight(), PALETTE);
+    return level;
+  }
+
+  @Test
+  public void testOccupiedCellsWin() {
+    OccupancyGridCells tile = new OccupancyGridCells(8, 4);
+    ChannelBuffer map = newMap(8, 4, -1);
+    map.setByte(0 * 8 + 1, 0);
+    map.setByte(1 * 8 + 5, 0);
+    map.setByte(0 * 8 + 4, 100);
+    tile.update(map, 0, 0, 8, 4);
+    OccupancyGridLevel level = newLevel(1, tile);
+    assertEquals(4, level.getWidth());
+    assertEquals(2, level.getHeight());
+    assertEquals(0, level.get(0, 0));
+    assertEquals(-1, level.get(1, 0));
+    assertEquals(100, level.get(2, 0));
+    assertEquals(-1, level.get(3, 0));
+    assertEquals(-1, level.get(0, 1));
+  }
+
+  @Test
+  public void testPartialCellsAtEdges() {
+    OccupancyGridCells tile = new OccupancyGridCells(10, 5);
+    ChannelBuffer map = newMap(10, 5, 0);
+    map.setByte(4 * 10 + 9, 100);
+    tile.update(map, 0, 0, 10, 5);
+    OccupancyGridLevel level = newLevel(2, tile);
+    assertEquals(3, level.getWidth());
+    assertEquals(2, level.getHeight());
+    assertEquals(0, level.get(2, 0));
+    assertEquals(0, level.get(1, 1));
+    assertEquals(100, level.get(2, 1));
+  }
+
+  @Test
+  public void testPrepareChangedRectangle() {
+    OccupancyGridCells tile = new OccupancyGridCells(8, 8);
+    ChannelBuffer map = newMap(8, 8, 0);
+    tile.update(map, 0, 0, 8, 8);
+    OccupancyGridLevel level = newLevel(2, tile);
+    level.swap();
+    map.setByte(5 * 8 + 6, 100);
+    tile.update(map, 0, 0, 8, 8);
+    level.prepare(tile, tile.getChangedLeft(), tile.getChangedTop(), tile.getChangedRight(),
+        tile.getChangedBottom(), PALETTE);
+    assertEquals(100, level.get(1, 1));
+    assertEquals(0, level.get(0, 1));
+    assertEquals(0, level.get(1, 0));
+
+    map.setByte(5 * 8 + 6, 0);
+    tile.update(map, 0, 0, 8, 8);
+    level.prepare(tile, tile.getChangedLeft(), tile.getChangedTop(), tile.getChangedRight(),
+        tile.getChangedBottom(), PALETTE);
+    assertEquals(0, level.get(1, 1));
+  }
+}
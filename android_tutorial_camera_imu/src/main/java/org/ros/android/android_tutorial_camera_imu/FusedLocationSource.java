@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.android.android_tutorial_camera_imu;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.location.Location;
+import android.location.LocationListener;
+import android.os.Looper;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.GoogleApiAvailability;
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+
+import java.util.List;
+
+/**
+ * Requests locations from the fused location provider of Google Play
+ * services and hands them to a {@link LocationListener}, so that the rest of
+ * the pipeline does not depend on Play services.
+ * <p>
+ * With a maximum wait time, the provider batches locations, possibly in
+ * hardware, and delivers them together, which lets the application processor
+ * sleep between batches.
+ */
+class FusedLocationSource {
+
+    private final FusedLocationProviderClient client;
+
+    private LocationCallback callback;
+
+    /**
+     * @return true if Play services can be used on this device
+     */
+    static boolean isAvailable(Context context) {
+        return GoogleApiAvailability.getInstance().isGooglePlayServicesAvailable(context)
+                == ConnectionResult.SUCCESS;
+    }
+
+    FusedLocationSource(Context context) {
+        this.client = LocationServices.getFusedLocationProviderClient(context);
+    }
+
+    /**
+     * @param interval
+     *          the desired time between locations in milliseconds
+     * @param maximumWaitTime
+     *          how long locations may be batched in milliseconds, 0 to
+     *          deliver every location immediately
+     */
+    @SuppressLint("MissingPermission")
+    void start(final LocationListener listener, long interval, long maximumWaitTime, Looper looper) {
+        LocationRequest request = LocationRequest.create()
+                .setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY)
+                .setInterval(interval)
+                .setFastestInterval(interval)
+                .setMaxWaitTime(maximumWaitTime);
+        this.callback = new LocationCallback() {
+            @Override
+            public void onLocationResult(LocationResult result) {
+                List<Location> locations = result.getLocations();
+                for (int i = 0; i < locations.size(); i++) {
+                    listener.onLocationChanged(locations.get(i));
+                }
+            }
+        };
+        this.client.requestLocationUpdates(request, this.callback, looper);
+    }
+
+    void stop() {
+        if (this.callback != null) {
+            this.client.removeLocationUpdates(this.callback);
+            this.callback = null;
+        }
+    }
+}
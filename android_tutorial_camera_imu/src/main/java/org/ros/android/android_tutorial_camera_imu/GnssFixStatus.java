@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.android.android_tutorial_camera_imu;
+
+/**
+ * Derives a {@code sensor_msgs/NavSatStatus} from the satellites that were
+ * used in the last fix, as reported by {@code GnssStatus}.
+ * <p>
+ * Not thread safe; updates and reads are expected on the location thread.
+ */
+class GnssFixStatus {
+
+    // The values of the GnssStatus.CONSTELLATION_* constants, which do not
+    // exist before API 24.
+    static final int CONSTELLATION_GPS = 1;
+    static final int CONSTELLATION_SBAS = 2;
+    static final int CONSTELLATION_GLONASS = 3;
+    static final int CONSTELLATION_QZSS = 4;
+    static final int CONSTELLATION_BEIDOU = 5;
+    static final int CONSTELLATION_GALILEO = 6;
+
+    // The values of the NavSatStatus constants.
+    static final byte STATUS_NO_FIX = -1;
+    static final byte STATUS_FIX = 0;
+    static final byte STATUS_SBAS_FIX = 1;
+    static final short SERVICE_GPS = 1;
+    static final short SERVICE_GLONASS = 2;
+    static final short SERVICE_COMPASS = 4;
+    static final short SERVICE_GALILEO = 8;
+
+    // A 3D fix needs at least four satellites.
+    private static final int MINIMUM_SATELLITES = 4;
+
+    private int satellites;
+    private int usedInFix;
+    private boolean sbasUsed;
+    private short service;
+
+    /**
+     * Starts a new satellite status report.
+     */
+    public void reset() {
+        this.satellites = 0;
+        this.usedInFix = 0;
+        this.sbasUsed = false;
+        this.service = 0;
+    }
+
+    public void addSatellite(int constellationType, boolean usedInFix) {
+        this.satellites++;
+        if (!usedInFix) {
+            return;
+        }
+        this.usedInFix++;
+        switch (constellationType) {
+            case CONSTELLATION_GPS:
+            case CONSTELLATION_QZSS:
+                // QZSS transmits GPS compatible signals.
+                this.service |= SERVICE_GPS;
+                break;
+            case CONSTELLATION_SBAS:
+                this.sbasUsed = true;
+                break;
+            case CONSTELLATION_GLONASS:
+                this.service |= SERVICE_GLONASS;
+                break;
+            case CONSTELLATION_BEIDOU:
+                this.service |= SERVICE_COMPASS;
+                break;
+            case CONSTELLATION_GALILEO:
+                this.service |= SERVICE_GALILEO;
+                break;
+        }
+    }
+
+    public byte getStatus() {
+        if (this.usedInFix < MINIMUM_SATELLITES) {
+            return STATUS_NO_FIX;
+        }
+        return this.sbasUsed ? STATUS_SBAS_FIX : STATUS_FIX;
+    }
+
+    /**
+     * @return the NavSatStatus service bits of the constellations used in the
+     *         fix, or GPS if none were
+     */
+    public short getService() {
+        return this.service != 0 ? this.service : SERVICE_GPS;
+    }
+
+    public int getSatellites() {
+        return this.satellites;
+    }
+
+    public int getUsedInFix() {
+        return this.usedInFix;
+    }
+}
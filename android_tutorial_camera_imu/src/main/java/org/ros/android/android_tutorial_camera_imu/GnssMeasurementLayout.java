@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.android.android_tutorial_camera_imu;
+
+/**
+ * The layout of the {@code std_msgs/Float64MultiArray} that carries one epoch
+ * of GNSS raw measurements, as delivered by {@code GnssMeasurementsEvent}.
+ * <p>
+ * The first {@link #CLOCK_FIELDS} values, which {@code layout.data_offset}
+ * skips, describe the receiver clock. They are followed by one row of
+ * {@link #MEASUREMENT_FIELDS} values per satellite; the layout has the
+ * dimensions "measurements" and "fields". Values that the device does not
+ * report are NaN. The field names follow {@code GnssClock} and
+ * {@code GnssMeasurement}, and all values keep their Android units so that
+ * they can be fed to existing RINEX converters.
+ * <p>
+ * Nanosecond counts that need more than the 53 bits of a double, like
+ * {@code TimeNanos} and {@code FullBiasNanos}, are split into whole seconds
+ * and remaining nanoseconds; see {@link #getNanos(double[], int)}.
+ */
+final class GnssMeasurementLayout {
+
+    // Receiver clock.
+    static final int STAMP_SECS = 0;
+    static final int STAMP_NSECS = 1;
+    static final int TIME_NANOS = 2; // Split, two values.
+    static final int FULL_BIAS_NANOS = 4; // Split, two values.
+    static final int BIAS_NANOS = 6;
+    static final int BIAS_UNCERTAINTY_NANOS = 7;
+    static final int DRIFT_NANOS_PER_SECOND = 8;
+    static final int DRIFT_UNCERTAINTY_NANOS_PER_SECOND = 9;
+    static final int HARDWARE_CLOCK_DISCONTINUITY_COUNT = 10;
+    static final int LEAP_SECOND = 11;
+    static final int TIME_UNCERTAINTY_NANOS = 12;
+    static final int CLOCK_FIELDS = 13;
+
+    // Per satellite, relative to the start of its row.
+    static final int SVID = 0;
+    static final int CONSTELLATION_TYPE = 1;
+    static final int TIME_OFFSET_NANOS = 2;
+    static final int STATE = 3;
+    static final int RECEIVED_SV_TIME_NANOS = 4;
+    static final int RECEIVED_SV_TIME_UNCERTAINTY_NANOS = 5;
+    static final int CN0_DBHZ = 6;
+    static final int PSEUDORANGE_RATE_METERS_PER_SECOND = 7;
+    static final int PSEUDORANGE_RATE_UNCERTAINTY_METERS_PER_SECOND = 8;
+    static final int ACCUMULATED_DELTA_RANGE_STATE = 9;
+    static final int ACCUMULATED_DELTA_RANGE_METERS = 10;
+    static final int ACCUMULATED_DELTA_RANGE_UNCERTAINTY_METERS = 11;
+    static final int CARRIER_FREQUENCY_HZ = 12;
+    static final int MULTIPATH_INDICATOR = 13;
+    static final int SNR_DB = 14;
+    static final int MEASUREMENT_FIELDS = 15;
+
+    private GnssMeasurementLayout() {
+    }
+
+    /**
+     * @return the length of the data of an epoch with {@code measurements}
+     *         satellites
+     */
+    static int length(int measurements) {
+        return CLOCK_FIELDS + measurements * MEASUREMENT_FIELDS;
+    }
+
+    /**
+     * @return the index of the first value of the {@code index}th satellite
+     */
+    static int row(int index) {
+        return CLOCK_FIELDS + index * MEASUREMENT_FIELDS;
+    }
+
+    /**
+     * @return the number of satellites in {@code data}, or -1 if its length
+     *         does not match the layout
+     */
+    static int measurements(double[] data) {
+        int length = data.length - CLOCK_FIELDS;
+        if (length < 0 || length % MEASUREMENT_FIELDS != 0) {
+            return -1;
+        }
+        return length / MEASUREMENT_FIELDS;
+    }
+
+    /**
+     * Stores {@code nanos} exactly in {@code data[index]} and
+     * {@code data[index + 1]}.
+     */
+    static void putNanos(double[] data, int index, long nanos) {
+        data[index] = nanos / 1000000000L;
+        data[index + 1] = nanos % 1000000000L;
+    }
+
+    static long getNanos(double[] data, int index) {
+        return (long) data[index] * 1000000000L + (long) data[index + 1];
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright (c) 2011, Chad Rockey
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Android Sensors Driver nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.ros.android.android_tutorial_camera_imu;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Aligns accelerometer, gyroscope and rotation vector samples in time and
+ * emits complete IMU samples without allocating.
+ * <p>
+ * The latest samples of every sensor are kept in short ring buffers. Output
+ * samples are emitted at the timestamps of the gyroscope, or on a fixed grid
+ * if an output period is given. At each output timestamp the samples of every
+ * sensor are linearly interpolated (orientation is normalized after
+ * interpolating), or the newest sample is held if the sensor has not reported
+ * past that time yet.
+ * <p>
+ * With a maximum delay, an output sample waits until every sensor has
+ * reported past its timestamp, so that it can be interpolated instead of held,
+ * but no longer than the delay. A delay of zero emits immediately and never
+ * adds latency.
+ */
+class ImuAssembler {
+
+    interface Listener {
+        /**
+         * Called with a complete sample. The sample is reused for the next one
+         * once this returns.
+         */
+        void onImuSample(ImuSample sample);
+    }
+
+    private static final int ACCEL = 0;
+    private static final int GYRO = 1;
+    private static final int QUAT = 2;
+
+    // Enough for 80 ms of history from a 400 Hz sensor.
+    private static final int RING_CAPACITY = 32;
+
+    /**
+     * The most recent samples of one sensor, oldest first.
+     */
+    private static final class SampleRing {
+        private final long[] timestamps;
+        private final double[][] values;
+        private int start;
+        private int count;
+
+        SampleRing(int dimension) {
+            this.timestamps = new long[RING_CAPACITY];
+            this.values = new double[RING_CAPACITY][dimension];
+        }
+
+        private int index(int i) {
+            return (this.start + i) % RING_CAPACITY;
+        }
+
+        double[] add(long timestamp) {
+            int index;
+            if (this.count < RING_CAPACITY) {
+                index = index(this.count);
+                this.count++;
+            } else {
+                index = this.start;
+                this.start = (this.start + 1) % RING_CAPACITY;
+            }
+            this.timestamps[index] = timestamp;
+            return this.values[index];
+        }
+
+        boolean isEmpty() {
+            return this.count == 0;
+        }
+
+        long newestTimestamp() {
+            return this.timestamps[index(this.count - 1)];
+        }
+
+        /**
+         * Writes the value at {@code timestamp} into {@code out}, interpolating
+         * between the samples around it or holding the closest sample if there
+         * is none on one side.
+         */
+        void sample(long timestamp, double[] out, boolean quaternion) {
+            int i = this.count - 1;
+            while (i >= 0 && this.timestamps[index(i)] > timestamp) {
+                i--;
+            }
+            if (i < 0) {
+                copy(this.values[index(0)], out);
+                return;
+            }
+            if (i == this.count - 1 || this.timestamps[index(i)] == timestamp) {
+                copy(this.values[index(i)], out);
+                return;
+            }
+            long before = this.timestamps[index(i)];
+            long after = this.timestamps[index(i + 1)];
+            double fraction = (double) (timestamp - before) / (after - before);
+            double[] a = this.values[index(i)];
+            double[] b = this.values[index(i + 1)];
+            if (quaternion) {
+                interpolateQuaternion(a, b, fraction, out);
+            } else {
+                for (int j = 0; j < out.length; j++) {
+                    out[j] = a[j] + (b[j] - a[j]) * fraction;
+                }
+            }
+        }
+
+        private static void copy(double[] from, double[] to) {
+            System.arraycopy(from, 0, to, 0, to.length);
+        }
+    }
+
+    private final Listener listener;
+    private final boolean[] present;
+    private final SampleRing[] rings;
+    private final int trigger;
+    private final long outputPeriod;
+    private final long maximumDelay;
+    private final long[] pending;
+    private final ImuSample sample;
+
+    private int pendingStart;
+    private int pendingCount;
+    private long newestTimestamp;
+    private long nextOutputTime;
+    private boolean started;
+    private long emittedSamples;
+    private long droppedSamples;
+
+    /**
+     * Emits a sample for every gyroscope sample without waiting for the other
+     * sensors.
+     */
+    public ImuAssembler(Listener listener, boolean hasAccel, boolean hasGyro, boolean hasQuat) {
+        this(listener, hasAccel, hasGyro, hasQuat, 0, 0);
+    }
+
+    /**
+     * @param outputPeriod
+     *          the time between output samples in nanoseconds, or 0 to emit at
+     *          the timestamps of the gyroscope (or of the accelerometer if there
+     *          is no gyroscope)
+     * @param maximumDelay
+     *          how long in nanoseconds an output sample may wait for the other
+     *          sensors to report past its timestamp
+     */
+    public ImuAssembler(Listener listener, boolean hasAccel, boolean hasGyro, boolean hasQuat,
+                        long outputPeriod, long maximumDelay) {
+        Preconditions.checkArgument(hasAccel || hasGyro || hasQuat);
+        Preconditions.checkArgument(outputPeriod >= 0 && maximumDelay >= 0);
+        this.listener = listener;
+        this.present = new boolean[] {hasAccel, hasGyro, hasQuat};
+        this.rings = new SampleRing[] {new SampleRing(3), new SampleRing(3), new SampleRing(4)};
+        this.trigger = hasGyro ? GYRO : hasAccel ? ACCEL : QUAT;
+        this.outputPeriod = outputPeriod;
+        this.maximumDelay = maximumDelay;
+        this.pending = new long[RING_CAPACITY];
+        this.sample = new ImuSample();
+    }
+
+    public void onAccelerometer(float[] values, long timestamp) {
+        double[] value = add(ACCEL, timestamp);
+        if (value != null) {
+            value[0] = values[0];
+            value[1] = values[1];
+            value[2] = values[2];
+        }
+        update(ACCEL, timestamp);
+    }
+
+    public void onGyroscope(float[] values, long timestamp) {
+        double[] value = add(GYRO, timestamp);
+        if (value != null) {
+            value[0] = values[0];
+            value[1] = values[1];
+            value[2] = values[2];
+        }
+        update(GYRO, timestamp);
+    }
+
+    public void onRotationVector(float[] values, long timestamp) {
+        double[] value = add(QUAT, timestamp);
+        if (value != null) {
+            quaternionFromRotationVector(value, values);
+        }
+        update(QUAT, timestamp);
+    }
+
+    /**
+     * @return the slot for the new sample, or null if it is out of order
+     */
+    private double[] add(int sensor, long timestamp) {
+        SampleRing ring = this.rings[sensor];
+        if (!ring.isEmpty() && timestamp <= ring.newestTimestamp()) {
+            return null;
+        }
+        return ring.add(timestamp);
+    }
+
+    private void update(int sensor, long timestamp) {
+        if (timestamp > this.newestTimestamp) {
+            this.newestTimestamp = timestamp;
+        }
+        if (this.outputPeriod == 0) {
+            if (sensor == this.trigger) {
+                schedule(timestamp);
+            }
+        } else {
+            if (!this.started) {
+                this.nextOutputTime = timestamp;
+                this.started = true;
+            }
+            while (this.nextOutputTime <= this.newestTimestamp) {
+                schedule(this.nextOutputTime);
+                this.nextOutputTime += this.outputPeriod;
+            }
+        }
+        emitReadySamples();
+    }
+
+    private void schedule(long timestamp) {
+        if (this.pendingCount == RING_CAPACITY) {
+            // Output has fallen further behind than the history reaches.
+            this.pendingStart = (this.pendingStart + 1) % RING_CAPACITY;
+            this.pendingCount--;
+            this.droppedSamples++;
+        }
+        this.pending[(this.pendingStart + this.pendingCount) % RING_CAPACITY] = timestamp;
+        this.pendingCount++;
+    }
+
+    private void emitReadySamples() {
+        while (this.pendingCount > 0) {
+            long timestamp = this.pending[this.pendingStart];
+            boolean timedOut = this.newestTimestamp - timestamp >= this.maximumDelay;
+            boolean complete = true;
+            boolean reportedPast = true;
+            for (int sensor = 0; sensor < 3; sensor++) {
+                if (!this.present[sensor]) {
+                    continue;
+                }
+                SampleRing ring = this.rings[sensor];
+                if (ring.isEmpty()) {
+                    complete = false;
+                } else if (ring.newestTimestamp() < timestamp) {
+                    reportedPast = false;
+                }
+            }
+            if (!timedOut && !(complete && reportedPast)) {
+                return;
+            }
+            this.pendingStart = (this.pendingStart + 1) % RING_CAPACITY;
+            this.pendingCount--;
+            if (complete) {
+                emit(timestamp);
+            } else {
+                // A sensor has not reported at all yet.
+                this.droppedSamples++;
+            }
+        }
+    }
+
+    private void emit(long timestamp) {
+        if (this.present[ACCEL]) {
+            this.rings[ACCEL].sample(timestamp, this.sample.linearAcceleration, false);
+        }
+        if (this.present[GYRO]) {
+            this.rings[GYRO].sample(timestamp, this.sample.angularVelocity, false);
+        }
+        if (this.present[QUAT]) {
+            this.rings[QUAT].sample(timestamp, this.sample.orientation, true);
+        }
+        this.sample.timestamp = timestamp;
+        this.emittedSamples++;
+        this.listener.onImuSample(this.sample);
+    }
+
+    /**
+     * @return the number of samples passed to the listener
+     */
+    public long getEmittedSamples() {
+        return this.emittedSamples;
+    }
+
+    /**
+     * @return the number of output samples that were discarded because a
+     *         sensor had not reported yet or output fell too far behind
+     */
+    public long getDroppedSamples() {
+        return this.droppedSamples;
+    }
+
+    /**
+     * Normalized linear interpolation of two quaternions stored as w, x, y, z.
+     * Takes the shorter path, since q and -q are the same rotation.
+     */
+    static void interpolateQuaternion(double[] a, double[] b, double fraction, double[] out) {
+        double dot = a[0] * b[0] + a[1] * b[1] + a[2] * b[2] + a[3] * b[3];
+        double sign = dot < 0 ? -1 : 1;
+        double norm = 0;
+        for (int j = 0; j < 4; j++) {
+            out[j] = a[j] * (1 - fraction) + sign * b[j] * fraction;
+            norm += out[j] * out[j];
+        }
+        norm = Math.sqrt(norm);
+        if (norm > 0) {
+            for (int j = 0; j < 4; j++) {
+                out[j] /= norm;
+            }
+        }
+    }
+
+    /**
+     * Same as {@code SensorManager.getQuaternionFromVector()}, which is not
+     * available outside of Android, but writes w, x, y, z as doubles.
+     */
+    static void quaternionFromRotationVector(double[] quaternion, float[] rotationVector) {
+        if (rotationVector.length >= 4) {
+            quaternion[0] = rotationVector[3];
+        } else {
+            double w = 1 - rotationVector[0] * rotationVector[0]
+                    - rotationVector[1] * rotationVector[1]
+                    - rotationVector[2] * rotationVector[2];
+            quaternion[0] = w > 0 ? Math.sqrt(w) : 0;
+        }
+        quaternion[1] = rotationVector[0];
+        quaternion[2] = rotationVector[1];
+        quaternion[3] = rotationVector[2];
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.android.android_tutorial_camera_imu;
+
+import com.google.common.base.Preconditions;
+
+import org.ros.android.imu_batch_transport.ImuBatchLayout;
+
+/**
+ * Packs IMU samples into flat arrays in the {@link ImuBatchLayout} so that many
+ * samples can be sent in one {@code std_msgs/Float64MultiArray}.
+ * <p>
+ * A batch is complete once it holds the configured number of samples or the
+ * samples span the configured window, whichever comes first.
+ */
+class ImuBatcher {
+
+    interface Listener {
+        /**
+         * @param data
+         *          {@code samples} rows of {@link ImuBatchLayout#FIELDS} values; only valid
+         *          for the duration of the call
+         */
+        void onBatch(double[] data, int samples);
+    }
+
+    private final Listener listener;
+    private final int batchSize;
+    private final long window;
+    private final double[] data;
+
+    private int samples;
+    private long firstTimestamp;
+
+    /**
+     * @param batchSize
+     *          the maximum number of samples per batch
+     * @param window
+     *          the maximum time in nanoseconds between the first and last
+     *          sample of a batch, or 0 for no limit
+     */
+    public ImuBatcher(Listener listener, int batchSize, long window) {
+        Preconditions.checkArgument(batchSize > 0);
+        Preconditions.checkArgument(window >= 0);
+        this.listener = listener;
+        this.batchSize = batchSize;
+        this.window = window;
+        this.data = new double[batchSize * ImuBatchLayout.FIELDS];
+    }
+
+    /**
+     * @param stamp
+     *          the stamp of the sample in nanoseconds since the epoch
+     */
+    public void add(ImuSample sample, long stamp) {
+        if (this.samples > 0 && this.window > 0 && sample.timestamp - this.firstTimestamp >= this.window) {
+            flush();
+        }
+        if (this.samples == 0) {
+            this.firstTimestamp = sample.timestamp;
+        }
+        int row = ImuBatchLayout.row(this.samples);
+        this.data[row + ImuBatchLayout.STAMP_SECS] = stamp / 1000000000L;
+        this.data[row + ImuBatchLayout.STAMP_NSECS] = stamp % 1000000000L;
+        System.arraycopy(sample.linearAcceleration, 0, this.data, row + ImuBatchLayout.LINEAR_ACCELERATION, 3);
+        System.arraycopy(sample.angularVelocity, 0, this.data, row + ImuBatchLayout.ANGULAR_VELOCITY, 3);
+        System.arraycopy(sample.orientation, 0, this.data, row + ImuBatchLayout.ORIENTATION, 4);
+        this.samples++;
+        if (this.samples == this.batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Passes the samples collected so far to the listener, if there are any.
+     */
+    public void flush() {
+        if (this.samples > 0) {
+            this.listener.onBatch(this.data, this.samples);
+            this.samples = 0;
+        }
+    }
+
+    public int getBatchSize() {
+        return this.batchSize;
+    }
+
+    /**
+     * Reads the {@code index}th sample of a batch.
+     *
+     * @return the stamp of the sample in nanoseconds since the epoch
+     */
+    static long read(double[] data, int index, ImuSample sample) {
+        int row = ImuBatchLayout.row(index);
+        System.arraycopy(data, row + ImuBatchLayout.LINEAR_ACCELERATION, sample.linearAcceleration, 0, 3);
+        System.arraycopy(data, row + ImuBatchLayout.ANGULAR_VELOCITY, sample.angularVelocity, 0, 3);
+        System.arraycopy(data, row + ImuBatchLayout.ORIENTATION, sample.orientation, 0, 4);
+        return ImuBatchLayout.getStamp(data, index);
+    }
+}
@@ -36,89 +36,264 @@ import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
-import android.os.Looper;
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
 import android.os.SystemClock;
+import android.util.Log;
 
+import com.google.common.collect.Lists;
+
+import org.ros.android.SensorEventSource;
+import org.ros.android.SensorExecutor;
+import org.ros.android.SensorRecord;
+import org.ros.android.SensorRecordListener;
+import org.ros.android.SensorReplaySource;
+import org.ros.android.imu_batch_transport.ImuBatchLayout;
+import org.ros.message.MessageFactory;
 import org.ros.node.ConnectedNode;
 import org.ros.message.Time;
 import org.ros.namespace.GraphName;
 
 import sensor_msgs.Imu;
+import std_msgs.Float64MultiArray;
+import std_msgs.MultiArrayDimension;
 
 import org.ros.node.Node;
 import org.ros.node.NodeMain;
+import org.ros.node.parameter.ParameterTree;
 import org.ros.node.topic.Publisher;
 
 /**
+ * Publishes accelerometer, gyroscope and rotation vector readings as
+ * {@link Imu} messages.
+ * <p>
+ * The following private parameters are read on start:
+ * <ul>
+ * <li>~rate: the output rate in Hz, 0 (default) to publish at the gyroscope
+ * rate</li>
+ * <li>~max_delay: how long in seconds a sample may wait for the other sensors
+ * so that their readings can be interpolated rather than held, 0 by
+ * default</li>
+ * <li>~batch_size: if greater than 1, up to this many samples are sent
+ * together as one {@link Float64MultiArray} on android/imu/batch instead of
+ * individual messages on android/imu; see {@link ImuBatchLayout} for the
+ * layout and {@link org.ros.android.imu_batch_transport.ImuUnbatcher} for
+ * turning batches back into {@link Imu} messages on the robot</li>
+ * <li>~batch_window: the maximum time in seconds covered by one batch, 0
+ * (default) for no limit</li>
+ * </ul>
+ * <p>
+ * Messages come from a {@link MessagePool}. The stamp is written in place,
+ * so with sensor timestamps a published sample or full batch only allocates
+ * what the setters of rosjava's message proxies box. Stamping with the time
+ * of arrival also allocates the node's current {@link Time}. A batch needs a
+ * data array of exactly its length. When ~batch_window cuts a batch to a
+ * length its pooled message did not carry last time, a new array is
+ * allocated. ImuReplayBenchmark measures publishing with and without
+ * batching; run it with {@code -prof gc}.
+ *
  * @author chadrockey@gmail.com (Chad Rockey)
  * @author axelfurlan@gmail.com (Axel Furlan)
  */
 public class ImuPublisher implements NodeMain {
-    private ImuThread imuThread;
+    private static final String TAG = "ImuPublisher";
+
+    // How often the offset between the sensor clock and node time is resampled.
+    private static final long CLOCK_UPDATE_INTERVAL = 1000000000; // ns
+
+    static final double[] LINEAR_ACCELERATION_COVARIANCE = {0.01, 0, 0, 0, 0.01, 0, 0, 0, 0.01};// TODO Make Parameter
+    static final double[] ANGULAR_VELOCITY_COVARIANCE = {0.0025, 0, 0, 0, 0.0025, 0, 0, 0, 0.0025};// TODO Make Parameter
+    static final double[] ORIENTATION_COVARIANCE = {0.001, 0, 0, 0, 0.001, 0, 0, 0, 0.001};// TODO Make Parameter
+    static final String FRAME_ID = "/imu";// TODO Make parameter
+
+    private ImuSensors imuSensors;
     private SensorListener sensorListener;
     private SensorManager sensorManager;
-    private Publisher<Imu> publisher;
+    private final SensorExecutor sensorExecutor;
+    private final SensorEventSource sensorEventSource;
     private ConnectedNode connectedNode;
+    private final boolean useSensorTimestamps;
+    private final int maxReportLatencyUs;
 
-    private class ImuThread extends Thread {
-        private final SensorManager sensorManager;
-        private SensorListener sensorListener;
-        private Looper threadLooper;
+    /**
+     * Registers the IMU sensors with a {@link Handler} of the shared sensor
+     * executor.
+     */
+    private class ImuSensors {
+        private final SensorEventListener listener;
 
         private final Sensor accelSensor;
         private final Sensor gyroSensor;
         private final Sensor quatSensor;
 
-        private ImuThread(SensorManager sensorManager, SensorListener sensorListener) {
-            this.sensorManager = sensorManager;
-            this.sensorListener = sensorListener;
-            this.accelSensor = this.sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
-            this.gyroSensor = this.sensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE);
-            this.quatSensor = this.sensorManager.getDefaultSensor(Sensor.TYPE_ROTATION_VECTOR);
+        private ImuSensors(SensorEventListener listener) {
+            this.listener = listener;
+            this.accelSensor = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+            this.gyroSensor = sensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE);
+            this.quatSensor = sensorManager.getDefaultSensor(Sensor.TYPE_ROTATION_VECTOR);
         }
 
-
-        public void run() {
-            Looper.prepare();
-            this.threadLooper = Looper.myLooper();
-            this.sensorManager.registerListener(this.sensorListener, this.accelSensor, SensorManager.SENSOR_DELAY_FASTEST);
-            this.sensorManager.registerListener(this.sensorListener, this.gyroSensor, SensorManager.SENSOR_DELAY_FASTEST);
-            this.sensorManager.registerListener(this.sensorListener, this.quatSensor, SensorManager.SENSOR_DELAY_FASTEST);
-            Looper.loop();
+        private void register(Handler handler) {
+            // Without a Handler, events would be delivered on the main thread.
+            registerListener(this.accelSensor, handler);
+            registerListener(this.gyroSensor, handler);
+            registerListener(this.quatSensor, handler);
         }
 
+        private void registerListener(Sensor sensor, Handler handler) {
+            if (sensor == null) {
+                return;
+            }
+            if (maxReportLatencyUs > 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                registerBatchingListener(sensor, handler);
+            } else {
+                sensorManager.registerListener(this.listener, sensor, SensorManager.SENSOR_DELAY_FASTEST, handler);
+            }
+        }
 
-        public void shutdown() {
-            this.sensorManager.unregisterListener(this.sensorListener);
-            if (this.threadLooper != null) {
-                this.threadLooper.quit();
+        /**
+         * Lets the sensor hub collect samples in its FIFO for up to
+         * maxReportLatencyUs before waking up the application processor. The
+         * events of a batch are then delivered back to back.
+         */
+        @TargetApi(Build.VERSION_CODES.KITKAT)
+        private void registerBatchingListener(Sensor sensor, Handler handler) {
+            if (sensor.getFifoMaxEventCount() == 0) {
+                Log.i(TAG, sensor.getName() + " does not support batching.");
             }
+            sensorManager.registerListener(this.listener, sensor, SensorManager.SENSOR_DELAY_FASTEST, maxReportLatencyUs, handler);
+        }
+
+        private void unregister() {
+            sensorManager.unregisterListener(this.listener);
         }
     }
 
-    private class SensorListener implements SensorEventListener {
+    private class SensorListener implements SensorEventListener, SensorRecordListener, ImuAssembler.Listener {
 
+        private final ImuAssembler imuAssembler;
+        private final ImuBatcher imuBatcher;
+        private SensorClock sensorClock;
         private Publisher<Imu> publisher;
+        private MessagePool<Imu> messagePool;
+        private Publisher<Float64MultiArray> batchPublisher;
+        private MessagePool<Float64MultiArray> batchMessagePool;
+
+        private SensorListener(ConnectedNode node, boolean hasAccel, boolean hasGyro, boolean hasQuat,
+                               long outputPeriod, long maximumDelay, int batchSize, long batchWindow) {
+            if (batchSize > 1) {
+                this.imuBatcher = new ImuBatcher(new ImuBatcher.Listener() {
+                    @Override
+                    public void onBatch(double[] data, int samples) {
+                        publishBatch(data, samples);
+                    }
+                }, batchSize, batchWindow);
+                setupBatchPublisher(node, batchSize);
+            } else {
+                this.imuBatcher = null;
+                setupPublisher(node);
+            }
+            this.imuAssembler = new ImuAssembler(this, hasAccel, hasGyro, hasQuat, outputPeriod, maximumDelay);
+            if (useSensorTimestamps && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+                this.sensorClock = new SensorClock(new ElapsedRealtimeTimeSource(node), CLOCK_UPDATE_INTERVAL);
+            } else {
+                if (useSensorTimestamps) {
+                    Log.w(TAG, "Sensor timestamps require API 17, using the time of arrival instead.");
+                }
+                this.sensorClock = null;
+            }
+        }
 
-        private boolean hasAccel;
-        private boolean hasGyro;
-        private boolean hasQuat;
+        private void setupPublisher(ConnectedNode node) {
+            final Publisher<Imu> publisher = node.newPublisher("android/imu", "sensor_msgs/Imu");
+            this.publisher = publisher;
+            this.messagePool = new MessagePool<Imu>(new MessagePool.Factory<Imu>() {
+                @Override
+                public Imu newMessage() {
+                    // The covariances and frame never change, so they are only
+                    // set once per pooled message and share the same arrays.
+                    Imu imu = publisher.newMessage();
+                    imu.setLinearAccelerationCovariance(LINEAR_ACCELERATION_COVARIANCE);
+                    imu.setAngularVelocityCovariance(ANGULAR_VELOCITY_COVARIANCE);
+                    imu.setOrientationCovariance(ORIENTATION_COVARIANCE);
+                    imu.getHeader().setFrameId(FRAME_ID);
+                    return imu;
+                }
+            }, MessagePool.DEFAULT_SIZE);
+        }
 
-        private long accelTime;
-        private long gyroTime;
-        private long quatTime;
+        private void setupBatchPublisher(ConnectedNode node, final int batchSize) {
+            final Publisher<Float64MultiArray> publisher =
+                    node.newPublisher("android/imu/batch", Float64MultiArray._TYPE);
+            final MessageFactory messageFactory = node.getTopicMessageFactory();
+            this.batchPublisher = publisher;
+            this.batchMessagePool = new MessagePool<Float64MultiArray>(new MessagePool.Factory<Float64MultiArray>() {
+                @Override
+                public Float64MultiArray newMessage() {
+                    MultiArrayDimension samples = messageFactory.newFromType(MultiArrayDimension._TYPE);
+                    samples.setLabel("samples");
+                    MultiArrayDimension fields = messageFactory.newFromType(MultiArrayDimension._TYPE);
+                    fields.setLabel("fields");
+                    fields.setSize(ImuBatchLayout.FIELDS);
+                    fields.setStride(ImuBatchLayout.FIELDS);
+                    Float64MultiArray message = publisher.newMessage();
+                    message.getLayout().setDim(Lists.newArrayList(samples, fields));
+                    message.setData(new double[batchSize * ImuBatchLayout.FIELDS]);
+                    return message;
+                }
+            }, MessagePool.DEFAULT_SIZE);
+        }
 
-        private Imu imu;
+        private void publishBatch(double[] data, int samples) {
+            Float64MultiArray message = this.batchMessagePool.next();
+            int length = samples * ImuBatchLayout.FIELDS;
+            double[] messageData = message.getData();
+            if (messageData.length != length) {
+                // Only batches cut short by the window differ in size.
+                messageData = new double[length];
+                message.setData(messageData);
+            }
+            System.arraycopy(data, 0, messageData, 0, length);
+            MultiArrayDimension dimension = message.getLayout().getDim().get(0);
+            dimension.setSize(samples);
+            dimension.setStride(length);
+            this.batchPublisher.publish(message);
+        }
 
-        private SensorListener(Publisher<Imu> publisher, boolean hasAccel, boolean hasGyro, boolean hasQuat) {
-            this.publisher = publisher;
-            this.hasAccel = hasAccel;
-            this.hasGyro = hasGyro;
-            this.hasQuat = hasQuat;
-            this.accelTime = 0;
-            this.gyroTime = 0;
-            this.quatTime = 0;
-            this.imu = this.publisher.newMessage();
+        @Override
+        public void onImuSample(ImuSample sample) {
+            long nanos;
+            if (this.sensorClock != null) {
+                this.sensorClock.update();
+                nanos = this.sensorClock.toRosTimeNanos(sample.timestamp);
+            } else {
+                nanos = connectedNode.getCurrentTime().totalNsecs();
+            }
+            if (this.imuBatcher != null) {
+                this.imuBatcher.add(sample, nanos);
+                return;
+            }
+
+            Imu imu = this.messagePool.next();
+            imu.getLinearAcceleration().setX(sample.linearAcceleration[0]);
+            imu.getLinearAcceleration().setY(sample.linearAcceleration[1]);
+            imu.getLinearAcceleration().setZ(sample.linearAcceleration[2]);
+            imu.getAngularVelocity().setX(sample.angularVelocity[0]);
+            imu.getAngularVelocity().setY(sample.angularVelocity[1]);
+            imu.getAngularVelocity().setZ(sample.angularVelocity[2]);
+            imu.getOrientation().setW(sample.orientation[0]);
+            imu.getOrientation().setX(sample.orientation[1]);
+            imu.getOrientation().setY(sample.orientation[2]);
+            imu.getOrientation().setZ(sample.orientation[3]);
+
+            // Write the time into the message's own stamp instead of
+            // allocating a new Time.
+            Time stamp = imu.getHeader().getStamp();
+            stamp.secs = (int) (nanos / 1000000000L);
+            stamp.nsecs = (int) (nanos % 1000000000L);
+
+            this.publisher.publish(imu);
         }
 
         //	@Override
@@ -127,57 +302,103 @@ public class ImuPublisher implements NodeMain {
 
         //	@Override
         public void onSensorChanged(SensorEvent event) {
-            if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
-                this.imu.getLinearAcceleration().setX(event.values[0]);
-                this.imu.getLinearAcceleration().setY(event.values[1]);
-                this.imu.getLinearAcceleration().setZ(event.values[2]);
-
-                double[] tmpCov = {0.01, 0, 0, 0, 0.01, 0, 0, 0, 0.01};// TODO Make Parameter
-                this.imu.setLinearAccelerationCovariance(tmpCov);
-                this.accelTime = event.timestamp;
-            } else if (event.sensor.getType() == Sensor.TYPE_GYROSCOPE) {
-                this.imu.getAngularVelocity().setX(event.values[0]);
-                this.imu.getAngularVelocity().setY(event.values[1]);
-                this.imu.getAngularVelocity().setZ(event.values[2]);
-                double[] tmpCov = {0.0025, 0, 0, 0, 0.0025, 0, 0, 0, 0.0025};// TODO Make Parameter
-                this.imu.setAngularVelocityCovariance(tmpCov);
-                this.gyroTime = event.timestamp;
-            } else if (event.sensor.getType() == Sensor.TYPE_ROTATION_VECTOR) {
-                float[] quaternion = new float[4];
-                SensorManager.getQuaternionFromVector(quaternion, event.values);
-                this.imu.getOrientation().setW(quaternion[0]);
-                this.imu.getOrientation().setX(quaternion[1]);
-                this.imu.getOrientation().setY(quaternion[2]);
-                this.imu.getOrientation().setZ(quaternion[3]);
-                double[] tmpCov = {0.001, 0, 0, 0, 0.001, 0, 0, 0, 0.001};// TODO Make Parameter
-                this.imu.setOrientationCovariance(tmpCov);
-                this.quatTime = event.timestamp;
+            // Batched events may be as old as the report latency.
+            if (this.sensorClock != null && !this.sensorClock.checkTimestamp(event.timestamp,
+                    SensorClock.MAXIMUM_LATENCY + maxReportLatencyUs * 1000L)) {
+                Log.w(TAG, "Sensor timestamps are not on the boot clock, using the time of arrival instead.");
+                this.sensorClock = null;
             }
+            onSensorValues(event.sensor.getType(), event.values, event.timestamp);
+        }
 
-            // Currently storing event times in case I filter them in the future.  Otherwise they are used to determine if all sensors have reported.
-            if ((this.accelTime != 0 || !this.hasAccel) && (this.gyroTime != 0 || !this.hasGyro) && (this.quatTime != 0 || !this.hasQuat)) {
-                // Convert event.timestamp (nanoseconds uptime) into system time, use that as the header stamp
-                //long time_delta_millis = System.currentTimeMillis() - SystemClock.uptimeMillis();
-                //this.imu.getHeader().setStamp(Time.fromMillis(time_delta_millis + event.timestamp/1000000));
-                this.imu.getHeader().setStamp(connectedNode.getCurrentTime());
-                this.imu.getHeader().setFrameId("/imu");// TODO Make parameter
-
-                publisher.publish(this.imu);
-
-                // Create a new message
-                this.imu = this.publisher.newMessage();
+        @Override
+        public void onSensorRecord(SensorRecord record) {
+            onSensorValues(record.type, record.values, record.timestamp);
+        }
 
-                // Reset times
-                this.accelTime = 0;
-                this.gyroTime = 0;
-                this.quatTime = 0;
+        private void onSensorValues(int type, float[] values, long timestamp) {
+            if (type == Sensor.TYPE_ACCELEROMETER) {
+                this.imuAssembler.onAccelerometer(values, timestamp);
+            } else if (type == Sensor.TYPE_GYROSCOPE) {
+                this.imuAssembler.onGyroscope(values, timestamp);
+            } else if (type == Sensor.TYPE_ROTATION_VECTOR) {
+                this.imuAssembler.onRotationVector(values, timestamp);
             }
         }
     }
 
 
+    /**
+     * Relates the boot clock of sensor timestamps to the time of a node, so
+     * that stamps follow its {@code TimeProvider}.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+    static class ElapsedRealtimeTimeSource implements SensorClock.TimeSource {
+
+        private final ConnectedNode node;
+
+        ElapsedRealtimeTimeSource(ConnectedNode node) {
+            this.node = node;
+        }
+
+        @Override
+        public long elapsedRealtimeNanos() {
+            return SystemClock.elapsedRealtimeNanos();
+        }
+
+        @Override
+        public long currentTimeNanos() {
+            return this.node.getCurrentTime().totalNsecs();
+        }
+    }
+
     public ImuPublisher(SensorManager manager) {
+        this(manager, false, 0);
+    }
+
+    /**
+     * @param useSensorTimestamps
+     *          stamp messages with the time the sensors took the sample rather
+     *          than the time it arrived, requires API 17
+     * @param maxReportLatencyUs
+     *          how long the sensor hub may batch samples before delivering
+     *          them, requires API 19; 0 delivers every sample immediately.
+     *          Batched samples arrive late, so batching implies sensor
+     *          timestamps.
+     */
+    public ImuPublisher(SensorManager manager, boolean useSensorTimestamps, int maxReportLatencyUs) {
+        this(manager, useSensorTimestamps, maxReportLatencyUs, SensorExecutor.getInstance());
+    }
+
+    /**
+     * @param sensorExecutor
+     *          the executor whose realtime thread receives the sensor events
+     */
+    public ImuPublisher(SensorManager manager, boolean useSensorTimestamps, int maxReportLatencyUs,
+                        SensorExecutor sensorExecutor) {
         this.sensorManager = manager;
+        this.sensorExecutor = sensorExecutor;
+        this.sensorEventSource = null;
+        this.useSensorTimestamps = useSensorTimestamps || maxReportLatencyUs > 0;
+        this.maxReportLatencyUs = maxReportLatencyUs;
+    }
+
+    /**
+     * Publishes the accelerometer, gyroscope and rotation vector events of
+     * {@code sensorEventSource}, e.g. a {@link SensorReplaySource}, instead of
+     * the device's sensors. The source must deliver all three.
+     *
+     * @param useSensorTimestamps
+     *          stamp messages with the timestamps of the events, which must
+     *          be on the {@code SystemClock.elapsedRealtimeNanos()} clock,
+     *          rather than the time they arrived; requires API 17
+     */
+    public ImuPublisher(SensorEventSource sensorEventSource, boolean useSensorTimestamps) {
+        this.sensorManager = null;
+        this.sensorExecutor = null;
+        this.sensorEventSource = sensorEventSource;
+        this.useSensorTimestamps = useSensorTimestamps;
+        this.maxReportLatencyUs = 0;
     }
 
     public GraphName getDefaultNodeName() {
@@ -190,31 +411,47 @@ public class ImuPublisher implements NodeMain {
     public void onStart(ConnectedNode node) {
         try {
             this.connectedNode = node;
-            this.publisher = node.newPublisher("android/imu", "sensor_msgs/Imu");
             // 	Determine if we have the various needed sensors
-            boolean hasAccel = false;
-            boolean hasGyro = false;
-            boolean hasQuat = false;
-
-            List<Sensor> accelList = this.sensorManager.getSensorList(Sensor.TYPE_ACCELEROMETER);
-
-            if (accelList.size() > 0) {
-                hasAccel = true;
+            boolean hasAccel = this.sensorEventSource != null;
+            boolean hasGyro = this.sensorEventSource != null;
+            boolean hasQuat = this.sensorEventSource != null;
+
+            if (this.sensorEventSource == null) {
+                List<Sensor> accelList = this.sensorManager.getSensorList(Sensor.TYPE_ACCELEROMETER);
+
+                if (accelList.size() > 0) {
+                    hasAccel = true;
+                }
+
+                List<Sensor> gyroList = this.sensorManager.getSensorList(Sensor.TYPE_GYROSCOPE);
+                if (gyroList.size() > 0) {
+                    hasGyro = true;
+                }
+
+                List<Sensor> quatList = this.sensorManager.getSensorList(Sensor.TYPE_ROTATION_VECTOR);
+                if (quatList.size() > 0) {
+                    hasQuat = true;
+                }
             }
 
-            List<Sensor> gyroList = this.sensorManager.getSensorList(Sensor.TYPE_GYROSCOPE);
-            if (gyroList.size() > 0) {
-                hasGyro = true;
+            // By default, a sample is published for every gyroscope sample
+            // with the latest accelerometer and orientation samples.
+            ParameterTree parameterTree = node.getParameterTree();
+            double rate = parameterTree.getDouble("~rate", 0);
+            double maximumDelay = parameterTree.getDouble("~max_delay", 0);
+            long outputPeriod = rate > 0 ? (long) (1e9 / rate) : 0;
+            int batchSize = parameterTree.getInteger("~batch_size", 0);
+            double batchWindow = parameterTree.getDouble("~batch_window", 0);
+            this.sensorListener = new SensorListener(node, hasAccel, hasGyro, hasQuat,
+                    outputPeriod, (long) (maximumDelay * 1e9), batchSize, (long) (batchWindow * 1e9));
+            if (this.sensorEventSource != null) {
+                this.sensorEventSource.start(this.sensorListener);
+                return;
             }
-
-            List<Sensor> quatList = this.sensorManager.getSensorList(Sensor.TYPE_ROTATION_VECTOR);
-            if (quatList.size() > 0) {
-                hasQuat = true;
-            }
-
-            this.sensorListener = new SensorListener(publisher, hasAccel, hasGyro, hasQuat);
-            this.imuThread = new ImuThread(this.sensorManager, sensorListener);
-            this.imuThread.start();
+            Handler handler = this.sensorExecutor.acquire(SensorExecutor.Priority.REALTIME);
+            this.imuSensors = new ImuSensors(
+                    this.sensorExecutor.wrap(SensorExecutor.Priority.REALTIME, this.sensorListener));
+            this.imuSensors.register(handler);
         } catch (Exception e) {
             if (node != null) {
                 node.getLog().fatal(e);
@@ -226,12 +463,13 @@ public class ImuPublisher implements NodeMain {
 
     //@Override
     public void onShutdown(Node arg0) {
-        this.imuThread.shutdown();
-
-        try {
-            this.imuThread.join();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+        if (this.sensorEventSource != null) {
+            this.sensorEventSource.stop();
+        }
+        if (this.imuSensors != null) {
+            this.imuSensors.unregister();
+            this.imuSensors = null;
+            this.sensorExecutor.release(SensorExecutor.Priority.REALTIME);
         }
     }
 
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.android.android_tutorial_camera_imu;
+
+/**
+ * A single IMU reading in primitive form.
+ */
+class ImuSample {
+
+    /**
+     * x, y, z in m/s^2.
+     */
+    final double[] linearAcceleration = new double[3];
+
+    /**
+     * x, y, z in rad/s.
+     */
+    final double[] angularVelocity = new double[3];
+
+    /**
+     * w, x, y, z.
+     */
+    final double[] orientation = new double[4];
+
+    /**
+     * The time of the sample on the {@code SensorEvent.timestamp} clock.
+     */
+    long timestamp;
+}
@@ -31,6 +31,7 @@ import android.view.WindowManager;
 import android.widget.Toast;
 import org.ros.address.InetAddressFactory;
 import org.ros.android.RosActivity;
+import org.ros.android.SensorExecutor;
 import org.ros.android.view.camera.RosCameraPreviewView;
 import org.ros.node.NodeConfiguration;
 import org.ros.node.NodeMainExecutor;
@@ -47,6 +48,7 @@ public class MainActivity extends RosActivity {
     private RosCameraPreviewView rosCameraPreviewView;
     private NavSatFixPublisher fix_pub;
     private ImuPublisher imu_pub;
+    private SensorPublisher sensor_pub;
 
     private NodeMainExecutor nodeMainExecutor;
     private LocationManager mLocationManager;
@@ -109,7 +111,7 @@ public class MainActivity extends RosActivity {
             NodeConfiguration nodeConfiguration1 = NodeConfiguration.newPublic(InetAddressFactory.newNonLoopback().getHostAddress());
             nodeConfiguration1.setMasterUri(getMasterUri());
             nodeConfiguration1.setNodeName("android_sensors_driver_nav_sat_fix");
-            this.fix_pub = new NavSatFixPublisher(mLocationManager);
+            this.fix_pub = new NavSatFixPublisher(this, mLocationManager, SensorExecutor.getInstance());
             nodeMainExecutor.execute(this.fix_pub, nodeConfiguration1);
 
             rosCameraPreviewView.setCamera(getCamera());
@@ -124,13 +126,19 @@ public class MainActivity extends RosActivity {
         nodeConfiguration3.setNodeName("android_sensors_driver_imu");
         this.imu_pub = new ImuPublisher(mSensorManager);
         nodeMainExecutor.execute(this.imu_pub, nodeConfiguration3);
+
+        NodeConfiguration nodeConfiguration4 = NodeConfiguration.newPublic(InetAddressFactory.newNonLoopback().getHostAddress());
+        nodeConfiguration4.setMasterUri(getMasterUri());
+        nodeConfiguration4.setNodeName("android_sensors_driver_sensors");
+        this.sensor_pub = new SensorPublisher(mSensorManager).addDefaultSensors();
+        nodeMainExecutor.execute(this.sensor_pub, nodeConfiguration4);
     }
 
     private void executeGPS() {
         NodeConfiguration nodeConfiguration1 = NodeConfiguration.newPublic(InetAddressFactory.newNonLoopback().getHostAddress());
         nodeConfiguration1.setMasterUri(getMasterUri());
         nodeConfiguration1.setNodeName("android_sensors_driver_nav_sat_fix");
-        this.fix_pub = new NavSatFixPublisher(mLocationManager);
+        this.fix_pub = new NavSatFixPublisher(this, mLocationManager, SensorExecutor.getInstance());
         nodeMainExecutor.execute(this.fix_pub, nodeConfiguration1);
     }
 
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.android.android_tutorial_camera_imu;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A fixed ring of messages that are reused instead of allocating a new
+ * message for every publish.
+ * <p>
+ * rosjava serializes a message some time after it is published and does not
+ * report when it is done. A publisher keeps at most 16 messages queued and
+ * drops the oldest beyond that, so a ring that is larger than this never
+ * hands out a message that may still be waiting to be serialized.
+ */
+class MessagePool<T> {
+
+    /**
+     * The smallest pool size that is safe to use with a single publisher.
+     */
+    public static final int DEFAULT_SIZE = 18;
+
+    interface Factory<T> {
+        T newMessage();
+    }
+
+    private final Object[] messages;
+    private int next;
+
+    public MessagePool(Factory<T> factory, int size) {
+        Preconditions.checkArgument(size > 0);
+        this.messages = new Object[size];
+        for (int i = 0; i < size; i++) {
+            this.messages[i] = factory.newMessage();
+        }
+    }
+
+    /**
+     * @return the least recently used message
+     */
+    @SuppressWarnings("unchecked")
+    public T next() {
+        T message = (T) this.messages[this.next];
+        this.next = (this.next + 1) % this.messages.length;
+        return message;
+    }
+
+    public int size() {
+        return this.messages.length;
+    }
+}
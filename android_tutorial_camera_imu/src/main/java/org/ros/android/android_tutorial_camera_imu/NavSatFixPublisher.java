@@ -30,92 +30,175 @@
 package org.ros.android.android_tutorial_camera_imu;
 
 import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.location.GnssClock;
+import android.location.GnssMeasurement;
+import android.location.GnssMeasurementsEvent;
+import android.location.GnssStatus;
 import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
 import android.location.LocationProvider;
+import android.os.Build;
 import android.os.Bundle;
-import android.os.Looper;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
 
+import com.google.common.collect.Lists;
+
+import org.ros.android.SensorEventSource;
+import org.ros.android.SensorExecutor;
+import org.ros.android.SensorRecord;
+import org.ros.android.SensorRecordListener;
+import org.ros.android.SensorReplaySource;
+import org.ros.android.SensorThreadStatistics;
+import org.ros.message.MessageFactory;
 import org.ros.namespace.GraphName;
 import org.ros.node.ConnectedNode;
 import org.ros.message.Time;
 
+import java.util.Collection;
+
 import sensor_msgs.NavSatFix;
 import sensor_msgs.NavSatStatus;
+import std_msgs.Float64MultiArray;
+import std_msgs.MultiArrayDimension;
 
 import org.ros.node.Node;
 import org.ros.node.NodeMain;
+import org.ros.node.parameter.ParameterTree;
 import org.ros.node.topic.Publisher;
 
 /**
+ * Publishes locations as {@link NavSatFix} messages on android/fix.
+ * <p>
+ * Locations come from the fused location provider of Google Play services if
+ * it is available and a {@link Context} was given, and from the GPS provider
+ * of the {@link LocationManager} otherwise. Messages are stamped with the time
+ * the location was computed, not the time it arrived.
+ * <p>
+ * From API 24 on, the satellites used in the fix are published as a
+ * {@link NavSatStatus} on android/gnss/status, and GNSS raw measurements for
+ * RTK post-processing as a {@link Float64MultiArray} on android/gnss/raw; see
+ * {@link GnssMeasurementLayout} for its layout.
+ * <p>
+ * The following private parameters are read on start:
+ * <ul>
+ * <li>~rate: the desired location rate in Hz, 10 by default</li>
+ * <li>~batch_latency: how long in seconds the fused provider may batch
+ * locations before delivering them, 0 (default) to deliver them
+ * immediately</li>
+ * <li>~use_fused: false to always use the GPS provider, true by default</li>
+ * <li>~frame_id: /gps by default</li>
+ * </ul>
+ *
  * @author chadrockey@gmail.com (Chad Rockey)
  * @author axelfurlan@gmail.com (Axel Furlan)
  */
 public class NavSatFixPublisher implements NodeMain {
 
-    private NavSatThread navSatThread;
+    private static final String TAG = "NavSatFixPublisher";
+
+    // How often the offset between the boot clock and node time is resampled.
+    private static final long CLOCK_UPDATE_INTERVAL = 1000000000; // ns
+
+    private final Context context;
     private LocationManager locationManager;
+    private final SensorExecutor sensorExecutor;
+    private final SensorEventSource sensorEventSource;
     private NavSatListener navSatFixListener;
-    private Publisher<NavSatFix> publisher;
+    private LocationListener registeredLocationListener;
+    private FusedLocationSource fusedLocationSource;
+    private Object gnssMeasurementsCallback;
+    private Object gnssStatusCallback;
     private ConnectedNode connectedNode;
 
-    private class NavSatThread extends Thread {
-        LocationManager locationManager;
-        NavSatListener navSatListener;
-        private Looper threadLooper;
+    private class NavSatListener implements LocationListener, SensorRecordListener {
 
-        private NavSatThread(LocationManager locationManager, NavSatListener navSatListener) {
-            this.locationManager = locationManager;
-            this.navSatListener = navSatListener;
-        }
-
-        @SuppressLint("MissingPermission")
-        public void run() {
-            Looper.prepare();
-            threadLooper = Looper.myLooper();
-            this.locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, 0, 0, this.navSatListener);
-            Looper.loop();
-        }
-
-        public void shutdown() {
-            this.locationManager.removeUpdates(this.navSatListener);
-            if (threadLooper != null) {
-                threadLooper.quit();
-            }
-        }
-    }
-
-    private class NavSatListener implements LocationListener {
-
-        private Publisher<NavSatFix> publisher;
+        private final MessagePool<NavSatFix> messagePool;
+        private final SensorClock sensorClock;
+        private final GnssFixStatus fixStatus;
 
         private volatile byte currentStatus;
+        private Publisher<NavSatFix> publisher;
 
-        private NavSatListener(Publisher<NavSatFix> publisher) {
+        private NavSatListener(final Publisher<NavSatFix> publisher, final String frameId) {
             this.publisher = publisher;
+            this.messagePool = new MessagePool<NavSatFix>(new MessagePool.Factory<NavSatFix>() {
+                @Override
+                public NavSatFix newMessage() {
+                    NavSatFix fix = publisher.newMessage();
+                    fix.getHeader().setFrameId(frameId);
+                    // The covariance is written into this array in place.
+                    fix.setPositionCovariance(new double[9]);
+                    return fix;
+                }
+            }, MessagePool.DEFAULT_SIZE);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+                this.sensorClock = new SensorClock(new ImuPublisher.ElapsedRealtimeTimeSource(connectedNode), CLOCK_UPDATE_INTERVAL);
+            } else {
+                this.sensorClock = null;
+            }
+            this.fixStatus = new GnssFixStatus();
             this.currentStatus = NavSatStatus.STATUS_FIX; // Default to fix until we are told otherwise.
         }
 
         //	@Override
         public void onLocationChanged(Location location) {
-            NavSatFix fix = this.publisher.newMessage();
-            //fix.getHeader().setStamp(Time.fromMillis(System.currentTimeMillis()));
-            fix.getHeader().setStamp(connectedNode.getCurrentTime());
-            fix.getHeader().setFrameId("/gps");
+            long elapsedRealtimeNanos = this.sensorClock != null ? getElapsedRealtimeNanos(location) : 0;
+            publishFix(elapsedRealtimeNanos, location.getLatitude(), location.getLongitude(),
+                    location.getAltitude(), location.getAccuracy(), getVerticalAccuracy(location));
+        }
+
+        @Override
+        public void onSensorRecord(SensorRecord record) {
+            if (record.isLocation()) {
+                publishFix(record.timestamp, record.latitude, record.longitude, record.altitude,
+                        record.horizontalAccuracy, record.verticalAccuracy);
+            }
+        }
+
+        /**
+         * @param elapsedRealtimeNanos
+         *          the time of the fix on the boot clock; ignored before API 17
+         * @param vertical
+         *          the vertical accuracy in meters, or 0 if it is unknown
+         */
+        private void publishFix(long elapsedRealtimeNanos, double latitude, double longitude,
+                                double altitude, double horizontal, double vertical) {
+            NavSatFix fix = this.messagePool.next();
+            Time stamp = fix.getHeader().getStamp();
+            if (this.sensorClock != null) {
+                // Batched locations arrive long after they were computed.
+                this.sensorClock.update();
+                long nanos = this.sensorClock.toRosTimeNanos(elapsedRealtimeNanos);
+                stamp.secs = (int) (nanos / 1000000000L);
+                stamp.nsecs = (int) (nanos % 1000000000L);
+            } else {
+                Time now = connectedNode.getCurrentTime();
+                stamp.secs = now.secs;
+                stamp.nsecs = now.nsecs;
+            }
 
             fix.getStatus().setStatus(currentStatus);
-            fix.getStatus().setService(NavSatStatus.SERVICE_GPS);
+            fix.getStatus().setService(this.fixStatus.getService());
 
-            fix.setLatitude(location.getLatitude());
-            fix.setLongitude(location.getLongitude());
-            fix.setAltitude(location.getAltitude());
-            fix.setPositionCovarianceType(NavSatFix.COVARIANCE_TYPE_APPROXIMATED);
-            double deviation = location.getAccuracy();
-            double covariance = deviation * deviation;
-            double[] tmpCov = {covariance, 0, 0, 0, covariance, 0, 0, 0, covariance};
-            fix.setPositionCovariance(tmpCov);
-            publisher.publish(fix);
+            fix.setLatitude(latitude);
+            fix.setLongitude(longitude);
+            fix.setAltitude(altitude);
+            double[] covariance = fix.getPositionCovariance();
+            covariance[0] = horizontal * horizontal;
+            covariance[4] = horizontal * horizontal;
+            if (vertical > 0) {
+                covariance[8] = vertical * vertical;
+                fix.setPositionCovarianceType(NavSatFix.COVARIANCE_TYPE_DIAGONAL_KNOWN);
+            } else {
+                covariance[8] = horizontal * horizontal;
+                fix.setPositionCovarianceType(NavSatFix.COVARIANCE_TYPE_APPROXIMATED);
+            }
+            this.publisher.publish(fix);
         }
 
         //	@Override
@@ -142,18 +225,298 @@ public class NavSatFixPublisher implements NodeMain {
         }
     }
 
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+    private static long getElapsedRealtimeNanos(Location location) {
+        return location.getElapsedRealtimeNanos();
+    }
+
+    @TargetApi(Build.VERSION_CODES.Q)
+    private static boolean hasElapsedRealtimeNanos(GnssClock clock) {
+        return clock.hasElapsedRealtimeNanos();
+    }
+
+    @TargetApi(Build.VERSION_CODES.Q)
+    private static long getElapsedRealtimeNanos(GnssClock clock) {
+        return clock.getElapsedRealtimeNanos();
+    }
+
+    /**
+     * @return the vertical accuracy in meters, or 0 if it is unknown
+     */
+    private static double getVerticalAccuracy(Location location) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            return getVerticalAccuracyMeters(location);
+        }
+        return 0;
+    }
+
+    @TargetApi(Build.VERSION_CODES.O)
+    private static double getVerticalAccuracyMeters(Location location) {
+        return location.hasVerticalAccuracy() ? location.getVerticalAccuracyMeters() : 0;
+    }
+
+    /**
+     * Publishes the satellites used in the fix, and keeps the status of the
+     * {@link NavSatFix} messages up to date.
+     */
+    @TargetApi(Build.VERSION_CODES.N)
+    private class StatusCallback extends GnssStatus.Callback {
+
+        private final NavSatListener navSatListener;
+        private final SensorThreadStatistics statistics;
+        private final Publisher<NavSatStatus> publisher;
+        private final MessagePool<NavSatStatus> messagePool;
+
+        private StatusCallback(NavSatListener navSatListener, SensorThreadStatistics statistics,
+                               final Publisher<NavSatStatus> publisher) {
+            this.navSatListener = navSatListener;
+            this.statistics = statistics;
+            this.publisher = publisher;
+            this.messagePool = new MessagePool<NavSatStatus>(new MessagePool.Factory<NavSatStatus>() {
+                @Override
+                public NavSatStatus newMessage() {
+                    return publisher.newMessage();
+                }
+            }, MessagePool.DEFAULT_SIZE);
+        }
+
+        @Override
+        public void onSatelliteStatusChanged(GnssStatus status) {
+            long startTime = System.nanoTime();
+            publishStatus(status);
+            // The status does not say when it was computed.
+            this.statistics.onCallback(0, System.nanoTime() - startTime);
+        }
+
+        private void publishStatus(GnssStatus status) {
+            GnssFixStatus fixStatus = this.navSatListener.fixStatus;
+            fixStatus.reset();
+            for (int i = 0; i < status.getSatelliteCount(); i++) {
+                fixStatus.addSatellite(status.getConstellationType(i), status.usedInFix(i));
+            }
+            this.navSatListener.currentStatus = fixStatus.getStatus();
+            NavSatStatus message = this.messagePool.next();
+            message.setStatus(fixStatus.getStatus());
+            message.setService(fixStatus.getService());
+            this.publisher.publish(message);
+        }
+
+        @Override
+        public void onStopped() {
+            this.navSatListener.currentStatus = NavSatStatus.STATUS_NO_FIX;
+        }
+    }
+
+    /**
+     * Packs each epoch of raw measurements into a {@link Float64MultiArray}.
+     */
+    @TargetApi(Build.VERSION_CODES.N)
+    private class MeasurementsCallback extends GnssMeasurementsEvent.Callback {
+
+        private final NavSatListener navSatListener;
+        private final SensorThreadStatistics statistics;
+        private final Publisher<Float64MultiArray> publisher;
+        private final MessagePool<Float64MultiArray> messagePool;
+
+        private MeasurementsCallback(NavSatListener navSatListener, SensorThreadStatistics statistics,
+                                     final Publisher<Float64MultiArray> publisher,
+                                     final MessageFactory messageFactory) {
+            this.navSatListener = navSatListener;
+            this.statistics = statistics;
+            this.publisher = publisher;
+            this.messagePool = new MessagePool<Float64MultiArray>(new MessagePool.Factory<Float64MultiArray>() {
+                @Override
+                public Float64MultiArray newMessage() {
+                    MultiArrayDimension measurements = messageFactory.newFromType(MultiArrayDimension._TYPE);
+                    measurements.setLabel("measurements");
+                    MultiArrayDimension fields = messageFactory.newFromType(MultiArrayDimension._TYPE);
+                    fields.setLabel("fields");
+                    fields.setSize(GnssMeasurementLayout.MEASUREMENT_FIELDS);
+                    fields.setStride(GnssMeasurementLayout.MEASUREMENT_FIELDS);
+                    Float64MultiArray message = publisher.newMessage();
+                    message.getLayout().setDim(Lists.newArrayList(measurements, fields));
+                    message.getLayout().setDataOffset(GnssMeasurementLayout.CLOCK_FIELDS);
+                    message.setData(new double[GnssMeasurementLayout.length(0)]);
+                    return message;
+                }
+            }, MessagePool.DEFAULT_SIZE);
+        }
+
+        @Override
+        public void onGnssMeasurementsReceived(GnssMeasurementsEvent event) {
+            GnssClock clock = event.getClock();
+            long latency = 0;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && hasElapsedRealtimeNanos(clock)) {
+                latency = SystemClock.elapsedRealtimeNanos() - getElapsedRealtimeNanos(clock);
+            }
+            long startTime = System.nanoTime();
+            publishMeasurements(event);
+            this.statistics.onCallback(latency, System.nanoTime() - startTime);
+        }
+
+        private void publishMeasurements(GnssMeasurementsEvent event) {
+            Collection<GnssMeasurement> measurements = event.getMeasurements();
+            int count = measurements.size();
+            Float64MultiArray message = this.messagePool.next();
+            double[] data = message.getData();
+            int length = GnssMeasurementLayout.length(count);
+            if (data.length != length) {
+                // The number of satellites changes slowly, so this rarely
+                // allocates.
+                data = new double[length];
+                message.setData(data);
+            }
+            GnssClock clock = event.getClock();
+            long nanos = getStampNanos(clock);
+            data[GnssMeasurementLayout.STAMP_SECS] = nanos / 1000000000L;
+            data[GnssMeasurementLayout.STAMP_NSECS] = nanos % 1000000000L;
+            putClock(clock, data);
+            int index = 0;
+            for (GnssMeasurement measurement : measurements) {
+                putMeasurement(measurement, data, GnssMeasurementLayout.row(index++));
+            }
+            MultiArrayDimension dimension = message.getLayout().getDim().get(0);
+            dimension.setSize(count);
+            dimension.setStride(count * GnssMeasurementLayout.MEASUREMENT_FIELDS);
+            this.publisher.publish(message);
+        }
+
+        /**
+         * @return the node time of the epoch if the boot clock time of the
+         *         receiver clock is known, or the time of arrival otherwise
+         */
+        private long getStampNanos(GnssClock clock) {
+            SensorClock sensorClock = this.navSatListener.sensorClock;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && hasElapsedRealtimeNanos(clock)) {
+                sensorClock.update();
+                return sensorClock.toRosTimeNanos(getElapsedRealtimeNanos(clock));
+            }
+            return connectedNode.getCurrentTime().totalNsecs();
+        }
+
+        private void putClock(GnssClock clock, double[] data) {
+            GnssMeasurementLayout.putNanos(data, GnssMeasurementLayout.TIME_NANOS, clock.getTimeNanos());
+            if (clock.hasFullBiasNanos()) {
+                GnssMeasurementLayout.putNanos(data, GnssMeasurementLayout.FULL_BIAS_NANOS, clock.getFullBiasNanos());
+            } else {
+                data[GnssMeasurementLayout.FULL_BIAS_NANOS] = Double.NaN;
+                data[GnssMeasurementLayout.FULL_BIAS_NANOS + 1] = Double.NaN;
+            }
+            data[GnssMeasurementLayout.BIAS_NANOS] = clock.hasBiasNanos() ? clock.getBiasNanos() : Double.NaN;
+            data[GnssMeasurementLayout.BIAS_UNCERTAINTY_NANOS] =
+                    clock.hasBiasUncertaintyNanos() ? clock.getBiasUncertaintyNanos() : Double.NaN;
+            data[GnssMeasurementLayout.DRIFT_NANOS_PER_SECOND] =
+                    clock.hasDriftNanosPerSecond() ? clock.getDriftNanosPerSecond() : Double.NaN;
+            data[GnssMeasurementLayout.DRIFT_UNCERTAINTY_NANOS_PER_SECOND] =
+                    clock.hasDriftUncertaintyNanosPerSecond() ? clock.getDriftUncertaintyNanosPerSecond() : Double.NaN;
+            data[GnssMeasurementLayout.HARDWARE_CLOCK_DISCONTINUITY_COUNT] = clock.getHardwareClockDiscontinuityCount();
+            data[GnssMeasurementLayout.LEAP_SECOND] = clock.hasLeapSecond() ? clock.getLeapSecond() : Double.NaN;
+            data[GnssMeasurementLayout.TIME_UNCERTAINTY_NANOS] =
+                    clock.hasTimeUncertaintyNanos() ? clock.getTimeUncertaintyNanos() : Double.NaN;
+        }
+
+        private void putMeasurement(GnssMeasurement measurement, double[] data, int row) {
+            data[row + GnssMeasurementLayout.SVID] = measurement.getSvid();
+            data[row + GnssMeasurementLayout.CONSTELLATION_TYPE] = measurement.getConstellationType();
+            data[row + GnssMeasurementLayout.TIME_OFFSET_NANOS] = measurement.getTimeOffsetNanos();
+            data[row + GnssMeasurementLayout.STATE] = measurement.getState();
+            data[row + GnssMeasurementLayout.RECEIVED_SV_TIME_NANOS] = measurement.getReceivedSvTimeNanos();
+            data[row + GnssMeasurementLayout.RECEIVED_SV_TIME_UNCERTAINTY_NANOS] =
+                    measurement.getReceivedSvTimeUncertaintyNanos();
+            data[row + GnssMeasurementLayout.CN0_DBHZ] = measurement.getCn0DbHz();
+            data[row + GnssMeasurementLayout.PSEUDORANGE_RATE_METERS_PER_SECOND] =
+                    measurement.getPseudorangeRateMetersPerSecond();
+            data[row + GnssMeasurementLayout.PSEUDORANGE_RATE_UNCERTAINTY_METERS_PER_SECOND] =
+                    measurement.getPseudorangeRateUncertaintyMetersPerSecond();
+            data[row + GnssMeasurementLayout.ACCUMULATED_DELTA_RANGE_STATE] =
+                    measurement.getAccumulatedDeltaRangeState();
+            data[row + GnssMeasurementLayout.ACCUMULATED_DELTA_RANGE_METERS] =
+                    measurement.getAccumulatedDeltaRangeMeters();
+            data[row + GnssMeasurementLayout.ACCUMULATED_DELTA_RANGE_UNCERTAINTY_METERS] =
+                    measurement.getAccumulatedDeltaRangeUncertaintyMeters();
+            data[row + GnssMeasurementLayout.CARRIER_FREQUENCY_HZ] =
+                    measurement.hasCarrierFrequencyHz() ? measurement.getCarrierFrequencyHz() : Double.NaN;
+            data[row + GnssMeasurementLayout.MULTIPATH_INDICATOR] = measurement.getMultipathIndicator();
+            data[row + GnssMeasurementLayout.SNR_DB] =
+                    measurement.hasSnrInDb() ? measurement.getSnrInDb() : Double.NaN;
+        }
+    }
+
     public NavSatFixPublisher(LocationManager manager) {
+        this(null, manager, SensorExecutor.getInstance());
+    }
+
+    /**
+     * @param sensorExecutor
+     *          the executor whose background thread receives the location
+     *          updates
+     */
+    public NavSatFixPublisher(LocationManager manager, SensorExecutor sensorExecutor) {
+        this(null, manager, sensorExecutor);
+    }
+
+    /**
+     * @param context
+     *          used to connect to the fused location provider, or null to only
+     *          use the {@link LocationManager}
+     * @param sensorExecutor
+     *          the executor whose background thread receives the location
+     *          updates
+     */
+    public NavSatFixPublisher(Context context, LocationManager manager, SensorExecutor sensorExecutor) {
+        this.context = context;
         this.locationManager = manager;
+        this.sensorExecutor = sensorExecutor;
+        this.sensorEventSource = null;
+    }
+
+    /**
+     * Publishes the location records of {@code sensorEventSource}, e.g. a
+     * {@link SensorReplaySource}, instead of the device's locations. GNSS
+     * status and raw measurements are not published.
+     */
+    public NavSatFixPublisher(SensorEventSource sensorEventSource) {
+        this.context = null;
+        this.locationManager = null;
+        this.sensorExecutor = null;
+        this.sensorEventSource = sensorEventSource;
     }
 
     //@Override
+    @SuppressLint("MissingPermission")
     public void onStart(ConnectedNode node) {
         try {
             this.connectedNode = node;
-            this.publisher = node.newPublisher("android/fix", "sensor_msgs/NavSatFix");
-            this.navSatFixListener = new NavSatListener(publisher);
-            this.navSatThread = new NavSatThread(this.locationManager, this.navSatFixListener);
-            this.navSatThread.start();
+            ParameterTree parameterTree = node.getParameterTree();
+            double rate = parameterTree.getDouble("~rate", 10);
+            double batchLatency = parameterTree.getDouble("~batch_latency", 0);
+            boolean useFused = parameterTree.getBoolean("~use_fused", true);
+            String frameId = parameterTree.getString("~frame_id", "/gps");
+            long interval = rate > 0 ? (long) (1000 / rate) : 0;
+
+            Publisher<NavSatFix> publisher = node.newPublisher("android/fix", NavSatFix._TYPE);
+            this.navSatFixListener = new NavSatListener(publisher, frameId);
+            if (this.sensorEventSource != null) {
+                this.sensorEventSource.start(this.navSatFixListener);
+                return;
+            }
+            Handler handler = this.sensorExecutor.acquire(SensorExecutor.Priority.BACKGROUND);
+            this.registeredLocationListener =
+                    this.sensorExecutor.wrap(SensorExecutor.Priority.BACKGROUND, this.navSatFixListener);
+            if (useFused && this.context != null && FusedLocationSource.isAvailable(this.context)) {
+                this.fusedLocationSource = new FusedLocationSource(this.context);
+                this.fusedLocationSource.start(this.registeredLocationListener, interval, (long) (batchLatency * 1000),
+                        handler.getLooper());
+            } else {
+                if (batchLatency > 0) {
+                    Log.w(TAG, "Batching requires the fused location provider.");
+                }
+                this.locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, interval, 0,
+                        this.registeredLocationListener, handler.getLooper());
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                startGnss(node, handler);
+            }
         } catch (Exception e) {
             if (node != null) {
                 node.getLog().fatal(e);
@@ -163,13 +526,56 @@ public class NavSatFixPublisher implements NodeMain {
         }
     }
 
+    @TargetApi(Build.VERSION_CODES.N)
+    @SuppressLint("MissingPermission")
+    private void startGnss(ConnectedNode node, Handler handler) {
+        SensorThreadStatistics statistics = this.sensorExecutor.getStatistics(SensorExecutor.Priority.BACKGROUND);
+        StatusCallback statusCallback = new StatusCallback(this.navSatFixListener, statistics,
+                node.<NavSatStatus>newPublisher("android/gnss/status", NavSatStatus._TYPE));
+        if (this.locationManager.registerGnssStatusCallback(statusCallback, handler)) {
+            this.gnssStatusCallback = statusCallback;
+        }
+        MeasurementsCallback measurementsCallback = new MeasurementsCallback(this.navSatFixListener, statistics,
+                node.<Float64MultiArray>newPublisher("android/gnss/raw", Float64MultiArray._TYPE),
+                node.getTopicMessageFactory());
+        if (this.locationManager.registerGnssMeasurementsCallback(measurementsCallback, handler)) {
+            this.gnssMeasurementsCallback = measurementsCallback;
+        } else {
+            Log.i(TAG, "GNSS raw measurements are not supported.");
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.N)
+    private void stopGnss() {
+        if (this.gnssStatusCallback != null) {
+            this.locationManager.unregisterGnssStatusCallback((GnssStatus.Callback) this.gnssStatusCallback);
+            this.gnssStatusCallback = null;
+        }
+        if (this.gnssMeasurementsCallback != null) {
+            this.locationManager.unregisterGnssMeasurementsCallback(
+                    (GnssMeasurementsEvent.Callback) this.gnssMeasurementsCallback);
+            this.gnssMeasurementsCallback = null;
+        }
+    }
+
     //@Override
     public void onShutdown(Node arg0) {
-        this.navSatThread.shutdown();
-        try {
-            this.navSatThread.join();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+        if (this.navSatFixListener != null && this.sensorEventSource != null) {
+            this.sensorEventSource.stop();
+            this.navSatFixListener = null;
+        } else if (this.navSatFixListener != null) {
+            if (this.fusedLocationSource != null) {
+                this.fusedLocationSource.stop();
+                this.fusedLocationSource = null;
+            } else {
+                this.locationManager.removeUpdates(this.registeredLocationListener);
+            }
+            this.registeredLocationListener = null;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                stopGnss();
+            }
+            this.navSatFixListener = null;
+            this.sensorExecutor.release(SensorExecutor.Priority.BACKGROUND);
         }
     }
 
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.android.android_tutorial_camera_imu;
+
+/**
+ * Converts {@code SensorEvent.timestamp}s, which count nanoseconds since boot
+ * like {@code SystemClock.elapsedRealtimeNanos()}, into the ROS time of a node.
+ * <p>
+ * The offset between the two clocks is sampled by reading the node time on
+ * both sides of a read of the boot clock. Samples whose reads were too far
+ * apart, e.g. because the thread was preempted, are rejected. The remaining
+ * samples are smoothed so that millisecond time resolution and small
+ * adjustments of the node time do not show up as jitter in the converted
+ * timestamps, while large jumps are followed immediately.
+ * <p>
+ * Until the first sample is accepted, timestamps are converted to the current
+ * node time, i.e. the time of arrival.
+ * <p>
+ * Android only guarantees that sensor timestamps are on the boot clock from
+ * API 24. Owners should pass the first event they receive to
+ * {@link #checkTimestamp(long, long)} and stamp with the time of arrival if
+ * it fails.
+ */
+class SensorClock {
+
+    interface TimeSource {
+        long elapsedRealtimeNanos();
+
+        /**
+         * @return the current time of the node in nanoseconds, e.g. from
+         *         {@code ConnectedNode.getCurrentTime()}
+         */
+        long currentTimeNanos();
+    }
+
+    // Reads that are further apart than this say little about the offset.
+    private static final long MAXIMUM_READ_INTERVAL = 2000000; // ns
+    // Offset changes larger than this are applied at once rather than smoothed.
+    private static final long MAXIMUM_SMOOTHED_STEP = 50000000; // ns
+    private static final double SMOOTHING = 0.05;
+    // Bracketed reads that are tried per update before the clock is initialized.
+    private static final int MAXIMUM_ATTEMPTS = 3;
+
+    /**
+     * How far in nanoseconds the timestamp of an event that has just been
+     * delivered may be from the boot clock, not counting sensor batching.
+     */
+    public static final long MAXIMUM_LATENCY = 1000000000;
+
+    private final TimeSource timeSource;
+    private final long updateInterval;
+
+    private boolean initialized;
+    private double offset;
+    private long lastUpdate;
+    private boolean checked;
+    private boolean onBootClock;
+
+    /**
+     * @param updateInterval
+     *          the minimum time between offset samples in nanoseconds
+     */
+    public SensorClock(TimeSource timeSource, long updateInterval) {
+        this.timeSource = timeSource;
+        this.updateInterval = updateInterval;
+    }
+
+    /**
+     * Samples the clock offset if the update interval has passed, or until a
+     * sample is accepted while the clock is not initialized yet. Does not
+     * allocate itself, so it may be called for every sensor event.
+     */
+    public void update() {
+        long now = this.timeSource.elapsedRealtimeNanos();
+        if (this.initialized) {
+            if (now - this.lastUpdate >= this.updateInterval) {
+                sample();
+            }
+            return;
+        }
+        for (int i = 0; i < MAXIMUM_ATTEMPTS; i++) {
+            if (sample()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} if the sample was accepted
+     */
+    private boolean sample() {
+        long timeBefore = this.timeSource.currentTimeNanos();
+        long elapsed = this.timeSource.elapsedRealtimeNanos();
+        long timeAfter = this.timeSource.currentTimeNanos();
+        if (timeAfter - timeBefore > MAXIMUM_READ_INTERVAL) {
+            return false;
+        }
+        this.lastUpdate = elapsed;
+        // The default and NTP time providers read the wall clock in
+        // milliseconds, so on average node time lags by half a millisecond.
+        // Both reads may also fall into the same millisecond, so use the
+        // middle of the interval they bracket.
+        double sample = (timeBefore + timeAfter) / 2.0 + 500000 - elapsed;
+        if (!this.initialized || Math.abs(sample - this.offset) > MAXIMUM_SMOOTHED_STEP) {
+            this.offset = sample;
+            this.initialized = true;
+        } else {
+            this.offset += SMOOTHING * (sample - this.offset);
+        }
+        return true;
+    }
+
+    /**
+     * Checks, the first time it is called, whether sensor timestamps are on
+     * the boot clock. Later calls return the same result.
+     *
+     * @param sensorTimestamp
+     *          the timestamp of an event that has just been delivered
+     * @param maximumLatency
+     *          how far in nanoseconds the timestamp may be from the boot clock
+     * @return {@code false} if the timestamps are on another clock, so that
+     *         {@link #toRosTimeNanos(long)} would be off by a constant
+     */
+    public boolean checkTimestamp(long sensorTimestamp, long maximumLatency) {
+        if (!this.checked) {
+            long latency = this.timeSource.elapsedRealtimeNanos() - sensorTimestamp;
+            this.onBootClock = Math.abs(latency) <= maximumLatency;
+            this.checked = true;
+        }
+        return this.onBootClock;
+    }
+
+    public boolean isInitialized() {
+        return this.initialized;
+    }
+
+    /**
+     * @param sensorTimestamp
+     *          a {@code SensorEvent.timestamp} in nanoseconds
+     * @return the corresponding node time in nanoseconds, or the current node
+     *         time if the clock could not be initialized yet
+     */
+    public long toRosTimeNanos(long sensorTimestamp) {
+        if (!this.initialized) {
+            update();
+            if (!this.initialized) {
+                return this.timeSource.currentTimeNanos();
+            }
+        }
+        return sensorTimestamp + Math.round(this.offset);
+    }
+
+    /**
+     * @return the current estimate of node time minus boot clock time in
+     *         nanoseconds
+     */
+    public long getOffsetNanos() {
+        return Math.round(this.offset);
+    }
+}
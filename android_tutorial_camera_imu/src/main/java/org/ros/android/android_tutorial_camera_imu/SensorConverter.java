@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.android.android_tutorial_camera_imu;
+
+import std_msgs.Header;
+
+/**
+ * Turns the values of a {@code SensorEvent} into a ROS message for
+ * {@link SensorPublisher}.
+ * <p>
+ * Messages are reused, so {@link #convert(float[], Object)} must set every
+ * field that depends on the event. Fields that never change can be set once in
+ * {@link #initialize(Object)}. Converters are only called from the sensor
+ * thread and may keep scratch space without synchronization.
+ */
+public interface SensorConverter<T> {
+
+    /**
+     * @return the ROS type of the messages, e.g. "sensor_msgs/Temperature"
+     */
+    String getMessageType();
+
+    /**
+     * @return the header of {@code message}, which is filled in by the caller
+     */
+    Header getHeader(T message);
+
+    /**
+     * Called once for every pooled message.
+     */
+    void initialize(T message);
+
+    /**
+     * @param values
+     *          the {@code SensorEvent.values}
+     */
+    void convert(float[] values, T message);
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.android.android_tutorial_camera_imu;
+
+import geometry_msgs.QuaternionStamped;
+import geometry_msgs.Vector3Stamped;
+import sensor_msgs.FluidPressure;
+import sensor_msgs.Illuminance;
+import sensor_msgs.MagneticField;
+import sensor_msgs.Temperature;
+import std_msgs.Header;
+
+/**
+ * {@link SensorConverter}s for the standard Android sensor types. Units are
+ * converted to SI as required by REP 103.
+ */
+public final class SensorConverters {
+
+    private SensorConverters() {
+    }
+
+    /**
+     * For {@code TYPE_MAGNETIC_FIELD}, whose values are in microtesla.
+     */
+    public static SensorConverter<MagneticField> magneticField() {
+        return new SensorConverter<MagneticField>() {
+            @Override
+            public String getMessageType() {
+                return MagneticField._TYPE;
+            }
+
+            @Override
+            public Header getHeader(MagneticField message) {
+                return message.getHeader();
+            }
+
+            @Override
+            public void initialize(MagneticField message) {
+            }
+
+            @Override
+            public void convert(float[] values, MagneticField message) {
+                message.getMagneticField().setX(values[0] * 1e-6);
+                message.getMagneticField().setY(values[1] * 1e-6);
+                message.getMagneticField().setZ(values[2] * 1e-6);
+            }
+        };
+    }
+
+    /**
+     * For {@code TYPE_PRESSURE}, whose value is in hectopascal.
+     */
+    public static SensorConverter<FluidPressure> fluidPressure() {
+        return new SensorConverter<FluidPressure>() {
+            @Override
+            public String getMessageType() {
+                return FluidPressure._TYPE;
+            }
+
+            @Override
+            public Header getHeader(FluidPressure message) {
+                return message.getHeader();
+            }
+
+            @Override
+            public void initialize(FluidPressure message) {
+            }
+
+            @Override
+            public void convert(float[] values, FluidPressure message) {
+                message.setFluidPressure(values[0] * 100.0);
+            }
+        };
+    }
+
+    /**
+     * For {@code TYPE_AMBIENT_TEMPERATURE}, whose value is in degrees Celsius.
+     */
+    public static SensorConverter<Temperature> temperature() {
+        return new SensorConverter<Temperature>() {
+            @Override
+            public String getMessageType() {
+                return Temperature._TYPE;
+            }
+
+            @Override
+            public Header getHeader(Temperature message) {
+                return message.getHeader();
+            }
+
+            @Override
+            public void initialize(Temperature message) {
+            }
+
+            @Override
+            public void convert(float[] values, Temperature message) {
+                message.setTemperature(values[0]);
+            }
+        };
+    }
+
+    /**
+     * For {@code TYPE_LIGHT}, whose value is in lux.
+     */
+    public static SensorConverter<Illuminance> illuminance() {
+        return new SensorConverter<Illuminance>() {
+            @Override
+            public String getMessageType() {
+                return Illuminance._TYPE;
+            }
+
+            @Override
+            public Header getHeader(Illuminance message) {
+                return message.getHeader();
+            }
+
+            @Override
+            public void initialize(Illuminance message) {
+            }
+
+            @Override
+            public void convert(float[] values, Illuminance message) {
+                message.setIlluminance(values[0]);
+            }
+        };
+    }
+
+    /**
+     * For sensors whose first three values are an x, y, z vector that is
+     * already in SI units, e.g. {@code TYPE_GYROSCOPE_UNCALIBRATED} in rad/s or
+     * {@code TYPE_LINEAR_ACCELERATION} in m/s^2. Any further values, such as
+     * the estimated drift of uncalibrated sensors, are ignored.
+     */
+    public static SensorConverter<Vector3Stamped> vector3() {
+        return new SensorConverter<Vector3Stamped>() {
+            @Override
+            public String getMessageType() {
+                return Vector3Stamped._TYPE;
+            }
+
+            @Override
+            public Header getHeader(Vector3Stamped message) {
+                return message.getHeader();
+            }
+
+            @Override
+            public void initialize(Vector3Stamped message) {
+            }
+
+            @Override
+            public void convert(float[] values, Vector3Stamped message) {
+                message.getVector().setX(values[0]);
+                message.getVector().setY(values[1]);
+                message.getVector().setZ(values[2]);
+            }
+        };
+    }
+
+    /**
+     * For rotation vector sensors such as {@code TYPE_GAME_ROTATION_VECTOR}.
+     */
+    public static SensorConverter<QuaternionStamped> quaternion() {
+        return new SensorConverter<QuaternionStamped>() {
+            private final double[] quaternion = new double[4];
+
+            @Override
+            public String getMessageType() {
+                return QuaternionStamped._TYPE;
+            }
+
+            @Override
+            public Header getHeader(QuaternionStamped message) {
+                return message.getHeader();
+            }
+
+            @Override
+            public void initialize(QuaternionStamped message) {
+            }
+
+            @Override
+            public void convert(float[] values, QuaternionStamped message) {
+                ImuAssembler.quaternionFromRotationVector(this.quaternion, values);
+                message.getQuaternion().setW(this.quaternion[0]);
+                message.getQuaternion().setX(this.quaternion[1]);
+                message.getQuaternion().setY(this.quaternion[2]);
+                message.getQuaternion().setZ(this.quaternion[3]);
+            }
+        };
+    }
+}
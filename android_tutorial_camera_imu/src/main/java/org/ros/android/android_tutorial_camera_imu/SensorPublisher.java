@@ -0,0 +1,390 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.android.android_tutorial_camera_imu;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+import org.ros.android.SensorExecutor;
+import org.ros.android.SensorThreadStatistics;
+import org.ros.message.MessageFactory;
+import org.ros.message.Time;
+import org.ros.namespace.GraphName;
+import org.ros.node.AbstractNodeMain;
+import org.ros.node.ConnectedNode;
+import org.ros.node.Node;
+import org.ros.node.parameter.ParameterTree;
+import org.ros.node.topic.Publisher;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import diagnostic_msgs.DiagnosticArray;
+import diagnostic_msgs.DiagnosticStatus;
+import diagnostic_msgs.KeyValue;
+import std_msgs.Header;
+
+/**
+ * Publishes any number of Android sensors, each on its own topic, from the
+ * default thread of a {@link SensorExecutor}.
+ * <p>
+ * Sensors are added with {@link #addSensor(String, int, double, SensorConverter)}
+ * before the node is started. Sensors that the device does not have are
+ * skipped. For a sensor named "name", the following private parameters are
+ * read on start:
+ * <ul>
+ * <li>~name/enabled: false to skip the sensor, true by default</li>
+ * <li>~name/topic: android/name by default</li>
+ * <li>~name/frame_id: the value of ~frame_id by default, which itself
+ * defaults to /imu</li>
+ * <li>~name/rate: the maximum rate in Hz, 0 for as fast as the sensor
+ * delivers; the default is given when adding the sensor</li>
+ * </ul>
+ * Every ~stats_period seconds (1 by default), a {@link DiagnosticArray} with
+ * the rates and delivery latencies of all sensors, and the load of every
+ * running {@link SensorExecutor} thread, is published on android/sensor_stats.
+ */
+public class SensorPublisher extends AbstractNodeMain {
+
+    private static final String TAG = "SensorPublisher";
+
+    // How often the offset between the sensor clock and node time is resampled.
+    private static final long CLOCK_UPDATE_INTERVAL = 1000000000; // ns
+
+    private final SensorManager sensorManager;
+    private final SensorExecutor sensorExecutor;
+    private final List<SensorSpec<?>> sensorSpecs;
+    private final List<Channel<?>> channels;
+
+    private Handler sensorHandler;
+    private volatile Runnable statisticsReporter;
+
+    private static class SensorSpec<T> {
+        final String name;
+        final int sensorType;
+        final double defaultRate;
+        final SensorConverter<T> converter;
+
+        SensorSpec(String name, int sensorType, double defaultRate, SensorConverter<T> converter) {
+            this.name = name;
+            this.sensorType = sensorType;
+            this.defaultRate = defaultRate;
+            this.converter = converter;
+        }
+    }
+
+    /**
+     * Publishes the events of one sensor.
+     */
+    private static class Channel<T> implements SensorEventListener {
+
+        private final ConnectedNode node;
+        private final SensorSpec<T> spec;
+        private final Sensor sensor;
+        private final Publisher<T> publisher;
+        private final MessagePool<T> messagePool;
+        private final long minimumPeriod;
+        private final SensorClock.TimeSource timeSource;
+        private final SensorStatistics statistics;
+        private SensorClock sensorClock;
+
+        private long lastPublished = Long.MIN_VALUE;
+        private SensorEventListener listener;
+
+        private Channel(ConnectedNode node, final SensorSpec<T> spec, Sensor sensor, final Publisher<T> publisher,
+                        final String frameId, double rate, SensorClock.TimeSource timeSource) {
+            this.node = node;
+            this.spec = spec;
+            this.sensor = sensor;
+            this.publisher = publisher;
+            this.messagePool = new MessagePool<T>(new MessagePool.Factory<T>() {
+                @Override
+                public T newMessage() {
+                    T message = publisher.newMessage();
+                    spec.converter.getHeader(message).setFrameId(frameId);
+                    spec.converter.initialize(message);
+                    return message;
+                }
+            }, MessagePool.DEFAULT_SIZE);
+            this.minimumPeriod = rate > 0 ? (long) (1e9 / rate) : 0;
+            this.timeSource = timeSource;
+            this.sensorClock = timeSource != null ? new SensorClock(timeSource, CLOCK_UPDATE_INTERVAL) : null;
+            this.statistics = new SensorStatistics(SystemClock.elapsedRealtime() * 1000000L);
+        }
+
+        /**
+         * @return the sampling period to request from the sensor framework
+         */
+        private int getSamplingPeriodUs() {
+            return this.minimumPeriod > 0 ? (int) (this.minimumPeriod / 1000) : SensorManager.SENSOR_DELAY_FASTEST;
+        }
+
+        @Override
+        public void onSensorChanged(SensorEvent event) {
+            long latency = -1;
+            long stamp;
+            if (this.sensorClock != null
+                    && !this.sensorClock.checkTimestamp(event.timestamp, SensorClock.MAXIMUM_LATENCY)) {
+                Log.w(TAG, this.sensor.getName()
+                        + " timestamps are not on the boot clock, using the time of arrival instead.");
+                this.sensorClock = null;
+            }
+            if (this.sensorClock != null) {
+                latency = this.timeSource.elapsedRealtimeNanos() - event.timestamp;
+                this.sensorClock.update();
+                stamp = this.sensorClock.toRosTimeNanos(event.timestamp);
+            } else {
+                stamp = this.node.getCurrentTime().totalNsecs();
+            }
+            this.statistics.onReceived(latency);
+            // The requested sampling period is only a hint, so sensors that
+            // run faster are decimated here. A little slack keeps jitter from
+            // dropping every other event at exactly the requested rate.
+            if (this.minimumPeriod > 0 && this.lastPublished != Long.MIN_VALUE
+                    && event.timestamp - this.lastPublished < this.minimumPeriod * 9 / 10) {
+                return;
+            }
+            this.lastPublished = event.timestamp;
+
+            T message = this.messagePool.next();
+            this.spec.converter.convert(event.values, message);
+            Time time = this.spec.converter.getHeader(message).getStamp();
+            time.secs = (int) (stamp / 1000000000L);
+            time.nsecs = (int) (stamp % 1000000000L);
+            this.publisher.publish(message);
+            this.statistics.onPublished();
+        }
+
+        @Override
+        public void onAccuracyChanged(Sensor sensor, int accuracy) {
+        }
+    }
+
+    public SensorPublisher(SensorManager sensorManager) {
+        this(sensorManager, SensorExecutor.getInstance());
+    }
+
+    public SensorPublisher(SensorManager sensorManager, SensorExecutor sensorExecutor) {
+        this.sensorManager = sensorManager;
+        this.sensorExecutor = sensorExecutor;
+        this.sensorSpecs = Lists.newArrayList();
+        // The statistics reporter iterates over the channels on the sensor
+        // thread, which may still be running when the node shuts down.
+        this.channels = new CopyOnWriteArrayList<Channel<?>>();
+    }
+
+    /**
+     * Adds a sensor to publish. Must be called before the node is started.
+     *
+     * @param name
+     *          the name of the sensor, used for its parameters and default
+     *          topic
+     * @param sensorType
+     *          one of the {@code Sensor.TYPE_*} constants
+     * @param defaultRate
+     *          the maximum rate in Hz unless overridden by ~name/rate, 0 for as
+     *          fast as the sensor delivers
+     */
+    public <T> SensorPublisher addSensor(String name, int sensorType, double defaultRate,
+                                         SensorConverter<T> converter) {
+        Preconditions.checkState(this.sensorHandler == null, "Already started.");
+        Preconditions.checkArgument(defaultRate >= 0);
+        this.sensorSpecs.add(new SensorSpec<T>(name, sensorType, defaultRate, converter));
+        return this;
+    }
+
+    /**
+     * Adds the magnetometer, barometer, thermometer, light sensor, uncalibrated
+     * gyroscope and game rotation vector.
+     */
+    public SensorPublisher addDefaultSensors() {
+        addSensor("magnetic_field", Sensor.TYPE_MAGNETIC_FIELD, 50, SensorConverters.magneticField());
+        addSensor("pressure", Sensor.TYPE_PRESSURE, 10, SensorConverters.fluidPressure());
+        addSensor("temperature", Sensor.TYPE_AMBIENT_TEMPERATURE, 1, SensorConverters.temperature());
+        addSensor("illuminance", Sensor.TYPE_LIGHT, 5, SensorConverters.illuminance());
+        addSensor("gyroscope_uncalibrated", Sensor.TYPE_GYROSCOPE_UNCALIBRATED, 100, SensorConverters.vector3());
+        addSensor("game_rotation_vector", Sensor.TYPE_GAME_ROTATION_VECTOR, 50, SensorConverters.quaternion());
+        return this;
+    }
+
+    @Override
+    public GraphName getDefaultNodeName() {
+        return GraphName.of("android_sensors_driver/sensorPublisher");
+    }
+
+    @Override
+    public void onStart(ConnectedNode node) {
+        ParameterTree parameterTree = node.getParameterTree();
+        String defaultFrameId = parameterTree.getString("~frame_id", ImuPublisher.FRAME_ID);
+        double statisticsPeriod = parameterTree.getDouble("~stats_period", 1.0);
+
+        this.sensorHandler = this.sensorExecutor.acquire(SensorExecutor.Priority.DEFAULT);
+        for (SensorSpec<?> spec : this.sensorSpecs) {
+            startChannel(node, spec, defaultFrameId);
+        }
+        if (statisticsPeriod > 0) {
+            startStatistics(node, (long) (statisticsPeriod * 1000));
+        }
+    }
+
+    private <T> void startChannel(ConnectedNode node, SensorSpec<T> spec, String defaultFrameId) {
+        ParameterTree parameterTree = node.getParameterTree();
+        String prefix = "~" + spec.name + "/";
+        if (!parameterTree.getBoolean(prefix + "enabled", true)) {
+            return;
+        }
+        Sensor sensor = this.sensorManager.getDefaultSensor(spec.sensorType);
+        if (sensor == null) {
+            Log.i(TAG, "No " + spec.name + " sensor on this device.");
+            return;
+        }
+        String topic = parameterTree.getString(prefix + "topic", "android/" + spec.name);
+        String frameId = parameterTree.getString(prefix + "frame_id", defaultFrameId);
+        double rate = parameterTree.getDouble(prefix + "rate", spec.defaultRate);
+        // Sensor timestamps can only be related to the node time from API 17
+        // on. Before that, messages are stamped with their time of arrival.
+        SensorClock.TimeSource timeSource = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            timeSource = new ImuPublisher.ElapsedRealtimeTimeSource(node);
+        }
+        Publisher<T> publisher = node.newPublisher(topic, spec.converter.getMessageType());
+        Channel<T> channel = new Channel<T>(node, spec, sensor, publisher, frameId, rate, timeSource);
+        channel.listener = this.sensorExecutor.wrap(SensorExecutor.Priority.DEFAULT, channel);
+        this.channels.add(channel);
+        this.sensorManager.registerListener(channel.listener, sensor, channel.getSamplingPeriodUs(), this.sensorHandler);
+    }
+
+    private void startStatistics(ConnectedNode node, final long periodMillis) {
+        final Publisher<DiagnosticArray> publisher = node.newPublisher("android/sensor_stats", DiagnosticArray._TYPE);
+        final MessageFactory messageFactory = node.getTopicMessageFactory();
+        final ConnectedNode connectedNode = node;
+        final Handler handler = this.sensorHandler;
+        this.statisticsReporter = new Runnable() {
+            @Override
+            public void run() {
+                // The sensor thread is shared and keeps running after
+                // shutdown, so stop rescheduling once this reporter has been
+                // replaced or removed.
+                if (statisticsReporter != this) {
+                    return;
+                }
+                publisher.publish(newStatistics(connectedNode, messageFactory, publisher));
+                handler.postDelayed(this, periodMillis);
+            }
+        };
+        this.sensorHandler.postDelayed(this.statisticsReporter, periodMillis);
+    }
+
+    /**
+     * Runs on the sensor thread, so it may read and reset the statistics of
+     * every channel.
+     */
+    private DiagnosticArray newStatistics(ConnectedNode node, MessageFactory messageFactory,
+                                          Publisher<DiagnosticArray> publisher) {
+        long now = SystemClock.elapsedRealtime() * 1000000L;
+        DiagnosticArray array = publisher.newMessage();
+        array.getHeader().setStamp(node.getCurrentTime());
+        List<DiagnosticStatus> statuses = Lists.newArrayList();
+        for (Channel<?> channel : this.channels) {
+            SensorStatistics statistics = channel.statistics;
+            DiagnosticStatus status = messageFactory.newFromType(DiagnosticStatus._TYPE);
+            status.setName(channel.spec.name);
+            status.setHardwareId(channel.sensor.getName());
+            if (statistics.getReceived() == 0) {
+                status.setLevel(DiagnosticStatus.WARN);
+                status.setMessage("No events");
+            } else {
+                status.setLevel(DiagnosticStatus.OK);
+                status.setMessage("OK");
+            }
+            List<KeyValue> values = Lists.newArrayList();
+            values.add(newKeyValue(messageFactory, "received_rate", statistics.getReceivedRate(now)));
+            values.add(newKeyValue(messageFactory, "published_rate", statistics.getPublishedRate(now)));
+            // The latency is unknown before API 17 and in periods without events.
+            if (statistics.getMeanLatency() >= 0) {
+                values.add(newKeyValue(messageFactory, "mean_latency_ms", statistics.getMeanLatency() / 1e6));
+                values.add(newKeyValue(messageFactory, "max_latency_ms", statistics.getMaximumLatency() / 1e6));
+            }
+            status.setValues(values);
+            statuses.add(status);
+            statistics.reset(now);
+        }
+        for (SensorExecutor.Priority priority : SensorExecutor.Priority.values()) {
+            if (this.sensorExecutor.isRunning(priority)) {
+                statuses.add(newThreadStatus(messageFactory, priority));
+            }
+        }
+        array.setStatus(statuses);
+        return array;
+    }
+
+    private DiagnosticStatus newThreadStatus(MessageFactory messageFactory, SensorExecutor.Priority priority) {
+        SensorThreadStatistics statistics = this.sensorExecutor.getStatistics(priority);
+        DiagnosticStatus status = messageFactory.newFromType(DiagnosticStatus._TYPE);
+        status.setName("sensor_thread/" + priority.name().toLowerCase(Locale.US));
+        status.setLevel(DiagnosticStatus.OK);
+        status.setMessage("OK");
+        List<KeyValue> values = Lists.newArrayList();
+        values.add(newKeyValue(messageFactory, "callbacks", statistics.getCallbacks()));
+        values.add(newKeyValue(messageFactory, "mean_latency_ms", statistics.getMeanLatency() / 1e6));
+        values.add(newKeyValue(messageFactory, "max_latency_ms", statistics.getMaximumLatency() / 1e6));
+        values.add(newKeyValue(messageFactory, "mean_duration_ms", statistics.getMeanDuration() / 1e6));
+        values.add(newKeyValue(messageFactory, "max_duration_ms", statistics.getMaximumDuration() / 1e6));
+        status.setValues(values);
+        statistics.reset();
+        return status;
+    }
+
+    private static KeyValue newKeyValue(MessageFactory messageFactory, String key, long value) {
+        KeyValue keyValue = messageFactory.newFromType(KeyValue._TYPE);
+        keyValue.setKey(key);
+        keyValue.setValue(Long.toString(value));
+        return keyValue;
+    }
+
+    private static KeyValue newKeyValue(MessageFactory messageFactory, String key, double value) {
+        KeyValue keyValue = messageFactory.newFromType(KeyValue._TYPE);
+        keyValue.setKey(key);
+        keyValue.setValue(String.format(Locale.US, "%.3f", value));
+        return keyValue;
+    }
+
+    @Override
+    public void onShutdown(Node node) {
+        for (Channel<?> channel : this.channels) {
+            this.sensorManager.unregisterListener(channel.listener);
+        }
+        if (this.sensorHandler != null) {
+            if (this.statisticsReporter != null) {
+                this.sensorHandler.removeCallbacks(this.statisticsReporter);
+                this.statisticsReporter = null;
+            }
+            this.sensorHandler = null;
+            this.sensorExecutor.release(SensorExecutor.Priority.DEFAULT);
+        }
+        this.channels.clear();
+    }
+}
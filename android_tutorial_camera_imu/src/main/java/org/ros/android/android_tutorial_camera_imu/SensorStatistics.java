@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.android.android_tutorial_camera_imu;
+
+/**
+ * Counts the events of one sensor over a reporting period and measures how
+ * long they took from the sensor to the application.
+ * <p>
+ * Not thread safe; events and reports are expected on the same thread.
+ */
+class SensorStatistics {
+
+    private long periodStart;
+    private long received;
+    private long published;
+    private long latencySum;
+    private long latencyCount;
+    private long maximumLatency;
+
+    /**
+     * @param now
+     *          the start of the first period in nanoseconds
+     */
+    public SensorStatistics(long now) {
+        this.periodStart = now;
+    }
+
+    /**
+     * @param latency
+     *          the time in nanoseconds from the sample to its delivery, or a
+     *          negative value if it is unknown
+     */
+    public void onReceived(long latency) {
+        this.received++;
+        if (latency >= 0) {
+            this.latencySum += latency;
+            this.latencyCount++;
+            if (latency > this.maximumLatency) {
+                this.maximumLatency = latency;
+            }
+        }
+    }
+
+    public void onPublished() {
+        this.published++;
+    }
+
+    public long getReceived() {
+        return this.received;
+    }
+
+    public long getPublished() {
+        return this.published;
+    }
+
+    /**
+     * @return events per second received since the period started
+     */
+    public double getReceivedRate(long now) {
+        return rate(this.received, now);
+    }
+
+    /**
+     * @return messages per second published since the period started
+     */
+    public double getPublishedRate(long now) {
+        return rate(this.published, now);
+    }
+
+    private double rate(long count, long now) {
+        long elapsed = now - this.periodStart;
+        return elapsed > 0 ? count * 1e9 / elapsed : 0;
+    }
+
+    /**
+     * @return the mean latency in nanoseconds, or -1 if it is unknown
+     */
+    public long getMeanLatency() {
+        return this.latencyCount > 0 ? this.latencySum / this.latencyCount : -1;
+    }
+
+    /**
+     * @return the maximum latency in nanoseconds, or -1 if it is unknown
+     */
+    public long getMaximumLatency() {
+        return this.latencyCount > 0 ? this.maximumLatency : -1;
+    }
+
+    /**
+     * Starts a new period.
+     */
+    public void reset(long now) {
+        this.periodStart = now;
+        this.received = 0;
+        this.published = 0;
+        this.latencySum = 0;
+        this.latencyCount = 0;
+        this.maximumLatency = 0;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.android.android_tutorial_camera_imu;
+
+import com.google.common.base.Defaults;
+
+import org.apache.commons.logging.Log;
+import org.ros.message.MessageFactory;
+import org.ros.message.Time;
+import org.ros.namespace.GraphName;
+import org.ros.node.ConnectedNode;
+import org.ros.node.NodeConfiguration;
+import org.ros.node.parameter.ParameterTree;
+import org.ros.node.topic.Publisher;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+/**
+ * Creates {@link ConnectedNode}s that run a publisher without a master. Their
+ * publishers hand every message to a {@link Listener} on the publishing thread
+ * instead of sending it. Methods a publisher is not expected to call return
+ * null or zero.
+ */
+final class FakeConnectedNode {
+
+    interface Listener {
+        /**
+         * Called with every published message. The publisher may reuse the
+         * message once this returns.
+         */
+        void onPublish(String topic, Object message);
+    }
+
+    private FakeConnectedNode() {
+        // Utility class.
+    }
+
+    /**
+     * @param parameters
+     *          the values of the parameter tree, by name; other parameters
+     *          have their default values
+     */
+    static ConnectedNode newNode(final Map<String, Object> parameters, final Listener listener) {
+        final MessageFactory messageFactory = NodeConfiguration.newPrivate().getTopicMessageFactory();
+        final ParameterTree parameterTree = newProxy(ParameterTree.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = args != null && args.length > 0 ? args[0].toString() : null;
+                if (method.getName().equals("has")) {
+                    return parameters.containsKey(name);
+                }
+                if (method.getName().startsWith("get") && args != null && args.length == 2) {
+                    return parameters.containsKey(name) ? parameters.get(name) : args[1];
+                }
+                return Defaults.defaultValue(method.getReturnType());
+            }
+        });
+        final Log log = newProxy(Log.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("fatal") || method.getName().equals("error")) {
+                    AssertionError error = new AssertionError(String.valueOf(args[0]));
+                    if (args[args.length - 1] instanceof Throwable) {
+                        error.initCause((Throwable) args[args.length - 1]);
+                    }
+                    throw error;
+                }
+                return Defaults.defaultValue(method.getReturnType());
+            }
+        });
+        return newProxy(ConnectedNode.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("getCurrentTime")) {
+                    return Time.fromMillis(System.currentTimeMillis());
+                } else if (name.equals("getParameterTree")) {
+                    return parameterTree;
+                } else if (name.equals("getTopicMessageFactory")) {
+                    return messageFactory;
+                } else if (name.equals("getLog")) {
+                    return log;
+                } else if (name.equals("getName")) {
+                    return GraphName.of("fake_node");
+                } else if (name.equals("newPublisher")) {
+                    return newPublisher(args[0].toString(), (String) args[1], messageFactory, listener);
+                }
+                return Defaults.defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    private static Publisher<?> newPublisher(final String topic, final String messageType,
+                                             final MessageFactory messageFactory, final Listener listener) {
+        return newProxy(Publisher.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("newMessage")) {
+                    return messageFactory.newFromType(messageType);
+                } else if (name.equals("publish")) {
+                    listener.onPublish(topic, args[0]);
+                    return null;
+                } else if (name.equals("getTopicName")) {
+                    return GraphName.of(topic);
+                } else if (name.equals("getTopicMessageType")) {
+                    return messageType;
+                }
+                return Defaults.defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    private static <T> T newProxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+}
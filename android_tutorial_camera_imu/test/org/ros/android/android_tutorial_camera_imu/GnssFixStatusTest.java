@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.android.android_tutorial_camera_imu;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class GnssFixStatusTest {
+
+    @Test
+    public void testTooFewSatellitesIsNoFix() {
+        GnssFixStatus status = new GnssFixStatus();
+        status.reset();
+        for (int i = 0; i < 3; i++) {
+            status.addSatellite(GnssFixStatus.CONSTELLATION_GPS, true);
+        }
+        status.addSatellite(GnssFixStatus.CONSTELLATION_GPS, false);
+        assertEquals(GnssFixStatus.STATUS_NO_FIX, status.getStatus());
+        assertEquals(4, status.getSatellites());
+        assertEquals(3, status.getUsedInFix());
+    }
+
+    @Test
+    public void testServiceOfUsedConstellations() {
+        GnssFixStatus status = new GnssFixStatus();
+        status.reset();
+        status.addSatellite(GnssFixStatus.CONSTELLATION_GPS, true);
+        status.addSatellite(GnssFixStatus.CONSTELLATION_GLONASS, true);
+        status.addSatellite(GnssFixStatus.CONSTELLATION_GALILEO, true);
+        status.addSatellite(GnssFixStatus.CONSTELLATION_QZSS, true);
+        status.addSatellite(GnssFixStatus.CONSTELLATION_BEIDOU, false);
+        assertEquals(GnssFixStatus.STATUS_FIX, status.getStatus());
+        assertEquals(GnssFixStatus.SERVICE_GPS | GnssFixStatus.SERVICE_GLONASS | GnssFixStatus.SERVICE_GALILEO,
+                status.getService());
+    }
+
+    @Test
+    public void testSbasFix() {
+        GnssFixStatus status = new GnssFixStatus();
+        status.reset();
+        for (int i = 0; i < 4; i++) {
+            status.addSatellite(GnssFixStatus.CONSTELLATION_BEIDOU, true);
+        }
+        status.addSatellite(GnssFixStatus.CONSTELLATION_SBAS, true);
+        assertEquals(GnssFixStatus.STATUS_SBAS_FIX, status.getStatus());
+        assertEquals(GnssFixStatus.SERVICE_COMPASS, status.getService());
+    }
+
+    @Test
+    public void testServiceDefaultsToGps() {
+        GnssFixStatus status = new GnssFixStatus();
+        assertEquals(GnssFixStatus.SERVICE_GPS, status.getService());
+        status.addSatellite(GnssFixStatus.CONSTELLATION_GLONASS, true);
+        status.reset();
+        assertEquals(GnssFixStatus.SERVICE_GPS, status.getService());
+        assertEquals(0, status.getSatellites());
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.android.android_tutorial_camera_imu;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class GnssMeasurementLayoutTest {
+
+    @Test
+    public void testLargeNanosRoundTripExactly() {
+        double[] data = new double[GnssMeasurementLayout.length(0)];
+        // A typical FullBiasNanos needs more bits than a double has.
+        long fullBias = -1234567890123456789L;
+        GnssMeasurementLayout.putNanos(data, GnssMeasurementLayout.FULL_BIAS_NANOS, fullBias);
+        assertEquals(fullBias, GnssMeasurementLayout.getNanos(data, GnssMeasurementLayout.FULL_BIAS_NANOS));
+        long timeNanos = 987654321987654321L;
+        GnssMeasurementLayout.putNanos(data, GnssMeasurementLayout.TIME_NANOS, timeNanos);
+        assertEquals(timeNanos, GnssMeasurementLayout.getNanos(data, GnssMeasurementLayout.TIME_NANOS));
+    }
+
+    @Test
+    public void testRows() {
+        assertEquals(GnssMeasurementLayout.CLOCK_FIELDS, GnssMeasurementLayout.row(0));
+        assertEquals(GnssMeasurementLayout.CLOCK_FIELDS + 2 * GnssMeasurementLayout.MEASUREMENT_FIELDS,
+                GnssMeasurementLayout.row(2));
+        assertEquals(GnssMeasurementLayout.row(3), GnssMeasurementLayout.length(3));
+    }
+
+    @Test
+    public void testMeasurements() {
+        assertEquals(0, GnssMeasurementLayout.measurements(new double[GnssMeasurementLayout.length(0)]));
+        assertEquals(7, GnssMeasurementLayout.measurements(new double[GnssMeasurementLayout.length(7)]));
+        assertEquals(-1, GnssMeasurementLayout.measurements(new double[GnssMeasurementLayout.length(1) + 1]));
+        assertEquals(-1, GnssMeasurementLayout.measurements(new double[GnssMeasurementLayout.CLOCK_FIELDS - 1]));
+    }
+}
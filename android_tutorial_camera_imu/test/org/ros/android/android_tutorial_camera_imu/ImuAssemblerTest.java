@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.android.android_tutorial_camera_imu;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+public class ImuAssemblerTest {
+
+    private static final long MS = 1000000;
+
+    private static class RecordingListener implements ImuAssembler.Listener {
+        int samples;
+        long lastTimestamp;
+        double[] linearAcceleration = new double[3];
+        double[] angularVelocity = new double[3];
+        double[] orientation = new double[4];
+
+        @Override
+        public void onImuSample(ImuSample sample) {
+            this.samples++;
+            this.lastTimestamp = sample.timestamp;
+            System.arraycopy(sample.linearAcceleration, 0, this.linearAcceleration, 0, 3);
+            System.arraycopy(sample.angularVelocity, 0, this.angularVelocity, 0, 3);
+            System.arraycopy(sample.orientation, 0, this.orientation, 0, 4);
+        }
+    }
+
+    private static float[] vector(double x) {
+        return new float[] {(float) x, 0, 0};
+    }
+
+    @Test
+    public void testEmitsAtGyroscopeRate() {
+        RecordingListener listener = new RecordingListener();
+        ImuAssembler assembler = new ImuAssembler(listener, true, true, true);
+        assembler.onAccelerometer(vector(1), 1 * MS);
+        assembler.onRotationVector(new float[] {0, 0, 0, 1}, 1 * MS);
+        // Four gyroscope samples per accelerometer sample.
+        for (int i = 1; i <= 8; i++) {
+            assembler.onGyroscope(vector(i), (1 + i) * MS);
+            if (i == 4) {
+                assembler.onAccelerometer(vector(2), 6 * MS);
+            }
+        }
+        assertEquals(8, listener.samples);
+        assertEquals(9 * MS, listener.lastTimestamp);
+        assertEquals(8, listener.angularVelocity[0], 1e-6);
+        // Held, since the accelerometer has not reported past 9 ms.
+        assertEquals(2, listener.linearAcceleration[0], 1e-6);
+        assertEquals(1, listener.orientation[0], 1e-6);
+    }
+
+    @Test
+    public void testSamplesBeforeEverySensorReportedAreDropped() {
+        RecordingListener listener = new RecordingListener();
+        ImuAssembler assembler = new ImuAssembler(listener, true, true, false);
+        assembler.onGyroscope(vector(1), 1 * MS);
+        assembler.onGyroscope(vector(1), 2 * MS);
+        assertEquals(0, listener.samples);
+        assertEquals(2, assembler.getDroppedSamples());
+        assembler.onAccelerometer(vector(1), 3 * MS);
+        assembler.onGyroscope(vector(1), 4 * MS);
+        assertEquals(1, listener.samples);
+    }
+
+    @Test
+    public void testInterpolatesWithinMaximumDelay() {
+        RecordingListener listener = new RecordingListener();
+        ImuAssembler assembler = new ImuAssembler(listener, true, true, false, 0, 10 * MS);
+        assembler.onAccelerometer(vector(0), 0);
+        assembler.onGyroscope(vector(1), 2 * MS);
+        assembler.onGyroscope(vector(1), 4 * MS);
+        // Waiting for the accelerometer to report past 2 ms.
+        assertEquals(0, listener.samples);
+        assembler.onAccelerometer(vector(8), 8 * MS);
+        assertEquals(2, listener.samples);
+        assertEquals(4 * MS, listener.lastTimestamp);
+        assertEquals(4, listener.linearAcceleration[0], 1e-6);
+    }
+
+    @Test
+    public void testHoldsOnceMaximumDelayHasPassed() {
+        RecordingListener listener = new RecordingListener();
+        ImuAssembler assembler = new ImuAssembler(listener, true, true, false, 0, 5 * MS);
+        assembler.onAccelerometer(vector(3), 0);
+        assembler.onGyroscope(vector(1), 1 * MS);
+        assembler.onGyroscope(vector(1), 5 * MS);
+        assertEquals(0, listener.samples);
+        assembler.onGyroscope(vector(1), 6 * MS);
+        assertEquals(1, listener.samples);
+        assertEquals(1 * MS, listener.lastTimestamp);
+        assertEquals(3, listener.linearAcceleration[0], 1e-6);
+    }
+
+    @Test
+    public void testFixedOutputRate() {
+        RecordingListener listener = new RecordingListener();
+        ImuAssembler assembler = new ImuAssembler(listener, true, true, false, 10 * MS, 0);
+        for (int i = 0; i <= 100; i++) {
+            assembler.onGyroscope(vector(i), i * MS);
+            assembler.onAccelerometer(vector(2 * i), i * MS);
+        }
+        // The first output time comes before the accelerometer reported.
+        assertEquals(1, assembler.getDroppedSamples());
+        assertEquals(10, listener.samples);
+        assertEquals(100 * MS, listener.lastTimestamp);
+        assertEquals(100, listener.angularVelocity[0], 1e-6);
+        // Without a delay, the accelerometer sample from 99 ms is held since
+        // the one from 100 ms arrives after the gyroscope sample.
+        assertEquals(198, listener.linearAcceleration[0], 1e-6);
+    }
+
+    @Test
+    public void testOrientationInterpolationTakesShortestPath() {
+        double[] out = new double[4];
+        // The same rotation with opposite signs.
+        ImuAssembler.interpolateQuaternion(new double[] {1, 0, 0, 0}, new double[] {-1, 0, 0, 0}, 0.5, out);
+        assertEquals(1, out[0], 1e-9);
+        double half = Math.sqrt(0.5);
+        ImuAssembler.interpolateQuaternion(new double[] {1, 0, 0, 0}, new double[] {half, 0, 0, half}, 0.5, out);
+        double norm = out[0] * out[0] + out[1] * out[1] + out[2] * out[2] + out[3] * out[3];
+        assertEquals(1, norm, 1e-9);
+        assertTrue(out[3] > 0 && out[3] < half);
+    }
+
+    @Test
+    public void testQuaternionFromThreeComponentRotationVector() {
+        double[] quaternion = new double[4];
+        ImuAssembler.quaternionFromRotationVector(quaternion, new float[] {0.6f, 0, 0});
+        assertEquals(0.8, quaternion[0], 1e-6);
+        assertEquals(0.6, quaternion[1], 1e-6);
+        ImuAssembler.quaternionFromRotationVector(quaternion, new float[] {0.5f, 0.5f, 0.5f, 0.5f});
+        assertEquals(0.5, quaternion[0], 1e-6);
+    }
+
+    /**
+     * Builds a minute of a 400 Hz gyroscope, a 200 Hz accelerometer and a
+     * 100 Hz rotation vector in delivery order, with every event delivered up
+     * to 1.5 ms after it was sampled. Rows are sensor, timestamp and delivery
+     * time.
+     */
+    private static long[][] jitteredEvents() {
+        int[] rates = {200, 400, 100};
+        long[] phases = {300000, 0, 700000};
+        int total = 700 * 60;
+        final long[][] events = new long[3][total];
+        Random random = new Random(42);
+        int count = 0;
+        for (int sensor = 0; sensor < 3; sensor++) {
+            long period = 1000000000L / rates[sensor];
+            for (int i = 0; i < rates[sensor] * 60; i++) {
+                events[0][count] = sensor;
+                events[1][count] = i * period + phases[sensor];
+                events[2][count] = events[1][count] + random.nextInt(1500000);
+                count++;
+            }
+        }
+        Integer[] order = new Integer[total];
+        for (int i = 0; i < total; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(events[2][a], events[2][b]);
+            }
+        });
+        long[][] sorted = new long[3][total];
+        for (int i = 0; i < total; i++) {
+            for (int j = 0; j < 3; j++) {
+                sorted[j][i] = events[j][order[i]];
+            }
+        }
+        return sorted;
+    }
+
+    private static void assertJitteredStreamKeepsUp(long maximumDelay) {
+        final long[][] events = jitteredEvents();
+        final long[] now = new long[1];
+        final long[] samples = new long[1];
+        final long[] maximumLatency = new long[1];
+        ImuAssembler assembler = new ImuAssembler(new ImuAssembler.Listener() {
+            @Override
+            public void onImuSample(ImuSample sample) {
+                samples[0]++;
+                maximumLatency[0] = Math.max(maximumLatency[0], now[0] - sample.timestamp);
+            }
+        }, true, true, true, 0, maximumDelay);
+        float[] vector = {0.1f, 0.2f, 0.3f};
+        for (int i = 0; i < events[0].length; i++) {
+            now[0] = events[2][i];
+            if (events[0][i] == 0) {
+                assembler.onAccelerometer(vector, events[1][i]);
+            } else if (events[0][i] == 1) {
+                assembler.onGyroscope(vector, events[1][i]);
+            } else {
+                assembler.onRotationVector(vector, events[1][i]);
+            }
+        }
+        // Every gyroscope sample is emitted, except for the first few before
+        // every sensor reported and the last few still waiting for the other
+        // sensors.
+        assertTrue(samples[0] > 400 * 60 - 10);
+        assertTrue(maximumLatency[0] <= maximumDelay + 2 * 10 * MS);
+    }
+
+    @Test
+    public void testJitteredStreamIsHeld() {
+        assertJitteredStreamKeepsUp(0);
+    }
+
+    @Test
+    public void testJitteredStreamIsInterpolated() {
+        assertJitteredStreamKeepsUp(10 * MS);
+    }
+
+    @Test
+    public void testNoSteadyStateAllocation() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+
+        RecordingListener listener = new RecordingListener();
+        ImuAssembler assembler = new ImuAssembler(listener, true, true, true, 0, 5 * MS);
+        float[] accel = {0.1f, 0.2f, 9.8f};
+        float[] gyro = {0.01f, 0.02f, 0.03f};
+        float[] rotation = {0.1f, 0.2f, 0.3f};
+        long time = 0;
+        // Warm up so that the measured loop runs compiled code.
+        for (int i = 0; i < 20000; i++) {
+            time += MS;
+            assembler.onAccelerometer(accel, time);
+            assembler.onGyroscope(gyro, time);
+            assembler.onRotationVector(rotation, time);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        int events = 300000;
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < events / 3; i++) {
+            time += MS;
+            assembler.onAccelerometer(accel, time);
+            assembler.onGyroscope(gyro, time);
+            assembler.onRotationVector(rotation, time);
+        }
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(listener.samples > events / 3);
+        // getThreadAllocatedBytes() itself may allocate a little, but nothing
+        // may scale with the number of events.
+        assertTrue("Allocated " + allocated + " bytes for " + events + " events.",
+                allocated < 1024);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.android.android_tutorial_camera_imu;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.ros.android.imu_batch_transport.ImuBatchLayout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ImuBatcherTest {
+
+    private List<double[]> batches;
+    private ImuBatcher.Listener listener;
+
+    @Before
+    public void setUp() {
+        this.batches = new ArrayList<double[]>();
+        this.listener = new ImuBatcher.Listener() {
+            @Override
+            public void onBatch(double[] data, int samples) {
+                batches.add(Arrays.copyOf(data, samples * ImuBatchLayout.FIELDS));
+            }
+        };
+    }
+
+    private static ImuSample sample(long timestamp, double value) {
+        ImuSample sample = new ImuSample();
+        sample.timestamp = timestamp;
+        for (int i = 0; i < 3; i++) {
+            sample.linearAcceleration[i] = value + i;
+            sample.angularVelocity[i] = value + 3 + i;
+        }
+        for (int i = 0; i < 4; i++) {
+            sample.orientation[i] = value + 6 + i;
+        }
+        return sample;
+    }
+
+    @Test
+    public void testFullBatchIsEmitted() {
+        ImuBatcher batcher = new ImuBatcher(this.listener, 3, 0);
+        batcher.add(sample(0, 0), 0);
+        batcher.add(sample(1, 10), 1);
+        assertEquals(0, this.batches.size());
+        batcher.add(sample(2, 20), 2);
+        assertEquals(1, this.batches.size());
+        assertEquals(3 * ImuBatchLayout.FIELDS, this.batches.get(0).length);
+    }
+
+    @Test
+    public void testWindowEmitsPartialBatch() {
+        ImuBatcher batcher = new ImuBatcher(this.listener, 10, 100);
+        batcher.add(sample(0, 0), 0);
+        batcher.add(sample(50, 0), 0);
+        batcher.add(sample(100, 0), 0);
+        assertEquals(1, this.batches.size());
+        assertEquals(2 * ImuBatchLayout.FIELDS, this.batches.get(0).length);
+        batcher.flush();
+        assertEquals(2, this.batches.size());
+        assertEquals(ImuBatchLayout.FIELDS, this.batches.get(1).length);
+    }
+
+    @Test
+    public void testFlushWithoutSamplesDoesNothing() {
+        ImuBatcher batcher = new ImuBatcher(this.listener, 2, 0);
+        batcher.flush();
+        assertEquals(0, this.batches.size());
+    }
+
+    @Test
+    public void testSamplesRoundTrip() {
+        ImuBatcher batcher = new ImuBatcher(this.listener, 2, 0);
+        long firstStamp = 1500000000123456789L;
+        long secondStamp = 1500000001000000001L;
+        batcher.add(sample(0, 1), firstStamp);
+        batcher.add(sample(1, 100), secondStamp);
+        double[] data = this.batches.get(0);
+
+        ImuSample expected = sample(0, 100);
+        ImuSample actual = new ImuSample();
+        assertEquals(secondStamp, ImuBatcher.read(data, 1, actual));
+        assertArrayEquals(expected.linearAcceleration, actual.linearAcceleration, 0);
+        assertArrayEquals(expected.angularVelocity, actual.angularVelocity, 0);
+        assertArrayEquals(expected.orientation, actual.orientation, 0);
+        assertEquals(firstStamp, ImuBatcher.read(data, 0, actual));
+        assertEquals(1, actual.linearAcceleration[0], 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyBatchIsRejected() {
+        new ImuBatcher(this.listener, 0, 0);
+    }
+}
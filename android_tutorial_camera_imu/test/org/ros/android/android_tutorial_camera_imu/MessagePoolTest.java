@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.android.android_tutorial_camera_imu;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class MessagePoolTest {
+
+    private static class CountingFactory implements MessagePool.Factory<Object> {
+        int created;
+
+        @Override
+        public Object newMessage() {
+            this.created++;
+            return new Object();
+        }
+    }
+
+    @Test
+    public void testMessagesAreCreatedUpFront() {
+        CountingFactory factory = new CountingFactory();
+        MessagePool<Object> pool = new MessagePool<Object>(factory, 3);
+        assertEquals(3, factory.created);
+        for (int i = 0; i < 10; i++) {
+            pool.next();
+        }
+        assertEquals(3, factory.created);
+    }
+
+    @Test
+    public void testMessagesRotate() {
+        MessagePool<Object> pool = new MessagePool<Object>(new CountingFactory(), 2);
+        Object first = pool.next();
+        Object second = pool.next();
+        assertNotSame(first, second);
+        assertSame(first, pool.next());
+        assertSame(second, pool.next());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyPoolIsRejected() {
+        new MessagePool<Object>(new CountingFactory(), 0);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.android.android_tutorial_camera_imu;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ros.android.SensorReplaySource;
+import org.ros.node.ConnectedNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import sensor_msgs.Imu;
+import sensor_msgs.NavSatFix;
+import std_msgs.Float64MultiArray;
+
+/**
+ * Replays synthetic recordings through the replay constructors of the
+ * publishers and checks what they publish on a {@link FakeConnectedNode}.
+ */
+public class PublisherReplayTest {
+
+    private static final double DELTA = 1e-6;
+
+    private File file;
+
+    private static class ImuListener implements FakeConnectedNode.Listener {
+        int messages;
+        int samples;
+        long lastStamp;
+        final ImuSample sample = new ImuSample();
+
+        @Override
+        public void onPublish(String topic, Object message) {
+            // Pooled messages are reused, so they are checked as they are published.
+            this.messages++;
+            if (message instanceof Imu) {
+                assertEquals("android/imu", topic);
+                Imu imu = (Imu) message;
+                assertEquals(ReplayFixture.value(0), imu.getAngularVelocity().getX(), DELTA);
+                assertEquals(ReplayFixture.value(2), imu.getAngularVelocity().getZ(), DELTA);
+                assertEquals(ReplayFixture.value(1), imu.getLinearAcceleration().getY(), DELTA);
+                checkStamp(imu.getHeader().getStamp().totalNsecs());
+                this.samples++;
+            } else {
+                assertEquals("android/imu/batch", topic);
+                Float64MultiArray batch = (Float64MultiArray) message;
+                int size = batch.getLayout().getDim().get(0).getSize();
+                for (int i = 0; i < size; i++) {
+                    checkStamp(ImuBatcher.read(batch.getData(), i, this.sample));
+                    assertEquals(ReplayFixture.value(0), this.sample.angularVelocity[0], DELTA);
+                }
+                this.samples += size;
+            }
+        }
+
+        private void checkStamp(long stamp) {
+            assertTrue(stamp >= this.lastStamp);
+            this.lastStamp = stamp;
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        this.file = File.createTempFile("replay", ".rec");
+    }
+
+    @After
+    public void tearDown() {
+        this.file.delete();
+    }
+
+    private long replay(ReplayFixture.CapturingSource source) throws IOException {
+        return new SensorReplaySource(this.file, 0, SensorReplaySource.SYSTEM_CLOCK)
+                .replay(source.getListener());
+    }
+
+    @Test
+    public void testImuPublisherPublishesEveryGyroscopeSample() throws IOException {
+        int recorded = ReplayFixture.writeImu(this.file);
+        ReplayFixture.CapturingSource source = new ReplayFixture.CapturingSource();
+        ImuListener listener = new ImuListener();
+        ConnectedNode node = FakeConnectedNode.newNode(Collections.<String, Object>emptyMap(), listener);
+        ImuPublisher publisher = new ImuPublisher(source, false);
+
+        publisher.onStart(node);
+        assertEquals(recorded, replay(source));
+        publisher.onShutdown(node);
+
+        // The first gyroscope samples wait for the first rotation vector.
+        assertTrue(listener.samples > ReplayFixture.GYROSCOPE_RECORDS - 10);
+        assertEquals(listener.samples, listener.messages);
+    }
+
+    @Test
+    public void testImuPublisherPublishesBatches() throws IOException {
+        ReplayFixture.writeImu(this.file);
+        ReplayFixture.CapturingSource source = new ReplayFixture.CapturingSource();
+        ImuListener listener = new ImuListener();
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put("~batch_size", 10);
+        ConnectedNode node = FakeConnectedNode.newNode(parameters, listener);
+        ImuPublisher publisher = new ImuPublisher(source, false);
+
+        publisher.onStart(node);
+        replay(source);
+        publisher.onShutdown(node);
+
+        // A last, incomplete batch is not published.
+        assertTrue(listener.samples > ReplayFixture.GYROSCOPE_RECORDS - 20);
+        assertEquals(listener.samples / 10, listener.messages);
+    }
+
+    @Test
+    public void testNavSatFixPublisherPublishesRecordedLocations() throws IOException {
+        ReplayFixture.writeLocations(this.file, 5);
+        ReplayFixture.CapturingSource source = new ReplayFixture.CapturingSource();
+        final int[] fixes = new int[1];
+        ConnectedNode node = FakeConnectedNode.newNode(Collections.<String, Object>emptyMap(),
+                new FakeConnectedNode.Listener() {
+                    @Override
+                    public void onPublish(String topic, Object message) {
+                        assertEquals("android/fix", topic);
+                        NavSatFix fix = (NavSatFix) message;
+                        assertEquals(ReplayFixture.latitude(fixes[0]), fix.getLatitude(), DELTA);
+                        assertEquals(ReplayFixture.longitude(fixes[0]), fix.getLongitude(), DELTA);
+                        assertEquals(10, fix.getAltitude(), DELTA);
+                        assertEquals(25, fix.getPositionCovariance()[0], DELTA);
+                        assertEquals(9, fix.getPositionCovariance()[8], DELTA);
+                        assertEquals("/gps", fix.getHeader().getFrameId());
+                        fixes[0]++;
+                    }
+                });
+        NavSatFixPublisher publisher = new NavSatFixPublisher(source);
+
+        publisher.onStart(node);
+        assertEquals(5, replay(source));
+        publisher.onShutdown(node);
+
+        assertEquals(5, fixes[0]);
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.android.android_tutorial_camera_imu;
+
+import android.hardware.Sensor;
+
+import org.ros.android.SensorEventSource;
+import org.ros.android.SensorRecord;
+import org.ros.android.SensorRecordListener;
+import org.ros.android.SensorRecordWriter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes the synthetic recordings that the replay tests and benchmarks play
+ * back through the publishers.
+ */
+final class ReplayFixture {
+
+    /**
+     * The length of the IMU recording in seconds.
+     */
+    static final int SECONDS = 10;
+
+    static final long FIRST_TIMESTAMP = 1000000000L;
+
+    /**
+     * The period of the gyroscope, which is also the greatest common period
+     * of the three sensors.
+     */
+    static final long GYROSCOPE_PERIOD = 2500000L;
+
+    /**
+     * One rotation vector, two accelerometer and four gyroscope records every
+     * 10 ms.
+     */
+    static final int IMU_RECORDS = 700 * SECONDS;
+
+    static final int GYROSCOPE_RECORDS = 400 * SECONDS;
+
+    /**
+     * Delivers the records it is handed to the listener of the publisher that
+     * started it, on the caller's thread.
+     */
+    static class CapturingSource implements SensorEventSource {
+        private SensorRecordListener listener;
+
+        @Override
+        public void start(SensorRecordListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void stop() {
+            this.listener = null;
+        }
+
+        SensorRecordListener getListener() {
+            return this.listener;
+        }
+    }
+
+    private ReplayFixture() {
+        // Utility class.
+    }
+
+    /**
+     * @return the value {@code index} of every recorded IMU event
+     */
+    static float value(int index) {
+        return 0.1f * (index + 1);
+    }
+
+    /**
+     * Records a 400 Hz gyroscope, 200 Hz accelerometer and 100 Hz rotation
+     * vector stream of {@link #SECONDS} seconds.
+     *
+     * @return the number of records written
+     */
+    static int writeImu(File file) throws IOException {
+        SensorRecordWriter writer = new SensorRecordWriter(new FileOutputStream(file));
+        SensorRecord record = new SensorRecord();
+        int count = 0;
+        try {
+            for (int i = 0; i < GYROSCOPE_RECORDS; i++) {
+                long timestamp = FIRST_TIMESTAMP + i * GYROSCOPE_PERIOD;
+                if (i % 4 == 0) {
+                    setImu(record, Sensor.TYPE_ROTATION_VECTOR, timestamp, 5);
+                    writer.write(record);
+                    count++;
+                }
+                if (i % 2 == 0) {
+                    setImu(record, Sensor.TYPE_ACCELEROMETER, timestamp, 3);
+                    writer.write(record);
+                    count++;
+                }
+                setImu(record, Sensor.TYPE_GYROSCOPE, timestamp, 3);
+                writer.write(record);
+                count++;
+            }
+        } finally {
+            writer.close();
+        }
+        return count;
+    }
+
+    /**
+     * Sets {@code record} to an event of the recorded IMU stream.
+     */
+    static void setImu(SensorRecord record, int type, long timestamp, int valueCount) {
+        record.type = type;
+        record.timestamp = timestamp;
+        float[] values = record.setValueCount(valueCount);
+        for (int i = 0; i < valueCount; i++) {
+            values[i] = value(i);
+        }
+    }
+
+    /**
+     * Records {@code count} locations one second apart, moving north east
+     * from {@link #latitude(int) latitude(0)}, {@link #longitude(int)
+     * longitude(0)}.
+     */
+    static void writeLocations(File file, int count) throws IOException {
+        SensorRecordWriter writer = new SensorRecordWriter(new FileOutputStream(file));
+        SensorRecord record = new SensorRecord();
+        try {
+            for (int i = 0; i < count; i++) {
+                record.type = SensorRecord.TYPE_LOCATION;
+                record.timestamp = FIRST_TIMESTAMP + i * 1000000000L;
+                record.setValueCount(0);
+                record.latitude = latitude(i);
+                record.longitude = longitude(i);
+                record.altitude = 10;
+                record.horizontalAccuracy = 5;
+                record.verticalAccuracy = 3;
+                record.time = 1500000000000L + i * 1000L;
+                writer.write(record);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    static double latitude(int index) {
+        return 48.137 + index * 1e-5;
+    }
+
+    static double longitude(int index) {
+        return 11.575 + index * 1e-5;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.android.android_tutorial_camera_imu;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SensorClockTest {
+
+    /**
+     * A boot clock that advances by a fixed step per read and a node time with
+     * millisecond resolution at a fixed offset from it.
+     */
+    private static class FakeTimeSource implements SensorClock.TimeSource {
+        long elapsed = 5000000000L;
+        long offset = 1500000000000000000L;
+        long step = 100000;
+        long wallDelay;
+
+        @Override
+        public long elapsedRealtimeNanos() {
+            this.elapsed += this.step;
+            return this.elapsed;
+        }
+
+        @Override
+        public long currentTimeNanos() {
+            this.elapsed += this.step + this.wallDelay;
+            return (this.elapsed + this.offset) / 1000000 * 1000000;
+        }
+    }
+
+    @Test
+    public void testConvertsToRosTime() {
+        FakeTimeSource timeSource = new FakeTimeSource();
+        SensorClock clock = new SensorClock(timeSource, 0);
+        assertFalse(clock.isInitialized());
+        clock.update();
+        assertTrue(clock.isInitialized());
+        // The first estimate is only as good as the node time resolution.
+        assertEquals(timeSource.offset, clock.getOffsetNanos(), 1000000);
+        long timestamp = 6000000000L;
+        assertEquals(timestamp + timeSource.offset, clock.toRosTimeNanos(timestamp), 1000000);
+    }
+
+    @Test
+    public void testSmoothingBeatsTimeResolution() {
+        FakeTimeSource timeSource = new FakeTimeSource();
+        // Let the reads land at varying positions within a millisecond.
+        timeSource.step = 137777;
+        SensorClock clock = new SensorClock(timeSource, 0);
+        for (int i = 0; i < 2000; i++) {
+            clock.update();
+        }
+        assertEquals(timeSource.offset, clock.getOffsetNanos(), 200000);
+    }
+
+    @Test
+    public void testLargeJumpIsFollowedImmediately() {
+        FakeTimeSource timeSource = new FakeTimeSource();
+        SensorClock clock = new SensorClock(timeSource, 0);
+        clock.update();
+        timeSource.offset += 3600000000000L;
+        clock.update();
+        assertEquals(timeSource.offset, clock.getOffsetNanos(), 1000000);
+    }
+
+    @Test
+    public void testSlowReadsAreRejected() {
+        FakeTimeSource timeSource = new FakeTimeSource();
+        SensorClock clock = new SensorClock(timeSource, 0);
+        timeSource.wallDelay = 5000000;
+        clock.update();
+        assertFalse(clock.isInitialized());
+        timeSource.wallDelay = 0;
+        clock.update();
+        assertTrue(clock.isInitialized());
+    }
+
+    @Test
+    public void testSlowReadsAreRetried() {
+        FakeTimeSource timeSource = new FakeTimeSource() {
+            int reads;
+
+            @Override
+            public long currentTimeNanos() {
+                // Only the first bracketed read is slow.
+                this.wallDelay = ++this.reads == 2 ? 5000000 : 0;
+                return super.currentTimeNanos();
+            }
+        };
+        SensorClock clock = new SensorClock(timeSource, 0);
+        clock.update();
+        assertTrue(clock.isInitialized());
+        assertEquals(timeSource.offset, clock.getOffsetNanos(), 1000000);
+    }
+
+    @Test
+    public void testFallsBackToNodeTimeWhileUninitialized() {
+        FakeTimeSource timeSource = new FakeTimeSource();
+        SensorClock clock = new SensorClock(timeSource, 0);
+        timeSource.wallDelay = 5000000;
+        long stamp = clock.toRosTimeNanos(0);
+        assertFalse(clock.isInitialized());
+        // Stamped with the time of arrival rather than close to the boot time.
+        assertEquals(timeSource.elapsed + timeSource.offset, stamp, 1000000);
+    }
+
+    @Test
+    public void testUpdateInterval() {
+        FakeTimeSource timeSource = new FakeTimeSource();
+        SensorClock clock = new SensorClock(timeSource, 1000000000L);
+        clock.update();
+        long offset = clock.getOffsetNanos();
+        timeSource.offset += 3600000000000L;
+        clock.update();
+        assertEquals(offset, clock.getOffsetNanos());
+        timeSource.elapsed += 1000000000L;
+        clock.update();
+        assertEquals(timeSource.offset, clock.getOffsetNanos(), 1000000);
+    }
+
+    @Test
+    public void testBootClockTimestampPassesCheck() {
+        FakeTimeSource timeSource = new FakeTimeSource();
+        SensorClock clock = new SensorClock(timeSource, 0);
+        long timestamp = timeSource.elapsed - 20000000;
+        assertTrue(clock.checkTimestamp(timestamp, SensorClock.MAXIMUM_LATENCY));
+    }
+
+    @Test
+    public void testOtherClockTimestampFailsCheckForGood() {
+        FakeTimeSource timeSource = new FakeTimeSource();
+        SensorClock clock = new SensorClock(timeSource, 0);
+        // E.g. a sensor hub that counts from its own power up.
+        assertFalse(clock.checkTimestamp(timeSource.elapsed - 3000000000L,
+                SensorClock.MAXIMUM_LATENCY));
+        assertFalse(clock.checkTimestamp(timeSource.elapsed, SensorClock.MAXIMUM_LATENCY));
+    }
+
+    @Test
+    public void testTimestampCheckAllowsForBatching() {
+        FakeTimeSource timeSource = new FakeTimeSource();
+        SensorClock clock = new SensorClock(timeSource, 0);
+        assertTrue(clock.checkTimestamp(timeSource.elapsed - 3000000000L,
+                SensorClock.MAXIMUM_LATENCY + 5000000000L));
+    }
+}
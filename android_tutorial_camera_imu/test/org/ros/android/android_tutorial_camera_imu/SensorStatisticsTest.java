@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.android.android_tutorial_camera_imu;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class SensorStatisticsTest {
+
+    @Test
+    public void testRates() {
+        SensorStatistics statistics = new SensorStatistics(1000000000L);
+        for (int i = 0; i < 50; i++) {
+            statistics.onReceived(-1);
+            if (i % 2 == 0) {
+                statistics.onPublished();
+            }
+        }
+        assertEquals(50, statistics.getReceived());
+        assertEquals(25, statistics.getPublished());
+        assertEquals(100, statistics.getReceivedRate(1500000000L), 1e-9);
+        assertEquals(50, statistics.getPublishedRate(1500000000L), 1e-9);
+    }
+
+    @Test
+    public void testRateWithoutElapsedTimeIsZero() {
+        SensorStatistics statistics = new SensorStatistics(0);
+        statistics.onReceived(-1);
+        assertEquals(0, statistics.getReceivedRate(0), 0);
+    }
+
+    @Test
+    public void testLatency() {
+        SensorStatistics statistics = new SensorStatistics(0);
+        assertEquals(-1, statistics.getMeanLatency());
+        assertEquals(-1, statistics.getMaximumLatency());
+        statistics.onReceived(1000);
+        statistics.onReceived(3000);
+        statistics.onReceived(-1);
+        assertEquals(2000, statistics.getMeanLatency());
+        assertEquals(3000, statistics.getMaximumLatency());
+    }
+
+    @Test
+    public void testResetStartsNewPeriod() {
+        SensorStatistics statistics = new SensorStatistics(0);
+        statistics.onReceived(5000);
+        statistics.onPublished();
+        statistics.reset(1000000000L);
+        assertEquals(0, statistics.getReceived());
+        assertEquals(0, statistics.getPublished());
+        assertEquals(-1, statistics.getMeanLatency());
+        statistics.onReceived(100);
+        assertEquals(100, statistics.getMaximumLatency());
+        assertEquals(1, statistics.getReceivedRate(2000000000L), 1e-9);
+    }
+}
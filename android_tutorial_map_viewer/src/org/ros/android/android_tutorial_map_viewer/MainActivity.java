@@ -51,6 +51,7 @@ public class MainActivity extends RosActivity {
   private VisualizationView visualizationView;
   private ToggleButton followMeToggleButton;
   private CameraControlLayer cameraControlLayer;
+  private OccupancyGridLayer occupancyGridLayer;
 
   public MainActivity() {
     super("Map Viewer", "Map Viewer");
@@ -65,13 +66,23 @@ public class MainActivity extends RosActivity {
         WindowManager.LayoutParams.FLAG_FULLSCREEN);
     setContentView(R.layout.main);
     visualizationView = (VisualizationView) findViewById(R.id.visualization);
+    visualizationView.setRenderOnDemand(true);
+    visualizationView.setMaximumFrameRate(30);
     cameraControlLayer = new CameraControlLayer();
-    visualizationView.onCreate(Lists.<Layer>newArrayList(cameraControlLayer,
-        new OccupancyGridLayer("map"), new LaserScanLayer("scan"), new RobotLayer(ROBOT_FRAME)));
+    occupancyGridLayer = new OccupancyGridLayer("map");
+    visualizationView.onCreate(Lists.<Layer>newArrayList(cameraControlLayer, occupancyGridLayer,
+        new LaserScanLayer("scan"), new RobotLayer(ROBOT_FRAME)));
     followMeToggleButton = (ToggleButton) findViewById(R.id.follow_me_toggle_button);
     enableFollowMe();
   }
 
+  @Override
+  public void onTrimMemory(int level) {
+    super.onTrimMemory(level);
+    // The downsampled levels of the map are built again when they are needed.
+    occupancyGridLayer.trimMemory();
+  }
+
   @Override
   protected void init(NodeMainExecutor nodeMainExecutor) {
     visualizationView.init(nodeMainExecutor);
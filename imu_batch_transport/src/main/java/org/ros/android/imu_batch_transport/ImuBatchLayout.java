@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.imu_batch_transport;
+
+/**
+ * The layout of IMU batches, which pack many samples into one
+ * {@code std_msgs/Float64MultiArray}.
+ * <p>
+ * A batch is a row-major matrix with one row of {@link #FIELDS} values per
+ * sample, oldest first. The layout has two dimensions, "samples" and "fields".
+ * Each row holds, in this order:
+ * <ol>
+ * <li>stamp seconds and nanoseconds (both exact in a double)</li>
+ * <li>linear acceleration x, y, z in m/s^2</li>
+ * <li>angular velocity x, y, z in rad/s</li>
+ * <li>orientation w, x, y, z</li>
+ * </ol>
+ */
+public final class ImuBatchLayout {
+
+  public static final int STAMP_SECS = 0;
+  public static final int STAMP_NSECS = 1;
+  public static final int LINEAR_ACCELERATION = 2;
+  public static final int ANGULAR_VELOCITY = 5;
+  public static final int ORIENTATION = 8;
+  public static final int FIELDS = 12;
+
+  private ImuBatchLayout() {
+  }
+
+  /**
+   * @return the offset of the {@code index}th sample of a batch
+   */
+  public static int row(int index) {
+    return index * FIELDS;
+  }
+
+  /**
+   * @return the stamp of the {@code index}th sample of a batch in nanoseconds
+   */
+  public static long getStamp(double[] data, int index) {
+    int row = row(index);
+    return (long) data[row + STAMP_SECS] * 1000000000L + (long) data[row + STAMP_NSECS];
+  }
+}
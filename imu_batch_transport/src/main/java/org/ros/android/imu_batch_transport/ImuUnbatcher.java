@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.imu_batch_transport;
+
+import org.ros.message.MessageListener;
+import org.ros.message.Time;
+import org.ros.namespace.GraphName;
+import org.ros.node.AbstractNodeMain;
+import org.ros.node.ConnectedNode;
+import org.ros.node.topic.Publisher;
+import org.ros.node.topic.Subscriber;
+
+import sensor_msgs.Imu;
+import std_msgs.Float64MultiArray;
+
+/**
+ * Turns IMU batches back into individual {@link Imu} messages, for consumers
+ * that cannot read the {@link ImuBatchLayout}. Runs on the robot, without
+ * Android.
+ * <p>
+ * Batches are read from android/imu/batch and every sample is republished on
+ * android/imu with the frame given by the private ~frame_id parameter.
+ */
+public class ImuUnbatcher extends AbstractNodeMain {
+
+  private static final String FRAME_ID = "/imu";
+
+  // The covariances that the phone publishes unbatched messages with.
+  private static final double[] LINEAR_ACCELERATION_COVARIANCE =
+      { 0.01, 0, 0, 0, 0.01, 0, 0, 0, 0.01 };
+  private static final double[] ANGULAR_VELOCITY_COVARIANCE =
+      { 0.0025, 0, 0, 0, 0.0025, 0, 0, 0, 0.0025 };
+  private static final double[] ORIENTATION_COVARIANCE =
+      { 0.001, 0, 0, 0, 0.001, 0, 0, 0, 0.001 };
+
+  @Override
+  public GraphName getDefaultNodeName() {
+    return GraphName.of("android_sensors_driver/imuUnbatcher");
+  }
+
+  @Override
+  public void onStart(final ConnectedNode connectedNode) {
+    final String frameId = connectedNode.getParameterTree().getString("~frame_id", FRAME_ID);
+    final Publisher<Imu> publisher = connectedNode.newPublisher("android/imu", Imu._TYPE);
+    Subscriber<Float64MultiArray> subscriber =
+        connectedNode.newSubscriber("android/imu/batch", Float64MultiArray._TYPE);
+    subscriber.addMessageListener(new MessageListener<Float64MultiArray>() {
+      @Override
+      public void onNewMessage(Float64MultiArray batch) {
+        double[] data = batch.getData();
+        if (data.length % ImuBatchLayout.FIELDS != 0) {
+          connectedNode.getLog().warn(
+              "Dropping batch of " + data.length + " values, which is not a multiple of "
+                  + ImuBatchLayout.FIELDS + ".");
+          return;
+        }
+        for (int i = 0; i < data.length / ImuBatchLayout.FIELDS; i++) {
+          Imu imu = publisher.newMessage();
+          imu.getHeader().setFrameId(frameId);
+          imu.setLinearAccelerationCovariance(LINEAR_ACCELERATION_COVARIANCE);
+          imu.setAngularVelocityCovariance(ANGULAR_VELOCITY_COVARIANCE);
+          imu.setOrientationCovariance(ORIENTATION_COVARIANCE);
+          unbatch(data, i, imu);
+          publisher.publish(imu);
+        }
+      }
+    });
+  }
+
+  private static void unbatch(double[] data, int index, Imu imu) {
+    int row = ImuBatchLayout.row(index);
+    int offset = row + ImuBatchLayout.LINEAR_ACCELERATION;
+    imu.getLinearAcceleration().setX(data[offset]);
+    imu.getLinearAcceleration().setY(data[offset + 1]);
+    imu.getLinearAcceleration().setZ(data[offset + 2]);
+    offset = row + ImuBatchLayout.ANGULAR_VELOCITY;
+    imu.getAngularVelocity().setX(data[offset]);
+    imu.getAngularVelocity().setY(data[offset + 1]);
+    imu.getAngularVelocity().setZ(data[offset + 2]);
+    offset = row + ImuBatchLayout.ORIENTATION;
+    imu.getOrientation().setW(data[offset]);
+    imu.getOrientation().setX(data[offset + 1]);
+    imu.getOrientation().setY(data[offset + 2]);
+    imu.getOrientation().setZ(data[offset + 3]);
+    long stamp = ImuBatchLayout.getStamp(data, index);
+    imu.getHeader().setStamp(new Time((int) (stamp / 1000000000L), (int) (stamp % 1000000000L)));
+  }
+}
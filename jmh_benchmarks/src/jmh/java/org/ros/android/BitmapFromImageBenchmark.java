@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android;
+
+import android.graphics.Bitmap;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.ros.message.MessageFactory;
+import org.ros.node.NodeConfiguration;
+
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures converting an rgb8 {@link sensor_msgs.Image} into a {@link Bitmap}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BitmapFromImageBenchmark {
+
+  @Param({ "320x240", "640x480", "1280x720" })
+  public String resolution;
+
+  private BitmapFromImage bitmapFromImage;
+  private sensor_msgs.Image image;
+
+  @Setup
+  public void setUp() {
+    String[] size = resolution.split("x");
+    int width = Integer.parseInt(size[0]);
+    int height = Integer.parseInt(size[1]);
+    MessageFactory messageFactory = NodeConfiguration.newPrivate().getTopicMessageFactory();
+    image = messageFactory.newFromType(sensor_msgs.Image._TYPE);
+    image.setEncoding("rgb8");
+    image.setWidth(width);
+    image.setHeight(height);
+    image.setStep(3 * width);
+    byte[] data = new byte[3 * width * height];
+    new Random(42).nextBytes(data);
+    image.setData(ChannelBuffers.wrappedBuffer(ByteOrder.LITTLE_ENDIAN, data));
+    bitmapFromImage = new BitmapFromImage();
+  }
+
+  @Benchmark
+  public Bitmap call() {
+    return bitmapFromImage.call(image);
+  }
+}
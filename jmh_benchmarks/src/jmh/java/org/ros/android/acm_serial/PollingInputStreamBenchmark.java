@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.acm_serial;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of a {@link PollingInputStream} over a source that
+ * never blocks, so that the ring buffer and the hand-off between the read loop
+ * and the reader are the bottleneck. The score is in KiB read per millisecond.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PollingInputStreamBenchmark {
+
+  private static final int KIB = 1024;
+  private static final int BYTES_PER_INVOCATION = 64 * KIB;
+
+  /**
+   * The number of bytes the read loop takes from the source at once.
+   */
+  @Param({ "256", "4096" })
+  public int readSize;
+
+  /**
+   * The number of bytes the consumer asks for at once.
+   */
+  @Param({ "64", "4096" })
+  public int chunkSize;
+
+  private ExecutorService executorService;
+  private PollingInputStream pollingInputStream;
+  private byte[] buffer;
+
+  private static class EndlessInputStream extends InputStream {
+    @Override
+    public int read() {
+      return 0x55;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+      return length;
+    }
+  }
+
+  @Setup
+  public void setUp() {
+    executorService = Executors.newSingleThreadExecutor();
+    pollingInputStream =
+        new PollingInputStream(new EndlessInputStream(), executorService,
+            PollingInputStream.DEFAULT_BUFFER_CAPACITY, readSize);
+    buffer = new byte[chunkSize];
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    pollingInputStream.close();
+    executorService.shutdownNow();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BYTES_PER_INVOCATION / KIB)
+  public int read() throws IOException {
+    int remaining = BYTES_PER_INVOCATION;
+    while (remaining > 0) {
+      remaining -= pollingInputStream.read(buffer, 0, Math.min(chunkSize, remaining));
+    }
+    return remaining;
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.acm_serial;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time from a byte arriving at the source stream until a blocked
+ * reader of the {@link PollingInputStream} returns it. A spinning or sleeping
+ * read loop shows up as millisecond-scale samples.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PollingInputStreamLatencyBenchmark {
+
+  private ExecutorService executorService;
+  private PipedOutputStream pipedOutputStream;
+  private PollingInputStream pollingInputStream;
+  private byte[] buffer;
+
+  @Setup
+  public void setUp() throws IOException {
+    executorService = Executors.newSingleThreadExecutor();
+    PipedInputStream pipedInputStream = new PipedInputStream();
+    pipedOutputStream = new PipedOutputStream(pipedInputStream);
+    pollingInputStream = new PollingInputStream(pipedInputStream, executorService);
+    buffer = new byte[1];
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    pollingInputStream.close();
+    pipedOutputStream.close();
+    executorService.shutdownNow();
+  }
+
+  @Benchmark
+  public int handOff() throws IOException {
+    pipedOutputStream.write(0x55);
+    // Wakes the read loop, which is otherwise polling the pipe once per
+    // second.
+    pipedOutputStream.flush();
+    return pollingInputStream.read(buffer, 0, 1);
+  }
+}
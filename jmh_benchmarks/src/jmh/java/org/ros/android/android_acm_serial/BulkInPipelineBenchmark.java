@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.android_acm_serial;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of a {@link BulkInPipeline} over a device that
+ * completes every transfer as soon as it is queued, so that the hand-off
+ * between the completion thread and the reader is the bottleneck. The score is
+ * in KiB read per millisecond.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BulkInPipelineBenchmark {
+
+  private static final int KIB = 1024;
+  private static final int BYTES_PER_INVOCATION = 64 * KIB;
+  private static final int TRANSFERS_IN_FLIGHT = 4;
+  private static final int QUEUE_CAPACITY = 16;
+
+  /**
+   * One max packet of a high speed endpoint, or the 32 packets that
+   * {@code AcmAsyncInputStream} queues at once.
+   */
+  @Param({ "512", "16384" })
+  public int transferSize;
+
+  private BlockingQueue<ByteBuffer> queuedTransfers;
+  private BulkInPipeline pipeline;
+  private Thread completionThread;
+  private byte[] buffer;
+
+  @Setup
+  public void setUp() {
+    queuedTransfers = new LinkedBlockingQueue<ByteBuffer>();
+    pipeline = new BulkInPipeline(new BulkInPipeline.Transport() {
+      @Override
+      public boolean submit(ByteBuffer buffer) {
+        queuedTransfers.add(buffer);
+        return true;
+      }
+    }, TRANSFERS_IN_FLIGHT, transferSize, QUEUE_CAPACITY);
+    completionThread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          while (true) {
+            ByteBuffer buffer = queuedTransfers.take();
+            buffer.position(buffer.limit());
+            pipeline.onTransferComplete(buffer);
+          }
+        } catch (InterruptedException e) {
+          // Done.
+        }
+      }
+    };
+    completionThread.start();
+    pipeline.start();
+    buffer = new byte[4 * KIB];
+  }
+
+  @TearDown
+  public void tearDown() throws InterruptedException {
+    pipeline.close();
+    completionThread.interrupt();
+    completionThread.join();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BYTES_PER_INVOCATION / KIB)
+  public int read() throws IOException {
+    int remaining = BYTES_PER_INVOCATION;
+    while (remaining > 0) {
+      remaining -= pipeline.read(buffer, 0, Math.min(buffer.length, remaining));
+    }
+    return remaining;
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.android_tutorial_camera_imu;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feeds a 400 Hz gyroscope, a 200 Hz accelerometer and a 100 Hz rotation
+ * vector with delivery jitter through an {@link ImuAssembler}. The score is in
+ * events per microsecond.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ImuAssemblerBenchmark {
+
+  private static final int SECONDS = 10;
+  private static final int EVENTS = 700 * SECONDS;
+
+  /**
+   * How long in nanoseconds a sample may wait so that the other sensors can
+   * be interpolated, 0 to hold their last readings.
+   */
+  @Param({ "0", "10000000" })
+  public long maximumDelay;
+
+  private int[] sensors;
+  private long[] timestamps;
+  private float[] vector;
+  private ImuAssembler assembler;
+  private long offset;
+  private long samples;
+
+  @Setup
+  public void setUp() {
+    int[] rates = { 200, 400, 100 };
+    long[] phases = { 300000, 0, 700000 };
+    final long[] delivery = new long[EVENTS];
+    int[] unsortedSensors = new int[EVENTS];
+    long[] unsortedTimestamps = new long[EVENTS];
+    Random random = new Random(42);
+    int count = 0;
+    for (int sensor = 0; sensor < 3; sensor++) {
+      long period = 1000000000L / rates[sensor];
+      for (int i = 0; i < rates[sensor] * SECONDS; i++) {
+        unsortedSensors[count] = sensor;
+        unsortedTimestamps[count] = i * period + phases[sensor];
+        delivery[count] = unsortedTimestamps[count] + random.nextInt(1500000);
+        count++;
+      }
+    }
+    Integer[] order = new Integer[EVENTS];
+    for (int i = 0; i < EVENTS; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        return Long.compare(delivery[a], delivery[b]);
+      }
+    });
+    sensors = new int[EVENTS];
+    timestamps = new long[EVENTS];
+    for (int i = 0; i < EVENTS; i++) {
+      sensors[i] = unsortedSensors[order[i]];
+      timestamps[i] = unsortedTimestamps[order[i]];
+    }
+    vector = new float[] { 0.1f, 0.2f, 0.3f };
+    assembler = new ImuAssembler(new ImuAssembler.Listener() {
+      @Override
+      public void onImuSample(ImuSample sample) {
+        samples++;
+      }
+    }, true, true, true, 0, maximumDelay);
+  }
+
+  /**
+   * Replays the recording once. Every invocation continues where the last one
+   * ended, so that time keeps moving forward for the assembler.
+   */
+  @Benchmark
+  @OperationsPerInvocation(EVENTS)
+  public long replay() {
+    for (int i = 0; i < EVENTS; i++) {
+      long timestamp = offset + timestamps[i];
+      switch (sensors[i]) {
+        case 0:
+          assembler.onAccelerometer(vector, timestamp);
+          break;
+        case 1:
+          assembler.onGyroscope(vector, timestamp);
+          break;
+        default:
+          assembler.onRotationVector(vector, timestamp);
+          break;
+      }
+    }
+    offset += SECONDS * 1000000000L;
+    return samples;
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.android_tutorial_camera_imu;
+
+import android.hardware.Sensor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.ros.android.SensorRecord;
+import org.ros.android.SensorRecordListener;
+import org.ros.android.SensorReplaySource;
+import org.ros.node.ConnectedNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs an {@link ImuPublisher} with sensor timestamps on a
+ * {@link FakeConnectedNode}, whose publishers count the messages instead of
+ * sending them.
+ * <p>
+ * {@link #replay} replays the recording of {@link ReplayFixture#writeImu} as
+ * fast as possible, publishing individual messages, full batches of 10, or
+ * batches that a 20 ms window cuts short at 8 samples; its score is in events
+ * per microsecond. The recording is evenly spaced, so every cut batch has the
+ * same length and the pooled messages keep their data arrays once they have
+ * been resized. {@link #latency} delivers a single gyroscope event stamped
+ * with the current time and returns once the publisher has published it, so
+ * its sampled times are the latency from an event's timestamp to its
+ * publication. Run with {@code -prof gc} for the allocation per event.
+ */
+public class ImuReplayBenchmark {
+
+  /**
+   * A publisher started on a fake node, with the listener it registered with
+   * its source.
+   */
+  public abstract static class PublisherState {
+    ImuPublisher publisher;
+    ConnectedNode node;
+    SensorRecordListener listener;
+    long published;
+
+    void start(Map<String, Object> parameters) {
+      ReplayFixture.CapturingSource source = new ReplayFixture.CapturingSource();
+      node = FakeConnectedNode.newNode(parameters, new FakeConnectedNode.Listener() {
+        @Override
+        public void onPublish(String topic, Object message) {
+          published++;
+        }
+      });
+      publisher = new ImuPublisher(source, true);
+      publisher.onStart(node);
+      listener = source.getListener();
+    }
+
+    @TearDown
+    public void tearDown() {
+      publisher.onShutdown(node);
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class ReplayState extends PublisherState {
+
+    @Param({"none", "full", "window"})
+    public String batching;
+
+    File file;
+    SensorReplaySource replaySource;
+    // Every replay starts where the last one ended, so that the timestamps
+    // keep increasing.
+    long replayStart;
+
+    @Setup
+    public void setUp() throws IOException {
+      Map<String, Object> parameters = new HashMap<String, Object>();
+      if (!batching.equals("none")) {
+        parameters.put("~batch_size", 10);
+      }
+      if (batching.equals("window")) {
+        parameters.put("~batch_window", 0.02);
+      }
+      start(parameters);
+      file = File.createTempFile("imu", ".rec");
+      ReplayFixture.writeImu(file);
+      replayStart = System.nanoTime();
+      replaySource = new SensorReplaySource(file, 0, new SensorReplaySource.Clock() {
+        @Override
+        public long nanoTime() {
+          return replayStart;
+        }
+      });
+    }
+
+    @TearDown
+    public void deleteFile() {
+      file.delete();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class LatencyState extends PublisherState {
+
+    SensorRecord record;
+
+    @Setup
+    public void setUp() {
+      start(new HashMap<String, Object>());
+      // Gyroscope events are published with the latest accelerometer and
+      // rotation vector events.
+      record = new SensorRecord();
+      ReplayFixture.setImu(record, Sensor.TYPE_ROTATION_VECTOR, System.nanoTime(), 5);
+      listener.onSensorRecord(record);
+      ReplayFixture.setImu(record, Sensor.TYPE_ACCELEROMETER, System.nanoTime(), 3);
+      listener.onSensorRecord(record);
+      ReplayFixture.setImu(record, Sensor.TYPE_GYROSCOPE, System.nanoTime(), 3);
+    }
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  @OperationsPerInvocation(ReplayFixture.IMU_RECORDS)
+  public long replay(ReplayState state) throws IOException {
+    long records = state.replaySource.replay(state.listener);
+    state.replayStart += ReplayFixture.SECONDS * 1000000000L;
+    return records;
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public long latency(LatencyState state) {
+    state.record.timestamp = System.nanoTime();
+    state.listener.onSensorRecord(state.record);
+    return state.published;
+  }
+}
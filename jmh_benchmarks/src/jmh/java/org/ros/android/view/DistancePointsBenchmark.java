@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view;
+
+import com.google.common.collect.Lists;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures updating the range polygon of the {@code DistanceView}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DistancePointsBenchmark {
+
+  @Param({ "512", "1081" })
+  public int ranges;
+
+  private DistancePoints distancePoints;
+  private List<Float> range;
+  private float thetaIncrement;
+
+  @Setup
+  public void setUp() {
+    distancePoints = new DistancePoints();
+    range = Lists.newArrayListWithCapacity(ranges);
+    Random random = new Random(42);
+    for (int i = 0; i < ranges; i++) {
+      range.add(random.nextFloat() * 6.0f);
+    }
+    thetaIncrement = (float) (Math.PI * 1.5 / ranges);
+  }
+
+  @Benchmark
+  public void updateRange() {
+    distancePoints.updateRange(range, 5.6f, 0.1f, (float) -Math.PI * 0.75f, thetaIncrement);
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.camera;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferOutputStream;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares copying encoded frames out of a single output stream with writing
+ * them into a {@link ChannelBufferPool}. Run with the GC profiler
+ * ({@code -prof gc}) to see the bytes allocated per frame in
+ * gc.alloc.rate.norm.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ChannelBufferPoolBenchmark {
+
+  private static final int FRAME_SIZE = 48 * 1024;
+
+  private byte[] jpeg;
+  private ChannelBufferOutputStream stream;
+  private ChannelBufferPool pool;
+
+  @Setup
+  public void setUp() {
+    jpeg = new byte[FRAME_SIZE];
+    new Random(42).nextBytes(jpeg);
+    stream =
+        new ChannelBufferOutputStream(ChannelBuffers.dynamicBuffer(ByteOrder.LITTLE_ENDIAN, 256));
+    pool = new ChannelBufferPool(18, 256);
+  }
+
+  /**
+   * The previous strategy: encode into one stream, then copy for the message.
+   */
+  @Benchmark
+  public ChannelBuffer copying() throws IOException {
+    stream.write(jpeg);
+    ChannelBuffer data = stream.buffer().copy();
+    stream.buffer().clear();
+    return data;
+  }
+
+  @Benchmark
+  public ChannelBuffer pooled() throws IOException {
+    ChannelBufferOutputStream stream = pool.next();
+    stream.write(jpeg);
+    return stream.buffer();
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.ros.rosjava_geometry.Transform;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures converting a tile of ARGB pixels, and a tile of palette indices,
+ * into the buffer of a {@link TextureBitmap}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TextureBitmapBenchmark {
+
+  /**
+   * The width of the pixel data; narrower tiles are padded with the fill color.
+   */
+  @Param({ "512", "1024" })
+  public int stride;
+
+  @Param({ "RGBA_8888", "LUMINANCE_ALPHA" })
+  public TextureBitmap.Format format;
+
+  private TextureBitmap textureBitmap;
+  private ChannelBuffer pixels;
+  private byte[] values;
+  private int[] palette;
+  private Transform origin;
+
+  @Setup
+  public void setUp() {
+    textureBitmap = new TextureBitmap(TextureBitmap.STRIDE, TextureBitmap.HEIGHT, format);
+    pixels = ChannelBuffers.buffer(stride * TextureBitmap.HEIGHT * 4);
+    values = new byte[stride * TextureBitmap.HEIGHT];
+    for (int i = 0; i < stride * TextureBitmap.HEIGHT; i++) {
+      pixels.writeInt(i % 3 == 0 ? 0xff111111 : 0xffffffff);
+      values[i] = (byte) (i % 3 == 0 ? 100 : 0);
+    }
+    palette = new int[256];
+    for (int i = 0; i < palette.length; i++) {
+      palette[i] = i < 50 ? 0xffffffff : 0xff111111;
+    }
+    origin = Transform.identity();
+    textureBitmap.setOrigin(origin, 0.05f);
+  }
+
+  @Benchmark
+  public void updateFromPixelBuffer() {
+    pixels.readerIndex(0);
+    textureBitmap.updateFromPixelBuffer(pixels, stride, 0.05f, origin, 0);
+  }
+
+  @Benchmark
+  public void prepareRegionFromPalette() {
+    textureBitmap.prepareRegion(values, 0, stride, 0, 0, stride, TextureBitmap.HEIGHT, palette);
+    textureBitmap.swap();
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization.layer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.ros.message.MessageFactory;
+import org.ros.node.NodeConfiguration;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import sensor_msgs.LaserScan;
+
+/**
+ * Measures building the vertices of a {@link LaserScanLayer} from a scan.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LaserScanLayerBenchmark {
+
+  /**
+   * The number of ranges in a scan.
+   */
+  @Param({ "1081", "8192" })
+  public int ranges;
+
+  /**
+   * 15 is the stride the layer uses; 1 keeps every range.
+   */
+  @Param({ "1", "15" })
+  public int stride;
+
+  private LaserScanLayer layer;
+  private LaserScan laserScan;
+
+  @Setup
+  public void setUp() {
+    MessageFactory messageFactory = NodeConfiguration.newPrivate().getTopicMessageFactory();
+    laserScan = messageFactory.newFromType(LaserScan._TYPE);
+    laserScan.getHeader().setFrameId("laser");
+    laserScan.setAngleMin((float) -Math.PI * 0.75f);
+    laserScan.setAngleMax((float) Math.PI * 0.75f);
+    laserScan.setAngleIncrement((float) (Math.PI * 1.5 / ranges));
+    laserScan.setRangeMin(0.1f);
+    laserScan.setRangeMax(30.0f);
+    float[] values = new float[ranges];
+    Random random = new Random(42);
+    for (int i = 0; i < values.length; i++) {
+      // Some readings are out of range and get dropped.
+      values[i] = random.nextFloat() * 35.0f;
+    }
+    laserScan.setRanges(values);
+    layer = new LaserScanLayer("scan");
+  }
+
+  @Benchmark
+  public void updateVertexBuffer() {
+    layer.updateVertexBuffer(laserScan, stride);
+  }
+}
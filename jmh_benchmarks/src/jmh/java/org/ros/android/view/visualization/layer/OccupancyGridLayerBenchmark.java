@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization.layer;
+
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.ros.message.MessageFactory;
+import org.ros.node.NodeConfiguration;
+
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures updating the tiles of an {@link OccupancyGridLayer} from a
+ * {@link nav_msgs.OccupancyGrid} that did not change, from one whose cells all
+ * changed, and from a small {@link map_msgs.OccupancyGridUpdate}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class OccupancyGridLayerBenchmark {
+
+  private static final int PARTIAL_UPDATE_SIZE = 64;
+
+  /**
+   * The width and height of the map in cells.
+   */
+  @Param({ "1024", "4000" })
+  public int size;
+
+  private OccupancyGridLayer layer;
+  private nav_msgs.OccupancyGrid message;
+  private nav_msgs.OccupancyGrid otherMessage;
+  private map_msgs.OccupancyGridUpdate partialUpdate;
+  private boolean other;
+
+  @Setup
+  public void setUp() {
+    MessageFactory messageFactory = NodeConfiguration.newPrivate().getTopicMessageFactory();
+    message = newMap(messageFactory, createMap(size, 42));
+    otherMessage = newMap(messageFactory, createMap(size, 43));
+    partialUpdate = messageFactory.newFromType(map_msgs.OccupancyGridUpdate._TYPE);
+    partialUpdate.setX(size / 2);
+    partialUpdate.setY(size / 2);
+    partialUpdate.setWidth(PARTIAL_UPDATE_SIZE);
+    partialUpdate.setHeight(PARTIAL_UPDATE_SIZE);
+    partialUpdate.setData(ChannelBuffers.wrappedBuffer(ByteOrder.LITTLE_ENDIAN,
+        createMap(PARTIAL_UPDATE_SIZE, 44)));
+    layer = new OccupancyGridLayer("map");
+    layer.update(message);
+  }
+
+  private nav_msgs.OccupancyGrid newMap(MessageFactory messageFactory, byte[] cells) {
+    nav_msgs.OccupancyGrid map = messageFactory.newFromType(nav_msgs.OccupancyGrid._TYPE);
+    map.getHeader().setFrameId("map");
+    map.getInfo().setWidth(size);
+    map.getInfo().setHeight(size);
+    map.getInfo().setResolution(0.05f);
+    map.getInfo().getOrigin().getOrientation().setW(1);
+    map.setData(ChannelBuffers.wrappedBuffer(ByteOrder.LITTLE_ENDIAN, cells));
+    return map;
+  }
+
+  /**
+   * @return a map that is mostly free and unknown with some obstacles, like
+   *         the output of a SLAM system
+   */
+  static byte[] createMap(int size, long seed) {
+    byte[] cells = new byte[size * size];
+    Random random = new Random(seed);
+    for (int i = 0; i < cells.length; i++) {
+      int value = random.nextInt(100);
+      cells[i] = (byte) (value < 50 ? 0 : value < 90 ? -1 : 100);
+    }
+    return cells;
+  }
+
+  @Benchmark
+  public boolean updateUnchanged() {
+    return layer.update(message);
+  }
+
+  @Benchmark
+  public boolean updateChanged() {
+    other = !other;
+    return layer.update(other ? otherMessage : message);
+  }
+
+  @Benchmark
+  public boolean updatePartial() {
+    // Alternates between the map and the update so that every update changes
+    // its cells.
+    other = !other;
+    return other ? layer.update(partialUpdate) : layer.update(message);
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization.layer;
+
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.ros.message.MessageFactory;
+import org.ros.namespace.GraphName;
+import org.ros.node.NodeConfiguration;
+
+import java.nio.ByteOrder;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares converting the 16 tiles of a 4096x4096
+ * {@link nav_msgs.OccupancyGrid} on the calling thread with converting them on
+ * the default pool of the {@link OccupancyGridLayer}. Every update changes
+ * most cells of every tile.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class OccupancyGridLayerParallelBenchmark {
+
+  private static final int SIZE = 4096;
+
+  @Param({ "serial", "parallel" })
+  public String conversion;
+
+  private OccupancyGridLayer layer;
+  private nav_msgs.OccupancyGrid message;
+  private nav_msgs.OccupancyGrid otherMessage;
+  private boolean other;
+
+  @Setup
+  public void setUp() {
+    MessageFactory messageFactory = NodeConfiguration.newPrivate().getTopicMessageFactory();
+    message = newMap(messageFactory, OccupancyGridLayerBenchmark.createMap(SIZE, 42));
+    otherMessage = newMap(messageFactory, OccupancyGridLayerBenchmark.createMap(SIZE, 43));
+    if (conversion.equals("serial")) {
+      layer = new OccupancyGridLayer(GraphName.of("map"), null, new Executor() {
+        @Override
+        public void execute(Runnable command) {
+          command.run();
+        }
+      });
+    } else {
+      layer = new OccupancyGridLayer("map");
+    }
+    layer.update(message);
+  }
+
+  private static nav_msgs.OccupancyGrid newMap(MessageFactory messageFactory, byte[] cells) {
+    nav_msgs.OccupancyGrid map = messageFactory.newFromType(nav_msgs.OccupancyGrid._TYPE);
+    map.getHeader().setFrameId("map");
+    map.getInfo().setWidth(SIZE);
+    map.getInfo().setHeight(SIZE);
+    map.getInfo().setResolution(0.05f);
+    map.getInfo().getOrigin().getOrientation().setW(1);
+    map.setData(ChannelBuffers.wrappedBuffer(ByteOrder.LITTLE_ENDIAN, cells));
+    return map;
+  }
+
+  @Benchmark
+  public boolean update() {
+    other = !other;
+    return layer.update(other ? otherMessage : message);
+  }
+}
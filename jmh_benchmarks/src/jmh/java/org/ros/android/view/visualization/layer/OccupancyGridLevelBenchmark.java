@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization.layer;
+
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.ros.android.view.visualization.TextureBitmap;
+import org.ros.rosjava_geometry.Transform;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures downsampling a full tile of an occupancy grid into an
+ * {@link OccupancyGridLevel}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class OccupancyGridLevelBenchmark {
+
+  @Param({ "1", "3" })
+  public int shift;
+
+  private final int[] palette = new int[256];
+
+  private OccupancyGridCells tile;
+  private OccupancyGridLevel level;
+
+  @Setup
+  public void setUp() {
+    int size = TextureBitmap.STRIDE;
+    tile = new OccupancyGridCells(size, size);
+    tile.update(ChannelBuffers.wrappedBuffer(OccupancyGridLayerBenchmark.createMap(size, 42)), 0,
+        0, size, size);
+    level = new OccupancyGridLevel(shift, size, size, 0.05f, Transform.identity());
+  }
+
+  @Benchmark
+  public void prepare() {
+    level.prepare(tile, 0, 0, tile.getWidth(), tile.getHeight(), palette);
+    level.swap();
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization.layer;
+
+import com.google.common.collect.Lists;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.ros.message.MessageFactory;
+import org.ros.node.NodeConfiguration;
+
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import sensor_msgs.PointCloud2;
+import sensor_msgs.PointField;
+
+/**
+ * Measures building the vertices of a {@link PointCloud2DLayer} from an
+ * unordered XYZ cloud.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PointCloud2DLayerBenchmark {
+
+  private static final int POINT_STEP = 16;
+
+  @Param({ "10000", "100000" })
+  public int points;
+
+  private PointCloud2DLayer layer;
+  private PointCloud2 pointCloud;
+
+  @Setup
+  public void setUp() {
+    MessageFactory messageFactory = NodeConfiguration.newPrivate().getTopicMessageFactory();
+    pointCloud = messageFactory.newFromType(PointCloud2._TYPE);
+    pointCloud.getHeader().setFrameId("camera");
+    pointCloud.setHeight(1);
+    pointCloud.setWidth(points);
+    pointCloud.setIsDense(true);
+    pointCloud.setPointStep(POINT_STEP);
+    pointCloud.setRowStep(points * POINT_STEP);
+    List<PointField> fields = Lists.newArrayList();
+    String[] names = { "x", "y", "z" };
+    for (int i = 0; i < names.length; i++) {
+      PointField field = messageFactory.newFromType(PointField._TYPE);
+      field.setName(names[i]);
+      field.setOffset(4 * i);
+      field.setDatatype(PointField.FLOAT32);
+      field.setCount(1);
+      fields.add(field);
+    }
+    pointCloud.setFields(fields);
+    ChannelBuffer data = ChannelBuffers.buffer(ByteOrder.LITTLE_ENDIAN, points * POINT_STEP);
+    Random random = new Random(42);
+    for (int i = 0; i < points; i++) {
+      data.writeFloat(random.nextFloat() * 10.0f);
+      data.writeFloat(random.nextFloat() * 10.0f);
+      data.writeFloat(random.nextFloat());
+      data.writeFloat(0.0f);
+    }
+    pointCloud.setData(data);
+    layer = new PointCloud2DLayer("cloud");
+  }
+
+  @Benchmark
+  public void updateVertexBuffer() {
+    pointCloud.getData().readerIndex(0);
+    layer.updateVertexBuffer(pointCloud);
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization.shape;
+
+import com.google.common.collect.Lists;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures triangulating the kind of concave polygons that
+ * {@code MetricSpacePolygon} draws.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TriangulateBenchmark {
+
+  /**
+   * The number of vertices of the polygon.
+   */
+  @Param({ "16", "64", "256" })
+  public int vertices;
+
+  private Triangulate.Point[] contour;
+  private List<Triangulate.Point> result;
+
+  @Setup
+  public void setUp() {
+    // A star, whose every other vertex is concave.
+    contour = new Triangulate.Point[vertices];
+    for (int i = 0; i < vertices; i++) {
+      double angle = 2 * Math.PI * i / vertices;
+      double radius = i % 2 == 0 ? 1.0 : 0.5;
+      contour[i] =
+          new Triangulate.Point((float) (radius * Math.cos(angle)),
+              (float) (radius * Math.sin(angle)));
+    }
+    result = Lists.newArrayListWithCapacity(3 * vertices);
+  }
+
+  @Benchmark
+  public List<Triangulate.Point> process() {
+    result.clear();
+    Triangulate.process(contour, result);
+    return result;
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package android.graphics;
+
+/**
+ * A heap backed stand-in for {@code android.graphics.Bitmap}, so that code
+ * filling bitmaps can be benchmarked on the JVM. Pixel accessors copy like
+ * their Android counterparts do.
+ */
+public final class Bitmap {
+
+  public enum Config {
+    ALPHA_8, RGB_565, ARGB_4444, ARGB_8888
+  }
+
+  private final int width;
+  private final int height;
+  private final int[] pixels;
+
+  private Bitmap(int width, int height) {
+    this.width = width;
+    this.height = height;
+    pixels = new int[width * height];
+  }
+
+  public static Bitmap createBitmap(int width, int height, Config config) {
+    if (width <= 0 || height <= 0) {
+      throw new IllegalArgumentException("Width and height must be positive.");
+    }
+    return new Bitmap(width, height);
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  public int getPixel(int x, int y) {
+    checkPixel(x, y);
+    return pixels[y * width + x];
+  }
+
+  public void setPixel(int x, int y, int color) {
+    checkPixel(x, y);
+    pixels[y * width + x] = color;
+  }
+
+  public void setPixels(int[] source, int offset, int stride, int x, int y, int width,
+      int height) {
+    for (int row = 0; row < height; row++) {
+      System.arraycopy(source, offset + row * stride, pixels, (y + row) * this.width + x, width);
+    }
+  }
+
+  public void getPixels(int[] destination, int offset, int stride, int x, int y, int width,
+      int height) {
+    for (int row = 0; row < height; row++) {
+      System.arraycopy(pixels, (y + row) * this.width + x, destination, offset + row * stride,
+          width);
+    }
+  }
+
+  public void recycle() {
+  }
+
+  private void checkPixel(int x, int y) {
+    if (x < 0 || x >= width || y < 0 || y >= height) {
+      throw new IllegalArgumentException("Pixel out of bounds: " + x + ", " + y);
+    }
+  }
+}
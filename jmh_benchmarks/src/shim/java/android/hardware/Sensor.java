@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package android.hardware;
+
+/**
+ * A stand-in for {@code android.hardware.Sensor}.
+ */
+public class Sensor {
+
+  public static final int TYPE_ACCELEROMETER = 1;
+  public static final int TYPE_GYROSCOPE = 4;
+  public static final int TYPE_ROTATION_VECTOR = 11;
+
+  public int getType() {
+    return 0;
+  }
+
+  public String getName() {
+    return "";
+  }
+
+  public int getFifoMaxEventCount() {
+    return 0;
+  }
+}
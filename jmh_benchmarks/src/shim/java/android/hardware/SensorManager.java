@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package android.hardware;
+
+import android.os.Handler;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A stand-in for {@code android.hardware.SensorManager} without any sensors.
+ */
+public class SensorManager {
+
+  public static final int SENSOR_DELAY_FASTEST = 0;
+
+  public Sensor getDefaultSensor(int type) {
+    return null;
+  }
+
+  public List<Sensor> getSensorList(int type) {
+    return Collections.emptyList();
+  }
+
+  public boolean registerListener(SensorEventListener listener, Sensor sensor,
+      int samplingPeriodUs, Handler handler) {
+    return false;
+  }
+
+  public boolean registerListener(SensorEventListener listener, Sensor sensor,
+      int samplingPeriodUs, int maxReportLatencyUs, Handler handler) {
+    return false;
+  }
+
+  public void unregisterListener(SensorEventListener listener) {
+  }
+}
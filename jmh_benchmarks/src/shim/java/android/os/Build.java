@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package android.os;
+
+/**
+ * A stand-in for {@code android.os.Build} that reports the newest platform.
+ */
+public final class Build {
+
+  private Build() {
+    // Utility class.
+  }
+
+  public static final class VERSION {
+    public static final int SDK_INT = Integer.MAX_VALUE;
+  }
+
+  public static final class VERSION_CODES {
+    public static final int JELLY_BEAN_MR1 = 17;
+    public static final int KITKAT = 19;
+  }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package android.util;
+
+/**
+ * A stand-in for {@code android.util.Log} that writes to standard error.
+ */
+public final class Log {
+
+  private Log() {
+    // Utility class.
+  }
+
+  public static int i(String tag, String msg) {
+    System.err.println(tag + ": " + msg);
+    return 0;
+  }
+
+  public static int w(String tag, String msg) {
+    System.err.println(tag + ": " + msg);
+    return 0;
+  }
+
+  public static int e(String tag, String msg, Throwable tr) {
+    System.err.println(tag + ": " + msg);
+    tr.printStackTrace();
+    return 0;
+  }
+}
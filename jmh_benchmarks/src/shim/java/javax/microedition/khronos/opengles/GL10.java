@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package javax.microedition.khronos.opengles;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+
+/**
+ * The subset of the OpenGL ES 1.0 interface that benchmarked code refers to.
+ * The benchmarks never draw, so there is no implementation.
+ */
+public interface GL10 {
+
+  int GL_POINTS = 0x0000;
+  int GL_LINES = 0x0001;
+  int GL_LINE_LOOP = 0x0002;
+  int GL_LINE_STRIP = 0x0003;
+  int GL_TRIANGLE_STRIP = 0x0005;
+  int GL_TRIANGLE_FAN = 0x0006;
+  int GL_CW = 0x0900;
+  int GL_LINE_SMOOTH = 0x0B20;
+  int GL_CULL_FACE = 0x0B44;
+  int GL_TEXTURE_2D = 0x0DE1;
+  int GL_UNSIGNED_BYTE = 0x1401;
+  int GL_FLOAT = 0x1406;
+  int GL_RGB = 0x1907;
+  int GL_RGBA = 0x1908;
+  int GL_LUMINANCE_ALPHA = 0x190A;
+  int GL_NEAREST = 0x2600;
+  int GL_TEXTURE_MAG_FILTER = 0x2800;
+  int GL_TEXTURE_MIN_FILTER = 0x2801;
+  int GL_VERTEX_ARRAY = 0x8074;
+  int GL_TEXTURE_COORD_ARRAY = 0x8078;
+  int GL_UNSIGNED_SHORT_5_6_5 = 0x8363;
+
+  void glBindTexture(int target, int texture);
+
+  void glColor4f(float red, float green, float blue, float alpha);
+
+  void glDisable(int cap);
+
+  void glDeleteTextures(int n, int[] textures, int offset);
+
+  void glDisableClientState(int array);
+
+  void glDrawArrays(int mode, int first, int count);
+
+  void glEnable(int cap);
+
+  void glEnableClientState(int array);
+
+  void glFrontFace(int mode);
+
+  void glGenTextures(int n, int[] textures, int offset);
+
+  void glLineWidth(float width);
+
+  void glMultMatrixf(FloatBuffer m);
+
+  void glPointSize(float size);
+
+  void glPopMatrix();
+
+  void glPushMatrix();
+
+  void glScalef(float x, float y, float z);
+
+  void glTexCoordPointer(int size, int type, int stride, Buffer pointer);
+
+  void glTexImage2D(int target, int level, int internalformat, int width, int height,
+      int border, int format, int type, Buffer pixels);
+
+  void glTexParameterf(int target, int pname, float param);
+
+  void glTexSubImage2D(int target, int level, int xoffset, int yoffset, int width, int height,
+      int format, int type, Buffer pixels);
+
+  void glVertexPointer(int size, int type, int stride, Buffer pointer);
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import org.ros.rosjava_geometry.FrameTransformTree;
+
+/**
+ * A stand-in for the {@code GLSurfaceView} based view, which layers take as a
+ * parameter but whose state the benchmarked update paths do not use.
+ */
+public class VisualizationView {
+
+  private final FrameTransformTree frameTransformTree = new FrameTransformTree();
+  private final XYOrthographicCamera camera = new XYOrthographicCamera();
+
+  public void requestRender() {
+  }
+
+  public XYOrthographicCamera getCamera() {
+    return camera;
+  }
+
+  public FrameTransformTree getFrameTransformTree() {
+    return frameTransformTree;
+  }
+}
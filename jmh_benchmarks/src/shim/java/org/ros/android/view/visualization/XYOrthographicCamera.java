@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.ros.android.view.visualization;
+
+import org.ros.namespace.GraphName;
+import org.ros.rosjava_geometry.Vector3;
+
+/**
+ * A stand-in for the camera of {@link VisualizationView}. It has no frame, so
+ * layers that cull what is outside the screen draw everything.
+ */
+public class XYOrthographicCamera {
+
+  private final Viewport viewport = new Viewport(0, 0);
+
+  public double getZoom() {
+    return 100;
+  }
+
+  public GraphName getFrame() {
+    return null;
+  }
+
+  public Viewport getViewport() {
+    return viewport;
+  }
+
+  public Vector3 toCameraFrame(int pixelX, int pixelY) {
+    return Vector3.zero();
+  }
+}
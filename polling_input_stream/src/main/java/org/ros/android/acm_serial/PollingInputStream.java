@@ -16,6 +16,8 @@
 
 package org.ros.android.acm_serial;
 
+import com.google.common.base.Preconditions;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.ros.concurrent.CancellableLoop;
@@ -23,11 +25,18 @@ import org.ros.exception.RosRuntimeException;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Constantly reads from an {@link InputStream} into a buffer.
- * 
+ * <p>
+ * The buffer is a single-producer/single-consumer ring: the read loop is the
+ * only writer and callers of {@link #read(byte[], int, int)} are the only
+ * reader. Neither side ever compacts or copies data within the buffer, and
+ * both sides park while waiting for the other instead of spinning.
+ *
  * @author damonkohler@google.com (Damon Kohler)
  */
 public class PollingInputStream extends InputStream {
@@ -35,13 +44,22 @@ public class PollingInputStream extends InputStream {
   private final static boolean DEBUG = false;
   private final static Log log = LogFactory.getLog(PollingInputStream.class);
 
-  private final static int BUFFER_CAPACITY = 512 * 1024;
-  private final static int READ_SIZE = 256;
+  public final static int DEFAULT_BUFFER_CAPACITY = 512 * 1024;
+  public final static int DEFAULT_READ_SIZE = 256;
 
   private final byte[] readBuffer;
+  private final int mask;
+  private final int readSize;
+  private final CancellableLoop readLoop;
+
+  // Total number of bytes ever written to and read from the ring. Only the read
+  // loop advances writePosition and only the reader advances readPosition.
+  private volatile long readPosition;
+  private volatile long writePosition;
 
-  private int readPosition;
-  private int writePosition;
+  private volatile Thread waitingReader;
+  private volatile Thread waitingWriter;
+  private volatile boolean closed;
 
   /**
    * @param inputStream
@@ -50,72 +68,140 @@ public class PollingInputStream extends InputStream {
    *          used to execute the read loop
    */
   public PollingInputStream(final InputStream inputStream, ExecutorService executorService) {
-    readBuffer = new byte[BUFFER_CAPACITY];
+    this(inputStream, executorService, DEFAULT_BUFFER_CAPACITY, DEFAULT_READ_SIZE);
+  }
+
+  /**
+   * @param inputStream
+   *          the {@link InputStream} to read from
+   * @param executorService
+   *          used to execute the read loop
+   * @param bufferCapacity
+   *          the size of the ring buffer in bytes, must be a power of two
+   * @param readSize
+   *          the maximum number of bytes to read from {@code inputStream} at
+   *          once, must not exceed {@code bufferCapacity}
+   */
+  public PollingInputStream(final InputStream inputStream, ExecutorService executorService,
+      int bufferCapacity, int readSize) {
+    Preconditions.checkArgument(bufferCapacity > 0 && (bufferCapacity & (bufferCapacity - 1)) == 0,
+        "Buffer capacity must be a power of two.");
+    Preconditions.checkArgument(readSize > 0 && readSize <= bufferCapacity,
+        "Read size must be positive and no larger than the buffer capacity.");
+    readBuffer = new byte[bufferCapacity];
+    mask = bufferCapacity - 1;
+    this.readSize = readSize;
     readPosition = 0;
     writePosition = 0;
-    executorService.execute(new CancellableLoop() {
+    readLoop = new CancellableLoop() {
       @Override
       protected void loop() throws InterruptedException {
+        awaitFreeSpace();
+        // Never read past the end of the array. The next iteration will pick
+        // up at the start of the ring.
+        int offset = (int) (writePosition & mask);
+        int length = Math.min(PollingInputStream.this.readSize,
+            Math.min(free(), readBuffer.length - offset));
+        int bytesRead;
         try {
-          while (remaining() < READ_SIZE) {
-            if (readPosition < remaining()) {
-              // There isn't enough room to compact the buffer yet. We will most
-              // likely start dropping messages.
-              log.error("Not enough room to compact buffer.");
-              Thread.yield();
-              continue;
-            }
-            synchronized (readBuffer) {
-              int remaining = remaining();
-              System.arraycopy(readBuffer, writePosition, readBuffer, 0, remaining);
-              writePosition = remaining;
-              readPosition = 0;
-              if (DEBUG) {
-                log.info(String.format("Buffer compacted. %d bytes remaining.", remaining()));
-              }
-            }
-          }
-          int bytesRead = inputStream.read(readBuffer, writePosition, READ_SIZE);
+          bytesRead = inputStream.read(readBuffer, offset, length);
           if (bytesRead < 0) {
             throw new IOException("Stream closed.");
           }
-          writePosition += bytesRead;
         } catch (IOException e) {
+          closed = true;
+          LockSupport.unpark(waitingReader);
           throw new RosRuntimeException(e);
         }
+        writePosition += bytesRead;
+        LockSupport.unpark(waitingReader);
       }
-    });
+    };
+    executorService.execute(readLoop);
   }
 
-  @Override
-  public synchronized int read(byte[] buffer, int offset, int length) throws IOException {
-    int bytesRead = 0;
-    if (length > 0) {
-      while (available() == 0) {
-        // Block until there are bytes to read.
-        Thread.yield();
+  private void awaitFreeSpace() throws InterruptedException {
+    while (free() == 0) {
+      waitingWriter = Thread.currentThread();
+      if (free() == 0) {
+        if (DEBUG) {
+          log.info("Buffer full. Waiting for reader.");
+        }
+        LockSupport.park(this);
       }
-      synchronized (readBuffer) {
-        bytesRead = Math.min(length, available());
-        System.arraycopy(readBuffer, readPosition, buffer, offset, bytesRead);
-        readPosition += bytesRead;
+      waitingWriter = null;
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
       }
     }
+  }
+
+  private void awaitAvailable() throws InterruptedIOException {
+    while (size() == 0 && !closed) {
+      waitingReader = Thread.currentThread();
+      if (size() == 0 && !closed) {
+        LockSupport.park(this);
+      }
+      waitingReader = null;
+      if (Thread.interrupted()) {
+        throw new InterruptedIOException();
+      }
+    }
+  }
+
+  @Override
+  public synchronized int read(byte[] buffer, int offset, int length) throws IOException {
+    if (length <= 0) {
+      return 0;
+    }
+    // Block until there are bytes to read.
+    awaitAvailable();
+    int available = size();
+    if (available == 0) {
+      // The source stream has ended and everything it produced has been read.
+      return -1;
+    }
+    int bytesRead = Math.min(length, available);
+    int start = (int) (readPosition & mask);
+    int firstChunk = Math.min(bytesRead, readBuffer.length - start);
+    System.arraycopy(readBuffer, start, buffer, offset, firstChunk);
+    if (firstChunk < bytesRead) {
+      System.arraycopy(readBuffer, 0, buffer, offset + firstChunk, bytesRead - firstChunk);
+    }
+    readPosition += bytesRead;
+    LockSupport.unpark(waitingWriter);
     return bytesRead;
   }
 
   @Override
   public int read() throws IOException {
     byte[] buffer = new byte[1];
-    return read(buffer, 0, 1);
+    if (read(buffer, 0, 1) < 0) {
+      return -1;
+    }
+    return buffer[0] & 0xff;
   }
 
   @Override
   public int available() throws IOException {
-    return writePosition - readPosition;
+    return size();
+  }
+
+  /**
+   * Stops the read loop. The underlying {@link InputStream} is not closed.
+   */
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    readLoop.cancel();
+    LockSupport.unpark(waitingReader);
+  }
+
+  private int size() {
+    return (int) (writePosition - readPosition);
   }
 
-  private int remaining() {
-    return BUFFER_CAPACITY - writePosition;
+  private int free() {
+    return readBuffer.length - size();
   }
 }
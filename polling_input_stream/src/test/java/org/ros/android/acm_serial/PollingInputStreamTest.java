@@ -22,6 +22,7 @@ import static org.junit.Assert.assertEquals;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.util.concurrent.Executors;
@@ -87,4 +88,121 @@ public class PollingInputStreamTest {
     }
     assertArrayEquals(expectedBuffer, actualBuffer);
   }
+
+  @Test
+  public void testWrapAround() throws IOException {
+    PipedInputStream pipedInputStream = new PipedInputStream();
+    final PipedOutputStream pipedOutputStream = new PipedOutputStream(pipedInputStream);
+    PollingInputStream pollingInputStream =
+        new PollingInputStream(pipedInputStream, Executors.newCachedThreadPool(), 16, 5);
+    final byte[] expectedBuffer = new byte[1000];
+    for (int i = 0; i < expectedBuffer.length; i++) {
+      expectedBuffer[i] = (byte) i;
+    }
+    new Thread() {
+      @Override
+      public void run() {
+        try {
+          pipedOutputStream.write(expectedBuffer);
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }.start();
+    byte[] actualBuffer = new byte[1000];
+    int bytesRead = 0;
+    while (bytesRead < actualBuffer.length) {
+      bytesRead += pollingInputStream.read(actualBuffer, bytesRead,
+          Math.min(7, actualBuffer.length - bytesRead));
+    }
+    assertArrayEquals(expectedBuffer, actualBuffer);
+  }
+
+  @Test
+  public void testEndOfStream() throws IOException {
+    PipedInputStream pipedInputStream = new PipedInputStream();
+    PipedOutputStream pipedOutputStream = new PipedOutputStream(pipedInputStream);
+    PollingInputStream pollingInputStream =
+        new PollingInputStream(pipedInputStream, Executors.newCachedThreadPool());
+    pipedOutputStream.write(new byte[] { 42 });
+    pipedOutputStream.close();
+    assertEquals(42, pollingInputStream.read());
+    assertEquals(-1, pollingInputStream.read());
+  }
+
+  /**
+   * Streams 64 MiB through a small ring so that the reader and the read loop
+   * are constantly waiting on each other.
+   */
+  @Test(timeout = 60000)
+  public void testSustainedStream() throws IOException {
+    final long totalBytes = 64L * 1024 * 1024;
+    PollingInputStream pollingInputStream =
+        new PollingInputStream(new CountingInputStream(totalBytes),
+            Executors.newCachedThreadPool(), 64 * 1024, 4096);
+    byte[] buffer = new byte[1500];
+    long bytesRead = 0;
+    while (bytesRead < totalBytes) {
+      int count = pollingInputStream.read(buffer, 0, buffer.length);
+      for (int i = 0; i < count; i++) {
+        if (buffer[i] != (byte) (bytesRead + i)) {
+          throw new AssertionError("Corrupt byte at offset " + (bytesRead + i));
+        }
+      }
+      bytesRead += count;
+    }
+    assertEquals(totalBytes, bytesRead);
+    assertEquals(-1, pollingInputStream.read(buffer, 0, buffer.length));
+  }
+
+  /**
+   * Hands single bytes to a reader that is blocked waiting for them.
+   */
+  @Test(timeout = 60000)
+  public void testBlockedReaderIsWoken() throws Exception {
+    PipedInputStream pipedInputStream = new PipedInputStream();
+    PipedOutputStream pipedOutputStream = new PipedOutputStream(pipedInputStream);
+    PollingInputStream pollingInputStream =
+        new PollingInputStream(pipedInputStream, Executors.newCachedThreadPool());
+    byte[] buffer = new byte[1];
+    for (int i = 0; i < 1000; i++) {
+      pipedOutputStream.write(i);
+      // Wakes the read loop, which is otherwise polling the pipe once per
+      // second.
+      pipedOutputStream.flush();
+      assertEquals(1, pollingInputStream.read(buffer, 0, 1));
+      assertEquals((byte) i, buffer[0]);
+    }
+  }
+
+  /**
+   * Produces an endless, predictable byte sequence as fast as it is read.
+   */
+  private static final class CountingInputStream extends InputStream {
+
+    private final long limit;
+    private long position;
+
+    CountingInputStream(long limit) {
+      this.limit = limit;
+    }
+
+    @Override
+    public int read() throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      if (position >= limit) {
+        return -1;
+      }
+      int count = (int) Math.min(length, limit - position);
+      for (int i = 0; i < count; i++) {
+        buffer[offset + i] = (byte) (position + i);
+      }
+      position += count;
+      return count;
+    }
+  }
 }